@@ -50,6 +50,12 @@ public abstract class AbstractOdpsPreparedStatement extends OdpsStatement implem
     super(conn, isResultSetScrollable);
   }
 
+  @Override
+  public void addBatch(String sql) throws SQLException {
+    // a prepared statement only batches rows of parameters
+    throw new SQLFeatureNotSupportedException();
+  }
+
   @Override
   public ParameterMetaData getParameterMetaData() throws SQLException {
     throw new SQLFeatureNotSupportedException();
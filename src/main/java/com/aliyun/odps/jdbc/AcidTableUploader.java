@@ -1,28 +1,83 @@
 package com.aliyun.odps.jdbc;
 
-import static java.lang.String.format;
-
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.aliyun.odps.OdpsException;
+import com.aliyun.odps.data.Binary;
 import com.aliyun.odps.tunnel.TableTunnel;
 import com.aliyun.odps.tunnel.TunnelException;
 import com.aliyun.odps.tunnel.impl.UpsertRecord;
+import com.aliyun.odps.tunnel.io.CompressOption;
 import com.aliyun.odps.tunnel.streams.UpsertStream;
 
+/**
+ * Writes to transactional tables with a primary key through an upsert session.
+ * <p>
+ * Rows are routed to {@code upsertStreamCount} streams by the hash of their primary key, so all
+ * the changes of a key go through the same stream in order, and the streams are written in
+ * parallel. The streams stay open across batches and are closed on {@link #commit()}, but each
+ * batch is flushed before its update counts are returned, so a stream never holds rows already
+ * reported as written.
+ */
 public class AcidTableUploader extends DataUploader {
 
   private TableTunnel.UpsertSession upsertSession;
 
+  /**
+   * Whether the rows are primary keys to delete, see {@link InsertTemplate#delete}
+   */
+  private final boolean delete;
+  private final int streamCount;
+
+  /**
+   * Positions of the primary key columns in specificColumns
+   */
+  private final int[] keyPositions;
+
+  private UpsertStream[] streams;
+  private UpsertRecord[] records;
+  private ExecutorService executor;
+
   public AcidTableUploader(String projectName,
                            String schemaName,
                            String tableName,
                            String partitionSpec,
                            List<String> specificColumns,
                            OdpsConnection conn) throws OdpsException, IOException {
-    super(projectName, schemaName, tableName, partitionSpec, specificColumns, conn);
+    this(projectName, schemaName, tableName, partitionSpec, specificColumns, conn, false);
+  }
+
+  public AcidTableUploader(String projectName,
+                           String schemaName,
+                           String tableName,
+                           String partitionSpec,
+                           List<String> specificColumns,
+                           OdpsConnection conn,
+                           boolean delete) throws OdpsException, IOException {
+    this(projectName, schemaName, tableName, partitionSpec, specificColumns, conn, delete,
+         conn.getUploadMetrics());
+  }
+
+  AcidTableUploader(String projectName,
+                    String schemaName,
+                    String tableName,
+                    String partitionSpec,
+                    List<String> specificColumns,
+                    OdpsConnection conn,
+                    boolean delete,
+                    UploadMetrics parentMetrics) throws OdpsException, IOException {
+    super(projectName, schemaName, tableName, partitionSpec, specificColumns, conn, parentMetrics);
+    this.delete = delete;
+    this.streamCount = Math.max(conn.getUpsertStreamCount(), 1);
+    this.keyPositions = resolveKeyPositions();
   }
 
   protected void setUpSession() throws OdpsException, IOException {
@@ -33,27 +88,270 @@ public class AcidTableUploader extends DataUploader {
     }
     builder.setSchemaName(schemaName);
 
+    long startTime = System.currentTimeMillis();
     upsertSession = builder.build();
+    metrics.recordSessionCreated(System.currentTimeMillis() - startTime);
     conn.log.info("create upsert session id=" + upsertSession.getId());
     reuseRecord = (UpsertRecord) upsertSession.newRecord();
     tableSchema = upsertSession.getSchema();
   }
 
-  protected void upload(List<Object[]> data, int batchSize, int[] updateCounts)
+  private int[] resolveKeyPositions() throws OdpsException, IOException {
+    List<String> primaryKey =
+        conn.getOdps().tables().get(projectName, schemaName, tableName).getPrimaryKey();
+    if (delete && specificColumns.size() != primaryKey.size()) {
+      throw new IOException("batched DELETE on table " + tableName
+                            + " must match exactly the primary key " + primaryKey);
+    }
+    int[] positions = new int[primaryKey.size()];
+    for (int i = 0; i < primaryKey.size(); i++) {
+      positions[i] = -1;
+      for (int j = 0; j < specificColumns.size(); j++) {
+        if (specificColumns.get(j).equalsIgnoreCase(primaryKey.get(i))) {
+          positions[i] = j;
+          break;
+        }
+      }
+      if (positions[i] < 0) {
+        throw new IOException("primary key column " + primaryKey.get(i) + " of table " + tableName
+                              + " is not bound");
+      }
+    }
+    return positions;
+  }
+
+  protected void upload(ParameterBatchBuffer batch, int batchSize, int[] updateCounts)
       throws OdpsException, IOException, SQLException {
-    try (UpsertStream stream = upsertSession.buildUpsertStream().build()) {
-      for (int i = 0; i < data.size(); i++) {
-        Object[] row = data.get(i);
-        setReusedRecord(row, tableSchema);
-        stream.upsert(reuseRecord);
-        updateCounts[i] = 1;
+    if (streams == null) {
+      streams = new UpsertStream[streamCount];
+      records = new UpsertRecord[streamCount];
+    }
+
+    int[][] rows = new int[streamCount][];
+    int[] sizes = new int[streamCount];
+    if (streamCount == 1) {
+      rows[0] = new int[batchSize];
+      for (int i = 0; i < batchSize; i++) {
+        rows[0][sizes[0]++] = i;
+      }
+    } else {
+      int[] targets = new int[batchSize];
+      for (int i = 0; i < batchSize; i++) {
+        targets[i] = route(batch, i);
+        sizes[targets[i]]++;
+      }
+      for (int s = 0; s < streamCount; s++) {
+        rows[s] = new int[sizes[s]];
+        sizes[s] = 0;
+      }
+      for (int i = 0; i < batchSize; i++) {
+        rows[targets[i]][sizes[targets[i]]++] = i;
+      }
+    }
+
+    List<StreamTask> tasks = new ArrayList<>(streamCount);
+    for (int s = 0; s < streamCount; s++) {
+      if (sizes[s] > 0) {
+        int stream = s;
+        tasks.add(() -> write(stream, batch, rows[stream], updateCounts));
+      }
+    }
+    long startTime = System.currentTimeMillis();
+    try {
+      runAll(tasks);
+    } catch (TunnelException | IOException | SQLException e) {
+      metrics.recordFailedBlock();
+      throw e;
+    }
+    // the streams do not report their sizes, the bound values give an estimate
+    metrics.recordBlock(batchSize, batch.estimatedBytes(), System.currentTimeMillis() - startTime);
+  }
+
+  private void write(int s, ParameterBatchBuffer batch, int[] rows, int[] updateCounts)
+      throws TunnelException, IOException, SQLException {
+    UpsertStream stream = stream(s);
+    UpsertRecord record = records[s];
+    try {
+      for (int row : rows) {
+        setRecord(record, batch, row);
+        if (delete) {
+          stream.delete(record);
+        } else {
+          stream.upsert(record);
+        }
       }
+      stream.flush();
+    } catch (TunnelException | IOException e) {
+      // the previous batches were flushed, so only the rows of this one are lost with the stream,
+      // which is not reused, the next batch opens a new one
+      streams[s] = null;
+      closeQuietly(stream);
+      throw e;
+    }
+    for (int row : rows) {
+      updateCounts[row] = 1;
     }
   }
 
-  public void commit() throws TunnelException, IOException {
-    if (upsertSession != null) {
-      upsertSession.commit(false);
+  private UpsertStream stream(int s) throws TunnelException, IOException {
+    if (streams[s] == null) {
+      UpsertStream.Builder builder = upsertSession.buildUpsertStream();
+      long bufferSize = conn.getUpsertStreamBufferSize();
+      if (bufferSize > 0) {
+        builder.setMaxBufferSize(bufferSize);
+      }
+      CompressOption compressOption = conn.getTunnelUploadCompressOption();
+      if (compressOption != null) {
+        builder.setCompressOption(compressOption);
+      }
+      streams[s] = builder.build();
+      records[s] = (UpsertRecord) upsertSession.newRecord();
     }
+    return streams[s];
+  }
+
+  /**
+   * @return the stream of the row, by the hash of its primary key
+   */
+  private int route(ParameterBatchBuffer batch, int row) throws SQLException {
+    String charset = conn.getCharset();
+    int hash = 1;
+    for (int position : keyPositions) {
+      Object value = columnTransformers[position].transform(batch.get(position, row), charset);
+      hash = 31 * hash + hashKey(value);
+    }
+    return Math.floorMod(hash, streamCount);
+  }
+
+  private static int hashKey(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof Binary) {
+      return Arrays.hashCode(((Binary) value).data());
+    } else if (value instanceof byte[]) {
+      return Arrays.hashCode((byte[]) value);
+    } else if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+      return value.hashCode();
+    }
+    return value.toString().hashCode();
+  }
+
+  /**
+   * Flush and close the open streams, then commit the session.
+   */
+  public synchronized void commit() throws TunnelException, IOException {
+    try {
+      closeStreams();
+      if (upsertSession != null) {
+        long startTime = System.currentTimeMillis();
+        upsertSession.commit(false);
+        metrics.recordCommit(System.currentTimeMillis() - startTime);
+        committedSessions.incrementAndGet();
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+        executor = null;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (streams != null) {
+      for (UpsertStream stream : streams) {
+        if (stream != null) {
+          closeQuietly(stream);
+        }
+      }
+      streams = null;
+      records = null;
+    }
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  private void closeStreams() throws TunnelException, IOException {
+    if (streams == null) {
+      return;
+    }
+    List<StreamTask> tasks = new ArrayList<>(streamCount);
+    for (UpsertStream stream : streams) {
+      if (stream != null) {
+        tasks.add(stream::close);
+      }
+    }
+    streams = null;
+    records = null;
+    try {
+      runAll(tasks);
+    } catch (SQLException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private void closeQuietly(UpsertStream stream) {
+    try {
+      stream.close();
+    } catch (Exception e) {
+      conn.log.warn("failed to close upsert stream: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Run the tasks in parallel and wait for all of them before reporting the first failure.
+   */
+  private void runAll(List<StreamTask> tasks) throws TunnelException, IOException, SQLException {
+    if (tasks.size() == 1) {
+      tasks.get(0).run();
+      return;
+    }
+    List<Future<Void>> futures = new ArrayList<>(tasks.size());
+    for (StreamTask task : tasks) {
+      futures.add(executor().submit(() -> {
+        task.run();
+        return null;
+      }));
+    }
+    Throwable failure = null;
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while writing upsert streams", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure instanceof TunnelException) {
+      throw (TunnelException) failure;
+    } else if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure instanceof SQLException) {
+      throw (SQLException) failure;
+    } else if (failure != null) {
+      throw new IOException(failure.getMessage(), failure);
+    }
+  }
+
+  private ExecutorService executor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(streamCount, r -> {
+        Thread t = new Thread(r, "odps-jdbc-upsert-stream");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
+  private interface StreamTask {
+
+    void run() throws TunnelException, IOException, SQLException;
   }
 }
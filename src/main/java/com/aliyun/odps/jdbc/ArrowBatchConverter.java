@@ -0,0 +1,295 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeStampNanoVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import com.aliyun.odps.Column;
+import com.aliyun.odps.OdpsType;
+import com.aliyun.odps.TableSchema;
+import com.aliyun.odps.data.AbstractChar;
+import com.aliyun.odps.data.Binary;
+import com.aliyun.odps.jdbc.utils.transformer.to.odps.AbstractToOdpsTransformer;
+
+/**
+ * Converts buffered batches into Arrow record batches of a table, for the columnar upload of
+ * {@link BasicTableUploader}.
+ * <p>
+ * The values go through the same {@link AbstractToOdpsTransformer}s as the row by row upload, and
+ * are then written straight into the vectors of their column instead of an {@code ArrayRecord}.
+ * The record batch has all the columns of the table, the ones not bound are null.
+ */
+class ArrowBatchConverter {
+
+  private static volatile BufferAllocator rootAllocator;
+
+  private final Schema schema;
+  private final OdpsType[] types;
+  private final int[] columnIndexes;
+  private final AbstractToOdpsTransformer[] transformers;
+
+  private ArrowBatchConverter(Schema schema, OdpsType[] types, int[] columnIndexes,
+                              AbstractToOdpsTransformer[] transformers) {
+    this.schema = schema;
+    this.types = types;
+    this.columnIndexes = columnIndexes;
+    this.transformers = transformers;
+  }
+
+  /**
+   * @param columnIndexes position in the table of each column of the batches
+   * @param transformers  transformer of each column of the batches
+   * @return the converter, or null when a column of the table has no Arrow mapping
+   */
+  static ArrowBatchConverter create(TableSchema tableSchema, int[] columnIndexes,
+                                    AbstractToOdpsTransformer[] transformers) {
+    Schema schema = toArrowSchema(tableSchema);
+    if (schema == null) {
+      return null;
+    }
+    List<Column> columns = tableSchema.getColumns();
+    OdpsType[] types = new OdpsType[columns.size()];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = columns.get(i).getTypeInfo().getOdpsType();
+    }
+    return new ArrowBatchConverter(schema, types, columnIndexes, transformers);
+  }
+
+  /**
+   * @return the Arrow schema of the non-partition columns of the table, or null when a column has
+   * no Arrow mapping
+   */
+  static Schema toArrowSchema(TableSchema tableSchema) {
+    List<Field> fields = new ArrayList<>();
+    for (Column column : tableSchema.getColumns()) {
+      ArrowType type = toArrowType(column.getTypeInfo().getOdpsType());
+      if (type == null) {
+        return null;
+      }
+      fields.add(new Field(column.getName(), FieldType.nullable(type), null));
+    }
+    return new Schema(fields);
+  }
+
+  static ArrowType toArrowType(OdpsType type) {
+    switch (type) {
+      case TINYINT:
+        return new ArrowType.Int(8, true);
+      case SMALLINT:
+        return new ArrowType.Int(16, true);
+      case INT:
+        return new ArrowType.Int(32, true);
+      case BIGINT:
+        return new ArrowType.Int(64, true);
+      case FLOAT:
+        return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+      case DOUBLE:
+        return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+      case BOOLEAN:
+        return ArrowType.Bool.INSTANCE;
+      case STRING:
+      case VARCHAR:
+      case CHAR:
+        return ArrowType.Utf8.INSTANCE;
+      case BINARY:
+        return ArrowType.Binary.INSTANCE;
+      case DATE:
+        return new ArrowType.Date(DateUnit.DAY);
+      case DATETIME:
+        return new ArrowType.Date(DateUnit.MILLISECOND);
+      case TIMESTAMP:
+        return new ArrowType.Timestamp(TimeUnit.NANOSECOND, null);
+      default:
+        return null;
+    }
+  }
+
+  Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Driver-wide allocator, each block is written with a child allocator closed after the block.
+   */
+  static BufferAllocator getRootAllocator() {
+    if (rootAllocator == null) {
+      synchronized (ArrowBatchConverter.class) {
+        if (rootAllocator == null) {
+          rootAllocator = new RootAllocator(Long.MAX_VALUE);
+        }
+      }
+    }
+    return rootAllocator;
+  }
+
+  /**
+   * Convert the first {@code rows} rows of the batch. The caller closes the returned root.
+   */
+  VectorSchemaRoot convert(ParameterBatchBuffer batch, int rows, String charset,
+                           BufferAllocator allocator) throws SQLException {
+    VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+    try {
+      root.allocateNew();
+      for (int i = 0; i < columnIndexes.length; i++) {
+        int index = columnIndexes[i];
+        FieldVector vector = root.getVector(index);
+        for (int row = 0; row < rows; row++) {
+          Object value = transformers[i].transform(batch.get(i, row), charset);
+          if (value != null) {
+            set(vector, types[index], row, value);
+          }
+        }
+      }
+      root.setRowCount(rows);
+      return root;
+    } catch (SQLException | RuntimeException e) {
+      root.close();
+      throw e;
+    }
+  }
+
+  private static void set(FieldVector vector, OdpsType type, int row, Object value) {
+    switch (type) {
+      case TINYINT:
+        ((TinyIntVector) vector).setSafe(row, ((Number) value).byteValue());
+        break;
+      case SMALLINT:
+        ((SmallIntVector) vector).setSafe(row, ((Number) value).shortValue());
+        break;
+      case INT:
+        ((IntVector) vector).setSafe(row, ((Number) value).intValue());
+        break;
+      case BIGINT:
+        ((BigIntVector) vector).setSafe(row, ((Number) value).longValue());
+        break;
+      case FLOAT:
+        ((Float4Vector) vector).setSafe(row, ((Number) value).floatValue());
+        break;
+      case DOUBLE:
+        ((Float8Vector) vector).setSafe(row, ((Number) value).doubleValue());
+        break;
+      case BOOLEAN:
+        ((BitVector) vector).setSafe(row, (Boolean) value ? 1 : 0);
+        break;
+      case STRING:
+      case VARCHAR:
+      case CHAR:
+        String text = value instanceof AbstractChar ? ((AbstractChar) value).getValue()
+                                                     : value.toString();
+        ((VarCharVector) vector).setSafe(row, text.getBytes(StandardCharsets.UTF_8));
+        break;
+      case BINARY:
+        ((VarBinaryVector) vector).setSafe(row, ((Binary) value).data());
+        break;
+      case DATE:
+        ((DateDayVector) vector).setSafe(row, (int) ((LocalDate) value).toEpochDay());
+        break;
+      case DATETIME:
+        ((DateMilliVector) vector).setSafe(row,
+                                           ((ZonedDateTime) value).toInstant().toEpochMilli());
+        break;
+      case TIMESTAMP:
+        Instant instant = (Instant) value;
+        ((TimeStampNanoVector) vector).setSafe(
+            row, Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1000000000L),
+                               instant.getNano()));
+        break;
+      default:
+        throw new IllegalStateException("no arrow mapping for " + type);
+    }
+  }
+
+  /**
+   * Lay out the vectors of a record batch built by the caller in the order of the table. Columns
+   * are matched by name ignoring case, missing columns are added as nulls.
+   *
+   * @param created receives the vectors added for the missing columns, which the caller closes
+   * @throws SQLException when a vector does not match the type of its column, or has no column
+   */
+  VectorSchemaRoot align(VectorSchemaRoot root, BufferAllocator allocator,
+                         List<FieldVector> created) throws SQLException {
+    List<FieldVector> vectors = new ArrayList<>(schema.getFields().size());
+    int matched = 0;
+    for (Field field : schema.getFields()) {
+      FieldVector vector = findVector(root, field.getName());
+      if (vector == null) {
+        vector = field.createVector(allocator);
+        vector.allocateNew();
+        vector.setValueCount(root.getRowCount());
+        created.add(vector);
+      } else if (!vector.getField().getType().equals(field.getType())) {
+        throw new SQLException("column " + field.getName() + " of the arrow batch is "
+                               + vector.getField().getType() + ", expected " + field.getType());
+      } else {
+        matched++;
+      }
+      vectors.add(vector);
+    }
+    if (matched != root.getFieldVectors().size()) {
+      throw new SQLException("arrow batch " + root.getSchema() + " has columns not in the table "
+                             + schema);
+    }
+    List<Field> fields = new ArrayList<>(vectors.size());
+    for (FieldVector vector : vectors) {
+      fields.add(vector.getField());
+    }
+    return new VectorSchemaRoot(fields, vectors, root.getRowCount());
+  }
+
+  private static FieldVector findVector(VectorSchemaRoot root, String name) {
+    for (FieldVector vector : root.getFieldVectors()) {
+      if (vector.getName().equalsIgnoreCase(name)) {
+        return vector;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.aliyun.odps.Instance;
+import com.aliyun.odps.Odps;
+import com.aliyun.odps.OdpsException;
+import com.aliyun.odps.jdbc.utils.OdpsLogger;
+import com.aliyun.odps.sqa.SQLExecutor;
+import com.aliyun.odps.sqa.SQLExecutorBuilder;
+
+/**
+ * Driver-wide cache of the executors attached to an interactive session, so that a connection
+ * opened after another one with the same settings was closed does not attach again.
+ * <p>
+ * When {@code executorCache} is enabled, a closed connection gives its executor back instead of
+ * closing it, and the next connection with the same key borrows it, after checking that its
+ * session is still running. Executors idle for longer than {@code executorCacheIdleTimeout}
+ * seconds are closed by the timer of the {@link InstanceStatusPoller}.
+ * <p>
+ * An executor is cached with the {@link Odps} it was built with, which the borrowing connection
+ * rebinds to its own default project and schema, see {@link OdpsConnection}.
+ */
+class AttachedExecutorCache {
+
+  static final int MAX_IDLE_PER_KEY = 8;
+  static final long EVICTION_PERIOD_MILLIS = 10000;
+
+  private static final CacheStats STATS = new CacheStats();
+
+  // guarded by IDLE, most recently returned first
+  private static final Map<String, Deque<IdleExecutor>> IDLE = new HashMap<>();
+  private static ScheduledFuture<?> evictor;
+
+  private AttachedExecutorCache() {
+  }
+
+  /**
+   * @param odps the odps the builder builds with
+   * @return an idle executor of the key whose session is still running, or a new one built by the
+   * builder
+   */
+  static Attached borrow(String key, SQLExecutorBuilder builder, Odps odps, OdpsLogger log)
+      throws OdpsException {
+    while (true) {
+      IdleExecutor idle;
+      synchronized (IDLE) {
+        Deque<IdleExecutor> executors = IDLE.get(key);
+        if (executors == null) {
+          break;
+        }
+        idle = executors.pollFirst();
+        if (executors.isEmpty()) {
+          IDLE.remove(key);
+        }
+      }
+      if (isHealthy(idle.executor)) {
+        STATS.recordHit();
+        log.info("Reuse attached session, instanceId:" + idle.executor.getInstance().getId());
+        return new Attached(idle.executor, idle.odps);
+      }
+      log.info("Discard cached executor, its session is not running any more");
+      closeQuietly(idle.executor, log);
+    }
+    STATS.recordMiss();
+    return new Attached(builder.build(), odps);
+  }
+
+  /**
+   * Keep the executor of a closed connection for the next connection with the same key.
+   */
+  static void giveBack(String key, Attached attached, long idleTimeoutMillis, OdpsLogger log) {
+    IdleExecutor evicted = null;
+    synchronized (IDLE) {
+      Deque<IdleExecutor> executors = IDLE.computeIfAbsent(key, k -> new ArrayDeque<>());
+      executors.addFirst(new IdleExecutor(attached.executor, attached.odps,
+                                          System.currentTimeMillis() + idleTimeoutMillis));
+      if (executors.size() > MAX_IDLE_PER_KEY) {
+        evicted = executors.pollLast();
+        STATS.recordEviction();
+      }
+      if (evictor == null) {
+        // closing an executor blocks, keep it off the scheduler thread
+        evictor = InstanceStatusPoller.getScheduler().scheduleWithFixedDelay(
+            () -> OdpsStatement.getStatementWorkers().execute(AttachedExecutorCache::evictIdle),
+            EVICTION_PERIOD_MILLIS, EVICTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (evicted != null) {
+      closeQuietly(evicted.executor, log);
+    }
+  }
+
+  static CacheStats getStats() {
+    return STATS;
+  }
+
+  static int getIdleCount() {
+    synchronized (IDLE) {
+      int count = 0;
+      for (Deque<IdleExecutor> executors : IDLE.values()) {
+        count += executors.size();
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Close the executors idle for longer than their timeout.
+   */
+  static void evictIdle() {
+    long now = System.currentTimeMillis();
+    List<SQLExecutor> expired = new ArrayList<>();
+    synchronized (IDLE) {
+      Iterator<Deque<IdleExecutor>> it = IDLE.values().iterator();
+      while (it.hasNext()) {
+        Deque<IdleExecutor> executors = it.next();
+        Iterator<IdleExecutor> idle = executors.iterator();
+        while (idle.hasNext()) {
+          IdleExecutor executor = idle.next();
+          if (executor.expiresAt <= now) {
+            expired.add(executor.executor);
+            idle.remove();
+            STATS.recordEviction();
+          }
+        }
+        if (executors.isEmpty()) {
+          it.remove();
+        }
+      }
+      if (IDLE.isEmpty() && evictor != null) {
+        evictor.cancel(false);
+        evictor = null;
+      }
+    }
+    for (SQLExecutor executor : expired) {
+      closeQuietly(executor, null);
+    }
+  }
+
+  /**
+   * @return a digest of the parts, so that the keys do not keep the credentials they are made of
+   */
+  static String key(Object... parts) {
+    StringBuilder joined = new StringBuilder();
+    for (Object part : parts) {
+      joined.append(part).append('\u0001');
+    }
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256")
+          .digest(joined.toString().getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static boolean isHealthy(SQLExecutor executor) {
+    try {
+      Instance session = executor.getInstance();
+      return session != null && !session.isTerminated();
+    } catch (OdpsException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static void closeQuietly(SQLExecutor executor, OdpsLogger log) {
+    try {
+      executor.close();
+    } catch (RuntimeException e) {
+      if (log != null) {
+        log.warn("Failed to close cached executor: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * An executor and the odps it was built with.
+   */
+  static class Attached {
+
+    final SQLExecutor executor;
+    final Odps odps;
+
+    Attached(SQLExecutor executor, Odps odps) {
+      this.executor = executor;
+      this.odps = odps;
+    }
+  }
+
+  private static class IdleExecutor extends Attached {
+
+    final long expiresAt;
+
+    IdleExecutor(SQLExecutor executor, Odps odps, long expiresAt) {
+      super(executor, odps);
+      this.expiresAt = expiresAt;
+    }
+  }
+}
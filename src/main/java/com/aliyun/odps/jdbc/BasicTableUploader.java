@@ -4,18 +4,58 @@ import static java.lang.String.format;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
 
 import com.aliyun.odps.OdpsException;
 import com.aliyun.odps.data.ArrayRecord;
 import com.aliyun.odps.tunnel.TableTunnel;
 import com.aliyun.odps.tunnel.TunnelException;
+import com.aliyun.odps.tunnel.io.ArrowRecordWriter;
+import com.aliyun.odps.tunnel.io.CompressOption;
 import com.aliyun.odps.tunnel.io.TunnelRecordWriter;
 
 public class BasicTableUploader extends DataUploader {
 
+  /**
+   * Driver-wide pool committing rotated sessions in the background, its threads are daemons.
+   */
+  private static volatile ExecutorService rotatedSessionCommitter;
+
+  static final long MAX_RETRY_BACKOFF = 30000L;
+
   private TableTunnel.UploadSession uploadSession;
   private int blocks = 0;
+  private long sessionCreateTime;
+
+  /**
+   * The session to rotate to, created in the background shortly before the current one reaches
+   * its limits
+   */
+  private Future<TableTunnel.UploadSession> nextSession;
+  // written by the background task, read after nextSession completed
+  private long nextSessionCreateTime;
+
+  /**
+   * Commits of the rotated sessions, waited for in {@link #commit()}
+   */
+  private final List<Future<?>> pendingCommits = new ArrayList<>();
+
+  /**
+   * Null when a column of the table has no Arrow mapping, resolved on the first Arrow block
+   */
+  private ArrowBatchConverter arrowConverter;
+  private boolean arrowResolved = false;
 
   public BasicTableUploader(String projectName, String schemaName, String tableName,
                             String partitionSpec, List<String> specificColumns, OdpsConnection conn)
@@ -23,31 +63,171 @@ public class BasicTableUploader extends DataUploader {
     super(projectName, schemaName, tableName, partitionSpec, specificColumns, conn);
   }
 
+  BasicTableUploader(String projectName, String schemaName, String tableName,
+                     String partitionSpec, List<String> specificColumns, OdpsConnection conn,
+                     UploadMetrics parentMetrics) throws OdpsException, IOException {
+    super(projectName, schemaName, tableName, partitionSpec, specificColumns, conn, parentMetrics);
+  }
+
 
   public void setUpSession() throws OdpsException {
+    TableTunnel.UploadSession session = createSession();
+    useSession(session, System.currentTimeMillis());
+  }
+
+  private TableTunnel.UploadSession createSession() throws TunnelException {
+    long startTime = System.currentTimeMillis();
+    TableTunnel.UploadSession session;
     if (null != partitionSpec) {
-      uploadSession = tunnel.createUploadSession(projectName, schemaName, tableName, partitionSpec, false);
+      session = tunnel.createUploadSession(projectName, schemaName, tableName, partitionSpec, false);
     } else {
-      uploadSession = tunnel.createUploadSession(projectName, schemaName, tableName, false);
+      session = tunnel.createUploadSession(projectName, schemaName, tableName, false);
     }
+    metrics.recordSessionCreated(System.currentTimeMillis() - startTime);
+    conn.log.info("create upload session id=" + session.getId());
+    return session;
+  }
 
-    conn.log.info("create upload session id=" + uploadSession.getId());
+  private void useSession(TableTunnel.UploadSession session, long createTime) {
+    uploadSession = session;
+    sessionCreateTime = createTime;
     reuseRecord = (ArrayRecord) uploadSession.newRecord();
     tableSchema = uploadSession.getSchema();
   }
 
 
-  protected void upload(List<Object[]> batchedRows, int batchedSize, int[] updateCounts)
+  protected void upload(ParameterBatchBuffer batch, int batchedSize, int[] updateCounts)
       throws OdpsException, IOException, SQLException {
+    ArrowBatchConverter converter = conn.isUploadArrow() ? getArrowConverter() : null;
+    if (converter != null) {
+      writeBlockWithRetry(batchedSize, () -> writeArrowBlock(converter, batch, batchedSize));
+    } else {
+      writeBlockWithRetry(batchedSize, () -> writeBlock(batch, batchedSize));
+    }
+
+    // the block is complete only once the writer is closed
+    for (int i = 0; i < batchedSize; i++) {
+      updateCounts[i] = 1;
+    }
+  }
+
+  @Override
+  protected void uploadArrow(VectorSchemaRoot root, int[] updateCounts)
+      throws OdpsException, IOException, SQLException {
+    ArrowBatchConverter converter = getArrowConverter();
+    if (converter == null) {
+      throw new SQLException("table " + tableName + " has columns without an arrow mapping");
+    }
+    List<FieldVector> created = new ArrayList<>();
+    try (BufferAllocator allocator = ArrowBatchConverter.getRootAllocator()
+        .newChildAllocator("odps-jdbc-arrow-upload", 0, Long.MAX_VALUE)) {
+      try {
+        // the vectors of the caller are not closed here
+        VectorSchemaRoot aligned = converter.align(root, allocator, created);
+        writeBlockWithRetry(root.getRowCount(), () -> writeArrowRoot(aligned));
+      } finally {
+        for (FieldVector vector : created) {
+          vector.close();
+        }
+      }
+    }
+
+    for (int i = 0; i < updateCounts.length; i++) {
+      updateCounts[i] = 1;
+    }
+  }
+
+  @Override
+  public synchronized Schema getArrowSchema() throws SQLException {
+    ArrowBatchConverter converter = getArrowConverter();
+    if (converter == null) {
+      throw new SQLException("table " + tableName + " has columns without an arrow mapping");
+    }
+    return converter.getSchema();
+  }
+
+  private ArrowBatchConverter getArrowConverter() {
+    if (!arrowResolved) {
+      arrowConverter = ArrowBatchConverter.create(tableSchema, columnIndexes, columnTransformers);
+      arrowResolved = true;
+      if (arrowConverter == null) {
+        conn.log.info("table " + tableName + " has columns without an arrow mapping, "
+                      + "upload it row by row");
+      }
+    }
+    return arrowConverter;
+  }
+
+  private interface BlockWriter {
+
+    /**
+     * @return number of bytes written
+     */
+    long write() throws TunnelException, IOException, SQLException;
+  }
+
+  private void writeBlockWithRetry(int rows, BlockWriter writer)
+      throws OdpsException, IOException, SQLException {
+
+    if (shouldRotate()) {
+      rotate();
+    } else if (nextSession == null && isAboutToRotate()) {
+      prepareNextSession();
+    }
+
+    // the rows are still in the batch, so a failed block is written again under the same block id,
+    // which replaces whatever was partially written before
+    int maxRetries = Math.max(conn.getUploadBlockRetryTime(), 0);
+    for (int attempt = 0; ; attempt++) {
+      long startTime = System.currentTimeMillis();
+      try {
+        long bytes = writer.write();
+        metrics.recordBlock(rows, bytes, System.currentTimeMillis() - startTime);
+        break;
+      } catch (IOException | TunnelException e) {
+        if (attempt >= maxRetries) {
+          metrics.recordFailedBlock();
+          throw e;
+        }
+        metrics.recordRetry();
+        long backoff = retryBackoff(conn.getUploadBlockRetryInterval(), attempt);
+        conn.log.warn(format("failed to write block %d of upload session %s, retry %d/%d in %d ms: %s",
+                             blocks, uploadSession.getId(), attempt + 1, maxRetries, backoff,
+                             e.getMessage()));
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new IOException("interrupted while retrying block " + blocks, ie);
+        }
+      }
+    }
+
+    blocks += 1;
+  }
+
+  /**
+   * @return the interval doubled for each previous attempt, up to {@link #MAX_RETRY_BACKOFF}
+   */
+  static long retryBackoff(long interval, int attempt) {
+    long backoff = Math.max(interval, 0);
+    for (int i = 0; i < attempt && backoff < MAX_RETRY_BACKOFF; i++) {
+      backoff *= 2;
+    }
+    return Math.min(backoff, MAX_RETRY_BACKOFF);
+  }
 
+  private long writeBlock(ParameterBatchBuffer batch, int batchedSize)
+      throws TunnelException, IOException, SQLException {
     long startTime = System.currentTimeMillis();
 
-    try(TunnelRecordWriter recordWriter =  (TunnelRecordWriter) uploadSession.openRecordWriter(blocks, true)) {
+    CompressOption compressOption = conn.getTunnelUploadCompressOption();
+    try(TunnelRecordWriter recordWriter = compressOption == null
+        ? (TunnelRecordWriter) uploadSession.openRecordWriter(blocks, true)
+        : (TunnelRecordWriter) uploadSession.openRecordWriter(blocks, compressOption)) {
       for (int i = 0; i < batchedSize; i++) {
-        Object[] row = batchedRows.get(i);
-        setReusedRecord(row, tableSchema);
+        setReusedRecord(batch, i);
         recordWriter.write(reuseRecord);
-        updateCounts[i] = 1;
       }
 
       long duration = System.currentTimeMillis() - startTime;
@@ -55,19 +235,223 @@ public class BasicTableUploader extends DataUploader {
       conn.log.info(format("It took me %d ms to insert %d records [%d], %.2f MiB/s", duration,
                            batchedSize,
                            blocks, megaBytesPerSec));
-      blocks += 1;
+      return recordWriter.getTotalBytes();
     }
   }
 
+  private long writeArrowBlock(ArrowBatchConverter converter, ParameterBatchBuffer batch,
+                               int batchedSize) throws TunnelException, IOException, SQLException {
+    try (BufferAllocator allocator = ArrowBatchConverter.getRootAllocator()
+        .newChildAllocator("odps-jdbc-arrow-upload", 0, Long.MAX_VALUE);
+         VectorSchemaRoot root = converter.convert(batch, batchedSize, conn.getCharset(),
+                                                   allocator)) {
+      return writeArrowRoot(root);
+    }
+  }
+
+  /**
+   * @return size of the vectors written, before compression
+   */
+  private long writeArrowRoot(VectorSchemaRoot root) throws TunnelException, IOException {
+    long startTime = System.currentTimeMillis();
+
+    // same default as the row writers, which compress unless told otherwise
+    CompressOption compressOption = conn.getTunnelUploadCompressOption();
+    ArrowRecordWriter writer = uploadSession.openArrowRecordWriter(
+        blocks, compressOption == null ? new CompressOption() : compressOption);
+    try {
+      writer.write(root);
+    } finally {
+      writer.close();
+    }
+
+    long duration = System.currentTimeMillis() - startTime;
+    conn.log.info(format("It took me %d ms to insert %d arrow records [%d]", duration,
+                         root.getRowCount(), blocks));
+    long bytes = 0;
+    for (FieldVector vector : root.getFieldVectors()) {
+      bytes += vector.getBufferSize();
+    }
+    return bytes;
+  }
+
+  /**
+   * A session accepts a limited number of blocks and expires after a while, so long-running
+   * loaders move on to a new session before reaching either limit.
+   */
+  private boolean shouldRotate() {
+    if (blocks == 0) {
+      return false;
+    }
+    int maxBlocks = conn.getUploadSessionMaxBlocks();
+    long maxAge = conn.getUploadSessionMaxAge();
+    return (maxBlocks > 0 && blocks >= maxBlocks)
+           || (maxAge > 0
+               && System.currentTimeMillis() - sessionCreateTime >= TimeUnit.SECONDS.toMillis(maxAge));
+  }
+
+  /**
+   * @return whether the session reaches its limits within the next block, or the last tenth of
+   * its maximum age
+   */
+  private boolean isAboutToRotate() {
+    if (blocks == 0) {
+      return false;
+    }
+    int maxBlocks = conn.getUploadSessionMaxBlocks();
+    long maxAge = conn.getUploadSessionMaxAge();
+    return (maxBlocks > 0 && blocks + 1 >= maxBlocks)
+           || (maxAge > 0 && System.currentTimeMillis() - sessionCreateTime
+                             >= TimeUnit.SECONDS.toMillis(maxAge) / 10 * 9);
+  }
+
+  /**
+   * Create the session to rotate to in the background, so that the rotation does not wait for it.
+   */
+  private void prepareNextSession() {
+    nextSession = getRotatedSessionCommitter().submit(() -> {
+      TableTunnel.UploadSession session = createSession();
+      nextSessionCreateTime = System.currentTimeMillis();
+      return session;
+    });
+  }
+
+  /**
+   * Commit the current session in the background and continue with a new one, created in the
+   * background beforehand when possible.
+   */
+  private void rotate() throws OdpsException, IOException {
+    checkPendingCommits(false);
+
+    TableTunnel.UploadSession session = uploadSession;
+    int sessionBlocks = blocks;
+    conn.log.info(format("rotate upload session id=%s after %d blocks", session.getId(),
+                         sessionBlocks));
+    pendingCommits.add(getRotatedSessionCommitter().submit(() -> {
+      commitSession(session, sessionBlocks);
+      return null;
+    }));
+
+    TableTunnel.UploadSession next = takeNextSession();
+    if (next != null) {
+      useSession(next, nextSessionCreateTime);
+    } else {
+      setUpSession();
+    }
+    blocks = 0;
+  }
+
+  /**
+   * @return the session created in the background, or null if there is none or it failed
+   */
+  private TableTunnel.UploadSession takeNextSession() throws IOException {
+    Future<TableTunnel.UploadSession> future = nextSession;
+    nextSession = null;
+    if (future == null) {
+      return null;
+    }
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while creating the next upload session", e);
+    } catch (ExecutionException e) {
+      conn.log.warn("failed to create the next upload session in the background, create it "
+                    + "again: " + e.getCause().getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Drop the session prepared for a rotation which will not happen. Nothing was written to it, so
+   * it expires on the server without a commit.
+   */
+  private void discardNextSession() {
+    Future<TableTunnel.UploadSession> future = nextSession;
+    nextSession = null;
+    if (future != null && future.cancel(true)) {
+      conn.log.info("cancelled the creation of the next upload session");
+    }
+  }
+
+  /**
+   * Drop the finished background commits, and rethrow the first failure among them. When
+   * {@code wait} is true, wait for all of them.
+   */
+  private void checkPendingCommits(boolean wait) throws IOException {
+    IOException failure = null;
+    for (int i = pendingCommits.size() - 1; i >= 0; i--) {
+      Future<?> future = pendingCommits.get(i);
+      if (!wait && !future.isDone()) {
+        continue;
+      }
+      pendingCommits.remove(i);
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while committing rotated upload sessions", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (failure == null) {
+          failure = new IOException("failed to commit rotated upload session: "
+                                    + cause.getMessage(), cause);
+        } else {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void commitSession(TableTunnel.UploadSession session, int sessionBlocks)
+      throws TunnelException, IOException {
+    Long[] blockList = new Long[sessionBlocks];
+    conn.log.info("commit session: " + sessionBlocks + " blocks");
+    for (int i = 0; i < sessionBlocks; i++) {
+      blockList[i] = Long.valueOf(i);
+    }
+    long startTime = System.currentTimeMillis();
+    session.commit(blockList);
+    metrics.recordCommit(System.currentTimeMillis() - startTime);
+    committedSessions.incrementAndGet();
+    committedBlocks.addAndGet(sessionBlocks);
+  }
 
   public void commit() throws TunnelException, IOException {
+    discardNextSession();
+    checkPendingCommits(true);
     if (uploadSession != null && blocks > 0) {
-      Long[] blockList = new Long[blocks];
-      conn.log.info("commit session: " + blocks + " blocks");
-      for (int i = 0; i < blocks; i++) {
-        blockList[i] = Long.valueOf(i);
+      commitSession(uploadSession, blocks);
+      // the session is finished, a repeated commit is a no-op
+      blocks = 0;
+    }
+  }
+
+  @Override
+  public void close() {
+    discardNextSession();
+    try {
+      checkPendingCommits(true);
+    } catch (IOException e) {
+      conn.log.warn(e.getMessage());
+    }
+  }
+
+  private static ExecutorService getRotatedSessionCommitter() {
+    if (rotatedSessionCommitter == null) {
+      synchronized (BasicTableUploader.class) {
+        if (rotatedSessionCommitter == null) {
+          rotatedSessionCommitter = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "odps-jdbc-upload-session-committer");
+            t.setDaemon(true);
+            return t;
+          });
+        }
       }
-      uploadSession.commit(blockList);
     }
+    return rotatedSessionCommitter;
   }
 }
@@ -0,0 +1,415 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aliyun.odps.data.Binary;
+
+/**
+ * Temp file holding prepared statement rows that were moved out of the heap.
+ * <p>
+ * Every {@link #spill(ParameterBatchBuffer)} appends the rows of the buffer as one segment. When
+ * the batch is executed, {@link #openReader(int)} streams the segments back one at a time, so at
+ * most one segment is in memory while uploading. The file stays open for appending, so that a batch
+ * whose upload failed can be retried from the first segment not uploaded, with more rows added.
+ * <p>
+ * Values are written with a one byte type tag. Types the driver binds itself have a compact
+ * encoding, other {@link Serializable} values fall back to java serialization.
+ */
+class BatchSpillFile implements Closeable {
+
+  private static final String FILE_PREFIX = "odps-jdbc-batch-";
+
+  private static final byte NULL = 0;
+  private static final byte BYTE = 1;
+  private static final byte SHORT = 2;
+  private static final byte INT = 3;
+  private static final byte LONG = 4;
+  private static final byte FLOAT = 5;
+  private static final byte DOUBLE = 6;
+  private static final byte BOOLEAN = 7;
+  private static final byte BYTES = 8;
+  private static final byte STRING = 9;
+  private static final byte DECIMAL = 10;
+  private static final byte SQL_TIMESTAMP = 11;
+  private static final byte SQL_DATE = 12;
+  private static final byte SQL_TIME = 13;
+  private static final byte UTIL_DATE = 14;
+  private static final byte LOCAL_DATE = 15;
+  private static final byte INSTANT = 16;
+  private static final byte ZONED_DATETIME = 17;
+  private static final byte BINARY = 18;
+  private static final byte SERIALIZED = 127;
+
+  private final int columnCount;
+  private final File file;
+  private FileOutputStream fileOut;
+  private DataOutputStream out;
+  private long rowCount = 0;
+  private int segmentCount = 0;
+  private long fileBytes = 0;
+  // the offset of each segment in the file
+  private final List<Long> segmentStarts = new ArrayList<>();
+
+  BatchSpillFile(int columnCount, String directory) throws IOException {
+    this.columnCount = columnCount;
+    File dir = directory == null ? null : new File(directory);
+    this.file = File.createTempFile(FILE_PREFIX, ".spill", dir);
+    this.file.deleteOnExit();
+    this.fileOut = new FileOutputStream(file);
+    this.out = newOutput(fileOut);
+  }
+
+  long getRowCount() {
+    return rowCount;
+  }
+
+  int getSegmentCount() {
+    return segmentCount;
+  }
+
+  long getFileBytes() {
+    return fileBytes;
+  }
+
+  String getPath() {
+    return file.getAbsolutePath();
+  }
+
+  /**
+   * Append all the added rows of {@code batch} as one segment. The buffer itself is not cleared.
+   * A failure truncates the file back to the end of the previous segment, so the segments already
+   * spilled can still be read.
+   */
+  void spill(ParameterBatchBuffer batch) throws IOException {
+    if (out == null) {
+      throw new IOException("spill file " + file + " is already closed");
+    }
+    int rows = batch.getRowCount();
+    for (int r = 0; r < rows; r++) {
+      for (int c = 0; c < columnCount; c++) {
+        checkSpillable(batch.get(c, r));
+      }
+    }
+
+    try {
+      out.writeInt(rows);
+      for (int r = 0; r < rows; r++) {
+        for (int c = 0; c < columnCount; c++) {
+          writeValue(out, batch.get(c, r));
+        }
+      }
+      out.flush();
+    } catch (IOException | RuntimeException e) {
+      // e.g. a serializable collection holding a value which is not, drop the partial segment
+      discardPartialSegment();
+      throw e;
+    }
+    rowCount += rows;
+    segmentCount++;
+    segmentStarts.add(fileBytes);
+    fileBytes = file.length();
+  }
+
+  private void discardPartialSegment() throws IOException {
+    // the buffered bytes of the partial segment are dropped with the stream
+    fileOut.getChannel().truncate(fileBytes);
+    out = newOutput(fileOut);
+  }
+
+  private static DataOutputStream newOutput(FileOutputStream fileOut) {
+    return new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+  }
+
+  /**
+   * Read the segments back, starting from segment {@code from}. More segments can be spilled once
+   * the reader is closed.
+   */
+  Reader openReader(int from) throws IOException {
+    if (out == null) {
+      throw new IOException("spill file " + file + " is already closed");
+    }
+    return new Reader(from);
+  }
+
+  /**
+   * Close the streams and delete the file.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (out != null) {
+        out.close();
+        out = null;
+      }
+    } finally {
+      if (file.exists() && !file.delete()) {
+        throw new IOException("failed to delete spill file " + file);
+      }
+    }
+  }
+
+  class Reader implements Closeable {
+
+    private final DataInputStream in;
+    private final ParameterBatchBuffer segment = new ParameterBatchBuffer(columnCount);
+    // only complete segments are read back
+    private int remaining;
+
+    private Reader(int from) throws IOException {
+      FileInputStream fileIn = new FileInputStream(file);
+      if (from < segmentCount) {
+        fileIn.getChannel().position(segmentStarts.get(from));
+      }
+      this.in = new DataInputStream(new BufferedInputStream(fileIn, 1 << 16));
+      this.remaining = Math.max(0, segmentCount - from);
+    }
+
+    /**
+     * @return the next segment, or null if all segments have been read. The returned buffer is
+     * reused by the following call.
+     */
+    ParameterBatchBuffer next() throws IOException {
+      if (remaining == 0) {
+        return null;
+      }
+      remaining--;
+      int rows = in.readInt();
+      segment.clearCurrent();
+      segment.clear();
+      for (int r = 0; r < rows; r++) {
+        for (int c = 0; c < columnCount; c++) {
+          readValue(in, segment, c);
+        }
+        segment.addRow();
+      }
+      return segment;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private static void checkSpillable(Object x) throws IOException {
+    if (x == null || x instanceof Number || x instanceof Boolean || x instanceof byte[]
+        || x instanceof String || x instanceof java.util.Date || x instanceof LocalDate
+        || x instanceof Instant || x instanceof ZonedDateTime || x instanceof Binary) {
+      return;
+    }
+    if (!(x instanceof Serializable)) {
+      throw new IOException("can not spill an object of type: " + x.getClass().getName());
+    }
+  }
+
+  private static void writeValue(DataOutputStream out, Object x) throws IOException {
+    if (x == null) {
+      out.writeByte(NULL);
+    } else if (x instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) x);
+    } else if (x instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) x);
+    } else if (x instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) x);
+    } else if (x instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) x);
+    } else if (x instanceof Short) {
+      out.writeByte(SHORT);
+      out.writeShort((Short) x);
+    } else if (x instanceof Byte) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) x);
+    } else if (x instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) x);
+    } else if (x instanceof byte[]) {
+      out.writeByte(BYTES);
+      writeBytes(out, (byte[]) x);
+    } else if (x instanceof String) {
+      out.writeByte(STRING);
+      writeBytes(out, ((String) x).getBytes(StandardCharsets.UTF_8));
+    } else if (x instanceof BigDecimal) {
+      out.writeByte(DECIMAL);
+      out.writeInt(((BigDecimal) x).scale());
+      writeBytes(out, ((BigDecimal) x).unscaledValue().toByteArray());
+    } else if (x instanceof java.sql.Timestamp) {
+      out.writeByte(SQL_TIMESTAMP);
+      out.writeLong(((java.sql.Timestamp) x).getTime());
+      out.writeInt(((java.sql.Timestamp) x).getNanos());
+    } else if (x instanceof java.sql.Date) {
+      out.writeByte(SQL_DATE);
+      out.writeLong(((java.sql.Date) x).getTime());
+    } else if (x instanceof java.sql.Time) {
+      out.writeByte(SQL_TIME);
+      out.writeLong(((java.sql.Time) x).getTime());
+    } else if (x instanceof java.util.Date) {
+      out.writeByte(UTIL_DATE);
+      out.writeLong(((java.util.Date) x).getTime());
+    } else if (x instanceof LocalDate) {
+      out.writeByte(LOCAL_DATE);
+      out.writeLong(((LocalDate) x).toEpochDay());
+    } else if (x instanceof Instant) {
+      out.writeByte(INSTANT);
+      out.writeLong(((Instant) x).getEpochSecond());
+      out.writeInt(((Instant) x).getNano());
+    } else if (x instanceof ZonedDateTime) {
+      ZonedDateTime zdt = (ZonedDateTime) x;
+      out.writeByte(ZONED_DATETIME);
+      out.writeLong(zdt.toEpochSecond());
+      out.writeInt(zdt.getNano());
+      writeBytes(out, zdt.getZone().getId().getBytes(StandardCharsets.UTF_8));
+    } else if (x instanceof Binary) {
+      out.writeByte(BINARY);
+      writeBytes(out, ((Binary) x).data());
+    } else {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+        oos.writeObject(x);
+      }
+      out.writeByte(SERIALIZED);
+      writeBytes(out, bytes.toByteArray());
+    }
+  }
+
+  private static void readValue(DataInputStream in, ParameterBatchBuffer dest, int column)
+      throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        dest.setNull(column);
+        break;
+      case BYTE:
+        dest.setByte(column, in.readByte());
+        break;
+      case SHORT:
+        dest.setShort(column, in.readShort());
+        break;
+      case INT:
+        dest.setInt(column, in.readInt());
+        break;
+      case LONG:
+        dest.setLong(column, in.readLong());
+        break;
+      case FLOAT:
+        dest.setFloat(column, in.readFloat());
+        break;
+      case DOUBLE:
+        dest.setDouble(column, in.readDouble());
+        break;
+      case BOOLEAN:
+        dest.setBoolean(column, in.readBoolean());
+        break;
+      case BYTES:
+        dest.setObject(column, readBytes(in));
+        break;
+      case STRING:
+        dest.setObject(column, new String(readBytes(in), StandardCharsets.UTF_8));
+        break;
+      case DECIMAL: {
+        int scale = in.readInt();
+        dest.setObject(column, new BigDecimal(new BigInteger(readBytes(in)), scale));
+        break;
+      }
+      case SQL_TIMESTAMP: {
+        java.sql.Timestamp ts = new java.sql.Timestamp(in.readLong());
+        ts.setNanos(in.readInt());
+        dest.setObject(column, ts);
+        break;
+      }
+      case SQL_DATE:
+        dest.setObject(column, new java.sql.Date(in.readLong()));
+        break;
+      case SQL_TIME:
+        dest.setObject(column, new java.sql.Time(in.readLong()));
+        break;
+      case UTIL_DATE:
+        dest.setObject(column, new java.util.Date(in.readLong()));
+        break;
+      case LOCAL_DATE:
+        dest.setObject(column, LocalDate.ofEpochDay(in.readLong()));
+        break;
+      case INSTANT: {
+        long seconds = in.readLong();
+        dest.setObject(column, Instant.ofEpochSecond(seconds, in.readInt()));
+        break;
+      }
+      case ZONED_DATETIME: {
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        ZoneId zone = ZoneId.of(new String(readBytes(in), StandardCharsets.UTF_8));
+        dest.setObject(column, ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos), zone));
+        break;
+      }
+      case BINARY:
+        dest.setObject(column, new Binary(readBytes(in)));
+        break;
+      case SERIALIZED:
+        try (ObjectInputStream ois =
+                 new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+          dest.setObject(column, ois.readObject());
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e.getMessage(), e);
+        }
+        break;
+      default:
+        throw new IOException("corrupted spill file, unknown type tag: " + tag);
+    }
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.aliyun.odps.OdpsType;
+
+/**
+ * Loads delimited text into a table for {@link OdpsConnection#copyIn}.
+ * <p>
+ * The calling thread cuts the input into chunks of {@code batchRows} records, a pool of parsers
+ * converts each chunk into a {@link ParameterBatchBuffer}, and a single uploader thread writes the
+ * buffers in order, one block each. At most two chunks per parser are in flight, so the memory
+ * used does not depend on the size of the input.
+ */
+class CopyInLoader {
+
+  private final OdpsConnection conn;
+  private final DataUploader uploader;
+  private final CopyOptions options;
+  private final DelimitedTextParser parser;
+  private final OdpsType[] columnTypes;
+
+  CopyInLoader(OdpsConnection conn, DataUploader uploader, CopyOptions options) {
+    this.conn = conn;
+    this.uploader = uploader;
+    this.options = options;
+    this.parser = new DelimitedTextParser(options);
+
+    List<String> columns = uploader.specificColumns;
+    this.columnTypes = new OdpsType[columns.size()];
+    for (int i = 0; i < columnTypes.length; i++) {
+      columnTypes[i] = uploader.tableSchema.getColumn(columns.get(i)).getTypeInfo().getOdpsType();
+    }
+  }
+
+  /**
+   * Upload all the records of the reader. The uploader is not committed.
+   *
+   * @return number of rows uploaded
+   */
+  long load(Reader reader) throws SQLException {
+    int parserThreads = Math.max(options.getParserThreads(), 1);
+    int batchRows = Math.max(options.getBatchRows(), 1);
+    ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, r -> {
+      Thread t = new Thread(r, "odps-jdbc-copy-parser");
+      t.setDaemon(true);
+      return t;
+    });
+    ExecutorService uploaderThread = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "odps-jdbc-copy-uploader");
+      t.setDaemon(true);
+      return t;
+    });
+
+    Deque<Future<Integer>> uploads = new ArrayDeque<>();
+    long rows = 0;
+    try {
+      DelimitedTextParser.Splitter splitter = parser.splitter(reader);
+      if (options.isHeader()) {
+        splitter.nextChunk(1);
+      }
+      while (true) {
+        long firstRecord = splitter.getRecords() + 1;
+        String chunk = splitter.nextChunk(batchRows);
+        if (chunk == null) {
+          break;
+        }
+        Future<ParameterBatchBuffer> parsed = parsers.submit(() -> parse(chunk, firstRecord));
+        uploads.add(uploaderThread.submit(() -> uploader.upload(parsed.get()).length));
+        while (uploads.size() > parserThreads * 2) {
+          rows += await(uploads.poll());
+        }
+      }
+      while (!uploads.isEmpty()) {
+        rows += await(uploads.poll());
+      }
+    } catch (IOException e) {
+      throw new SQLException("failed to read the input: " + e.getMessage(), e);
+    } finally {
+      for (Future<Integer> upload : uploads) {
+        upload.cancel(true);
+      }
+      parsers.shutdownNow();
+      uploaderThread.shutdownNow();
+    }
+    conn.log.info("copied " + rows + " rows to table " + uploader.tableName);
+    return rows;
+  }
+
+  private ParameterBatchBuffer parse(String chunk, long firstRecord) throws SQLException {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(columnTypes.length);
+    List<String> fields = new ArrayList<>(columnTypes.length);
+    long record = firstRecord;
+    int pos = 0;
+    while (pos < chunk.length()) {
+      pos = parser.parseRecord(chunk, pos, fields);
+      if (DelimitedTextParser.isBlank(fields) && columnTypes.length > 1) {
+        record++;
+        continue;
+      }
+      if (fields.size() != columnTypes.length) {
+        throw new SQLException("record " + record + " has " + fields.size() + " fields, but "
+                               + columnTypes.length + " columns are loaded");
+      }
+      for (int i = 0; i < columnTypes.length; i++) {
+        try {
+          batch.setObject(i, convert(fields.get(i), columnTypes[i]));
+        } catch (IllegalArgumentException | DateTimeException e) {
+          throw new SQLException("record " + record + ", column " + uploader.specificColumns.get(i)
+                                 + ": cannot convert '" + fields.get(i) + "' to "
+                                 + columnTypes[i], e);
+        }
+      }
+      batch.addRow();
+      record++;
+    }
+    return batch;
+  }
+
+  /**
+   * Convert a field to the java type expected by the transformer of the column.
+   *
+   * @throws IllegalArgumentException or DateTimeException when the text is not a valid value
+   */
+  static Object convert(String text, OdpsType type) throws SQLException {
+    if (text == null) {
+      return null;
+    }
+    switch (type) {
+      case TINYINT:
+        return Byte.valueOf(text.trim());
+      case SMALLINT:
+        return Short.valueOf(text.trim());
+      case INT:
+        return Integer.valueOf(text.trim());
+      case BIGINT:
+        return Long.valueOf(text.trim());
+      case FLOAT:
+        return Float.valueOf(text.trim());
+      case DOUBLE:
+        return Double.valueOf(text.trim());
+      case DECIMAL:
+        return new BigDecimal(text.trim());
+      case BOOLEAN:
+        String value = text.trim();
+        if ("true".equalsIgnoreCase(value) || "1".equals(value)) {
+          return Boolean.TRUE;
+        } else if ("false".equalsIgnoreCase(value) || "0".equals(value)) {
+          return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("invalid boolean: " + text);
+      case DATE:
+        return LocalDate.parse(text.trim());
+      case DATETIME:
+      case TIMESTAMP:
+        return Timestamp.valueOf(text.trim());
+      case STRING:
+      case VARCHAR:
+      case CHAR:
+      case JSON:
+      case BINARY:
+        return text;
+      default:
+        throw new SQLException("copy into columns of type " + type + " is not supported");
+    }
+  }
+
+  private static int await(Future<Integer> future) throws SQLException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("interrupted while copying", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      // a parse failure surfaces through the upload waiting for it
+      if (cause instanceof ExecutionException) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      }
+      throw new SQLException(cause.getMessage(), cause);
+    }
+  }
+}
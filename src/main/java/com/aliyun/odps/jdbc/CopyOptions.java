@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Format of the delimited text loaded by {@link OdpsConnection#copyIn}.
+ * <p>
+ * Defaults to CSV as in RFC 4180: fields separated by commas, optionally quoted with double quotes,
+ * a quote inside a quoted field is doubled. An unquoted empty field is loaded as NULL, a quoted one
+ * as an empty string.
+ */
+public class CopyOptions {
+
+  private char delimiter = ',';
+  private char quote = '"';
+  private boolean header = false;
+  private String nullString = "";
+  private Charset charset = StandardCharsets.UTF_8;
+  private List<String> columns;
+  private int batchRows = 10000;
+  private int parserThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+  public char getDelimiter() {
+    return delimiter;
+  }
+
+  public CopyOptions setDelimiter(char delimiter) {
+    this.delimiter = delimiter;
+    return this;
+  }
+
+  public char getQuote() {
+    return quote;
+  }
+
+  public CopyOptions setQuote(char quote) {
+    this.quote = quote;
+    return this;
+  }
+
+  public boolean isHeader() {
+    return header;
+  }
+
+  /**
+   * Skip the first line of the input
+   */
+  public CopyOptions setHeader(boolean header) {
+    this.header = header;
+    return this;
+  }
+
+  public String getNullString() {
+    return nullString;
+  }
+
+  /**
+   * Unquoted fields equal to this string are loaded as NULL, e.g. {@code \N}
+   */
+  public CopyOptions setNullString(String nullString) {
+    this.nullString = nullString;
+    return this;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Charset of the input streams, readers are already decoded
+   */
+  public CopyOptions setCharset(Charset charset) {
+    this.charset = charset;
+    return this;
+  }
+
+  public List<String> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Target columns in the order of the fields, all the columns of the table when not set
+   */
+  public CopyOptions setColumns(List<String> columns) {
+    this.columns = columns;
+    return this;
+  }
+
+  public int getBatchRows() {
+    return batchRows;
+  }
+
+  /**
+   * Number of lines parsed and uploaded as one block
+   */
+  public CopyOptions setBatchRows(int batchRows) {
+    this.batchRows = batchRows;
+    return this;
+  }
+
+  public int getParserThreads() {
+    return parserThreads;
+  }
+
+  public CopyOptions setParserThreads(int parserThreads) {
+    this.parserThreads = parserThreads;
+    return this;
+  }
+}
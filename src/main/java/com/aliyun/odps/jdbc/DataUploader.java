@@ -1,11 +1,18 @@
 package com.aliyun.odps.jdbc;
 
 import java.io.IOException;
+import java.sql.BatchUpdateException;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+
 import com.aliyun.odps.Column;
 import com.aliyun.odps.OdpsException;
 import com.aliyun.odps.PartitionSpec;
@@ -32,6 +39,16 @@ public abstract class DataUploader {
   protected TableSchema tableSchema;
   protected ArrayRecord reuseRecord;
 
+  // resolved once per uploader, indexed by the position of the column in specificColumns
+  protected int[] columnIndexes;
+  protected AbstractToOdpsTransformer[] columnTransformers;
+
+  protected final AtomicLong committedSessions = new AtomicLong();
+  protected final AtomicLong committedBlocks = new AtomicLong();
+
+  // created before setUpSession(), so that the first session is measured
+  protected final UploadMetrics metrics;
+
   public DataUploader(String projectName,
                       String schemaName,
                       String tableName,
@@ -39,6 +56,22 @@ public abstract class DataUploader {
                       List<String> specificColumns,
                       OdpsConnection conn)
       throws OdpsException, IOException {
+    this(projectName, schemaName, tableName, partitionSpec, specificColumns, conn,
+         conn.getUploadMetrics());
+  }
+
+  /**
+   * @param parentMetrics metrics the metrics of this uploader add up into
+   */
+  protected DataUploader(String projectName,
+                         String schemaName,
+                         String tableName,
+                         String partitionSpec,
+                         List<String> specificColumns,
+                         OdpsConnection conn,
+                         UploadMetrics parentMetrics)
+      throws OdpsException, IOException {
+    this.metrics = new UploadMetrics(parentMetrics);
     this.projectName = projectName;
     this.schemaName = schemaName;
     this.tableName = tableName;
@@ -51,13 +84,34 @@ public abstract class DataUploader {
     tunnel = new TableTunnel(conn.getOdps());
     Table table = conn.getOdps().tables().get(projectName, schemaName, tableName);
     if (partitionSpec != null && !table.hasPartition(this.partitionSpec)) {
-      table.createPartition(this.partitionSpec);
+      // the partition may be created concurrently by other writers
+      table.createPartition(this.partitionSpec, true);
     }
     setUpSession();
 
     if (specificColumns == null) {
       this.specificColumns = tableSchema.getColumns().stream().map(Column::getName).collect(Collectors.toList());
     }
+    resolveColumns();
+  }
+
+  private void resolveColumns() throws IOException {
+    int size = specificColumns.size();
+    columnIndexes = new int[size];
+    columnTransformers = new AbstractToOdpsTransformer[size];
+    for (int i = 0; i < size; i++) {
+      String columnName = specificColumns.get(i);
+      if (!tableSchema.containsColumn(columnName)) {
+        throw new IOException("column " + columnName + " does not exist in table " + tableName);
+      }
+      columnIndexes[i] = tableSchema.getColumnIndex(columnName);
+      try {
+        columnTransformers[i] = ToOdpsTransformerFactory.getTransformer(
+            tableSchema.getColumn(columnName).getTypeInfo().getOdpsType());
+      } catch (SQLException e) {
+        throw new IOException(e.getMessage(), e);
+      }
+    }
   }
 
   public static DataUploader build(String projectName,
@@ -67,19 +121,56 @@ public abstract class DataUploader {
                                    List<String> specificColumns,
                                    OdpsConnection conn) throws OdpsException, IOException {
     Table table = conn.getOdps().tables().get(projectName, tableName);
-    if (table.isTransactional() && table.getPrimaryKey() != null && !table.getPrimaryKey().isEmpty()) {
-      return new AcidTableUploader(projectName, schemaName, tableName, partitionSpec, specificColumns, conn);
+    return build(projectName, schemaName, tableName, partitionSpec, specificColumns, conn,
+                 isAcidTable(table));
+  }
+
+  public static DataUploader build(String projectName,
+                                   String schemaName,
+                                   String tableName,
+                                   String partitionSpec,
+                                   List<String> specificColumns,
+                                   OdpsConnection conn,
+                                   boolean acid) throws OdpsException, IOException {
+    return build(projectName, schemaName, tableName, partitionSpec, specificColumns, conn, acid,
+                 conn.getUploadMetrics());
+  }
+
+  static DataUploader build(String projectName,
+                            String schemaName,
+                            String tableName,
+                            String partitionSpec,
+                            List<String> specificColumns,
+                            OdpsConnection conn,
+                            boolean acid,
+                            UploadMetrics parentMetrics) throws OdpsException, IOException {
+    if (acid) {
+      return new AcidTableUploader(projectName, schemaName, tableName, partitionSpec,
+                                   specificColumns, conn, false, parentMetrics);
     } else {
-      return new BasicTableUploader(projectName, schemaName, tableName, partitionSpec, specificColumns, conn);
+      return new BasicTableUploader(projectName, schemaName, tableName, partitionSpec,
+                                    specificColumns, conn, parentMetrics);
     }
   }
 
+  /**
+   * Transactional tables with a primary key are written by upsert sessions.
+   */
+  static boolean isAcidTable(Table table) throws OdpsException {
+    return table.isTransactional() && table.getPrimaryKey() != null
+           && !table.getPrimaryKey().isEmpty();
+  }
+
   protected abstract void setUpSession() throws OdpsException, IOException;
 
 
-  public int[] upload(List<Object[]> batchedRows) throws SQLException {
+  /**
+   * Synchronized since an uploader may be shared by the statements of a connection, see
+   * {@link UploaderCache}.
+   */
+  public synchronized int[] upload(ParameterBatchBuffer batch) throws SQLException {
 
-    int batchedSize = batchedRows.size();
+    int batchedSize = batch.getRowCount();
     if (batchedSize == 0) {
       return new int[0];
     }
@@ -91,25 +182,113 @@ public abstract class DataUploader {
     Arrays.fill(updateCounts, -1);
 
     try {
-      upload(batchedRows, batchedSize, updateCounts);
+      upload(batch, batchedSize, updateCounts);
     } catch (Exception e) {
-      throw new SQLException(e.getMessage(), e);
+      // rows of the blocks written before the failure keep their counts
+      for (int i = 0; i < batchedSize; i++) {
+        if (updateCounts[i] == -1) {
+          updateCounts[i] = Statement.EXECUTE_FAILED;
+        }
+      }
+      throw new BatchUpdateException(e.getMessage(), null, 0, updateCounts, e);
     }
 
     return updateCounts;
   }
 
-  protected abstract void upload(List<Object[]> batchedRows, int batchedSize, int[] updateCounts)
+  protected abstract void upload(ParameterBatchBuffer batch, int batchedSize, int[] updateCounts)
       throws OdpsException, IOException, SQLException;
 
-  protected void setReusedRecord(Object[] row, TableSchema schema) throws SQLException {
-    for (int i = 0; i < specificColumns.size(); i++) {
-      String columnName = specificColumns.get(i);
-      AbstractToOdpsTransformer transformer = ToOdpsTransformerFactory.getTransformer(
-          schema.getColumn(columnName).getTypeInfo().getOdpsType());
-      reuseRecord.set(columnName, transformer.transform(row[i], conn.getCharset()));
+  /**
+   * Upload a record batch already in columnar form as one block, see {@link #getArrowSchema()}.
+   */
+  public synchronized int[] uploadArrow(VectorSchemaRoot root) throws SQLException {
+    int batchedSize = root.getRowCount();
+    if (batchedSize == 0) {
+      return new int[0];
+    }
+
+    conn.log.info(batchedSize + " arrow records are going to be uploaded to table "
+                  + projectName + "." + tableName);
+
+    int[] updateCounts = new int[batchedSize];
+    Arrays.fill(updateCounts, -1);
+
+    try {
+      uploadArrow(root, updateCounts);
+    } catch (SQLFeatureNotSupportedException e) {
+      throw e;
+    } catch (Exception e) {
+      for (int i = 0; i < batchedSize; i++) {
+        if (updateCounts[i] == -1) {
+          updateCounts[i] = Statement.EXECUTE_FAILED;
+        }
+      }
+      throw new BatchUpdateException(e.getMessage(), null, 0, updateCounts, e);
+    }
+
+    return updateCounts;
+  }
+
+  protected void uploadArrow(VectorSchemaRoot root, int[] updateCounts)
+      throws OdpsException, IOException, SQLException {
+    throw new SQLFeatureNotSupportedException(
+        "arrow upload is not supported by " + getClass().getSimpleName());
+  }
+
+  /**
+   * @return the Arrow schema of the record batches accepted by {@link #uploadArrow}
+   * @throws SQLException when the table cannot be written as Arrow
+   */
+  public Schema getArrowSchema() throws SQLException {
+    throw new SQLFeatureNotSupportedException(
+        "arrow upload is not supported by " + getClass().getSimpleName());
+  }
+
+  /**
+   * Fill {@link #reuseRecord} from one buffered row, reading the columns in place.
+   */
+  protected void setReusedRecord(ParameterBatchBuffer batch, int row) throws SQLException {
+    setRecord(reuseRecord, batch, row);
+  }
+
+  /**
+   * Fill a record from one buffered row, for uploaders writing from several threads.
+   */
+  protected void setRecord(ArrayRecord record, ParameterBatchBuffer batch, int row)
+      throws SQLException {
+    String charset = conn.getCharset();
+    for (int i = 0; i < columnIndexes.length; i++) {
+      record.set(columnIndexes[i], columnTransformers[i].transform(batch.get(i, row), charset));
     }
   }
 
   public abstract void commit() throws TunnelException, IOException;
+
+  /**
+   * Release the uploader without committing what it holds, after a failed load. Sessions already
+   * committed on rotation stay committed. A no-op after a successful {@link #commit()}.
+   */
+  public abstract void close();
+
+  /**
+   * @return metrics of the uploads of this uploader
+   */
+  public UploadMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return number of sessions committed by this uploader, including the rotated ones
+   */
+  public long getCommittedSessionCount() {
+    return committedSessions.get();
+  }
+
+  /**
+   * @return number of blocks in the sessions committed by this uploader
+   */
+  public long getCommittedBlockCount() {
+    return committedBlocks.get();
+  }
 }
@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Splits delimited text into records and fields, see {@link CopyOptions} for the format.
+ * <p>
+ * Splitting into chunks of whole records is cheap and sequential, it only tracks the quotes to
+ * find the line breaks that end a record. Parsing the fields of a chunk is done by
+ * {@link #parseRecord}, which is stateless so chunks can be parsed in parallel.
+ */
+class DelimitedTextParser {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final char delimiter;
+  private final char quote;
+  private final String nullString;
+
+  DelimitedTextParser(CopyOptions options) {
+    this.delimiter = options.getDelimiter();
+    this.quote = options.getQuote();
+    this.nullString = options.getNullString();
+  }
+
+  /**
+   * Parse the record starting at {@code pos} into {@code fields}.
+   *
+   * @return the position after the record
+   * @throws SQLException when a quoted field is not closed
+   */
+  int parseRecord(String text, int pos, List<String> fields) throws SQLException {
+    fields.clear();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    boolean inQuote = false;
+    int length = text.length();
+    while (pos < length) {
+      char c = text.charAt(pos++);
+      if (inQuote) {
+        if (c != quote) {
+          field.append(c);
+        } else if (pos < length && text.charAt(pos) == quote) {
+          field.append(quote);
+          pos++;
+        } else {
+          inQuote = false;
+        }
+      } else if (c == quote && !quoted && field.length() == 0) {
+        inQuote = true;
+        quoted = true;
+      } else if (c == delimiter) {
+        addField(fields, field, quoted);
+        field.setLength(0);
+        quoted = false;
+      } else if (c == '\n') {
+        addField(fields, field, quoted);
+        return pos;
+      } else if (c != '\r' || (pos < length && text.charAt(pos) != '\n')) {
+        field.append(c);
+      }
+    }
+    if (inQuote) {
+      throw new SQLException("quoted field is not closed at the end of the input");
+    }
+    addField(fields, field, quoted);
+    return pos;
+  }
+
+  private void addField(List<String> fields, StringBuilder field, boolean quoted) {
+    String value = field.toString();
+    fields.add(!quoted && value.equals(nullString) ? null : value);
+  }
+
+  /**
+   * @return true if the parsed record is an empty line
+   */
+  static boolean isBlank(List<String> fields) {
+    return fields.size() == 1 && (fields.get(0) == null || fields.get(0).isEmpty());
+  }
+
+  Splitter splitter(Reader reader) {
+    return new Splitter(reader);
+  }
+
+  /**
+   * Cuts the input into chunks of whole records.
+   */
+  class Splitter {
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean inQuote = false;
+    private long records = 0;
+
+    Splitter(Reader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * @return the text of the next {@code maxRecords} records, less at the end of the input, or
+     * null when there is nothing left
+     */
+    String nextChunk(int maxRecords) throws IOException {
+      StringBuilder chunk = new StringBuilder();
+      int count = 0;
+      while (count < maxRecords) {
+        if (pos == limit) {
+          limit = reader.read(buffer, 0, buffer.length);
+          pos = 0;
+          if (limit <= 0) {
+            limit = 0;
+            if (chunk.length() > 0 && chunk.charAt(chunk.length() - 1) != '\n') {
+              // the last record has no line break
+              count++;
+            }
+            break;
+          }
+        }
+        int start = pos;
+        while (pos < limit && count < maxRecords) {
+          char c = buffer[pos++];
+          if (c == quote) {
+            inQuote = !inQuote;
+          } else if (c == '\n' && !inQuote) {
+            count++;
+          }
+        }
+        chunk.append(buffer, start, pos - start);
+      }
+      records += count;
+      return chunk.length() == 0 ? null : chunk.toString();
+    }
+
+    /**
+     * @return number of records returned so far
+     */
+    long getRecords() {
+      return records;
+    }
+  }
+}
@@ -0,0 +1,425 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.aliyun.odps.Column;
+import com.aliyun.odps.OdpsException;
+import com.aliyun.odps.PartitionSpec;
+import com.aliyun.odps.Table;
+import com.aliyun.odps.tunnel.TunnelException;
+
+/**
+ * Uploader for INSERT statements whose partition values are bound parameters, e.g.
+ * <pre>
+ *   INSERT INTO t PARTITION (ds=?, hh=?) VALUES (?, ?)
+ *   INSERT INTO t PARTITION (ds='20240101', hh) VALUES (?, ?, ?)
+ * </pre>
+ * A partition column without a value takes the trailing parameters of the VALUES clause, as in the
+ * ODPS dynamic partition syntax.
+ * <p>
+ * Rows are grouped by partition and each group is uploaded by a per-partition {@link DataUploader}
+ * with its own session. Missing partitions are created on demand. At most {@code maxWriters}
+ * partition sessions are kept open, the least recently used one is committed when another one is
+ * needed. Groups are uploaded and sessions are committed in parallel.
+ */
+public class DynamicPartitionUploader extends DataUploader {
+
+  /**
+   * The value of a partition column: a literal, or the index of the bound parameter.
+   */
+  static class PartitionValue {
+
+    final String column;
+    final String literal;
+    final int parameterIndex;
+
+    PartitionValue(String column, String literal, int parameterIndex) {
+      this.column = column;
+      this.literal = literal;
+      this.parameterIndex = parameterIndex;
+    }
+  }
+
+  private List<PartitionValue> partitionValues;
+  private int[] dataParameterIndexes;
+  private int maxWriters;
+
+  // set in setUpSession(), which runs in the constructor of DataUploader
+  private boolean acid;
+
+  // shared by all the uploaders, each of them keeps at most maxWriters tasks in flight
+  private static volatile ExecutorService partitionWriters;
+
+  private LinkedHashMap<String, DataUploader> writers;
+
+  public DynamicPartitionUploader(String projectName,
+                                  String schemaName,
+                                  String tableName,
+                                  List<PartitionValue> partitionValues,
+                                  int[] dataParameterIndexes,
+                                  List<String> specificColumns,
+                                  OdpsConnection conn) throws OdpsException, IOException {
+    super(projectName, schemaName, tableName, null, specificColumns, conn);
+    this.partitionValues = partitionValues;
+    this.dataParameterIndexes = dataParameterIndexes;
+    this.maxWriters = Math.max(conn.getDynamicPartitionMaxWriters(), 1);
+    // access order, the eldest entry is the least recently used writer
+    this.writers = new LinkedHashMap<>(16, 0.75f, true);
+
+    Set<String> columns = new HashSet<>();
+    for (Column column : tableSchema.getPartitionColumns()) {
+      columns.add(column.getName().toLowerCase());
+    }
+    Set<String> specified = new HashSet<>();
+    for (PartitionValue value : partitionValues) {
+      if (!columns.contains(value.column.toLowerCase())) {
+        throw new IOException(
+            "column " + value.column + " is not a partition column of table " + tableName);
+      }
+      specified.add(value.column.toLowerCase());
+    }
+    if (!specified.equals(columns)) {
+      throw new IOException("all the partition columns " + columns + " of table " + tableName
+                            + " should be specified, but got " + specified);
+    }
+  }
+
+  /**
+   * Only the table schema is loaded here, sessions are created per partition.
+   */
+  @Override
+  protected void setUpSession() throws OdpsException, IOException {
+    Table table = conn.getOdps().tables().get(projectName, schemaName, tableName);
+    tableSchema = table.getSchema();
+    acid = isAcidTable(table);
+  }
+
+  @Override
+  protected void upload(ParameterBatchBuffer batch, int batchedSize, int[] updateCounts)
+      throws OdpsException, IOException, SQLException {
+    List<RowGroup> groups = new ArrayList<>(groupByPartition(batch, batchedSize).values());
+    conn.log.info(batchedSize + " records are routed to " + groups.size() + " partitions");
+
+    for (int start = 0; start < groups.size(); start += maxWriters) {
+      List<RowGroup> wave = groups.subList(start, Math.min(start + maxWriters, groups.size()));
+      acquireWriters(wave);
+
+      List<Future<int[]>> futures = new ArrayList<>(wave.size());
+      for (RowGroup group : wave) {
+        ParameterBatchBuffer rows = project(batch, group);
+        DataUploader writer = group.writer;
+        futures.add(executor().submit(() -> writer.upload(rows)));
+      }
+      // wait for the whole wave, so the update counts of the successful partitions are kept
+      Exception failure = null;
+      for (int i = 0; i < wave.size(); i++) {
+        RowGroup group = wave.get(i);
+        int[] counts;
+        try {
+          counts = await(futures.get(i));
+        } catch (BatchUpdateException e) {
+          counts = e.getUpdateCounts();
+          if (failure == null) {
+            failure = e;
+          }
+        } catch (IOException | SQLException e) {
+          counts = null;
+          if (failure == null) {
+            failure = e;
+          }
+        }
+        for (int j = 0; counts != null && j < group.size; j++) {
+          updateCounts[group.rows[j]] = counts[j];
+        }
+      }
+      if (failure instanceof SQLException) {
+        throw (SQLException) failure;
+      } else if (failure != null) {
+        throw (IOException) failure;
+      }
+    }
+  }
+
+  /**
+   * Commit all the open partition sessions in parallel.
+   */
+  @Override
+  public synchronized void commit() throws TunnelException, IOException {
+    commitAll(new ArrayList<>(writers.values()));
+    writers.clear();
+  }
+
+  @Override
+  public synchronized void close() {
+    for (DataUploader writer : writers.values()) {
+      writer.close();
+    }
+    writers.clear();
+  }
+
+  int getOpenWriterCount() {
+    return writers.size();
+  }
+
+  @Override
+  public synchronized long getCommittedSessionCount() {
+    long count = committedSessions.get();
+    for (DataUploader writer : writers.values()) {
+      count += writer.getCommittedSessionCount();
+    }
+    return count;
+  }
+
+  @Override
+  public synchronized long getCommittedBlockCount() {
+    long count = committedBlocks.get();
+    for (DataUploader writer : writers.values()) {
+      count += writer.getCommittedBlockCount();
+    }
+    return count;
+  }
+
+  private Map<String, RowGroup> groupByPartition(ParameterBatchBuffer batch, int batchedSize)
+      throws SQLException {
+    Map<String, RowGroup> groups = new LinkedHashMap<>();
+    String[] values = new String[partitionValues.size()];
+    StringBuilder key = new StringBuilder();
+    for (int row = 0; row < batchedSize; row++) {
+      key.setLength(0);
+      for (int i = 0; i < values.length; i++) {
+        values[i] = partitionValue(batch, row, partitionValues.get(i));
+        key.append(values[i]).append('\u0001');
+      }
+      String partitionKey = key.toString();
+      RowGroup group = groups.get(partitionKey);
+      if (group == null) {
+        PartitionSpec spec = new PartitionSpec();
+        for (int i = 0; i < values.length; i++) {
+          spec.set(partitionValues.get(i).column, values[i]);
+        }
+        group = new RowGroup(partitionKey, spec);
+        groups.put(partitionKey, group);
+      }
+      group.add(row);
+    }
+    return groups;
+  }
+
+  private String partitionValue(ParameterBatchBuffer batch, int row, PartitionValue value)
+      throws SQLException {
+    if (value.parameterIndex < 0) {
+      return value.literal;
+    }
+    Object x = batch.get(value.parameterIndex, row);
+    if (x == null) {
+      throw new SQLException("value of partition column " + value.column + " can not be null");
+    }
+    if (x instanceof byte[]) {
+      try {
+        return new String((byte[]) x, conn.getCharset());
+      } catch (UnsupportedEncodingException e) {
+        throw new SQLException(e.getMessage(), e);
+      }
+    }
+    return x.toString();
+  }
+
+  /**
+   * Copy the data columns of the rows in the group into a batch of their own.
+   */
+  private ParameterBatchBuffer project(ParameterBatchBuffer batch, RowGroup group) {
+    ParameterBatchBuffer rows = new ParameterBatchBuffer(dataParameterIndexes.length);
+    for (int j = 0; j < group.size; j++) {
+      for (int c = 0; c < dataParameterIndexes.length; c++) {
+        rows.copy(c, batch, dataParameterIndexes[c], group.rows[j]);
+      }
+      rows.addRow();
+    }
+    return rows;
+  }
+
+  /**
+   * Attach a writer to each group, creating sessions (and partitions) for the missing ones in
+   * parallel. The least recently used writers not in the wave are committed to stay under
+   * {@code maxWriters}.
+   */
+  private void acquireWriters(List<RowGroup> wave) throws IOException, SQLException {
+    Set<String> keys = new HashSet<>();
+    List<RowGroup> missing = new ArrayList<>();
+    for (RowGroup group : wave) {
+      keys.add(group.key);
+      group.writer = writers.get(group.key);
+      if (group.writer == null) {
+        missing.add(group);
+      }
+    }
+
+    List<DataUploader> evicted = new ArrayList<>();
+    Iterator<Map.Entry<String, DataUploader>> it = writers.entrySet().iterator();
+    while (writers.size() + missing.size() > maxWriters && it.hasNext()) {
+      Map.Entry<String, DataUploader> eldest = it.next();
+      if (!keys.contains(eldest.getKey())) {
+        evicted.add(eldest.getValue());
+        it.remove();
+      }
+    }
+    if (!evicted.isEmpty()) {
+      conn.log.info("commit " + evicted.size() + " partition sessions to stay under "
+                    + maxWriters + " open writers");
+      try {
+        commitAll(evicted);
+      } catch (TunnelException e) {
+        throw new IOException(e.getMessage(), e);
+      }
+    }
+
+    List<Future<DataUploader>> futures = new ArrayList<>(missing.size());
+    for (RowGroup group : missing) {
+      String spec = group.spec.toString();
+      futures.add(executor().submit(() -> newWriter(spec)));
+    }
+    for (int i = 0; i < missing.size(); i++) {
+      RowGroup group = missing.get(i);
+      group.writer = await(futures.get(i));
+      writers.put(group.key, group.writer);
+    }
+  }
+
+  private DataUploader newWriter(String partitionSpec) throws OdpsException, IOException {
+    // the metrics of the partition writers add up into the metrics of this uploader
+    return build(projectName, schemaName, tableName, partitionSpec, specificColumns, conn, acid,
+                 metrics);
+  }
+
+  private void commitAll(List<DataUploader> uploaders) throws TunnelException, IOException {
+    if (uploaders.size() == 1) {
+      commitWriter(uploaders.get(0));
+      return;
+    }
+    List<Future<Void>> futures = new ArrayList<>(uploaders.size());
+    for (DataUploader uploader : uploaders) {
+      futures.add(executor().submit(() -> {
+        commitWriter(uploader);
+        return null;
+      }));
+    }
+    // wait for all the commits before reporting the first failure
+    Throwable failure = null;
+    for (Future<Void> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("interrupted while committing partition sessions", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    if (failure instanceof TunnelException) {
+      throw (TunnelException) failure;
+    } else if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure != null) {
+      throw new IOException(failure.getMessage(), failure);
+    }
+  }
+
+  /**
+   * Commit a writer which is about to be dropped, keeping its counters.
+   */
+  private void commitWriter(DataUploader writer) throws TunnelException, IOException {
+    writer.commit();
+    committedSessions.addAndGet(writer.getCommittedSessionCount());
+    committedBlocks.addAndGet(writer.getCommittedBlockCount());
+  }
+
+  private static ExecutorService executor() {
+    if (partitionWriters == null) {
+      synchronized (DynamicPartitionUploader.class) {
+        if (partitionWriters == null) {
+          partitionWriters = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "odps-jdbc-partition-writer");
+            t.setDaemon(true);
+            return t;
+          });
+        }
+      }
+    }
+    return partitionWriters;
+  }
+
+  private static <T> T await(Future<T> future) throws IOException, SQLException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("interrupted while waiting for partition writers", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause.getMessage(), cause);
+    }
+  }
+
+  private static class RowGroup {
+
+    final String key;
+    final PartitionSpec spec;
+    int[] rows = new int[16];
+    int size = 0;
+    DataUploader writer;
+
+    RowGroup(String key, PartitionSpec spec) {
+      this.key = key;
+      this.spec = spec;
+    }
+
+    void add(int row) {
+      if (size == rows.length) {
+        rows = Arrays.copyOf(rows, size * 2);
+      }
+      rows[size++] = row;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.util.List;
+
+import com.aliyun.odps.jdbc.DynamicPartitionUploader.PartitionValue;
+
+/**
+ * The target of a batched INSERT, or DELETE by primary key, as parsed from its SQL by
+ * {@link OdpsPreparedStatement}. Immutable, so it can be shared by the statements of a connection.
+ */
+class InsertTemplate {
+
+  final String projectName;
+  final String schemaName;
+  final String tableName;
+  final String partitionSpec;
+  final List<String> specificColumns;
+
+  /**
+   * Set when the partition values are bound parameters, see {@link DynamicPartitionUploader}
+   */
+  final List<PartitionValue> partitionValues;
+  final int[] dataParameterIndexes;
+
+  /**
+   * Set for {@code DELETE FROM table WHERE pk = ?}, the specific columns are then the primary key
+   */
+  final boolean delete;
+
+  private final String uploaderKey;
+
+  InsertTemplate(String projectName, String schemaName, String tableName, String partitionSpec,
+                 List<String> specificColumns, List<PartitionValue> partitionValues,
+                 int[] dataParameterIndexes, boolean delete) {
+    this.projectName = projectName;
+    this.schemaName = schemaName;
+    this.tableName = tableName;
+    this.partitionSpec = partitionSpec;
+    this.specificColumns = specificColumns;
+    this.partitionValues = partitionValues;
+    this.dataParameterIndexes = dataParameterIndexes;
+    this.delete = delete;
+
+    StringBuilder key = new StringBuilder();
+    key.append(delete ? "delete:" : "").append(projectName).append('.').append(schemaName).append('.').append(tableName)
+        .append('/').append(partitionSpec == null ? "" : partitionSpec.replaceAll("\\s", ""))
+        .append('/').append(specificColumns == null ? "*" : String.join(",", specificColumns));
+    if (partitionValues != null) {
+      key.append('/');
+      for (PartitionValue value : partitionValues) {
+        key.append(value.column).append('=')
+            .append(value.parameterIndex < 0 ? value.literal : "?" + value.parameterIndex)
+            .append(',');
+      }
+    }
+    this.uploaderKey = key.toString().toLowerCase();
+  }
+
+  boolean isDynamicPartition() {
+    return partitionValues != null;
+  }
+
+  /**
+   * Templates with the same key write the same columns to the same table and partition, so they
+   * can share an upload session.
+   */
+  String getUploaderKey() {
+    return uploaderKey;
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.aliyun.odps.Instance;
+import com.aliyun.odps.OdpsException;
+
+/**
+ * Waits for instances without a thread polling each of them, for the offline queries of
+ * {@link OdpsStatement}.
+ * <p>
+ * The status of an instance is checked right after it is submitted, then again after an interval
+ * starting at {@link #MIN_INTERVAL_MILLIS} and doubled after each check up to
+ * {@link #MAX_INTERVAL_MILLIS}, so short queries are seen done quickly while long ones are rarely
+ * checked. The checks wait in a driver-wide timer wheel of {@link #TICK_MILLIS} ticks, advanced by
+ * a scheduler of a few daemon threads, and the ones due at the same tick are run as one batch on a
+ * separate pool of checker threads, so that a slow endpoint does not hold the scheduler. The
+ * scheduler also fires the query timeouts of the statements, which hand the cancelling over to the
+ * statement workers of {@link OdpsStatement}, and the eviction of {@link AttachedExecutorCache}.
+ */
+class InstanceStatusPoller {
+
+  static final long TICK_MILLIS = 50;
+  static final long MIN_INTERVAL_MILLIS = 100;
+  static final long MAX_INTERVAL_MILLIS = 10000;
+
+  // one turn of the wheel is longer than the max interval, so a check is never a turn ahead
+  private static final int WHEEL_SIZE = 256;
+
+  private static final int THREADS =
+      Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  // the checks block on a request each
+  private static final int CHECKER_THREADS =
+      Math.max(4, Math.min(16, Runtime.getRuntime().availableProcessors() * 2));
+
+  private static volatile ScheduledExecutorService scheduler;
+  private static volatile ExecutorService checkers;
+
+  // guarded by WHEEL
+  private static final List<Check>[] WHEEL = newWheel();
+  private static long currentTick;
+  private static int pending;
+  private static ScheduledFuture<?> ticker;
+
+  private InstanceStatusPoller() {
+  }
+
+  static ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      synchronized (InstanceStatusPoller.class) {
+        if (scheduler == null) {
+          scheduler = Executors.newScheduledThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "odps-jdbc-instance-poller");
+            t.setDaemon(true);
+            return t;
+          });
+        }
+      }
+    }
+    return scheduler;
+  }
+
+  private static ExecutorService getCheckers() {
+    if (checkers == null) {
+      synchronized (InstanceStatusPoller.class) {
+        if (checkers == null) {
+          checkers = Executors.newFixedThreadPool(CHECKER_THREADS, r -> {
+            Thread t = new Thread(r, "odps-jdbc-instance-checker");
+            t.setDaemon(true);
+            return t;
+          });
+        }
+      }
+    }
+    return checkers;
+  }
+
+  /**
+   * @param metrics the checks and the latency they add are recorded into, or null
+   * @return a future completed once the instance is terminated, whether it succeeded or not, or
+   * completed exceptionally when its status cannot be read. Cancelling it stops the checks.
+   */
+  static CompletableFuture<Void> whenTerminated(Instance instance, PollingMetrics metrics) {
+    Check check = new Check(instance, metrics);
+    getCheckers().execute(() -> check(check));
+    return check.terminated;
+  }
+
+  /**
+   * Block until the instance is terminated. Unlike {@link Instance#waitForSuccess()}, the status
+   * is checked by the shared timer, call it afterwards to tell whether the instance succeeded.
+   */
+  static void waitForTermination(Instance instance, PollingMetrics metrics) throws OdpsException {
+    await(whenTerminated(instance, metrics), instance);
+  }
+
+  /**
+   * Block until a future returned by {@link #whenTerminated} is completed.
+   */
+  static void await(CompletableFuture<Void> terminated, Instance instance) throws OdpsException {
+    try {
+      terminated.get();
+    } catch (InterruptedException e) {
+      terminated.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new OdpsException("interrupted while waiting for instance " + instance.getId(), e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof OdpsException) {
+        throw (OdpsException) cause;
+      }
+      throw new OdpsException(cause.getMessage(), cause);
+    }
+  }
+
+  private static void check(Check check) {
+    if (check.terminated.isDone()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    boolean terminated;
+    try {
+      terminated = check.instance.isTerminated();
+    } catch (OdpsException | RuntimeException e) {
+      if (check.metrics != null) {
+        check.metrics.recordFailedCheck();
+      }
+      check.terminated.completeExceptionally(e);
+      return;
+    }
+    if (check.metrics != null) {
+      check.metrics.recordCheck();
+    }
+    if (terminated) {
+      if (check.metrics != null) {
+        // the instance terminated at some point since the previous check
+        check.metrics.recordTerminated(now - check.start,
+                                       check.lastCheck == 0 ? 0 : now - check.lastCheck);
+      }
+      check.terminated.complete(null);
+      return;
+    }
+    check.lastCheck = now;
+    long interval = check.interval;
+    check.interval = Math.min(interval * 2, MAX_INTERVAL_MILLIS);
+    schedule(check, interval);
+  }
+
+  private static void schedule(Check check, long interval) {
+    synchronized (WHEEL) {
+      long ticks = Math.max(1, (interval + TICK_MILLIS - 1) / TICK_MILLIS);
+      check.dueTick = currentTick + ticks;
+      WHEEL[(int) (check.dueTick % WHEEL_SIZE)].add(check);
+      if (pending++ == 0) {
+        ticker = getScheduler().scheduleAtFixedRate(InstanceStatusPoller::advance, TICK_MILLIS,
+                                                    TICK_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  private static void advance() {
+    List<Check> due = new ArrayList<>();
+    synchronized (WHEEL) {
+      currentTick++;
+      Iterator<Check> it = WHEEL[(int) (currentTick % WHEEL_SIZE)].iterator();
+      while (it.hasNext()) {
+        Check check = it.next();
+        if (check.dueTick <= currentTick || check.terminated.isDone()) {
+          it.remove();
+          pending--;
+          if (!check.terminated.isDone()) {
+            due.add(check);
+          }
+        }
+      }
+      if (pending == 0 && ticker != null) {
+        // stop ticking while nothing waits, the next check starts it again
+        ticker.cancel(false);
+        ticker = null;
+      }
+    }
+    runBatch(due);
+  }
+
+  /**
+   * Run the checks due at the same tick, spread over the checker threads.
+   */
+  private static void runBatch(List<Check> due) {
+    if (due.isEmpty()) {
+      return;
+    }
+    int chunks = Math.min(CHECKER_THREADS, due.size());
+    int chunkSize = (due.size() + chunks - 1) / chunks;
+    for (int start = 0; start < due.size(); start += chunkSize) {
+      List<Check> chunk = due.subList(start, Math.min(start + chunkSize, due.size()));
+      getCheckers().execute(() -> chunk.forEach(InstanceStatusPoller::check));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Check>[] newWheel() {
+    List<Check>[] wheel = new List[WHEEL_SIZE];
+    for (int i = 0; i < wheel.length; i++) {
+      wheel[i] = new ArrayList<>();
+    }
+    return wheel;
+  }
+
+  private static class Check {
+
+    final Instance instance;
+    final PollingMetrics metrics;
+    final CompletableFuture<Void> terminated = new CompletableFuture<>();
+    final long start = System.currentTimeMillis();
+    // written by the thread running the check, before the check is scheduled again
+    long interval = MIN_INTERVAL_MILLIS;
+    long lastCheck;
+    // guarded by WHEEL
+    long dueTick;
+
+    Check(Instance instance, PollingMetrics metrics) {
+      this.instance = instance;
+      this.metrics = metrics;
+    }
+  }
+}
@@ -9,9 +9,8 @@ import java.util.Map;
 import java.util.Properties;
 
 import com.aliyun.odps.OdpsException;
-import com.aliyun.odps.jdbc.utils.SettingParser;
+import com.aliyun.odps.jdbc.utils.SqlLexer;
 import com.aliyun.odps.sqa.SQLExecutor;
-import com.aliyun.odps.utils.StringUtils;
 
 /**
  * @author dingxin (zhangdingxin.zdx@alibaba-inc.com)
@@ -31,12 +30,9 @@ public class OdpsAsyncPreparedStatement extends OdpsPreparedStatement {
   public synchronized boolean execute(String query) throws SQLException {
     // short cut for SET clause
     Properties properties = new Properties();
-    if (!connHandle.isSkipSqlCheck()) {
-      SettingParser.ParseResult parseResult = SettingParser.parse(query);
-      query = parseResult.getRemainingQuery();
-      properties.putAll(parseResult.getSettings());
-    }
-    if (StringUtils.isBlank(query)) {
+    SqlLexer.Result lexed = lex(query, properties);
+    query = lexed.getRemainingQuery();
+    if (lexed.getKind() == SqlLexer.StatementKind.EMPTY) {
       // only settings, just set properties
       processSetClause(properties);
       return false;
@@ -48,7 +44,7 @@ public class OdpsAsyncPreparedStatement extends OdpsPreparedStatement {
       }
     }
     // otherwise those properties is just for this query
-    if (processUseClause(query)) {
+    if (processUseClause(lexed)) {
       return false;
     }
     checkClosed();
@@ -15,6 +15,10 @@
 
 package com.aliyun.odps.jdbc;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.CallableStatement;
@@ -35,11 +39,14 @@ import java.sql.Struct;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.TreeMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
@@ -55,6 +62,7 @@ import com.aliyun.odps.jdbc.data.OdpsArray;
 import com.aliyun.odps.jdbc.data.OdpsStruct;
 import com.aliyun.odps.jdbc.utils.ConnectionResource;
 import com.aliyun.odps.jdbc.utils.OdpsLogger;
+import com.aliyun.odps.jdbc.utils.TunnelCompression;
 import com.aliyun.odps.jdbc.utils.Utils;
 import com.aliyun.odps.sqa.ExecuteMode;
 import com.aliyun.odps.sqa.FallbackPolicy;
@@ -62,6 +70,7 @@ import com.aliyun.odps.sqa.SQLExecutor;
 import com.aliyun.odps.sqa.SQLExecutorBuilder;
 import com.aliyun.odps.sqa.v2.FallbackInfo;
 import com.aliyun.odps.sqa.v2.MaxQAConnInfo;
+import com.aliyun.odps.tunnel.io.CompressOption;
 import com.aliyun.odps.type.ArrayTypeInfo;
 import com.aliyun.odps.type.StructTypeInfo;
 import com.aliyun.odps.type.TypeInfo;
@@ -76,7 +85,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
   private static final String MAJOR_VERSION = "odps.task.major.version";
   private static String ODPS_SETTING_PREFIX = "odps.";
   private final Odps odps;
-  private final TimeZone tz;
+  private TimeZone tz;
   private final Properties info;
   private final List<Statement> stmtHandles;
   /**
@@ -119,6 +128,23 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
 
   private SQLExecutor executor = null;
 
+  // executors the statements run on, so that concurrent statements do not share one
+  private SQLExecutorPool executorPool;
+  private int executorPoolSize;
+
+  // the executor is given back to the AttachedExecutorCache on close, when it is enabled
+  private boolean executorCacheEnabled;
+  private long executorCacheIdleTimeout;
+  private String accountKey;
+  private String fallbackSettings;
+  private String executorCacheKey;
+  private AttachedExecutorCache.Attached attachedExecutor;
+
+  private long projectMetaCacheTtlMillis;
+
+  // set until the initialization deferred by lazyInit has run, written after all it initializes
+  private volatile ConnectionResource deferredInit;
+
   private String executeProject = null;
 
   private CatalogSchema catalogSchema = null;
@@ -150,9 +176,83 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
   private int fetchResultPreloadSplitNum;
   private int fetchResultThreadNum;
   private boolean readOnly = false;
+  // restored by resetState, when a pooled connection is handed out again
+  private final Properties initialSqlTaskProperties = new Properties();
+  private String initialProject;
+  private String initialSchema;
+  private boolean initialReadOnly;
+  //Unit: Bytes, prepared statement batches larger than this are spilled to disk
+  private long batchSpillThreshold = -1;
+  private String batchSpillDir;
+  private int dynamicPartitionMaxWriters;
+  private UploaderCache uploaderCache;
+  private int uploadSessionMaxBlocks;
+  //Unit: seconds
+  private long uploadSessionMaxAge;
+  private int uploadBlockRetryTime;
+  //Unit: milliseconds
+  private long uploadBlockRetryInterval;
+  private int upsertStreamCount;
+  //Unit: Bytes, -1 keeps the default buffer size of the upsert streams
+  private long upsertStreamBufferSize;
+  //null keeps the default compression of the tunnel
+  private CompressOption tunnelUploadCompressOption;
+  private CompressOption tunnelDownloadCompressOption;
+  private boolean uploadArrow;
+  // whether Statement.executeBatch submits independent INSERTs together, see StatementBatchRunner
+  private boolean batchConcurrentInserts;
+  // metrics of all the uploads of this connection
+  private final UploadMetrics uploadMetrics = new UploadMetrics(null);
+  // metrics of the status checks of the offline instances of this connection
+  private final PollingMetrics pollingMetrics = new PollingMetrics();
+
+  private static final int MAX_SQL_TEMPLATES = 256;
+  private static final int MAX_SETTINGS_PREFIXES = 32;
+  private static final int MAX_SETTINGS_EXECUTORS = 16;
+  // a successful validity check is trusted for this long, pools may validate on every borrow
+  static final long VALID_CHECK_CACHE_MILLIS = 5000;
+  private final Object validationLock = new Object();
+  private volatile long validUntil;
+  // compiled prepared sqls, shared by the prepared statements of the same sql
+  private final Map<String, SqlTemplate> sqlTemplates =
+      new LinkedHashMap<String, SqlTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SqlTemplate> eldest) {
+          return size() > MAX_SQL_TEMPLATES;
+        }
+      };
+  // leading SET statements of recent sqls
+  private final SettingsPrefixCache settingsCache = new SettingsPrefixCache(MAX_SETTINGS_PREFIXES);
+  private final CacheStats executorCacheStats = new CacheStats();
+  // executors built for the tunnel settings of statements, by settings
+  private final Map<String, SettingsExecutor> settingsExecutors =
+      new LinkedHashMap<String, SettingsExecutor>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SettingsExecutor> eldest) {
+          if (size() > MAX_SETTINGS_EXECUTORS) {
+            executorCacheStats.recordEviction();
+            SettingsExecutor evicted = eldest.getValue();
+            evicted.evicted = true;
+            if (evicted.users == 0) {
+              evictedIdleExecutors.add(evicted.executor);
+            }
+            // the ones in use are closed by their last release
+            return true;
+          }
+          return false;
+        }
+      };
+  // evicted executors no statement runs on, closed out of the lock, guarded by settingsExecutors
+  private final List<SQLExecutor> evictedIdleExecutors = new ArrayList<>();
   OdpsConnection(String url, Properties info) throws SQLException {
+    this(new ConnectionResource(url, info), info);
+  }
 
-    ConnectionResource connRes = new ConnectionResource(url, info);
+  /**
+   * @param connRes the settings parsed from the url and the properties, parsed once and shared by
+   *                the connections of an {@link OdpsDataSource}
+   */
+  OdpsConnection(ConnectionResource connRes, Properties info) throws SQLException {
     String accessId = connRes.getAccessId();
     String accessKey = connRes.getAccessKey();
     String charset = connRes.getCharset();
@@ -237,6 +337,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
       account = new StsAccount(accessId, accessKey, stsToken);
     }
     log.debug("debug mode on");
+    accountKey = AttachedExecutorCache.key(accessId, accessKey, stsToken);
     odps = new Odps(account);
     odps.setEndpoint(endpoint);
     odps.setDefaultProject(project);
@@ -298,28 +399,76 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
     this.readOnly = connRes.isReadOnly();
     this.fetchResultSplitSize = connRes.getFetchResultSplitSize();
     this.fetchResultThreadNum = connRes.getFetchResultThreadNum();
+    this.executorPoolSize = connRes.getExecutorPoolSize();
+    this.executorCacheEnabled = connRes.isExecutorCache();
+    this.executorCacheIdleTimeout = connRes.getExecutorCacheIdleTimeout();
+    this.fallbackSettings = connRes.getFallbackSettings();
+    this.projectMetaCacheTtlMillis = TimeUnit.SECONDS.toMillis(connRes.getProjectMetaCacheTtl());
     this.fetchResultPreloadSplitNum = connRes.getFetchResultPreloadSplitNum();
     this.skipCheckIfSelect = connRes.isSkipCheckIfSelect();
     this.longJobWarningThreshold = connRes.getLongJobWarningThreshold();
+    this.batchSpillThreshold = connRes.getBatchSpillThreshold();
+    this.batchSpillDir = connRes.getBatchSpillDir();
+    this.dynamicPartitionMaxWriters = connRes.getDynamicPartitionMaxWriters();
+    this.uploadSessionMaxBlocks = connRes.getUploadSessionMaxBlocks();
+    this.uploadSessionMaxAge = connRes.getUploadSessionMaxAge();
+    this.uploadBlockRetryTime = connRes.getUploadBlockRetryTime();
+    this.uploadBlockRetryInterval = connRes.getUploadBlockRetryInterval();
+    this.upsertStreamCount = connRes.getUpsertStreamCount();
+    this.upsertStreamBufferSize = connRes.getUpsertStreamBufferSize();
+    this.uploadArrow = connRes.isUploadArrow();
+    this.batchConcurrentInserts = connRes.isBatchConcurrentInserts();
+    try {
+      this.tunnelUploadCompressOption =
+          TunnelCompression.parse(connRes.getTunnelUploadCompression());
+      this.tunnelDownloadCompressOption =
+          TunnelCompression.parse(connRes.getTunnelDownloadCompression());
+    } catch (IllegalArgumentException e) {
+      throw new SQLException(e.getMessage(), e);
+    }
+    this.uploaderCache = new UploaderCache(this, connRes.isUploadSessionCache(),
+                                           connRes.getUploadSessionIdleTimeout());
 
     if (!httpsCheck) {
       odps.getRestClient().setIgnoreCerts(true);
     }
-    long startTime = System.currentTimeMillis();
-    Project currentProject;
-    try {
-      currentProject = odps.projects().get(project);
-    } catch (OdpsException ignored) {
-      throw new IllegalStateException("no excpetion will throw here.");
+    this.quotaName = connRes.getQuotaName();
+    this.tunnelQuotaName = connRes.getTunnelQuotaName();
+
+    this.initialProject = odps.getDefaultProject();
+    this.initialSchema = odps.getCurrentSchema();
+    this.initialReadOnly = readOnly;
+
+    if (connRes.isLazyInit()) {
+      deferredInit = connRes;
+      log.info("Connect to odps project " + project + ", initialization deferred to first use");
+    } else {
+      initialize(connRes);
     }
+  }
 
-    if (null == connRes.isOdpsNamespaceSchema()) {
+  /**
+   * Load the properties of the project and build the executor, when the connection is created or,
+   * with {@code lazyInit}, before the connection is first used.
+   */
+  private void initialize(ConnectionResource connRes) throws SQLException {
+    String project = connRes.getProject();
+    long startTime = System.currentTimeMillis();
+    long projectMetaCacheHits = ProjectMetaCache.getStats().getHits();
+    ProjectMetaCache.ProjectMeta projectMeta = null;
+    ReloadException projectLoadFailure = null;
+    if (null == connRes.isOdpsNamespaceSchema()
+        || StringUtils.isNullOrEmpty(connRes.getTimeZone())) {
       try {
-        this.odpsNamespaceSchema =
-          Boolean.parseBoolean(currentProject.getProperty("odps.schema.model.enabled"));
+        projectMeta = getProjectMeta(project);
       } catch (ReloadException e) {
-        this.odpsNamespaceSchema = false;
+        projectLoadFailure = e;
       }
+    }
+
+    if (null == connRes.isOdpsNamespaceSchema()) {
+      this.odpsNamespaceSchema =
+          projectMeta != null && Boolean.parseBoolean(projectMeta.schemaModelEnabled);
     } else {
       this.odpsNamespaceSchema = connRes.isOdpsNamespaceSchema();
     }
@@ -329,16 +478,13 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
     }
     this.catalogSchema = new CatalogSchema(odps, this.odpsNamespaceSchema);
 
-    this.quotaName = connRes.getQuotaName();
-    this.tunnelQuotaName = connRes.getTunnelQuotaName();
-
     MaxQAConnInfo maxQAQuota = null;
     if (this.interactiveMode == ExecuteMode.OFFLINE) {
       if (StringUtils.isNotBlank(this.quotaName)) {
         sqlTaskProperties.put("odps.task.wlm.quota", this.quotaName);
       }
     } else {
-      maxQAQuota = checkIfEnableMaxQA(this.quotaName);
+      maxQAQuota = getMaxQAConnInfo(this.quotaName);
     }
     this.enableMaxQA = maxQAQuota != null;
     if (this.enableMaxQA && !this.disableFallback) {
@@ -355,7 +501,10 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
         tz = TimeZone.getTimeZone(connRes.getTimeZone());
         sqlTaskProperties.setProperty("odps.sql.timezone", connRes.getTimeZone());
       } else {
-        projectTimeZoneId = currentProject.getProperty("odps.sql.timezone");
+        if (projectMeta == null) {
+          throw projectLoadFailure;
+        }
+        projectTimeZoneId = projectMeta.timeZone;
         if (useProjectTimeZone && !StringUtils.isNullOrEmpty(projectTimeZoneId)) {
           tz = TimeZone.getTimeZone(projectTimeZoneId);
         } else {
@@ -366,8 +515,10 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
                + " , localTimezone: " + TimeZone.getDefault().getID());
 
       long cost = System.currentTimeMillis() - startTime;
-      log.info(String.format("load project meta infos time cost=%d", cost));
+      log.info(String.format("load project meta infos time cost=%d, cache hits=%d", cost,
+                             ProjectMetaCache.getStats().getHits() - projectMetaCacheHits));
       initSQLExecutor(serviceName, fallbackPolicy, maxQAQuota);
+      initialSqlTaskProperties.putAll(sqlTaskProperties);
       String msg = "Connect to odps project %s successfully";
       log.info(String.format(msg, odps.getDefaultProject()));
 
@@ -377,10 +528,120 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
     }
   }
 
+  /**
+   * Run the initialization deferred by {@code lazyInit}, if it has not run yet. Called by the
+   * methods creating statements, reading metadata or copying tables, the getters of the project properties and of
+   * the executor are only meaningful afterwards.
+   */
+  void ensureInitialized() throws SQLException {
+    if (deferredInit == null) {
+      return;
+    }
+    synchronized (this) {
+      if (deferredInit != null) {
+        checkClosed();
+        initialize(deferredInit);
+        deferredInit = null;
+      }
+    }
+  }
+
+  boolean isInitialized() {
+    return deferredInit == null;
+  }
+
+  /**
+   * Undo what the user of this connection changed, before an {@link OdpsPooledConnection} hands it
+   * out again: close its statements, commit its upload sessions, and restore its settings, default
+   * project and schema.
+   */
+  void resetState() throws SQLException {
+    checkClosed();
+    try {
+      for (Statement stmt : stmtHandles) {
+        if (stmt != null && !stmt.isClosed()) {
+          stmt.close();
+        }
+      }
+      stmtHandles.clear();
+      uploaderCache.commitAll();
+    } finally {
+      if (isInitialized()) {
+        synchronized (sqlTaskProperties) {
+          sqlTaskProperties.clear();
+          sqlTaskProperties.putAll(initialSqlTaskProperties);
+        }
+      }
+      odps.setDefaultProject(initialProject);
+      odps.setCurrentSchema(initialSchema);
+      if (catalogSchema != null) {
+        catalogSchema.sync();
+      }
+      readOnly = initialReadOnly;
+    }
+  }
+
   public boolean isOdpsNamespaceSchema() {
     return odpsNamespaceSchema;
   }
 
+  /**
+   * @return the properties of the project read when connecting, from the driver-wide
+   * {@link ProjectMetaCache} when another connection read them recently
+   */
+  private ProjectMetaCache.ProjectMeta getProjectMeta(String project) {
+    String key = projectMetaKey(project);
+    ProjectMetaCache.ProjectMeta meta = ProjectMetaCache.getProject(key);
+    if (meta == null) {
+      Project currentProject;
+      try {
+        currentProject = odps.projects().get(project);
+      } catch (OdpsException ignored) {
+        throw new IllegalStateException("no excpetion will throw here.");
+      }
+      meta = new ProjectMetaCache.ProjectMeta(
+          currentProject.getProperty("odps.schema.model.enabled"),
+          currentProject.getProperty("odps.sql.timezone"));
+      ProjectMetaCache.putProject(key, meta, projectMetaCacheTtlMillis);
+    }
+    return meta;
+  }
+
+  /**
+   * Same as {@link #checkIfEnableMaxQA(String)}, from the driver-wide {@link ProjectMetaCache}
+   * when another connection looked the quota up recently. Quotas without MaxQA are not cached,
+   * their lookup may have failed for a transient reason.
+   */
+  private MaxQAConnInfo getMaxQAConnInfo(String quotaName) {
+    String key = maxQAKey(quotaName);
+    MaxQAConnInfo quotaInfo = ProjectMetaCache.getMaxQAConnInfo(key);
+    if (quotaInfo == null) {
+      quotaInfo = checkIfEnableMaxQA(quotaName);
+      if (quotaInfo != null) {
+        ProjectMetaCache.putMaxQAConnInfo(key, quotaInfo, projectMetaCacheTtlMillis);
+      }
+    }
+    return quotaInfo;
+  }
+
+  private String projectMetaKey(String project) {
+    return AttachedExecutorCache.key("project", accountKey, odps.getEndpoint(), project);
+  }
+
+  private String maxQAKey(String quotaName) {
+    return AttachedExecutorCache.key("maxqa", accountKey, odps.getEndpoint(), quotaName);
+  }
+
+  /**
+   * Drop the project properties and the quota info of this connection from the driver-wide cache,
+   * so that the next connection reads them again. Useful after they are changed, when
+   * {@code projectMetaCacheTtl} is long.
+   */
+  public void invalidateProjectMetaCache() {
+    ProjectMetaCache.invalidate(projectMetaKey(odps.getDefaultProject()));
+    ProjectMetaCache.invalidate(maxQAKey(quotaName));
+  }
+
   public MaxQAConnInfo checkIfEnableMaxQA(String quotaName) {
     try {
       MaxQAConnInfo quotaInfo = odps.quotas().getMaxQAConnInfo(quotaName);
@@ -438,7 +699,33 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
     }
     long startTime = System.currentTimeMillis();
     this.executorBuilder = builder;
-    this.executor = builder.build();
+    if (executorCacheEnabled && interactiveMode == ExecuteMode.INTERACTIVE) {
+      // the executor may outlive this connection, so it gets an odps of its own
+      if (executeOdps == this.odps) {
+        executeOdps = this.odps.clone();
+        builder.odps(executeOdps);
+      }
+      executorCacheKey = AttachedExecutorCache.key(
+          accountKey, executeOdps.getEndpoint(), executeOdps.getDefaultProject(),
+          executeOdps.getCurrentSchema(), serviceName, fallbackQuota,
+          fallbackSettings, tunnelQuotaName, tunnelEndpoint, useInstanceTunnel,
+          new TreeMap<>(hints), attachTimeout, tunnelRetryTime, enableCommandApi,
+          tunnelConnectTimeout, tunnelReadTimeout, odpsNamespaceSchema, logviewVersion,
+          skipCheckIfSelect);
+      attachedExecutor = AttachedExecutorCache.borrow(executorCacheKey, builder, executeOdps, log);
+      this.executor = attachedExecutor.executor;
+      // a reused executor keeps the project and schema its last connection left on its odps
+      Odps attachedOdps = attachedExecutor.odps;
+      attachedOdps.setDefaultProject(executeOdps.getDefaultProject());
+      attachedOdps.setCurrentSchema(executeOdps.getCurrentSchema());
+      builder.odps(attachedOdps);
+      if (StringUtils.isNullOrEmpty(executeProject)) {
+        catalogSchema.follow(attachedOdps);
+      }
+    } else {
+      this.executor = builder.build();
+    }
+    this.executorPool = new SQLExecutorPool(builder, executor, executorPoolSize, log);
     if (interactiveMode == ExecuteMode.INTERACTIVE && executor.getInstance() != null) {
       long cost = System.currentTimeMillis() - startTime;
       log.info(String.format(
@@ -449,6 +736,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
 
   @Override
   public OdpsPreparedStatement prepareStatement(String sql) throws SQLException {
+    ensureInitialized();
     OdpsPreparedStatement stmt;
     if (async) {
       stmt = new OdpsAsyncPreparedStatement(this, sql);
@@ -490,6 +778,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
   public OdpsPreparedStatement prepareStatement(String sql, int resultSetType,
                                                 int resultSetConcurrency) throws SQLException {
     checkClosed();
+    ensureInitialized();
 
     if (resultSetType == ResultSet.TYPE_SCROLL_SENSITIVE) {
       throw new SQLFeatureNotSupportedException("Statement with resultset type: " + resultSetType
@@ -580,16 +869,36 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
   @Override
   public void close() throws SQLException {
     if (!isClosed) {
-      for (Statement stmt : stmtHandles) {
-        if (stmt != null && !stmt.isClosed()) {
-          stmt.close();
+      log.info("settings cache: " + settingsCache.getStats() + ", executor cache: "
+               + executorCacheStats + ", instance polling: " + pollingMetrics);
+      try {
+        for (Statement stmt : stmtHandles) {
+          if (stmt != null && !stmt.isClosed()) {
+            stmt.close();
+          }
         }
-      }
-      if (runningInInteractiveMode()) {
-        executor.close();
+        uploaderCache.commitAll();
+      } finally {
+        if (isInitialized() && runningInInteractiveMode()) {
+          if (executorCacheKey != null) {
+            AttachedExecutorCache.giveBack(executorCacheKey, attachedExecutor,
+                                           TimeUnit.SECONDS.toMillis(executorCacheIdleTimeout),
+                                           log);
+          } else {
+            executor.close();
+          }
+          executorPool.close();
+          synchronized (settingsExecutors) {
+            for (SettingsExecutor settingsExecutor : settingsExecutors.values()) {
+              settingsExecutor.evicted = true;
+              settingsExecutor.executor.close();
+            }
+            settingsExecutors.clear();
+          }
+        }
+        isClosed = true;
       }
     }
-    isClosed = true;
     log.info("connection closed");
   }
 
@@ -601,6 +910,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
   @Override
   public DatabaseMetaData getMetaData() throws SQLException {
     checkClosed();
+    ensureInitialized();
     return new OdpsDatabaseMetaData(this);
   }
 
@@ -621,6 +931,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
 
   @Override
   public String getCatalog() throws SQLException {
+    ensureInitialized();
     return catalogSchema.getCatalog();
   }
 
@@ -630,6 +941,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
    */
   @Override
   public void setCatalog(String catalog) throws SQLException {
+    ensureInitialized();
     catalogSchema.setCatalog(catalog);
   }
 
@@ -698,6 +1010,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
   @Override
   public OdpsStatement createStatement() throws SQLException {
     checkClosed();
+    ensureInitialized();
     OdpsStatement stmt;
     if (async) {
       stmt = new OdpsAsyncStatement(this, false);
@@ -720,6 +1033,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
   public OdpsStatement createStatement(int resultSetType, int resultSetConcurrency)
     throws SQLException {
     checkClosed();
+    ensureInitialized();
 
     boolean isResultSetScrollable;
 
@@ -783,10 +1097,56 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
     throw new SQLFeatureNotSupportedException();
   }
 
+  /**
+   * Check that the project of the connection can still be read with its credentials, which fails
+   * once an STS token expired or the endpoint is unreachable. Interactive sessions which died are
+   * attached again by the executor on the next query, they do not make the connection invalid.
+   * <p>
+   * A successful check is trusted for {@link #VALID_CHECK_CACHE_MILLIS}, so that pools validating
+   * their connections on every borrow do not send a request each time.
+   *
+   * @param timeout seconds to connect and to read the response, without retry, or 0 to use the
+   *                timeouts and retries of the connection
+   */
   @Override
   public boolean isValid(int timeout) throws SQLException {
-    // connection validation is already done in constructor, always return true here
-    return true;
+    if (timeout < 0) {
+      throw new SQLException("timeout must not be negative: " + timeout);
+    }
+    if (isClosed) {
+      return false;
+    }
+    if (System.currentTimeMillis() < validUntil) {
+      return true;
+    }
+    synchronized (validationLock) {
+      if (System.currentTimeMillis() < validUntil) {
+        // checked by another thread meanwhile
+        return true;
+      }
+      Odps checkOdps = odps;
+      if (timeout > 0) {
+        checkOdps = odps.clone();
+        checkOdps.getRestClient().setConnectTimeout(timeout);
+        checkOdps.getRestClient().setReadTimeout(timeout);
+        checkOdps.getRestClient().setRetryTimes(0);
+        if (!httpsCheck) {
+          checkOdps.getRestClient().setIgnoreCerts(true);
+        }
+      }
+      try {
+        if (!checkOdps.projects().exists(odps.getDefaultProject())) {
+          log.warn("Connection is not valid, project " + odps.getDefaultProject()
+                   + " does not exist");
+          return false;
+        }
+      } catch (OdpsException | RuntimeException e) {
+        log.warn("Connection is not valid: " + e.getMessage());
+        return false;
+      }
+      validUntil = System.currentTimeMillis() + VALID_CHECK_CACHE_MILLIS;
+      return true;
+    }
   }
 
   @Override
@@ -830,12 +1190,14 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
   @Override
   public String getSchema() throws SQLException {
     checkClosed();
+    ensureInitialized();
     return catalogSchema.getSchema();
   }
 
   @Override
   public void setSchema(String schema) throws SQLException {
     checkClosed();
+    ensureInitialized();
     catalogSchema.setSchema(schema);
   }
 
@@ -912,6 +1274,111 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
     return executorBuilder;
   }
 
+  /**
+   * @return an executor for a statement to run on until it gives it back by
+   * {@link #releaseExecutor(SQLExecutor)}, see {@link SQLExecutorPool}
+   */
+  SQLExecutor borrowExecutor() {
+    return executorPool.borrow();
+  }
+
+  void releaseExecutor(SQLExecutor executor) {
+    executorPool.release(executor);
+  }
+
+  /**
+   * Executor for statements overriding the tunnel settings of the connection, built once per
+   * distinct settings and shared by the statements until they give it back by
+   * {@link #releaseSettingsExecutor(SettingsExecutor)}. An executor evicted from the cache is
+   * closed once no statement runs on it.
+   *
+   * @param tunnelEndpoint    tunnel endpoint, or null to keep the one of the connection
+   * @param useInstanceTunnel whether results are fetched by the instance tunnel, or null to keep
+   *                          the setting of the connection
+   * @return the executor, or null when it could not be built and the statement should keep the
+   * executor of the connection
+   */
+  SettingsExecutor acquireSettingsExecutor(String tunnelEndpoint, Boolean useInstanceTunnel) {
+    String key = tunnelEndpoint + '\u0001' + useInstanceTunnel;
+    synchronized (settingsExecutors) {
+      SettingsExecutor cached = settingsExecutors.get(key);
+      if (cached != null) {
+        executorCacheStats.recordHit();
+        cached.users++;
+        return cached;
+      }
+    }
+    executorCacheStats.recordMiss();
+
+    SQLExecutorBuilder builder = executorBuilder.clone();
+    if (tunnelEndpoint != null) {
+      builder.tunnelEndpoint(tunnelEndpoint);
+    }
+    if (useInstanceTunnel != null) {
+      builder.useInstanceTunnel(useInstanceTunnel);
+    }
+    SQLExecutor built;
+    try {
+      built = builder.build();
+    } catch (Exception e) {
+      log.error("rebuild sql executor failed.", e);
+      return null;
+    }
+    SettingsExecutor acquired;
+    boolean redundant;
+    List<SQLExecutor> toClose;
+    synchronized (settingsExecutors) {
+      acquired = settingsExecutors.get(key);
+      redundant = acquired != null;
+      if (!redundant) {
+        acquired = new SettingsExecutor(built);
+        settingsExecutors.put(key, acquired);
+      }
+      acquired.users++;
+      toClose = new ArrayList<>(evictedIdleExecutors);
+      evictedIdleExecutors.clear();
+    }
+    if (redundant) {
+      // built concurrently by another statement
+      toClose.add(built);
+    }
+    for (SQLExecutor idle : toClose) {
+      idle.close();
+    }
+    return acquired;
+  }
+
+  void releaseSettingsExecutor(SettingsExecutor settingsExecutor) {
+    synchronized (settingsExecutors) {
+      if (settingsExecutor.users <= 0) {
+        throw new IllegalStateException("settings executor released more times than acquired");
+      }
+      settingsExecutor.users--;
+      if (!settingsExecutor.evicted || settingsExecutor.users > 0 || isClosed) {
+        return;
+      }
+    }
+    settingsExecutor.executor.close();
+  }
+
+  SettingsPrefixCache getSettingsCache() {
+    return settingsCache;
+  }
+
+  /**
+   * @return counters of the leading SET statements found already parsed by the statements
+   */
+  public CacheStats getSettingsCacheStats() {
+    return settingsCache.getStats();
+  }
+
+  /**
+   * @return counters of the executors found already built for the tunnel settings of statements
+   */
+  public CacheStats getExecutorCacheStats() {
+    return executorCacheStats;
+  }
+
   public ExecuteMode getInteractiveMode() {
     return interactiveMode;
   }
@@ -1063,6 +1530,201 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
     return longJobWarningThreshold;
   }
 
+  public long getBatchSpillThreshold() {
+    return batchSpillThreshold;
+  }
+
+  public String getBatchSpillDir() {
+    return batchSpillDir;
+  }
+
+  public int getDynamicPartitionMaxWriters() {
+    return dynamicPartitionMaxWriters;
+  }
+
+  public int getUploadSessionMaxBlocks() {
+    return uploadSessionMaxBlocks;
+  }
+
+  public long getUploadSessionMaxAge() {
+    return uploadSessionMaxAge;
+  }
+
+  public int getUploadBlockRetryTime() {
+    return uploadBlockRetryTime;
+  }
+
+  public long getUploadBlockRetryInterval() {
+    return uploadBlockRetryInterval;
+  }
+
+  public int getUpsertStreamCount() {
+    return upsertStreamCount;
+  }
+
+  public long getUpsertStreamBufferSize() {
+    return upsertStreamBufferSize;
+  }
+
+  public CompressOption getTunnelUploadCompressOption() {
+    return tunnelUploadCompressOption;
+  }
+
+  public CompressOption getTunnelDownloadCompressOption() {
+    return tunnelDownloadCompressOption;
+  }
+
+  public boolean isUploadArrow() {
+    return uploadArrow;
+  }
+
+  public boolean isBatchConcurrentInserts() {
+    return batchConcurrentInserts;
+  }
+
+  /**
+   * @return metrics of the tunnel uploads of all the statements of this connection, including
+   * {@link #copyIn} and {@link #copyTable}
+   */
+  public UploadMetrics getUploadMetrics() {
+    return uploadMetrics;
+  }
+
+  /**
+   * @return metrics of the status checks of the offline instances run by the statements of this
+   * connection, including the latency they add to the queries
+   */
+  public PollingMetrics getPollingMetrics() {
+    return pollingMetrics;
+  }
+
+  UploaderCache getUploaderCache() {
+    return uploaderCache;
+  }
+
+  SqlTemplate getSqlTemplate(String sql) {
+    synchronized (sqlTemplates) {
+      return sqlTemplates.computeIfAbsent(sql, SqlTemplate::compile);
+    }
+  }
+
+  /**
+   * Bulk load delimited text, e.g. a CSV file, into a table without binding each value through a
+   * prepared statement. The input is parsed by {@link CopyOptions#getParserThreads()} threads and
+   * uploaded in blocks of {@link CopyOptions#getBatchRows()} rows. The upload session is committed
+   * once the whole input is loaded. A long load may rotate its session on the way, see
+   * {@code uploadSessionMaxBlocks} and {@code uploadSessionMaxAge}, and the rows of the rotated
+   * sessions stay in the table when the load fails later.
+   * <p>
+   * Usage: {@code connection.unwrap(OdpsConnection.class).copyIn("t", "ds='20240101'", in, opts)}
+   *
+   * @param table     table name, optionally qualified with its project (and schema)
+   * @param partition partition spec like {@code p1='a',p2='b'}, or null for non-partitioned tables
+   * @return number of rows loaded
+   */
+  public long copyIn(String table, String partition, InputStream in, CopyOptions options)
+      throws SQLException {
+    return copyIn(table, partition, new InputStreamReader(in, options.getCharset()), options);
+  }
+
+  /**
+   * Same as {@link #copyIn(String, String, InputStream, CopyOptions)}, for text already decoded.
+   */
+  public long copyIn(String table, String partition, Reader reader, CopyOptions options)
+      throws SQLException {
+    checkClosed();
+    ensureInitialized();
+    String[] name = splitTableName(table);
+    DataUploader uploader;
+    try {
+      uploader = DataUploader.build(name[0], name[1], name[2], partition, options.getColumns(),
+                                    this);
+    } catch (OdpsException | IOException e) {
+      throw new SQLException(e.getMessage(), e);
+    }
+    try {
+      long rows = new CopyInLoader(this, uploader, options).load(reader);
+      uploader.commit();
+      return rows;
+    } catch (OdpsException | IOException e) {
+      throw new SQLException(e.getMessage(), e);
+    } finally {
+      uploader.close();
+    }
+  }
+
+  /**
+   * Copy the rows of a table of this connection into a table of another connection, e.g. between
+   * two projects, without going through a result set and prepared statement inserts. The source is
+   * downloaded in parallel splits and written in parallel upload sessions, see
+   * {@link TableCopyOptions}. The sessions are committed once all the rows are written. A session
+   * rotated on the way, see {@code uploadSessionMaxBlocks} and {@code uploadSessionMaxAge}, is
+   * committed at once, and its rows stay in the target table when the copy fails later.
+   * <p>
+   * Usage: {@code source.unwrap(OdpsConnection.class).copyTable("t", target, "t_copy", opts)}
+   *
+   * @param sourceTable table of this connection, optionally qualified with its project (and schema)
+   * @param target      connection of the target table, may be this connection
+   * @param targetTable table of the target connection, it must already exist
+   * @return final progress of the copy
+   */
+  public TableCopyProgress copyTable(String sourceTable, OdpsConnection target, String targetTable,
+                                     TableCopyOptions options) throws SQLException {
+    checkClosed();
+    ensureInitialized();
+    target.checkClosed();
+    target.ensureInitialized();
+    return new TableCopier(this, target, options).copy(sourceTable, targetTable);
+  }
+
+  /**
+   * @return project, schema and table of a table name in SQL, the schema is null when the
+   * connection does not use the schema namespace
+   */
+  String[] splitTableName(String name) throws SQLException {
+    String defaultProject = odps.getDefaultProject();
+    String[] splited = name.split("\\.");
+    if (odpsNamespaceSchema) {
+      if (splited.length == 3) {
+        return splited;
+      } else if (splited.length == 2) {
+        return new String[]{defaultProject, splited[0], splited[1]};
+      } else if (splited.length == 1) {
+        return new String[]{defaultProject, "default", name};
+      }
+    } else if (splited.length == 2) {
+      return new String[]{splited[0], null, splited[1]};
+    } else if (splited.length == 1) {
+      return new String[]{defaultProject, null, name};
+    }
+    throw new SQLException("Invalid table name: " + name);
+  }
+
+  /**
+   * Commit the upload sessions shared by the prepared statements of this connection, so that the
+   * batches executed so far become visible. Only needed when {@code uploadSessionCache} is enabled,
+   * otherwise each statement commits its own session when it is closed.
+   */
+  public void commitUploadSessions() throws SQLException {
+    checkClosed();
+    uploaderCache.commitAll();
+  }
+
+  /**
+   * An executor built for tunnel settings, with the statements running on it.
+   */
+  static class SettingsExecutor {
+
+    final SQLExecutor executor;
+    // guarded by settingsExecutors
+    int users = 0;
+    boolean evicted = false;
+
+    SettingsExecutor(SQLExecutor executor) {
+      this.executor = executor;
+    }
+  }
+
   /**
    * get/set catalog/schema depends on odpsNamespaceSchema flag
    */
@@ -1070,6 +1732,8 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
 
     private Odps odps;
     private boolean twoTier = true;
+    // the odps of a cached executor, which is not the one of this connection
+    private Odps follower;
 
     CatalogSchema(Odps odps, boolean odpsNamespaceSchema) {
       this.odps = odps;
@@ -1082,6 +1746,7 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
 
     void setCatalog(String catalog) {
       odps.setDefaultProject(catalog);
+      sync();
     }
 
     String getSchema() {
@@ -1095,6 +1760,21 @@ public class OdpsConnection extends WrapperAdapter implements Connection {
     void setSchema(String schema) {
       if (!twoTier) {
         this.odps.setCurrentSchema(schema);
+        sync();
+      }
+    }
+
+    /**
+     * Apply the default project and schema of the connection to {@code follower} from now on.
+     */
+    void follow(Odps follower) {
+      this.follower = follower;
+    }
+
+    void sync() {
+      if (follower != null) {
+        follower.setDefaultProject(odps.getDefaultProject());
+        follower.setCurrentSchema(odps.getCurrentSchema());
       }
     }
   }
@@ -0,0 +1,190 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.DataSource;
+import javax.sql.PooledConnection;
+
+import com.aliyun.odps.jdbc.utils.ConnectionResource;
+
+/**
+ * A {@link DataSource} and {@link ConnectionPoolDataSource} of the connections to a MaxCompute
+ * project, configured with the same url and properties as {@link OdpsDriver}.
+ * <p>
+ * The url and the properties are parsed once, when the first connection is created, instead of for
+ * every connection. Combine with {@code executorCache} so that the connections of a pool share
+ * attached interactive sessions, and with the project metadata cache, which is on by default, so
+ * that creating a physical connection makes few or no requests.
+ * <p>
+ * The connections handed out by a {@link PooledConnection} are reset when they are closed: their
+ * statements are closed, and the SQL settings, default project, schema and read-only flag they
+ * changed are restored.
+ */
+public class OdpsDataSource extends WrapperAdapter implements DataSource, ConnectionPoolDataSource {
+
+  private String url;
+  private final Properties properties = new Properties();
+  private int loginTimeout;
+  private PrintWriter logWriter;
+
+  // parsed once, until the url or the properties change
+  private ConnectionResource connRes;
+
+  public OdpsDataSource() {
+  }
+
+  public OdpsDataSource(String url, Properties properties) {
+    this.url = url;
+    if (properties != null) {
+      this.properties.putAll(properties);
+    }
+  }
+
+  public synchronized String getUrl() {
+    return url;
+  }
+
+  public synchronized void setUrl(String url) {
+    this.url = url;
+    connRes = null;
+  }
+
+  /**
+   * @return a copy of the properties of the connections
+   */
+  public synchronized Properties getProperties() {
+    return (Properties) properties.clone();
+  }
+
+  public synchronized void setProperties(Properties properties) {
+    this.properties.clear();
+    if (properties != null) {
+      this.properties.putAll(properties);
+    }
+    connRes = null;
+  }
+
+  public synchronized void setProperty(String key, String value) {
+    properties.setProperty(key, value);
+    connRes = null;
+  }
+
+  /**
+   * Same as the {@code access_id} property.
+   */
+  public void setUser(String user) {
+    setProperty(ConnectionResource.ACCESS_ID_PROP_KEY, user);
+  }
+
+  /**
+   * Same as the {@code access_key} property.
+   */
+  public void setPassword(String password) {
+    setProperty(ConnectionResource.ACCESS_KEY_PROP_KEY, password);
+  }
+
+  @Override
+  public OdpsConnection getConnection() throws SQLException {
+    ConnectionResource parsed;
+    Properties info;
+    synchronized (this) {
+      if (url == null) {
+        throw new SQLException("url of the data source is not set");
+      }
+      if (connRes == null) {
+        connRes = new ConnectionResource(url, properties);
+      }
+      parsed = connRes;
+      // each connection has its own client info
+      info = (Properties) properties.clone();
+    }
+    return new OdpsConnection(parsed, info);
+  }
+
+  /**
+   * Create a connection with other credentials, the url and the properties are parsed again.
+   */
+  @Override
+  public OdpsConnection getConnection(String username, String password) throws SQLException {
+    String url;
+    Properties info;
+    synchronized (this) {
+      if (this.url == null) {
+        throw new SQLException("url of the data source is not set");
+      }
+      url = this.url;
+      info = (Properties) properties.clone();
+    }
+    info.setProperty(ConnectionResource.ACCESS_ID_PROP_KEY, username);
+    info.setProperty(ConnectionResource.ACCESS_KEY_PROP_KEY, password);
+    return new OdpsConnection(url, info);
+  }
+
+  @Override
+  public PooledConnection getPooledConnection() throws SQLException {
+    return new OdpsPooledConnection(getConnection());
+  }
+
+  @Override
+  public PooledConnection getPooledConnection(String user, String password) throws SQLException {
+    return new OdpsPooledConnection(getConnection(user, password));
+  }
+
+  @Override
+  public synchronized PrintWriter getLogWriter() {
+    return logWriter;
+  }
+
+  /**
+   * Kept for the pools reading it back, the driver logs through its own loggers.
+   */
+  @Override
+  public synchronized void setLogWriter(PrintWriter out) {
+    this.logWriter = out;
+  }
+
+  /**
+   * Kept for the pools reading it back, use the {@code connectTimeout} property to bound the time
+   * to connect.
+   */
+  @Override
+  public synchronized void setLoginTimeout(int seconds) {
+    this.loginTimeout = seconds;
+  }
+
+  @Override
+  public synchronized int getLoginTimeout() {
+    return loginTimeout;
+  }
+
+  @Override
+  public Logger getParentLogger() {
+    return Logger.getLogger("com.aliyun.odps.jdbc");
+  }
+}
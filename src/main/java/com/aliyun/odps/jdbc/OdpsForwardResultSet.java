@@ -28,6 +28,7 @@ import java.util.Map;
 import com.aliyun.odps.data.Record;
 import com.aliyun.odps.tunnel.InstanceTunnel.DownloadSession;
 import com.aliyun.odps.tunnel.TunnelException;
+import com.aliyun.odps.tunnel.io.CompressOption;
 import com.aliyun.odps.tunnel.io.TunnelRecordReader;
 
 public class OdpsForwardResultSet extends OdpsResultSet implements ResultSet {
@@ -175,7 +176,12 @@ public class OdpsForwardResultSet extends OdpsResultSet implements ResultSet {
   private void rebuildReader() throws SQLException {
     try {
       long count = totalRows - fetchedRows;
-      reader = sessionHandle.openRecordReader(fetchedRows, count, true);
+      CompressOption compressOption = conn.getTunnelDownloadCompressOption();
+      if (compressOption == null) {
+        reader = sessionHandle.openRecordReader(fetchedRows, count, true);
+      } else {
+        reader = sessionHandle.openRecordReader(fetchedRows, count, compressOption);
+      }
       conn.log.warn(String.format("open read record, start=%d, cnt=%d", fetchedRows, count));
     } catch (IOException e) {
       throw new SQLException(e.getMessage(), e);
@@ -0,0 +1,240 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEventListener;
+
+/**
+ * A physical {@link OdpsConnection} held by a connection pool, see {@link OdpsDataSource}.
+ * <p>
+ * The pool lends it out through handles, closing a handle resets the connection and tells the
+ * listeners of the pool that it can be lent again. Statements are not pooled, so statement events
+ * are never sent.
+ * <p>
+ * The statements, metadata and result sets created through a handle are wrapped as well, so that
+ * their {@code getConnection()} returns the handle and not the physical connection.
+ */
+class OdpsPooledConnection implements PooledConnection {
+
+  // return types of the objects wrapped to lead back to the handle
+  private static final Set<Class<?>> WRAPPED = new HashSet<>(Arrays.asList(
+      Statement.class, PreparedStatement.class, CallableStatement.class, DatabaseMetaData.class,
+      ResultSet.class));
+
+  private final OdpsConnection physical;
+  private final List<ConnectionEventListener> listeners = new CopyOnWriteArrayList<>();
+
+  // the handle lent out, guarded by this
+  private Handle handle;
+
+  OdpsPooledConnection(OdpsConnection physical) {
+    this.physical = physical;
+  }
+
+  /**
+   * @return a new handle to the connection, the previous handle is closed without sending an event,
+   * as required by {@link PooledConnection#getConnection()}
+   */
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (physical.isClosed()) {
+      throw new SQLException("the pooled connection is closed");
+    }
+    Handle newHandle = new Handle();
+    Handle previous;
+    synchronized (this) {
+      previous = handle;
+      handle = newHandle;
+    }
+    if (previous != null) {
+      previous.closed = true;
+      physical.resetState();
+    }
+    return (Connection) Proxy.newProxyInstance(OdpsPooledConnection.class.getClassLoader(),
+                                               new Class<?>[]{Connection.class}, newHandle);
+  }
+
+  @Override
+  public void close() throws SQLException {
+    synchronized (this) {
+      if (handle != null) {
+        handle.closed = true;
+        handle = null;
+      }
+    }
+    physical.close();
+  }
+
+  @Override
+  public void addConnectionEventListener(ConnectionEventListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void removeConnectionEventListener(ConnectionEventListener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public void addStatementEventListener(StatementEventListener listener) {
+  }
+
+  @Override
+  public void removeStatementEventListener(StatementEventListener listener) {
+  }
+
+  private void closeHandle(Handle closing) {
+    synchronized (this) {
+      if (closing.closed) {
+        return;
+      }
+      closing.closed = true;
+      if (handle == closing) {
+        handle = null;
+      }
+    }
+    try {
+      physical.resetState();
+    } catch (SQLException e) {
+      ConnectionEvent event = new ConnectionEvent(this, e);
+      for (ConnectionEventListener listener : listeners) {
+        listener.connectionErrorOccurred(event);
+      }
+      return;
+    }
+    ConnectionEvent event = new ConnectionEvent(this);
+    for (ConnectionEventListener listener : listeners) {
+      listener.connectionClosed(event);
+    }
+  }
+
+  /**
+   * Forwards the calls to the physical connection until it is closed.
+   */
+  private class Handle implements InvocationHandler {
+
+    volatile boolean closed;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "handle of " + physical;
+        case "close":
+          closeHandle(this);
+          return null;
+        case "isClosed":
+          return closed || physical.isClosed();
+        case "isValid":
+          if (closed) {
+            return false;
+          }
+          break;
+        default:
+          if (closed) {
+            throw new SQLException("the connection is closed");
+          }
+      }
+      return wrap(invokeOn(physical, method, args), method.getReturnType(), (Connection) proxy,
+                  proxy);
+    }
+  }
+
+  /**
+   * Forwards the calls to a statement, metadata or result set of the physical connection, and
+   * returns the handle it was created through in place of the physical connection.
+   */
+  private static class Child implements InvocationHandler {
+
+    final Object target;
+    final Connection connection;
+    // what created the object, returned by ResultSet.getStatement() when it is a statement
+    final Object parent;
+
+    Child(Object target, Connection connection, Object parent) {
+      this.target = target;
+      this.connection = connection;
+      this.parent = parent;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "getConnection":
+          if (method.getParameterCount() == 0) {
+            return connection;
+          }
+          break;
+        case "getStatement":
+          if (parent instanceof Statement && method.getParameterCount() == 0) {
+            return parent;
+          }
+          break;
+        default:
+      }
+      return wrap(invokeOn(target, method, args), method.getReturnType(), connection, proxy);
+    }
+  }
+
+  private static Object wrap(Object result, Class<?> type, Connection connection, Object parent) {
+    if (result == null || !WRAPPED.contains(type)) {
+      return result;
+    }
+    return Proxy.newProxyInstance(OdpsPooledConnection.class.getClassLoader(),
+                                  new Class<?>[]{type}, new Child(result, connection, parent));
+  }
+
+  private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -21,9 +21,9 @@
 package com.aliyun.odps.jdbc;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.sql.Array;
+import java.sql.BatchUpdateException;
 import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -33,31 +33,32 @@ import java.sql.Struct;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
-import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
-import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.Schema;
+
 import com.aliyun.odps.OdpsException;
 import com.aliyun.odps.data.Binary;
 import com.aliyun.odps.data.Char;
 import com.aliyun.odps.data.SimpleStruct;
 import com.aliyun.odps.data.Varchar;
+import com.aliyun.odps.jdbc.DynamicPartitionUploader.PartitionValue;
 import com.aliyun.odps.jdbc.data.OdpsStruct;
-import com.aliyun.odps.jdbc.utils.JdbcColumn;
-import com.aliyun.odps.sqa.commandapi.utils.SqlParserUtil;
 import com.aliyun.odps.tunnel.TunnelException;
 
 public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
@@ -77,8 +78,27 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
       + "\\s+" + "partition" + SPEC_PARTITION + "\\s+" + "values" + "\\s*" + PREP_VALUES + "\\s*"
       + ";?\\s*$";
 
+  private final String
+      SPEC_DYNAMIC_PARTITION =
+      "\\((\\s*\\w+\\s*(=\\s*(\\w+|'\\w+'|\\?)\\s*)?(,\\s*\\w+\\s*(=\\s*(\\w+|'\\w+'|\\?)\\s*)?)*)\\)";
+  // (p1=?) or (p1='a',p2=?,...) or (p1, p2) ...
+
+  private final String PREP_INSERT_WITH_DYNAMIC_PARTITION =
+      "(?i)^" + "\\s*" + "insert" + "\\s+" + "into" + "\\s+" + TABLE_NAME + "\\s*" + SPEC_COLUMN
+      + "\\s+" + "partition" + "\\s*" + SPEC_DYNAMIC_PARTITION + "\\s*" + "values" + "\\s*"
+      + PREP_VALUES + "\\s*" + ";?\\s*$";
+
   private final String EXAMPLE =
-      "INSERT INTO table [(c1, c2)] [partition(p1=a,p2=b,...)] VALUES (?, ?);";
+      "INSERT INTO table [(c1, c2)] [partition(p1=a,p2=?,p3,...)] VALUES (?, ?);";
+
+  private final String PREP_DELETE_BY_KEY =
+      "(?i)^" + "\\s*" + "delete" + "\\s+" + "from" + "\\s+" + TABLE_NAME
+      + "(\\s+" + "partition" + "\\s*" + SPEC_PARTITION + ")?" + "\\s+" + "where" + "\\s+"
+      + "(\\w+\\s*=\\s*\\?(\\s+and\\s+\\w+\\s*=\\s*\\?)*)" + "\\s*" + ";?\\s*$";
+  // the partition spec is group 4, the conditions on the primary key are group 8
+
+  private final String DELETE_EXAMPLE =
+      "DELETE FROM table [partition(p1=a,...)] WHERE pk1 = ? [AND pk2 = ?];";
 
   private final String PREP_INSERT_WITHOUT_SPEC_PARTITION =
       "(?i)^" + "\\s*" + "insert" + "\\s+" + "into" + "\\s+" + TABLE_NAME + "\\s*" + SPEC_COLUMN
@@ -91,69 +111,50 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
   private static final Pattern SQL_PATTERN = Pattern.compile(SQL_REGEX, Pattern.CASE_INSENSITIVE);
 
 
-  static ThreadLocal<SimpleDateFormat>
-      DATETIME_FORMAT =
-      ThreadLocal.withInitial(() -> new SimpleDateFormat(JdbcColumn.ODPS_DATETIME_FORMAT));
-  static ThreadLocal<SimpleDateFormat>
-      DATE_FORMAT =
-      ThreadLocal.withInitial(() -> new SimpleDateFormat(JdbcColumn.ODPS_DATE_FORMAT));
-
-  static ThreadLocal<DateTimeFormatter>
-      LOCAL_DATE_FORMAT =
-      ThreadLocal.withInitial(() -> DateTimeFormatter.ofPattern(JdbcColumn.ODPS_DATE_FORMAT)
-          .withZone(ZoneId.systemDefault()));
-
-  static ThreadLocal<DateTimeFormatter>
-      ZONED_DATETIME_FORMAT =
-      ThreadLocal.withInitial(() -> DateTimeFormatter.ofPattern(JdbcColumn.ODPS_DATETIME_FORMAT)
-          .withZone(ZoneId.systemDefault()));
-
-  static ThreadLocal<DateTimeFormatter>
-      ZONED_TIMESTAMP_FORMAT =
-      ThreadLocal.withInitial(() -> DateTimeFormatter.ofPattern(JdbcColumn.ODPS_TIMESTAMP_FORMAT)
-          .withZone(ZoneId.systemDefault()));
-
-
   /**
    * The prepared sql template (immutable). e.g. insert into table FOO select * from BAR where id =
    * ? and weight = ?
    */
   private final String sql;
+  // the sql compiled, shared by the prepared statements of the same sql
+  private final SqlTemplate sqlTemplate;
 
   private boolean parsed = false;
-  private String tableBatchInsertTo;
-
-  private String projectName;
-  private String schemaName;
-  private String tableName;
-  private String partitionSpec;
-  private List<String> specificColumns;
+  private InsertTemplate template;
 
   private int parametersNum;
 
+  /**
+   * Owned by this statement and committed on close. Null when the upload sessions are shared by
+   * the connection, see {@link UploaderCache}.
+   */
   private DataUploader uploader;
 
   /**
-   * The parameters for the prepared sql (index=>parameter). The parameter is stored as Java objects
-   * and lazily casted into String when submitting sql. The executeBatch() call will utilize it to
-   * upload data to ODPS via tunnel.
+   * The parameters for the prepared sql, stored column by column. The row being bound is lazily
+   * casted into String when submitting sql, and the rows added by addBatch() are uploaded to ODPS
+   * via tunnel in executeBatch().
    */
-  private HashMap<Integer, Object> parameters = new HashMap<>();
+  private ParameterBatchBuffer batch;
 
-  // When addBatch(), compress the parameters into a row
-  private List<Object[]> batchedRows = new ArrayList<>();
+  /**
+   * Rows moved out of {@link #batch} once it grows over the batch spill threshold of the
+   * connection. Created on the first spill and deleted when the batch is executed or cleared.
+   */
+  private BatchSpillFile spillFile;
+  private boolean spillDisabled = false;
+  // the segments of the spill file uploaded by an executeBatch() which failed afterwards, skipped
+  // when it is retried
+  private int uploadedSegments = 0;
+  private int uploadedRows = 0;
 
   OdpsPreparedStatement(OdpsConnection conn, String sql) {
     super(conn);
     this.sql = sql;
-
-    int counter = 0;
-    for (int i = 0; i < sql.length(); i++) {
-      if (sql.charAt(i) == '?') {
-        counter++;
-      }
-    }
-    this.parametersNum = counter;
+    // placeholders in strings and comments are not parameters
+    this.sqlTemplate = conn.getSqlTemplate(sql);
+    this.parametersNum = sqlTemplate.getParameterCount();
+    this.batch = new ParameterBatchBuffer(parametersNum);
 
     conn.log.info("create prepared statements: " + sql);
   }
@@ -165,26 +166,28 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
 
   @Override
   public void addBatch() throws SQLException {
-    Object[] arr = new Object[parametersNum];
-    for (int i = 0; i < arr.length; i++) {
-      arr[i] = parameters.get(i + 1);
+    batch.addRow();
+
+    long spillThreshold = connHandle.getBatchSpillThreshold();
+    if (spillThreshold > 0 && !spillDisabled && batch.estimatedBytes() > spillThreshold) {
+      spill();
     }
-    batchedRows.add(arr);
-    parameters.clear();
   }
 
   @Override
   public void clearParameters() throws SQLException {
-    parameters.clear();
+    batch.clearCurrent();
   }
 
   @Override
   public void clearBatch() throws SQLException {
-    batchedRows.clear();
+    batch.clear();
+    closeSpillFile();
   }
 
   /**
-   * Only support DML like `INSERT INTO table_name values (e, f, g)` in batch execution
+   * Only support DML like `INSERT INTO table_name values (e, f, g)` in batch execution, and
+   * `DELETE FROM table_name WHERE pk = ?` on transactional tables with a primary key
    * <p>
    * Since ODPS SQL does not provide this functionality, we 1) hijack such kind of batched SQLs , 2)
    * assemble the records by ourselves, and 3) call tunnel API to upload them.
@@ -202,22 +205,182 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
       parse();
     }
 
-    int[] updateCounts = uploader.upload(batchedRows);
+    int[] updateCounts;
+    UploaderCache.Lease lease =
+        this.uploader == null ? connHandle.getUploaderCache().acquire(template) : null;
+    DataUploader uploader = lease == null ? this.uploader : lease.getUploader();
+    try {
+      if (spillFile == null) {
+        updateCounts = uploader.upload(batch);
+      } else {
+        updateCounts = uploadSpilledBatch(uploader);
+      }
+    } finally {
+      if (lease != null) {
+        connHandle.getUploaderCache().release(lease);
+      }
+    }
     clearBatch();
     return updateCounts;
   }
 
+  /**
+   * Upload a record batch already in columnar form as one block of the batched INSERT, for callers
+   * holding Arrow data. The vectors are matched to the columns of the table by name, columns
+   * without a vector are written as null. The record batch is not closed.
+   * <p>
+   * Usage: {@code ps.unwrap(OdpsPreparedStatement.class).executeArrowBatch(root)}
+   *
+   * @return update counts, one per row of the record batch
+   * @throws SQLException when the statement is not a batched INSERT into a non-transactional table
+   *                      with a static partition, or the vectors do not match the table
+   * @see #getArrowSchema()
+   */
+  public int[] executeArrowBatch(VectorSchemaRoot root) throws SQLException {
+    if (!parsed) {
+      parse();
+    }
+
+    UploaderCache.Lease lease =
+        this.uploader == null ? connHandle.getUploaderCache().acquire(template) : null;
+    DataUploader uploader = lease == null ? this.uploader : lease.getUploader();
+    try {
+      return uploader.uploadArrow(root);
+    } finally {
+      if (lease != null) {
+        connHandle.getUploaderCache().release(lease);
+      }
+    }
+  }
+
+  /**
+   * @return the Arrow schema of the record batches accepted by {@link #executeArrowBatch}
+   */
+  public Schema getArrowSchema() throws SQLException {
+    if (!parsed) {
+      parse();
+    }
+
+    UploaderCache.Lease lease =
+        this.uploader == null ? connHandle.getUploaderCache().acquire(template) : null;
+    DataUploader uploader = lease == null ? this.uploader : lease.getUploader();
+    try {
+      return uploader.getArrowSchema();
+    } finally {
+      if (lease != null) {
+        connHandle.getUploaderCache().release(lease);
+      }
+    }
+  }
+
+  /**
+   * Upload the spilled segments one at a time, then the rows still in memory. When a previous call
+   * failed, the segments it uploaded are skipped and reported as written.
+   */
+  private int[] uploadSpilledBatch(DataUploader uploader) throws SQLException {
+    int[] updateCounts = new int[Math.toIntExact(spillFile.getRowCount() + batch.getRowCount())];
+    Arrays.fill(updateCounts, 0, uploadedRows, 1);
+    int offset = uploadedRows;
+    try (BatchSpillFile.Reader reader = spillFile.openReader(uploadedSegments)) {
+      ParameterBatchBuffer segment;
+      while ((segment = reader.next()) != null) {
+        offset = uploadSegment(uploader, segment, updateCounts, offset);
+        uploadedSegments++;
+        uploadedRows = offset;
+      }
+    } catch (IOException e) {
+      throw new SQLException(e.getMessage(), e);
+    }
+    uploadSegment(uploader, batch, updateCounts, offset);
+    return updateCounts;
+  }
+
+  /**
+   * Upload one part of the batch and put its update counts at {@code offset}. On failure, the
+   * update counts of the rows processed so far are reported.
+   */
+  private int uploadSegment(DataUploader uploader, ParameterBatchBuffer segment,
+                            int[] updateCounts, int offset) throws SQLException {
+    try {
+      int[] counts = uploader.upload(segment);
+      System.arraycopy(counts, 0, updateCounts, offset, counts.length);
+      return offset + counts.length;
+    } catch (BatchUpdateException e) {
+      int[] counts = e.getUpdateCounts();
+      System.arraycopy(counts, 0, updateCounts, offset, counts.length);
+      throw new BatchUpdateException(e.getMessage(), null, 0,
+                                     Arrays.copyOf(updateCounts, offset + counts.length), e);
+    }
+  }
+
+  private void spill() {
+    try {
+      if (spillFile == null) {
+        spillFile = new BatchSpillFile(parametersNum, connHandle.getBatchSpillDir());
+        connHandle.log.info("spill batched rows of prepared statement to " + spillFile.getPath());
+      }
+      spillFile.spill(batch);
+      batch.clear();
+    } catch (IOException e) {
+      // keep the rows in memory, executeBatch() still uploads the segments already spilled
+      spillDisabled = true;
+      connHandle.log.warn("failed to spill batched rows, keep them in memory: " + e.getMessage());
+    }
+  }
+
+  private void closeSpillFile() throws SQLException {
+    spillDisabled = false;
+    uploadedSegments = 0;
+    uploadedRows = 0;
+    if (spillFile == null) {
+      return;
+    }
+    try {
+      spillFile.close();
+    } catch (IOException e) {
+      throw new SQLException(e.getMessage(), e);
+    } finally {
+      spillFile = null;
+    }
+  }
+
   private void parse() throws SQLException {
+    UploaderCache cache = connHandle.getUploaderCache();
+    String defaultProject = getConnection().getOdps().getDefaultProject();
+    template = cache.getTemplate(defaultProject, sql);
+    if (template == null) {
+      template = parseTemplate();
+      cache.putTemplate(defaultProject, sql, template);
+    }
+    if (!cache.isSessionCacheEnabled()) {
+      uploader = cache.newUploader(template);
+    }
+
+    parsed = true;
+  }
+
+  private InsertTemplate parseTemplate() throws SQLException {
+
+    if (sql.matches(PREP_DELETE_BY_KEY)) {
+      return parseDeleteTemplate();
+    }
 
     boolean withSpecPartition = sql.matches(PREP_INSERT_WITH_SPEC_PARTITION);
     boolean withoutSpecPartition = sql.matches(PREP_INSERT_WITHOUT_SPEC_PARTITION);
+    boolean withDynamicPartition =
+        !withSpecPartition && sql.matches(PREP_INSERT_WITH_DYNAMIC_PARTITION);
 
-    if (!withoutSpecPartition && !withSpecPartition) {
-      throw new SQLException("batched statement only support following syntax: " + EXAMPLE);
+    if (!withoutSpecPartition && !withSpecPartition && !withDynamicPartition) {
+      throw new SQLException("batched statement only support following syntax: " + EXAMPLE
+                             + " or " + DELETE_EXAMPLE);
     }
 
     Matcher matcher = null;
     boolean hasPartition = false;
+    String[] table;
+    String partitionSpec = null;
+    List<PartitionValue> partitionValues = null;
+    int[] dataParameterIndexes = null;
 
     if (withoutSpecPartition) {
       matcher = Pattern.compile(PREP_INSERT_WITHOUT_SPEC_PARTITION).matcher(sql);
@@ -229,41 +392,20 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
       hasPartition = true;
     }
 
+    if (withDynamicPartition) {
+      matcher = Pattern.compile(PREP_INSERT_WITH_DYNAMIC_PARTITION).matcher(sql);
+      hasPartition = true;
+    }
+
 
     if (matcher.find()) {
-      tableBatchInsertTo = matcher.group(1);
-      if (hasPartition) {
+      if (withDynamicPartition) {
+        partitionValues = parseDynamicPartition(matcher.group(4));
+        dataParameterIndexes = dataParameterIndexes(partitionValues);
+      } else if (hasPartition) {
         partitionSpec = matcher.group(4);
       }
-      if (connHandle.isOdpsNamespaceSchema()) {
-        if (tableBatchInsertTo.contains(".")) {
-          String[] splited = tableBatchInsertTo.split("\\.");
-          if (splited.length == 3) {
-            projectName = splited[0];
-            schemaName = splited[1];
-            tableName = splited[2];
-          } else if (splited.length == 2) {
-            projectName = getConnection().getOdps().getDefaultProject();
-            schemaName = splited[0];
-            tableName = splited[1];
-          } else {
-            throw new SQLException("Invalid table name: " + tableBatchInsertTo);
-          }
-        } else {
-          projectName = getConnection().getOdps().getDefaultProject();
-          schemaName = "default";
-          tableName = tableBatchInsertTo;
-        }
-      } else {
-        if (tableBatchInsertTo.contains(".")) {
-          String[] splited = tableBatchInsertTo.split("\\.");
-          projectName = splited[0];
-          tableName = splited[1];
-        } else {
-          projectName = getConnection().getOdps().getDefaultProject();
-          tableName = tableBatchInsertTo;
-        }
-      }
+      table = connHandle.splitTableName(matcher.group(1));
     } else {
       throw new SQLException("cannot extract table name or partition name in SQL: " + sql);
     }
@@ -271,23 +413,94 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
         Optional.ofNullable(matcher.group(3)).map(s -> s.substring(1, s.length() - 1))
             .map(s -> s.split(","))
             .map(s -> Arrays.stream(s).map(String::trim).collect(Collectors.toList())).orElse(null);
+    int dataColumnCount =
+        dataParameterIndexes == null ? batch.getColumnCount() : dataParameterIndexes.length;
     if (specificColumns != null) {
-      if (specificColumns.size() != batchedRows.get(0).length) {
+      if (specificColumns.size() != dataColumnCount) {
         throw new SQLException(
-            "sql has specific " + specificColumns + " columns, but only prepare " + batchedRows.get(
-                0).length + " values");
+            "sql has specific " + specificColumns + " columns, but only prepare "
+            + dataColumnCount + " values");
       }
-      this.specificColumns = specificColumns;
     }
 
-    try {
-      uploader = DataUploader.build(projectName, schemaName, tableName, partitionSpec,
-                                    specificColumns, getConnection());
-    } catch (OdpsException | IOException e) {
-      throw new SQLException(e.getMessage());
+    return new InsertTemplate(table[0], table[1], table[2], partitionSpec, specificColumns,
+                              partitionValues, dataParameterIndexes, false);
+  }
+
+  /**
+   * A batched DELETE binds the primary key of each row to delete, they are written to the delete
+   * stream of an upsert session.
+   */
+  private InsertTemplate parseDeleteTemplate() throws SQLException {
+    Matcher matcher = Pattern.compile(PREP_DELETE_BY_KEY).matcher(sql);
+    if (!matcher.find()) {
+      throw new SQLException("cannot extract table name or primary key in SQL: " + sql);
+    }
+    String[] table = connHandle.splitTableName(matcher.group(1));
+    List<String> keyColumns = new ArrayList<>();
+    for (String condition : matcher.group(8).split("(?i)\\s+and\\s+")) {
+      keyColumns.add(condition.split("=")[0].trim());
     }
+    return new InsertTemplate(table[0], table[1], table[2], matcher.group(4), keyColumns, null,
+                              null, true);
+  }
 
-    parsed = true;
+  /**
+   * Resolve where the value of each partition column comes from. The placeholders in the partition
+   * clause come first in the parameter list, the partition columns without a value take the
+   * trailing parameters of the VALUES clause, and the rest are the data columns.
+   */
+  private List<PartitionValue> parseDynamicPartition(String spec) throws SQLException {
+    List<PartitionValue> values = new ArrayList<>();
+    List<String> trailingColumns = new ArrayList<>();
+    int partitionParameters = 0;
+    for (String item : spec.split(",")) {
+      String[] kv = item.split("=");
+      String column = kv[0].trim();
+      if (kv.length == 1) {
+        trailingColumns.add(column);
+        continue;
+      }
+      String value = kv[1].trim();
+      if ("?".equals(value)) {
+        values.add(new PartitionValue(column, null, partitionParameters++));
+      } else {
+        if (value.startsWith("'")) {
+          value = value.substring(1, value.length() - 1);
+        }
+        values.add(new PartitionValue(column, value, -1));
+      }
+    }
+
+    int dataColumnCount = parametersNum - partitionParameters - trailingColumns.size();
+    if (dataColumnCount <= 0) {
+      throw new SQLException("no data column left after binding the partition columns: " + sql);
+    }
+    int firstTrailing = partitionParameters + dataColumnCount;
+    for (int i = 0; i < trailingColumns.size(); i++) {
+      values.add(new PartitionValue(trailingColumns.get(i), null, firstTrailing + i));
+    }
+    return values;
+  }
+
+  /**
+   * The parameters not bound to a partition column, in order.
+   */
+  private int[] dataParameterIndexes(List<PartitionValue> partitionValues) {
+    boolean[] partitionParameter = new boolean[parametersNum];
+    for (PartitionValue value : partitionValues) {
+      if (value.parameterIndex >= 0) {
+        partitionParameter[value.parameterIndex] = true;
+      }
+    }
+    int[] indexes = new int[parametersNum];
+    int count = 0;
+    for (int i = 0; i < parametersNum; i++) {
+      if (!partitionParameter[i]) {
+        indexes[count++] = i;
+      }
+    }
+    return Arrays.copyOf(indexes, count);
   }
 
   // Commit on close
@@ -297,6 +510,12 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
       return;
     }
 
+    try {
+      closeSpillFile();
+    } catch (SQLException e) {
+      connHandle.log.warn(e.getMessage());
+    }
+
     if (uploader != null) {
       try {
         uploader.commit();
@@ -307,6 +526,40 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
     super.close();
   }
 
+  /**
+   * @return number of upload sessions committed for the batches of this statement, including the
+   * sessions rotated after reaching the block count or age limit
+   */
+  public long getCommittedSessionCount() {
+    DataUploader uploader = currentUploader();
+    return uploader == null ? 0 : uploader.getCommittedSessionCount();
+  }
+
+  /**
+   * @return number of blocks in the upload sessions committed for the batches of this statement
+   */
+  public long getCommittedBlockCount() {
+    DataUploader uploader = currentUploader();
+    return uploader == null ? 0 : uploader.getCommittedBlockCount();
+  }
+
+  /**
+   * @return metrics of the uploader of the batches of this statement, shared with the other
+   * statements of the connection when {@code uploadSessionCache} is enabled. Empty before the
+   * first executeBatch().
+   */
+  public UploadMetrics getUploadMetrics() {
+    DataUploader uploader = currentUploader();
+    return uploader == null ? new UploadMetrics(null) : uploader.getMetrics();
+  }
+
+  private DataUploader currentUploader() {
+    if (uploader != null || template == null) {
+      return uploader;
+    }
+    return connHandle.getUploaderCache().peek(template);
+  }
+
   /**
    * 解析后通过SQLExecutor作为query执行
    * 这种方式执行写入时间数据的时候，1900年前的时间可能会触发Java的时区问题，因此建议采用executeUpdate()方式
@@ -317,7 +570,7 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
    */
   @Override
   public boolean execute() throws SQLException {
-    return super.execute(updateSql(sql, parameters));
+    return super.execute(updateSql());
   }
 
   /**
@@ -327,7 +580,24 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
    */
   @Override
   public ResultSet executeQuery() throws SQLException {
-    return super.executeQuery(updateSql(sql, parameters));
+    return super.executeQuery(updateSql());
+  }
+
+  /**
+   * 解析后异步执行，同executeQueryAsync(String)
+   * @return
+   * @throws SQLException
+   */
+  public CompletableFuture<ResultSet> executeQueryAsync() throws SQLException {
+    return super.executeQueryAsync(updateSql());
+  }
+
+  /**
+   * 解析后异步执行，同executeQueryAsync(String, Executor)
+   */
+  public CompletableFuture<ResultSet> executeQueryAsync(Executor resultExecutor)
+      throws SQLException {
+    return super.executeQueryAsync(updateSql(), resultExecutor);
   }
 
   /**
@@ -354,14 +624,15 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
 
   @Override
   public void setBytes(int parameterIndex, byte[] x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setNull(int parameterIndex, int sqlType, String typeName)
       throws SQLException {
     // ODPS doesn't care the type of NULL. So the second parameter is simply ignored.
-    parameters.put(parameterIndex, null);
+    checkParameterIndex(parameterIndex);
+    batch.setNull(parameterIndex - 1);
   }
 
   /**
@@ -403,29 +674,29 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
     } else if (x instanceof Date) {
       setDate(parameterIndex, (Date) x);
     } else if (x instanceof java.util.Date) {
-      parameters.put(parameterIndex, x);
+      setParameter(parameterIndex, x);
     } else if (x instanceof LocalDate) {
-      parameters.put(parameterIndex, x);
+      setParameter(parameterIndex, x);
     } else if (x instanceof ZonedDateTime) {
-      parameters.put(parameterIndex, x);
+      setParameter(parameterIndex, x);
     } else if (x instanceof OffsetDateTime) {
-      parameters.put(parameterIndex, ((OffsetDateTime) x).toInstant());
+      setParameter(parameterIndex, ((OffsetDateTime) x).toInstant());
     } else if (x instanceof Instant) {
-      parameters.put(parameterIndex, x);
+      setParameter(parameterIndex, x);
     } else if (x instanceof Varchar) {
       setString(parameterIndex, x.toString());
     } else if (x instanceof Char) {
       setString(parameterIndex, x.toString());
     } else if (x instanceof Binary) {
-      parameters.put(parameterIndex, x);
+      setParameter(parameterIndex, x);
     } else if (x instanceof Array) {
       setArray(parameterIndex, (Array) x);
     } else if (x instanceof List) {
-      parameters.put(parameterIndex, x);
+      setParameter(parameterIndex, x);
     } else if (x instanceof Struct) {
-      parameters.put(parameterIndex,
-                     new SimpleStruct(((OdpsStruct) x).getTypeInfo(),
-                                      Arrays.asList(((Struct) x).getAttributes())));
+      setParameter(parameterIndex,
+                   new SimpleStruct(((OdpsStruct) x).getTypeInfo(),
+                                    Arrays.asList(((Struct) x).getAttributes())));
     } else {
       throw new SQLException("can not set an object of type: " + x.getClass().getName());
     }
@@ -433,218 +704,113 @@ public class OdpsPreparedStatement extends AbstractOdpsPreparedStatement {
 
   @Override
   public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    checkParameterIndex(parameterIndex);
+    batch.setBoolean(parameterIndex - 1, x);
   }
 
   @Override
   public void setByte(int parameterIndex, byte x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    checkParameterIndex(parameterIndex);
+    batch.setByte(parameterIndex - 1, x);
   }
 
   public void setDate(int parameterIndex, Date x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setDouble(int parameterIndex, double x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    checkParameterIndex(parameterIndex);
+    batch.setDouble(parameterIndex - 1, x);
   }
 
   @Override
   public void setFloat(int parameterIndex, float x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    checkParameterIndex(parameterIndex);
+    batch.setFloat(parameterIndex - 1, x);
   }
 
   @Override
   public void setInt(int parameterIndex, int x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    checkParameterIndex(parameterIndex);
+    batch.setInt(parameterIndex - 1, x);
   }
 
   @Override
   public void setLong(int parameterIndex, long x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    checkParameterIndex(parameterIndex);
+    batch.setLong(parameterIndex - 1, x);
   }
 
   @Override
   public void setNull(int parameterIndex, int sqlType) throws SQLException {
     // ODPS doesn't care the type of NULL. So the second parameter is simply ignored.
-    parameters.put(parameterIndex, null);
+    checkParameterIndex(parameterIndex);
+    batch.setNull(parameterIndex - 1);
   }
 
   @Override
   public void setShort(int parameterIndex, short x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    checkParameterIndex(parameterIndex);
+    batch.setShort(parameterIndex - 1, x);
   }
 
   @Override
   public void setString(int parameterIndex, String x) throws SQLException {
     if (x == null) {
-      parameters.put(parameterIndex, null);
+      setNull(parameterIndex, Types.NULL);
       return;
     }
-    parameters.put(parameterIndex, x.getBytes());
+    setParameter(parameterIndex, x.getBytes());
   }
 
   @Override
   public void setArray(int parameterIndex, Array x) throws SQLException {
     if (x == null) {
-      parameters.put(parameterIndex, null);
+      setNull(parameterIndex, Types.NULL);
       return;
     }
-    parameters.put(parameterIndex,
-                   Arrays.stream(((Object[]) x.getArray())).collect(Collectors.toList()));
+    setParameter(parameterIndex,
+                 Arrays.stream(((Object[]) x.getArray())).collect(Collectors.toList()));
   }
 
   @Override
   public void setTime(int parameterIndex, Time x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    setParameter(parameterIndex, x);
   }
 
   @Override
   public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
-    parameters.put(parameterIndex, x);
+    setParameter(parameterIndex, x);
   }
 
-  /**
-   * Returns a new sql replacing the '?'s in the prepared sql to parameters.
-   */
-  private String updateSql(String sql, HashMap<Integer, Object> parameters) throws SQLException {
-    List<Integer> indexList = SqlParserUtil.getPlaceholderIndexList(sql);
-    if (indexList.size() == 0) {
-      return sql;
-    }
-
-    if (parameters == null || parameters.size() != indexList.size()) {
-      throw new SQLException("wrong number of parameters.");
-    }
-
-    StringBuilder newSql = new StringBuilder(sql);
-    int pos = 0;
-    int paramIndex = 1;
-
-    for (Integer index : indexList) {
-      index += pos;
-      newSql.deleteCharAt(index);
-      String str = convertJavaTypeToSqlString(parameters.get(paramIndex));
-      newSql.insert(index, str);
-      pos += str.length() - 1;
-      paramIndex++;
+  private void checkParameterIndex(int parameterIndex) throws SQLException {
+    if (parameterIndex < 1 || parameterIndex > parametersNum) {
+      throw new SQLException(
+          "parameter index " + parameterIndex + " out of range [1, " + parametersNum + "]");
     }
+  }
 
-    return newSql.toString();
+  private void setParameter(int parameterIndex, Object x) throws SQLException {
+    checkParameterIndex(parameterIndex);
+    batch.setObject(parameterIndex - 1, x);
   }
 
   /**
-   * 将输入的java类型转成odps认识的sql类型，见https://help.aliyun.com/document_detail/159541.html
-   * 需要额外指出的是：
-   * java.sql.Date -> odps Date
-   * java.sql.Time -> odps DateTime
-   * java.sql.Timestamp -> odps Timestamp
-   * java.util.Date -> odps Date
-   * java.time.LocalDate -> odps Date
-   * java.time.ZonedDateTime -> odps DateTime
-   * java.time.Instant -> odps Timestamp
-   *
-   * @param x
-   * @return
-   * @throws SQLException
+   * Returns a new sql replacing the '?'s in the prepared sql to the parameters of current row.
    */
-  private String convertJavaTypeToSqlString(Object x) throws SQLException {
-    if (Byte.class.isInstance(x)) {
-      return String.format("%sY", x.toString());
-    } else if (Short.class.isInstance(x)) {
-      return String.format("%sS", x.toString());
-    } else if (Integer.class.isInstance(x)) {
-      return x.toString();
-    } else if (Long.class.isInstance(x)) {
-      return String.format("%sL", x.toString());
-    } else if (Float.class.isInstance(x)) {
-      return String.format("%sf", x.toString());
-    } else if (Double.class.isInstance(x)) {
-      return String.format("%s", x.toString());
-    } else if (BigDecimal.class.isInstance(x)) {
-      return String.format("%sBD", x.toString());
-    } else if (String.class.isInstance(x)) {
-      if (isIllegal((String) x)) {
-        throw new IllegalArgumentException("");
-      }
-      return "'" + x + "'";
-    } else if (byte[].class.isInstance(x)) {
-      try {
-        String charset = getConnection().getCharset();
-        if (charset != null) {
-          String str = new String((byte[]) x, charset);
-          if (isIllegal(str)) {
-            throw new IllegalArgumentException("");
-          }
-          return "'" + str + "'";
-        } else {
-          throw new SQLException("charset is null");
-        }
-      } catch (UnsupportedEncodingException e) {
-        throw new SQLException(e.getMessage(), e);
-      }
-    } else if (java.util.Date.class.isInstance(x)) {
-      Calendar.Builder calendarBuilder = new Calendar.Builder()
-          .setCalendarType("iso8601")
-          .setLenient(true);
-      Calendar calendar = calendarBuilder.build();
-      calendar.setTimeZone(getConnection().getTimezone());
-
-      if (java.sql.Timestamp.class.isInstance(x)) {
-        return String.format("TIMESTAMP'%s'", x);
-      } else if (java.sql.Date.class.isInstance(x)) {
-        // MaxCompute DATE
-        DATE_FORMAT.get().setCalendar(calendar);
-        return String.format("DATE'%s'", DATE_FORMAT.get().format(x));
-      } else if (java.sql.Time.class.isInstance(x)) {
-        DATETIME_FORMAT.get().setCalendar(calendar);
-        return String.format("DATETIME'%s'", DATETIME_FORMAT.get().format(x));
-      } else {
-        // MaxCompute DATETIME
-        DATE_FORMAT.get().setCalendar(calendar);
-        return String.format("DATE'%s'", DATE_FORMAT.get().format(x));
-      }
-    } else if (x instanceof LocalDate) {
-      return String.format("DATE'%s'", LOCAL_DATE_FORMAT.get().format((LocalDate) x));
-    } else if (x instanceof ZonedDateTime) {
-      return String.format("DATETIME'%s'",
-                           ZONED_DATETIME_FORMAT.get().format((ZonedDateTime) x));
-    } else if (x instanceof Instant) {
-      return String.format("TIMESTAMP'%s'",
-                           ZONED_TIMESTAMP_FORMAT.get().format((Instant) x));
-    } else if (Boolean.class.isInstance(x)) {
-      return x.toString().toUpperCase();
-    } else if (x == null || x.equals(Types.NULL)) {
-      return "NULL";
-    } else if (Binary.class.isInstance(x)) {
-      return String.format("unhex('%s')", x);
-    } else if (Varchar.class.isInstance(x)) {
-      if (isIllegal(x.toString())) {
-        throw new IllegalArgumentException("");
-      }
-      return "'" + x.toString() + "'";
-    } else if (Char.class.isInstance(x)) {
-      if (isIllegal(x.toString())) {
-        throw new IllegalArgumentException("");
-      }
-      return "'" + x.toString() + "'";
-    } else {
-      throw new SQLException("unrecognized Java class: " + x.getClass().getName());
-    }
-  }
-
-  private boolean isIllegal(String str) throws SQLException {
-    if (getConnection().isSkipSqlInjectCheck()) {
-      return false;
-    }
-    Matcher matcher = SQL_PATTERN.matcher(str);
-    return matcher.find();
+  private String updateSql() throws SQLException {
+    TimeZone timeZone = connHandle.getTimezone();
+    Predicate<String> injectionCheck = connHandle.isSkipSqlInjectCheck()
+                                       ? str -> false
+                                       : str -> SQL_PATTERN.matcher(str).find();
+    return sqlTemplate.render(batch, connHandle.getCharset(),
+                              timeZone != null ? timeZone : TimeZone.getDefault(), injectionCheck);
   }
 
   @Override
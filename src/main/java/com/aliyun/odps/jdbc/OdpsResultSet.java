@@ -34,6 +34,7 @@ import java.sql.ResultSet;
 import java.sql.RowId;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
 import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
@@ -520,6 +521,26 @@ public abstract class OdpsResultSet extends WrapperAdapter implements ResultSet
     return stmt;
   }
 
+  /**
+   * Let the statement know this result set is read to the end or closed, which stops its query
+   * timeout.
+   */
+  protected void readDone() {
+    if (stmt != null) {
+      stmt.resultSetDone(this);
+    }
+  }
+
+  /**
+   * @throws SQLTimeoutException when the query timeout of the statement was reached while this
+   *                             result set was read
+   */
+  protected void checkTimedOut() throws SQLException {
+    if (stmt != null && stmt.isTimedOut()) {
+      throw new SQLTimeoutException(stmt.timeoutMessage());
+    }
+  }
+
   @Override
   public Time getTime(int columnIndex) throws SQLException {
     return getTime(columnIndex, null);
@@ -27,6 +27,7 @@ import java.sql.SQLException;
 import com.aliyun.odps.data.Record;
 import com.aliyun.odps.tunnel.InstanceTunnel.DownloadSession;
 import com.aliyun.odps.tunnel.TunnelException;
+import com.aliyun.odps.tunnel.io.CompressOption;
 import com.aliyun.odps.tunnel.io.TunnelRecordReader;
 
 public class OdpsScrollResultSet extends OdpsResultSet implements ResultSet {
@@ -284,16 +285,19 @@ public class OdpsScrollResultSet extends OdpsResultSet implements ResultSet {
     isClosed = true;
     sessionHandle = null;
     rowsCache = null;
+    readDone();
   }
 
   @Override
   public boolean next() throws SQLException {
     checkClosed();
+    checkTimedOut();
     // Move to the next row
     cursorRow++;
     // If we've moved past the last row, return false
     if (cursorRow >= totalRows) {
       // cursorRow is at totalRows (afterLast position) or beyond
+      readDone();
       return false;
     }
     return true;
@@ -345,7 +349,10 @@ public class OdpsScrollResultSet extends OdpsResultSet implements ResultSet {
       long start = System.currentTimeMillis();
       Record reuseRecord = null;
       TunnelRecordReader reader;
-      if (mode.equals(ResultMode.OFFLINE)) {
+      CompressOption compressOption = conn.getTunnelDownloadCompressOption();
+      if (mode.equals(ResultMode.OFFLINE) && compressOption != null) {
+        reader = sessionHandle.openRecordReader(cachedUpperRow, count, compressOption);
+      } else if (mode.equals(ResultMode.OFFLINE)) {
         reader = sessionHandle.openRecordReader(cachedUpperRow, count, true);
       } else {
         reader = sessionHandle.openRecordReader(cachedUpperRow, count, -1);
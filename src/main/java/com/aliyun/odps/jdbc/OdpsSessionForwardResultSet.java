@@ -22,6 +22,7 @@ package com.aliyun.odps.jdbc;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 
 import com.aliyun.odps.data.Record;
 
@@ -88,16 +89,19 @@ public class OdpsSessionForwardResultSet extends OdpsResultSet implements Result
       }
       resultSet = null;
     }
+    readDone();
     conn.log.debug("the result set has been closed");
   }
 
   @Override
   public boolean next() throws SQLException {
     checkClosed();
+    checkTimedOut();
 
-    if (fetchedRows == totalRows || !resultSet.hasNext()) {
+    if (fetchedRows == totalRows || !hasNextRecord()) {
       conn.log.info("It took me " + (System.currentTimeMillis() - startTime)
                     + " ms to fetch all records, count:" + fetchedRows);
+      readDone();
       return false;
     }
     Record record = resultSet.next();
@@ -110,6 +114,20 @@ public class OdpsSessionForwardResultSet extends OdpsResultSet implements Result
     return true;
   }
 
+  private boolean hasNextRecord() throws SQLException {
+    try {
+      return resultSet.hasNext();
+    } catch (RuntimeException e) {
+      // the download was aborted by the query timeout of the statement
+      for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof SQLTimeoutException) {
+          throw new SQLTimeoutException(cause.getMessage(), e);
+        }
+      }
+      throw e;
+    }
+  }
+
   @Override
   protected Object[] rowAtCursor() throws SQLException {
     if (currentRow == null) {
@@ -15,12 +15,11 @@
 
 package com.aliyun.odps.jdbc;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -31,6 +30,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 
@@ -40,11 +46,10 @@ import com.aliyun.odps.OdpsException;
 import com.aliyun.odps.data.Record;
 import com.aliyun.odps.jdbc.utils.InstanceDataIterator;
 import com.aliyun.odps.jdbc.utils.OdpsLogger;
-import com.aliyun.odps.jdbc.utils.SettingParser;
+import com.aliyun.odps.jdbc.utils.SqlLexer;
 import com.aliyun.odps.jdbc.utils.Utils;
 import com.aliyun.odps.sqa.ExecuteMode;
 import com.aliyun.odps.sqa.SQLExecutor;
-import com.aliyun.odps.sqa.SQLExecutorBuilder;
 import com.aliyun.odps.tunnel.InstanceTunnel;
 import com.aliyun.odps.tunnel.InstanceTunnel.DownloadSession;
 import com.aliyun.odps.tunnel.TunnelException;
@@ -61,6 +66,21 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
   protected int updateCount = -1;
   protected int queryTimeout = -1;
   protected SQLExecutor sqlExecutor;
+  // borrowed from the connection for the last execution, given back by the next one or by close
+  private SQLExecutor borrowedExecutor;
+  // built for the tunnel settings of the statement, given back when they change or by close
+  private OdpsConnection.SettingsExecutor settingsExecutor;
+  // fires on the shared scheduler when the last execution runs out of its query timeout
+  private ScheduledFuture<?> queryTimer;
+  // counts the executions, so that a timer firing late does not time out the next one
+  private volatile int executions;
+  private volatile boolean timedOut;
+  // whether the last execution is still running, rather than only its result set being read
+  private volatile boolean executing;
+  // the tunnel download of the last result set, aborted when the query times out
+  private volatile InstanceDataIterator download;
+  // runs the batch being executed, cancelled along with the statement
+  private volatile StatementBatchRunner batchRunner;
 
   // result cache in session mode
   com.aliyun.odps.data.ResultSet odpsResultSet = null;
@@ -74,11 +94,23 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
   protected boolean isClosed = false;
   protected boolean isCancelled = false;
 
+  /**
+   * @deprecated the status of the instances is checked adaptively by the driver-wide
+   * {@link InstanceStatusPoller}
+   */
+  @Deprecated
   protected static final int POLLING_INTERVAL = 3000;
   protected static final String JDBC_SQL_TASK_NAME = "jdbc_sql_task";
   protected static final String JDBC_SQL_OFFLINE_TASK_NAME = "sqlrt_fallback_task";
   protected static ResultSet EMPTY_RESULT_SET = null;
 
+  /**
+   * Driver-wide pool opening the result sets of the queries run by {@link #executeQueryAsync} and
+   * cancelling the queries which timed out, its threads are daemons. Both block on requests, so
+   * they are kept off the scheduler of the {@link InstanceStatusPoller}.
+   */
+  private static volatile ExecutorService statementWorkers;
+
   static {
     try {
       OdpsResultSetMetaData meta =
@@ -119,6 +151,14 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
 
   protected SQLWarning warningChain = new SQLWarning();
 
+  // the query run by executeQueryAsync, until its result set is opened
+  private volatile CompletableFuture<ResultSet> queryInFlight;
+  // the instance already seen terminated by the poller, so it is not waited for again
+  private Instance terminatedInstance;
+
+  // the statements added by addBatch, until the next executeBatch or clearBatch
+  private List<String> batchedSqls;
+
   OdpsStatement(OdpsConnection conn) {
     this(conn, false);
   }
@@ -135,12 +175,20 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
 
   @Override
   public void addBatch(String sql) throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    checkClosed();
+    if (batchedSqls == null) {
+      batchedSqls = new ArrayList<>();
+    }
+    batchedSqls.add(sql);
   }
 
   @Override
   public void cancel() throws SQLException {
     checkClosed();
+    StatementBatchRunner runner = batchRunner;
+    if (runner != null) {
+      runner.cancel();
+    }
     if (isCancelled || executeInstance == null) {
       return;
     }
@@ -167,7 +215,7 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
 
   @Override
   public void clearBatch() throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    batchedSqls = null;
   }
 
   @Override
@@ -181,12 +229,20 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
       return;
     }
 
+    CompletableFuture<ResultSet> query = queryInFlight;
+    if (query != null) {
+      query.cancel(false);
+    }
+
     if (resultSet != null) {
       resultSet.close();
       resultSet = null;
     }
 
+    stopQueryTimer();
     closeOdpsResultSet();
+    releaseExecutor();
+    releaseSettingsExecutor();
 
     connHandle.log.info("the statement has been closed");
 
@@ -200,21 +256,51 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
     throw new SQLFeatureNotSupportedException();
   }
 
+  /**
+   * Run the statements added by {@link #addBatch(String)}, see {@link StatementBatchRunner}.
+   * The update counts are read from the task summaries like {@link #executeUpdate(String)} does.
+   * The query timeout applies to the whole batch, in every mode.
+   *
+   * @throws java.sql.BatchUpdateException when a statement fails, with the update counts of all
+   *                                       the statements, {@link #EXECUTE_FAILED} for the ones
+   *                                       which failed or did not run
+   */
   @Override
   public int[] executeBatch() throws SQLException {
-    throw new SQLFeatureNotSupportedException();
+    checkClosed();
+    List<String> sqls = batchedSqls;
+    batchedSqls = null;
+    if (sqls == null || sqls.isEmpty()) {
+      return new int[0];
+    }
+    beforeExecute();
+    StatementBatchRunner runner = new StatementBatchRunner(this);
+    batchRunner = runner;
+    try {
+      return runner.run(sqls);
+    } finally {
+      batchRunner = null;
+      executionDone();
+    }
+  }
+
+  /**
+   * Run a statement of a batch on the executor of this statement, and wait for it. The query timer
+   * started by {@link #executeBatch()} keeps running.
+   */
+  int executeBatchedUpdate(String query, Properties properties) throws SQLException {
+    resetExecution();
+    runSQL(query, properties, true);
+    return updateCount >= 0 ? updateCount : 0;
   }
 
   @Override
   public ResultSet executeQuery(String query) throws SQLException {
     Properties properties = new Properties();
 
-    if (!connHandle.isSkipSqlCheck()) {
-      SettingParser.ParseResult parseResult = SettingParser.parse(query);
-      query = parseResult.getRemainingQuery();
-      properties.putAll(parseResult.getSettings());
-    }
-    if (StringUtils.isBlank(query)) {
+    SqlLexer.Result lexed = lex(query, properties);
+    query = lexed.getRemainingQuery();
+    if (lexed.getKind() == SqlLexer.StatementKind.EMPTY) {
       // only settings, just set properties
       processSetClause(properties);
       return EMPTY_RESULT_SET;
@@ -227,7 +313,7 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
     }
     // otherwise those properties is just for this query
 
-    if (processUseClause(query)) {
+    if (processUseClause(lexed)) {
       return EMPTY_RESULT_SET;
     }
     checkClosed();
@@ -237,17 +323,134 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
     return hasResultSet() ? getResultSet() : EMPTY_RESULT_SET;
   }
 
+  /**
+   * Execute a query without blocking the calling thread while it runs. The query is submitted by
+   * the calling thread, then the status of its instance is checked by a driver-wide scheduler.
+   * Once the instance is terminated, the result set is opened by a driver-wide pool. Queries of
+   * interactive sessions have no status of their own to check, the pool opens their result set
+   * right away, which waits for the query to finish.
+   * <p>
+   * The statement cannot execute another query until the future is completed. Cancelling the
+   * future cancels the query, like {@link #cancel()}.
+   *
+   * @return a future of the result set, completed exceptionally with a {@link SQLException} when
+   * the query fails
+   * @throws SQLException when the query cannot be submitted
+   */
+  public CompletableFuture<ResultSet> executeQueryAsync(String query) throws SQLException {
+    return executeQueryAsync(query, getStatementWorkers());
+  }
+
+  /**
+   * Like {@link #executeQueryAsync(String)}, opening the result set on the given executor.
+   */
+  public CompletableFuture<ResultSet> executeQueryAsync(String query, Executor resultExecutor)
+      throws SQLException {
+    Properties properties = new Properties();
+
+    SqlLexer.Result lexed = lex(query, properties);
+    query = lexed.getRemainingQuery();
+    if (lexed.getKind() == SqlLexer.StatementKind.EMPTY) {
+      // only settings, just set properties
+      processSetClause(properties);
+      return CompletableFuture.completedFuture(EMPTY_RESULT_SET);
+    } else {
+      try {
+        processSetClauseExtra(properties);
+      } catch (OdpsException e) {
+        throw new SQLException(e.getMessage(), e);
+      }
+    }
+    // otherwise those properties is just for this query
+
+    if (processUseClause(lexed)) {
+      return CompletableFuture.completedFuture(EMPTY_RESULT_SET);
+    }
+    checkClosed();
+    beforeExecute();
+
+    SQLExecutor executor = sqlExecutor;
+    String sql = appendSemicolon(query);
+    long begin;
+    try {
+      begin = submitSQL(executor, sql, properties);
+    } catch (OdpsException e) {
+      executionDone();
+      throwSQLException(e, sql, executor.getInstance(), executor.getLogView());
+      return null;
+    }
+
+    CompletableFuture<Void> terminated;
+    if (executeInstance != null && getExecuteMode() == ExecuteMode.OFFLINE) {
+      terminated =
+          InstanceStatusPoller.whenTerminated(executeInstance, connHandle.getPollingMetrics());
+    } else {
+      terminated = CompletableFuture.completedFuture(null);
+    }
+    CompletableFuture<ResultSet> result = terminated.thenApplyAsync(
+        v -> completeQuery(executor, sql, begin), resultExecutor);
+    queryInFlight = result;
+    result.whenComplete((rs, e) -> {
+      if (result.isCancelled()) {
+        terminated.cancel(false);
+        cancelQuietly();
+      }
+      queryInFlight = null;
+    });
+    return result;
+  }
+
+  static ExecutorService getStatementWorkers() {
+    if (statementWorkers == null) {
+      synchronized (OdpsStatement.class) {
+        if (statementWorkers == null) {
+          statementWorkers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "odps-jdbc-statement-worker");
+            t.setDaemon(true);
+            return t;
+          });
+        }
+      }
+    }
+    return statementWorkers;
+  }
+
+  private synchronized ResultSet completeQuery(SQLExecutor executor, String sql, long begin) {
+    try {
+      checkClosed();
+      if (getExecuteMode() == ExecuteMode.OFFLINE) {
+        terminatedInstance = executeInstance;
+      }
+      try {
+        setResultSetInternal();
+      } catch (OdpsException | IOException e) {
+        throwSQLException(e, sql, executor.getInstance(), executor.getLogView());
+      } finally {
+        executionDone();
+      }
+      logRunTime(executor, begin);
+      return hasResultSet() ? openResultSet() : EMPTY_RESULT_SET;
+    } catch (SQLException e) {
+      throw new CompletionException(e);
+    }
+  }
+
+  private void cancelQuietly() {
+    try {
+      cancel();
+    } catch (SQLException e) {
+      connHandle.log.warn("Failed to cancel query: " + e.getMessage());
+    }
+  }
+
   @Override
   public int executeUpdate(String query) throws SQLException {
 
     Properties properties = new Properties();
-    if (!connHandle.isSkipSqlCheck()) {
-      SettingParser.ParseResult parseResult = SettingParser.parse(query);
-      query = parseResult.getRemainingQuery();
-      properties.putAll(parseResult.getSettings());
-    }
+    SqlLexer.Result lexed = lex(query, properties);
+    query = lexed.getRemainingQuery();
 
-    if (StringUtils.isBlank(query)) {
+    if (lexed.getKind() == SqlLexer.StatementKind.EMPTY) {
       // only settings, just set properties
       processSetClause(properties);
       return 0;
@@ -298,13 +501,10 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
     // short cut for SET clause
     Properties properties = new Properties();
 
-    if (!connHandle.isSkipSqlCheck()) {
-      SettingParser.ParseResult parseResult = SettingParser.parse(query);
-      query = parseResult.getRemainingQuery();
-      properties.putAll(parseResult.getSettings());
-    }
+    SqlLexer.Result lexed = lex(query, properties);
+    query = lexed.getRemainingQuery();
 
-    if (StringUtils.isBlank(query)) {
+    if (lexed.getKind() == SqlLexer.StatementKind.EMPTY) {
       // only settings, just set properties
       processSetClause(properties);
       return false;
@@ -317,7 +517,7 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
     }
     // otherwise those properties is just for this query
 
-    if (processUseClause(query)) {
+    if (processUseClause(lexed)) {
       return false;
     }
 
@@ -352,33 +552,18 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
    * @throws SQLException
    */
   public static boolean isQuery(String sql) throws SQLException {
-    BufferedReader reader = new BufferedReader(new StringReader(sql));
-    try {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        if (line.matches("^\\s*(--|#).*")) { // skip the comment starting with '--' or '#'
-          continue;
-        }
-        if (line.matches("^\\s*$")) { // skip the whitespace line
-          continue;
-        }
-        // The first none-comment line start with "select"
-        if (line.matches("(?i)^(\\s*)(SELECT).*$")) {
-          return true;
-        } else {
-          break;
-        }
-      }
-    } catch (IOException e) {
-      throw new SQLException(e.getMessage(), e);
-    } finally {
-      try {
-        reader.close();
-      } catch (IOException e) {
-        // Ignore close exception for BufferedReader
-      }
-    }
-    return false;
+    return SqlLexer.lex(sql, false).getKind() == SqlLexer.StatementKind.QUERY;
+  }
+
+  /**
+   * Lex the sql once before it is executed. Its leading SET statements are moved into properties,
+   * unless the sql check is skipped by the connection.
+   */
+  protected SqlLexer.Result lex(String query, Properties properties) {
+    SqlLexer.Result lexed =
+        SqlLexer.lex(query, !connHandle.isSkipSqlCheck(), connHandle.getSettingsCache());
+    properties.putAll(lexed.getSettings());
+    return lexed;
   }
 
   protected void processSetClause(Properties properties) {
@@ -397,43 +582,44 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
   }
 
   /**
-   * This method will rebuild the Statement-level SQLExecutor,
+   * This method will switch the Statement-level SQLExecutor to one built for the settings,
    * and the main purpose is to enable the MaxQA quota configured through set.
    * However, it only takes effect at the Statement level and cannot modify the Connection level Quota.
    */
   protected void processSetClauseExtra(Properties properties) throws OdpsException {
-    boolean needRebuildSql = false;
-    SQLExecutorBuilder executorBuilder = connHandle.getExecutorBuilder().clone();
+    String tunnelEndpoint = null;
+    Boolean useInstanceTunnel = null;
 
     for (String key : properties.stringPropertyNames()) {
       if (key.equalsIgnoreCase("jdbc.tunnel.endpoint")) {
-        executorBuilder.tunnelEndpoint(properties.getProperty(key));
+        tunnelEndpoint = properties.getProperty(key);
         connHandle.log.info("use tunnel endpoint: " + properties.getProperty(key));
-        needRebuildSql = true;
       }
       if (key.equalsIgnoreCase("jdbc.fetchResult.useTunnel")) {
-        executorBuilder.useInstanceTunnel(Boolean.parseBoolean(properties.getProperty(key)));
+        useInstanceTunnel = Boolean.parseBoolean(properties.getProperty(key));
         connHandle.log.info("fetch result use tunnel: " + properties.getProperty(key));
-        needRebuildSql = true;
       }
     }
-    if (needRebuildSql) {
-      try {
-        this.sqlExecutor = executorBuilder.build();
-      } catch (Exception e) {
-        connHandle.log.error("rebuild sql executor failed.", e);
-        this.sqlExecutor = connHandle.getExecutor();
-      }
+    if (tunnelEndpoint != null || useInstanceTunnel != null) {
+      // built once per distinct settings by the connection
+      OdpsConnection.SettingsExecutor acquired =
+          connHandle.acquireSettingsExecutor(tunnelEndpoint, useInstanceTunnel);
+      releaseSettingsExecutor();
+      settingsExecutor = acquired;
+      this.sqlExecutor = acquired != null ? acquired.executor : connHandle.getExecutor();
     }
   }
 
-  protected boolean processUseClause(String sql) throws SQLFeatureNotSupportedException {
-    if (sql.matches("(?i)^(\\s*)(USE)(\\s+)(.*);?(\\s*)$")) {
-      if (sql.contains(";")) {
-        sql = sql.replace(';', ' ');
-      }
-      int i = sql.toLowerCase().indexOf("use");
-      String project = sql.substring(i + 3).trim();
+  private void releaseSettingsExecutor() {
+    if (settingsExecutor != null) {
+      connHandle.releaseSettingsExecutor(settingsExecutor);
+      settingsExecutor = null;
+    }
+  }
+
+  protected boolean processUseClause(SqlLexer.Result sql) throws SQLFeatureNotSupportedException {
+    if (sql.getKind() == SqlLexer.StatementKind.USE) {
+      String project = sql.getUseTarget();
       if (project.length() > 0) {
         if (connHandle.runningInInteractiveMode()) {
           throw new SQLFeatureNotSupportedException(
@@ -527,27 +713,34 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
 
   @Override
   public int getQueryTimeout() throws SQLException {
-    if (!connHandle.runningInInteractiveMode()) {
-      throw new SQLFeatureNotSupportedException();
-    } else {
-      return queryTimeout;
-    }
+    return queryTimeout > 0 ? queryTimeout : 0;
   }
 
+  /**
+   * Limit the time the next executions take, from their submission until their result set is read
+   * or closed. When the limit is reached while the query runs, it is cancelled like
+   * {@link #cancel()} does. When it is reached while its result set is read, the tunnel download
+   * is aborted and the next read fails. Either way the execution or the read in progress fails
+   * with a {@link SQLTimeoutException}. The limit of {@link #executeBatch()} covers the whole
+   * batch. The limit is checked by the driver-wide scheduler of the
+   * {@link InstanceStatusPoller}. In interactive modes it is also sent to the session.
+   *
+   * @param seconds the limit, 0 for no limit
+   */
   @Override
   public void setQueryTimeout(int seconds) throws SQLException {
-    if (seconds <= 0) {
+    if (seconds < 0) {
       throw new IllegalArgumentException("Invalid query timeout:" + String.valueOf(seconds));
     }
-    if (!connHandle.runningInInteractiveMode()) {
-      connHandle.log.error("OdpsDriver do not support query timeout, setQueryTimeout: " + seconds);
-    } else {
-      queryTimeout = seconds;
-    }
+    queryTimeout = seconds == 0 ? -1 : seconds;
   }
 
   @Override
   public ResultSet getResultSet() throws SQLException {
+    return openResultSet();
+  }
+
+  private ResultSet openResultSet() throws SQLException {
     long startTime = System.currentTimeMillis();
     if ((resultSet == null || resultSet.isClosed()) && odpsResultSet != null) {
         OdpsResultSetMetaData
@@ -716,6 +909,16 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
   }
 
   protected void beforeExecute() throws SQLException {
+    CompletableFuture<ResultSet> query = queryInFlight;
+    if (query != null && !query.isDone()) {
+      throw new SQLException("The statement is still running a query asynchronously");
+    }
+    stopQueryTimer();
+    resetExecution();
+    startQueryTimer();
+  }
+
+  private void resetExecution() throws SQLException {
     // If the statement re-executes another query, the previously-generated resultSet
     // will be implicit closed. And the corresponding temp table will be dropped as well.
     if (resultSet != null) {
@@ -729,6 +932,104 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
     isCancelled = false;
     updateCount = -1;
     updateCountFetched = false;
+
+    releaseExecutor();
+    if (sqlExecutor == connHandle.getExecutor()) {
+      // statements overriding the tunnel settings keep the executor built for them
+      borrowedExecutor = connHandle.borrowExecutor();
+      sqlExecutor = borrowedExecutor;
+    }
+  }
+
+  private void startQueryTimer() {
+    int execution = ++executions;
+    timedOut = false;
+    executing = true;
+    if (queryTimeout > 0) {
+      // cancelling makes requests, so the scheduler only hands it over to the pool
+      queryTimer = InstanceStatusPoller.getScheduler().schedule(
+          () -> getStatementWorkers().execute(() -> onQueryTimeout(execution)), queryTimeout,
+          TimeUnit.SECONDS);
+    }
+  }
+
+  private void stopQueryTimer() {
+    if (queryTimer != null) {
+      queryTimer.cancel(false);
+      queryTimer = null;
+    }
+  }
+
+  /**
+   * Called once the last execution stopped running, whether it succeeded or not. The timer keeps
+   * running while its result set is read.
+   */
+  private void executionDone() {
+    if (batchRunner != null) {
+      // the timer covers the whole batch, executeBatch calls it at the end
+      return;
+    }
+    executing = false;
+    if (odpsResultSet == null) {
+      stopQueryTimer();
+    }
+  }
+
+  /**
+   * Called by a result set of this statement once it is read to the end or closed.
+   */
+  void resultSetDone(ResultSet rs) {
+    if (rs == resultSet) {
+      stopQueryTimer();
+      download = null;
+    }
+  }
+
+  /**
+   * Run by the shared pool when the query timeout is reached.
+   */
+  private void onQueryTimeout(int execution) {
+    OdpsConnection conn = connHandle;
+    if (conn == null || execution != executions) {
+      return;
+    }
+    timedOut = true;
+    InstanceDataIterator iterator = download;
+    if (iterator != null) {
+      iterator.abort(new SQLTimeoutException(timeoutMessage()));
+    }
+    if (!executing) {
+      // the query is done, the executor may already run another statement's query
+      conn.log.warn(timeoutMessage() + " while reading its result set");
+      return;
+    }
+    conn.log.warn(timeoutMessage() + ", cancel it");
+    try {
+      cancel();
+    } catch (SQLException | RuntimeException e) {
+      conn.log.warn("Failed to cancel query: " + e.getMessage());
+    }
+  }
+
+  String timeoutMessage() {
+    return "Query timed out after " + queryTimeout + " seconds";
+  }
+
+  /**
+   * @return whether the last execution was cancelled by its query timeout
+   */
+  boolean isTimedOut() {
+    return timedOut;
+  }
+
+  private void releaseExecutor() {
+    if (borrowedExecutor != null) {
+      if (sqlExecutor == borrowedExecutor) {
+        sqlExecutor = connHandle.getExecutor();
+      }
+      connHandle.releaseExecutor(borrowedExecutor);
+      borrowedExecutor = null;
+    }
   }
 
   protected OdpsLogger getParentLogger() {
@@ -736,6 +1037,7 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
   }
 
   private void closeOdpsResultSet() {
+    download = null;
     if (odpsResultSet != null) {
       try {
         odpsResultSet.close();
@@ -755,11 +1057,15 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
   protected void throwSQLException(Exception e, String sql, Instance instance, String logviewUrl) throws SQLException {
     connHandle.log.error("LogView: " + logviewUrl);
     connHandle.log.error("Run SQL failed", e);
-    throw new SQLException(
+    String message =
         "execute sql [ " + sql + " ] + failed. " + (instance == null ? "" : "instanceId:["
                                                                             + instance.getId()
                                                                             + "]")
-        + e.getMessage(), e);
+        + e.getMessage();
+    if (timedOut) {
+      throw new SQLTimeoutException(timeoutMessage() + ", " + message, e);
+    }
+    throw new SQLException(message, e);
   }
 
   private void runSQL(String sql, Properties properties) throws SQLException {
@@ -768,58 +1074,12 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
 
   private void runSQL(String sql, Properties properties, boolean isUpdate) throws SQLException {
     SQLExecutor executor = sqlExecutor;
+    sql = appendSemicolon(sql);
     try {
-
-      // If the client forget to end with a semi-colon, append it.
-      if (!sql.trim().endsWith(";")) {
-        sql += ";";
-      }
-      if (sql.length() > 4000) {
-        connHandle.log.warn("The length of sql is too long, it may cause performance issues. SQL length: " + sql.length());
-      }
-
-      Map<String, String> settings = new HashMap<>();
-      for (String key : sqlTaskProperties.stringPropertyNames()) {
-        settings.put(key, sqlTaskProperties.getProperty(key));
-      }
-
-      inputProperties = new Properties();
-      if (properties != null && !properties.isEmpty()) {
-        for (String key : properties.stringPropertyNames()) {
-          settings.put(key, properties.getProperty(key));
-          inputProperties.put(key, properties.getProperty(key));
-        }
-      }
-      if (!settings.isEmpty()) {
-        connHandle.log.info("Enabled SQL task properties: " + settings);
-      }
-      long begin = System.currentTimeMillis();
-      if (connHandle.getInteractiveMode() == ExecuteMode.INTERACTIVE && queryTimeout != -1
-          && !settings.containsKey("odps.sql.session.query.timeout")) {
-        settings.put("odps.sql.session.query.timeout", String.valueOf(queryTimeout));
-      }
-      if (connHandle.getInteractiveMode() == ExecuteMode.INTERACTIVE_V2 && queryTimeout != -1
-          && !settings.containsKey("odps.sql.maxqa.query.timeout")) {
-        settings.put("odps.sql.maxqa.query.timeout", String.valueOf(queryTimeout));
-      }
-      Long autoSelectLimit = connHandle.getAutoSelectLimit();
-      if (autoSelectLimit != null && autoSelectLimit > 0) {
-        settings.put("odps.sql.select.auto.limit", autoSelectLimit.toString());
-      }
-      if (connHandle.isReadOnlyConnection()) {
-        settings.put("odps.sql.read.only", "true");
-      }
-      connHandle.log.info("Run SQL: " + sql + ", Begin time: " + begin);
-      executor.run(sql, settings);
-      logviewUrl = executor.getLogView();
-      connHandle.log.info("LogView: " + logviewUrl);
-      executeInstance = executor.getInstance();
-      if (executeInstance != null) {
-        connHandle.log.info("InstanceId: " + executeInstance.getId());
-      }
+      long begin = submitSQL(executor, sql, properties);
       if (isUpdate) {
         if (executeInstance != null) {
-          executeInstance.waitForSuccess();
+          waitForSuccess();
           Instance.TaskSummary taskSummary = null;
           try {
             taskSummary = executeInstance.getTaskSummary(JDBC_SQL_OFFLINE_TASK_NAME);
@@ -842,29 +1102,117 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
       } else {
         setResultSetInternal();
       }
-      long end = System.currentTimeMillis();
-      if (connHandle.getLongJobWarningThreshold() != -1 && (end - begin) > connHandle.getLongJobWarningThreshold()) {
-        connHandle.log.warn("SQL execution time exceeds long job warning threshold. Execution time: " + (end - begin)
-                            + (executeInstance == null ? "" : (", InstanceId: " + executeInstance.getId())));
+      logRunTime(executor, begin);
+    } catch (OdpsException | IOException e) {
+      throwSQLException(e, sql, executor.getInstance(), executor.getLogView());
+    } finally {
+      executionDone();
+    }
+  }
+
+  private String appendSemicolon(String sql) {
+    // If the client forget to end with a semi-colon, append it.
+    if (!sql.trim().endsWith(";")) {
+      sql += ";";
+    }
+    if (sql.length() > 4000) {
+      connHandle.log.warn("The length of sql is too long, it may cause performance issues. SQL length: " + sql.length());
+    }
+    return sql;
+  }
+
+  /**
+   * Submit the sql with the settings of the statement and the given properties.
+   *
+   * @return the time it was submitted at
+   */
+  private long submitSQL(SQLExecutor executor, String sql, Properties properties)
+      throws OdpsException {
+    inputProperties = new Properties();
+    if (properties != null && !properties.isEmpty()) {
+      for (String key : properties.stringPropertyNames()) {
+        inputProperties.put(key, properties.getProperty(key));
       }
+    }
+    Map<String, String> settings = buildSettings(properties);
+    if (!settings.isEmpty()) {
+      connHandle.log.info("Enabled SQL task properties: " + settings);
+    }
+    long begin = System.currentTimeMillis();
+    connHandle.log.info("Run SQL: " + sql + ", Begin time: " + begin);
+    executor.run(sql, settings);
+    logviewUrl = executor.getLogView();
+    connHandle.log.info("LogView: " + logviewUrl);
+    executeInstance = executor.getInstance();
+    if (executeInstance != null) {
+      connHandle.log.info("InstanceId: " + executeInstance.getId());
+    }
+    return begin;
+  }
 
-      if (executeInstance != null) {
-        connHandle.log.info("It took me " + (end - begin) + " ms to run sql, instanceId: "
-                            + executeInstance.getId());
-      } else {
-        connHandle.log.info("It took me " + (end - begin) + " ms to run sql");
+  /**
+   * @return the settings of the statement, overridden by the given properties, and the settings
+   * added by the connection
+   */
+  Map<String, String> buildSettings(Properties properties) {
+    Map<String, String> settings = new HashMap<>();
+    for (String key : sqlTaskProperties.stringPropertyNames()) {
+      settings.put(key, sqlTaskProperties.getProperty(key));
+    }
+    if (properties != null && !properties.isEmpty()) {
+      for (String key : properties.stringPropertyNames()) {
+        settings.put(key, properties.getProperty(key));
       }
-      List<String> exeLog = executor.getExecutionLog();
-      if (!exeLog.isEmpty()) {
-        for (String log : exeLog) {
-          connHandle.log.info("Session execution log: " + log);
-        }
+    }
+    if (connHandle.getInteractiveMode() == ExecuteMode.INTERACTIVE && queryTimeout != -1
+        && !settings.containsKey("odps.sql.session.query.timeout")) {
+      settings.put("odps.sql.session.query.timeout", String.valueOf(queryTimeout));
+    }
+    if (connHandle.getInteractiveMode() == ExecuteMode.INTERACTIVE_V2 && queryTimeout != -1
+        && !settings.containsKey("odps.sql.maxqa.query.timeout")) {
+      settings.put("odps.sql.maxqa.query.timeout", String.valueOf(queryTimeout));
+    }
+    Long autoSelectLimit = connHandle.getAutoSelectLimit();
+    if (autoSelectLimit != null && autoSelectLimit > 0) {
+      settings.put("odps.sql.select.auto.limit", autoSelectLimit.toString());
+    }
+    if (connHandle.isReadOnlyConnection()) {
+      settings.put("odps.sql.read.only", "true");
+    }
+    return settings;
+  }
+
+  private void logRunTime(SQLExecutor executor, long begin) {
+    long end = System.currentTimeMillis();
+    if (connHandle.getLongJobWarningThreshold() != -1 && (end - begin) > connHandle.getLongJobWarningThreshold()) {
+      connHandle.log.warn("SQL execution time exceeds long job warning threshold. Execution time: " + (end - begin)
+                          + (executeInstance == null ? "" : (", InstanceId: " + executeInstance.getId())));
+    }
+
+    if (executeInstance != null) {
+      connHandle.log.info("It took me " + (end - begin) + " ms to run sql, instanceId: "
+                          + executeInstance.getId());
+    } else {
+      connHandle.log.info("It took me " + (end - begin) + " ms to run sql");
+    }
+    List<String> exeLog = executor.getExecutionLog();
+    if (!exeLog.isEmpty()) {
+      for (String log : exeLog) {
+        connHandle.log.info("Session execution log: " + log);
       }
-    } catch (OdpsException | IOException e) {
-      throwSQLException(e, sql, executor.getInstance(), executor.getLogView());
     }
   }
 
+  /**
+   * Wait for the instance through the shared poller, then tell whether it succeeded.
+   */
+  private void waitForSuccess() throws OdpsException {
+    if (executeInstance != terminatedInstance) {
+      InstanceStatusPoller.waitForTermination(executeInstance, connHandle.getPollingMetrics());
+    }
+    executeInstance.waitForSuccess();
+  }
+
   public Instance getExecuteInstance() {
     return executeInstance;
   }
@@ -891,7 +1239,7 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
           "Get result by instance tunnel (" + connHandle.getFetchResultThreadNum() + " Thread, "
           + connHandle.getFetchResultSplitSize() + " records per split, cache "
           + connHandle.getFetchResultPreloadSplitNum() + " split in memory" + ").");
-      executeInstance.waitForSuccess();
+      waitForSuccess();
       Instance instance = executeInstance;
       InstanceDataIterator
           instanceDataIterator =
@@ -899,7 +1247,13 @@ public class OdpsStatement extends WrapperAdapter implements Statement {
                                    connHandle.getFetchResultSplitSize(),
                                    connHandle.getFetchResultPreloadSplitNum(),
                                    connHandle.getFetchResultThreadNum(),
-                                   connHandle.getTunnelQuotaName());
+                                   connHandle.getTunnelQuotaName(),
+                                   connHandle.getTunnelDownloadCompressOption());
+      download = instanceDataIterator;
+      if (timedOut) {
+        // the timer fired while the download was opened
+        instanceDataIterator.abort(new SQLTimeoutException(timeoutMessage()));
+      }
       odpsResultSet = new com.aliyun.odps.data.ResultSet(
           instanceDataIterator,
           instanceDataIterator.getSchema(),
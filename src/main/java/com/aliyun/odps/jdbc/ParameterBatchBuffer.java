@@ -0,0 +1,469 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Columnar storage for the parameters of a prepared statement.
+ * <p>
+ * Every parameter index owns one column. Integral and floating point values are written into
+ * primitive chunks ({@code long[]} / {@code double[]}) without boxing, everything else is kept as
+ * objects. Chunks have a fixed size, so growing the buffer never copies the rows already added.
+ * <p>
+ * The row being bound is the slot right after the last added row: setting a parameter writes
+ * straight into its column and {@link #addRow()} only moves the row cursor forward.
+ * <p>
+ * A column remembers the java type of the values it holds, so {@link #get(int, int)} returns the
+ * same boxed class the caller passed in (e.g. {@code Integer} for setInt). When a column receives
+ * values of different types, it falls back to object storage.
+ */
+public class ParameterBatchBuffer {
+
+  private static final int CHUNK_SHIFT = 10;
+  static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  // array header + length, compressed references
+  private static final int ARRAY_OVERHEAD = 16;
+  private static final int REFERENCE_SIZE = 4;
+
+  enum Kind {
+    NONE, BYTE, SHORT, INT, LONG, BOOLEAN, FLOAT, DOUBLE, OBJECT;
+
+    boolean isIntegral() {
+      return this == BYTE || this == SHORT || this == INT || this == LONG || this == BOOLEAN;
+    }
+
+    boolean isFloating() {
+      return this == FLOAT || this == DOUBLE;
+    }
+  }
+
+  private final Column[] columns;
+  private final BitSet bound;
+  private int rowCount = 0;
+  private long objectBytes = 0;
+
+  public ParameterBatchBuffer(int columnCount) {
+    this.columns = new Column[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      columns[i] = new Column();
+    }
+    this.bound = new BitSet(columnCount);
+  }
+
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public boolean isEmpty() {
+    return rowCount == 0;
+  }
+
+  /**
+   * @return the number of parameters bound for the current row
+   */
+  public int getBoundCount() {
+    return bound.cardinality();
+  }
+
+  public boolean isBound(int column) {
+    return bound.get(column);
+  }
+
+  void setByte(int column, byte x) {
+    setIntegral(column, Kind.BYTE, x);
+  }
+
+  void setShort(int column, short x) {
+    setIntegral(column, Kind.SHORT, x);
+  }
+
+  void setInt(int column, int x) {
+    setIntegral(column, Kind.INT, x);
+  }
+
+  void setLong(int column, long x) {
+    setIntegral(column, Kind.LONG, x);
+  }
+
+  void setBoolean(int column, boolean x) {
+    setIntegral(column, Kind.BOOLEAN, x ? 1L : 0L);
+  }
+
+  void setFloat(int column, float x) {
+    setFloating(column, Kind.FLOAT, x);
+  }
+
+  void setDouble(int column, double x) {
+    setFloating(column, Kind.DOUBLE, x);
+  }
+
+  void setNull(int column) {
+    Column c = column(column);
+    c.setNull(rowCount);
+    bound.set(column);
+  }
+
+  /**
+   * Binds an arbitrary value. Boxed primitives are unboxed into the typed storage.
+   */
+  void setObject(int column, Object x) {
+    if (x == null) {
+      setNull(column);
+    } else if (x instanceof Integer) {
+      setInt(column, (Integer) x);
+    } else if (x instanceof Long) {
+      setLong(column, (Long) x);
+    } else if (x instanceof Double) {
+      setDouble(column, (Double) x);
+    } else if (x instanceof Float) {
+      setFloat(column, (Float) x);
+    } else if (x instanceof Short) {
+      setShort(column, (Short) x);
+    } else if (x instanceof Byte) {
+      setByte(column, (Byte) x);
+    } else if (x instanceof Boolean) {
+      setBoolean(column, (Boolean) x);
+    } else {
+      Column c = column(column);
+      c.setObject(rowCount, x);
+      objectBytes += estimateObjectSize(x);
+      bound.set(column);
+    }
+  }
+
+  private void setIntegral(int column, Kind kind, long x) {
+    Column c = column(column);
+    c.setIntegral(rowCount, kind, x);
+    bound.set(column);
+  }
+
+  private void setFloating(int column, Kind kind, double x) {
+    Column c = column(column);
+    c.setFloating(rowCount, kind, x);
+    bound.set(column);
+  }
+
+  /**
+   * Binds the value of a row of another buffer, keeping the storage it has there.
+   */
+  void copy(int column, ParameterBatchBuffer source, int sourceColumn, int row) {
+    if (row < 0 || row >= source.rowCount) {
+      throw new IndexOutOfBoundsException("row " + row + " out of [0, " + source.rowCount + ")");
+    }
+    Column c = source.column(sourceColumn);
+    if (c.kind == Kind.NONE || c.nulls.get(row)) {
+      setNull(column);
+    } else if (c.kind.isIntegral()) {
+      setIntegral(column, c.kind, c.getLong(row));
+    } else if (c.kind.isFloating()) {
+      setFloating(column, c.kind, c.getDouble(row));
+    } else {
+      setObject(column, c.get(row));
+    }
+  }
+
+  /**
+   * @return the value bound for the current row, or null if the parameter is not bound
+   */
+  public Object getCurrent(int column) {
+    if (!bound.get(column)) {
+      return null;
+    }
+    return column(column).get(rowCount);
+  }
+
+  /**
+   * @return the value of the given row and column, boxed into the type it was bound with
+   */
+  public Object get(int column, int row) {
+    if (row < 0 || row >= rowCount) {
+      throw new IndexOutOfBoundsException("row " + row + " out of [0, " + rowCount + ")");
+    }
+    return column(column).get(row);
+  }
+
+  /**
+   * Copies one row into {@code dest}, for consumers that still need row-shaped data.
+   */
+  public void getRow(int row, Object[] dest) {
+    for (int i = 0; i < columns.length; i++) {
+      dest[i] = get(i, row);
+    }
+  }
+
+  /**
+   * Appends the current row. Parameters that have not been bound are added as null.
+   */
+  public void addRow() {
+    for (int i = 0; i < columns.length; i++) {
+      if (!bound.get(i)) {
+        columns[i].setNull(rowCount);
+      }
+    }
+    rowCount++;
+    bound.clear();
+  }
+
+  /**
+   * Forgets the parameters bound for the current row.
+   */
+  public void clearCurrent() {
+    bound.clear();
+  }
+
+  /**
+   * Drops all added rows and releases the chunks. Parameters bound for the current row are kept.
+   */
+  public void clear() {
+    BitSet pendingBound = (BitSet) bound.clone();
+    Object[] pending = new Object[columns.length];
+    for (int i = pendingBound.nextSetBit(0); i >= 0; i = pendingBound.nextSetBit(i + 1)) {
+      pending[i] = getCurrent(i);
+    }
+
+    for (Column c : columns) {
+      c.reset();
+    }
+    rowCount = 0;
+    objectBytes = 0;
+    bound.clear();
+
+    for (int i = pendingBound.nextSetBit(0); i >= 0; i = pendingBound.nextSetBit(i + 1)) {
+      setObject(i, pending[i]);
+    }
+  }
+
+  /**
+   * Rough size of the buffered rows on heap, in bytes. Object values are estimated when they are
+   * bound, so overwriting a parameter before addBatch() may count it twice.
+   */
+  public long estimatedBytes() {
+    long bytes = objectBytes;
+    for (Column c : columns) {
+      bytes += c.chunkBytes();
+    }
+    return bytes;
+  }
+
+  /**
+   * @return how the values of the column are stored, {@link Kind#NONE} until one is bound
+   */
+  Kind getStorageKind(int column) {
+    return column(column).kind;
+  }
+
+  private Column column(int column) {
+    if (column < 0 || column >= columns.length) {
+      throw new IndexOutOfBoundsException(
+          "parameter index " + (column + 1) + " out of [1, " + columns.length + "]");
+    }
+    return columns[column];
+  }
+
+  static long estimateObjectSize(Object x) {
+    if (x instanceof byte[]) {
+      return ARRAY_OVERHEAD + ((byte[]) x).length;
+    } else if (x instanceof String) {
+      return 40 + 2L * ((String) x).length();
+    } else if (x instanceof List) {
+      return ARRAY_OVERHEAD + 32L * ((List<?>) x).size();
+    }
+    return 32;
+  }
+
+  private static class Column {
+
+    private Kind kind = Kind.NONE;
+    private final List<long[]> longChunks = new ArrayList<>();
+    private final List<double[]> doubleChunks = new ArrayList<>();
+    private final List<Object[]> objectChunks = new ArrayList<>();
+    private final BitSet nulls = new BitSet();
+
+    void setNull(int row) {
+      nulls.set(row);
+      if (kind == Kind.OBJECT) {
+        objectChunk(row)[row & CHUNK_MASK] = null;
+      }
+    }
+
+    void setIntegral(int row, Kind k, long x) {
+      if (kind == Kind.NONE) {
+        kind = k;
+      } else if (kind != k) {
+        promote();
+      }
+      if (kind == Kind.OBJECT) {
+        objectChunk(row)[row & CHUNK_MASK] = box(k, x);
+      } else {
+        longChunk(row)[row & CHUNK_MASK] = x;
+      }
+      nulls.clear(row);
+    }
+
+    void setFloating(int row, Kind k, double x) {
+      if (kind == Kind.NONE) {
+        kind = k;
+      } else if (kind != k) {
+        promote();
+      }
+      if (kind == Kind.OBJECT) {
+        objectChunk(row)[row & CHUNK_MASK] = box(k, x);
+      } else {
+        doubleChunk(row)[row & CHUNK_MASK] = x;
+      }
+      nulls.clear(row);
+    }
+
+    void setObject(int row, Object x) {
+      if (kind != Kind.OBJECT) {
+        promote();
+      }
+      objectChunk(row)[row & CHUNK_MASK] = x;
+      nulls.clear(row);
+    }
+
+    long getLong(int row) {
+      return longChunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK];
+    }
+
+    double getDouble(int row) {
+      return doubleChunks.get(row >>> CHUNK_SHIFT)[row & CHUNK_MASK];
+    }
+
+    Object get(int row) {
+      if (kind == Kind.NONE || nulls.get(row)) {
+        return null;
+      }
+      int chunk = row >>> CHUNK_SHIFT;
+      int offset = row & CHUNK_MASK;
+      if (kind.isIntegral()) {
+        return box(kind, longChunks.get(chunk)[offset]);
+      } else if (kind.isFloating()) {
+        return box(kind, doubleChunks.get(chunk)[offset]);
+      }
+      return objectChunks.get(chunk)[offset];
+    }
+
+    /**
+     * Moves the typed values into object storage, after which the column accepts any value.
+     */
+    private void promote() {
+      Kind old = kind;
+      kind = Kind.OBJECT;
+      if (old.isIntegral()) {
+        for (int c = 0; c < longChunks.size(); c++) {
+          long[] src = longChunks.get(c);
+          Object[] dest = new Object[CHUNK_SIZE];
+          for (int i = 0; i < CHUNK_SIZE; i++) {
+            if (!nulls.get((c << CHUNK_SHIFT) + i)) {
+              dest[i] = box(old, src[i]);
+            }
+          }
+          objectChunks.add(dest);
+        }
+        longChunks.clear();
+      } else if (old.isFloating()) {
+        for (int c = 0; c < doubleChunks.size(); c++) {
+          double[] src = doubleChunks.get(c);
+          Object[] dest = new Object[CHUNK_SIZE];
+          for (int i = 0; i < CHUNK_SIZE; i++) {
+            if (!nulls.get((c << CHUNK_SHIFT) + i)) {
+              dest[i] = box(old, src[i]);
+            }
+          }
+          objectChunks.add(dest);
+        }
+        doubleChunks.clear();
+      }
+    }
+
+    private long[] longChunk(int row) {
+      int chunk = row >>> CHUNK_SHIFT;
+      while (longChunks.size() <= chunk) {
+        longChunks.add(new long[CHUNK_SIZE]);
+      }
+      return longChunks.get(chunk);
+    }
+
+    private double[] doubleChunk(int row) {
+      int chunk = row >>> CHUNK_SHIFT;
+      while (doubleChunks.size() <= chunk) {
+        doubleChunks.add(new double[CHUNK_SIZE]);
+      }
+      return doubleChunks.get(chunk);
+    }
+
+    private Object[] objectChunk(int row) {
+      int chunk = row >>> CHUNK_SHIFT;
+      while (objectChunks.size() <= chunk) {
+        objectChunks.add(new Object[CHUNK_SIZE]);
+      }
+      return objectChunks.get(chunk);
+    }
+
+    long chunkBytes() {
+      long perLongChunk = ARRAY_OVERHEAD + 8L * CHUNK_SIZE;
+      long perObjectChunk = ARRAY_OVERHEAD + (long) REFERENCE_SIZE * CHUNK_SIZE;
+      return (longChunks.size() + doubleChunks.size()) * perLongChunk
+             + objectChunks.size() * perObjectChunk
+             + nulls.size() / 8;
+    }
+
+    void reset() {
+      kind = Kind.NONE;
+      longChunks.clear();
+      doubleChunks.clear();
+      objectChunks.clear();
+      nulls.clear();
+    }
+
+    private static Object box(Kind kind, long x) {
+      switch (kind) {
+        case BYTE:
+          return (byte) x;
+        case SHORT:
+          return (short) x;
+        case INT:
+          return (int) x;
+        case BOOLEAN:
+          return x != 0;
+        default:
+          return x;
+      }
+    }
+
+    private static Object box(Kind kind, double x) {
+      if (kind == Kind.FLOAT) {
+        return (float) x;
+      }
+      return x;
+    }
+  }
+}
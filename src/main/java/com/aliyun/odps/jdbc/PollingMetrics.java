@@ -0,0 +1,113 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the instance status checks of the offline queries of a
+ * connection, see {@link OdpsConnection#getPollingMetrics()}.
+ * <p>
+ * The status of an instance is only checked from time to time, so its termination is noticed
+ * later than it happened. {@link #getAddedLatency()} records the time between the last two checks
+ * of each instance, the most its termination may have been noticed late.
+ */
+public class PollingMetrics {
+
+  private final LongAdder checks = new LongAdder();
+  private final LongAdder failedChecks = new LongAdder();
+  private final LongAdder instances = new LongAdder();
+
+  private final UploadMetrics.Histogram waitTime = new UploadMetrics.Histogram();
+  private final UploadMetrics.Histogram addedLatency = new UploadMetrics.Histogram();
+
+  void recordCheck() {
+    checks.increment();
+  }
+
+  void recordFailedCheck() {
+    failedChecks.increment();
+  }
+
+  void recordTerminated(long waitMillis, long addedLatencyMillis) {
+    instances.increment();
+    waitTime.record(waitMillis);
+    addedLatency.record(addedLatencyMillis);
+  }
+
+  /**
+   * @return number of status checks
+   */
+  public long getChecks() {
+    return checks.sum();
+  }
+
+  /**
+   * @return number of status checks which failed, failing the wait of their instance
+   */
+  public long getFailedChecks() {
+    return failedChecks.sum();
+  }
+
+  /**
+   * @return number of instances seen terminated
+   */
+  public long getInstances() {
+    return instances.sum();
+  }
+
+  /**
+   * @return time from the start of the wait until the instance was seen terminated, in
+   * milliseconds
+   */
+  public UploadMetrics.Histogram getWaitTime() {
+    return waitTime;
+  }
+
+  /**
+   * @return upper bound of the delay between the termination of an instance and the check seeing
+   * it, in milliseconds
+   */
+  public UploadMetrics.Histogram getAddedLatency() {
+    return addedLatency;
+  }
+
+  /**
+   * @return the current values by name, e.g. {@code checks} or {@code added_latency_p99}
+   */
+  public Map<String, Number> toMap() {
+    Map<String, Number> map = new LinkedHashMap<>();
+    map.put("checks", getChecks());
+    map.put("failed_checks", getFailedChecks());
+    map.put("instances", getInstances());
+    waitTime.putAll(map, "wait_time");
+    addedLatency.putAll(map, "added_latency");
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return toMap().toString();
+  }
+}
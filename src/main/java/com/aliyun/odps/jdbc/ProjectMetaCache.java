@@ -0,0 +1,147 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.aliyun.odps.sqa.v2.MaxQAConnInfo;
+import com.aliyun.odps.utils.GsonObjectBuilder;
+import com.google.gson.Gson;
+
+/**
+ * Driver-wide cache of the project properties and the MaxQA quota info read when a connection is
+ * created, so that connections to the same project do not fetch them again.
+ * <p>
+ * Entries are keyed by the credentials, the endpoint and the project or quota, and expire after
+ * {@code projectMetaCacheTtl} seconds, the cache is off by default. Until then, a change of the
+ * project properties or of the quota is not seen by new connections, unless
+ * {@link OdpsConnection#invalidateProjectMetaCache()} drops the entries of a connection.
+ * <p>
+ * The quota info is mutable, each connection sets its own fallback on it, so it is copied in and
+ * out of the cache.
+ */
+class ProjectMetaCache {
+
+  static final int MAX_ENTRIES = 1024;
+
+  private static final CacheStats STATS = new CacheStats();
+  private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+  private ProjectMetaCache() {
+  }
+
+  /**
+   * @return the properties of the project, or null when they are not cached or expired
+   */
+  static ProjectMeta getProject(String key) {
+    return (ProjectMeta) get(key);
+  }
+
+  static void putProject(String key, ProjectMeta meta, long ttlMillis) {
+    put(key, meta, ttlMillis);
+  }
+
+  /**
+   * @return the MaxQA info of the quota, or null when it is not cached or expired
+   */
+  static MaxQAConnInfo getMaxQAConnInfo(String key) {
+    MaxQAConnInfo info = (MaxQAConnInfo) get(key);
+    return info == null ? null : copy(info);
+  }
+
+  static void putMaxQAConnInfo(String key, MaxQAConnInfo info, long ttlMillis) {
+    if (ttlMillis > 0) {
+      put(key, copy(info), ttlMillis);
+    }
+  }
+
+  static void invalidate(String key) {
+    ENTRIES.remove(key);
+  }
+
+  static void invalidateAll() {
+    ENTRIES.clear();
+  }
+
+  static CacheStats getStats() {
+    return STATS;
+  }
+
+  private static Object get(String key) {
+    Entry entry = ENTRIES.get(key);
+    if (entry == null) {
+      STATS.recordMiss();
+      return null;
+    }
+    if (entry.expiresAt <= System.currentTimeMillis()) {
+      ENTRIES.remove(key, entry);
+      STATS.recordEviction();
+      STATS.recordMiss();
+      return null;
+    }
+    STATS.recordHit();
+    return entry.value;
+  }
+
+  private static void put(String key, Object value, long ttlMillis) {
+    if (ttlMillis <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (ENTRIES.size() >= MAX_ENTRIES) {
+      ENTRIES.values().removeIf(entry -> entry.expiresAt <= now);
+    }
+    if (ENTRIES.size() < MAX_ENTRIES) {
+      ENTRIES.put(key, new Entry(value, now + ttlMillis));
+    }
+  }
+
+  private static MaxQAConnInfo copy(MaxQAConnInfo info) {
+    Gson gson = GsonObjectBuilder.get();
+    return gson.fromJson(gson.toJson(info), MaxQAConnInfo.class);
+  }
+
+  /**
+   * The properties of a project read by a connection, null when the project does not set them.
+   */
+  static class ProjectMeta {
+
+    final String schemaModelEnabled;
+    final String timeZone;
+
+    ProjectMeta(String schemaModelEnabled, String timeZone) {
+      this.schemaModelEnabled = schemaModelEnabled;
+      this.timeZone = timeZone;
+    }
+  }
+
+  private static class Entry {
+
+    final Object value;
+    final long expiresAt;
+
+    Entry(Object value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.aliyun.odps.jdbc.utils.OdpsLogger;
+import com.aliyun.odps.sqa.SQLExecutor;
+import com.aliyun.odps.sqa.SQLExecutorBuilder;
+
+/**
+ * The executors the statements of a connection run on, so that statements executed concurrently
+ * are not serialized on the executor of the connection.
+ * <p>
+ * The executor of the connection is handed out first. When it is in use, a statement gets an idle
+ * executor cloned from the builder of the connection, built on first need up to the size of the
+ * pool. Once they are all in use, or when building one fails, the executor of the connection is
+ * shared as before, so a statement never waits for another one to be closed.
+ */
+class SQLExecutorPool {
+
+  private final SQLExecutorBuilder builder;
+  private final SQLExecutor shared;
+  private final int maxSize;
+  private final OdpsLogger log;
+
+  // guarded by this
+  private int sharedUsers;
+  private final Deque<SQLExecutor> idle = new ArrayDeque<>();
+  private final Set<SQLExecutor> built = Collections.newSetFromMap(new IdentityHashMap<>());
+  private int building;
+  private boolean closed;
+
+  /**
+   * @param maxSize number of executors including the shared one, 1 or less shares it between all
+   *                the statements
+   */
+  SQLExecutorPool(SQLExecutorBuilder builder, SQLExecutor shared, int maxSize, OdpsLogger log) {
+    this.builder = builder;
+    this.shared = shared;
+    this.maxSize = Math.max(1, maxSize);
+    this.log = log;
+  }
+
+  /**
+   * @return an executor to run a statement on until it is given back by {@link #release}
+   */
+  SQLExecutor borrow() {
+    synchronized (this) {
+      if (sharedUsers == 0 || closed) {
+        sharedUsers++;
+        return shared;
+      }
+      SQLExecutor executor = idle.pollFirst();
+      if (executor != null) {
+        return executor;
+      }
+      if (built.size() + building + 1 >= maxSize) {
+        sharedUsers++;
+        return shared;
+      }
+      building++;
+    }
+
+    SQLExecutor executor = null;
+    try {
+      executor = builder.clone().build();
+    } catch (Exception e) {
+      log.error("rebuild sql executor failed.", e);
+    }
+    boolean discard = false;
+    synchronized (this) {
+      building--;
+      if (executor == null || closed) {
+        discard = executor != null;
+        sharedUsers++;
+      } else {
+        built.add(executor);
+        return executor;
+      }
+    }
+    if (discard) {
+      executor.close();
+    }
+    return shared;
+  }
+
+  void release(SQLExecutor executor) {
+    boolean discard;
+    synchronized (this) {
+      if (executor == shared) {
+        sharedUsers--;
+        return;
+      }
+      if (!built.contains(executor)) {
+        return;
+      }
+      discard = closed;
+      if (!discard) {
+        idle.addFirst(executor);
+      }
+    }
+    if (discard) {
+      executor.close();
+    }
+  }
+
+  /**
+   * Close the executors built by the pool, the ones in use are closed when released.
+   */
+  void close() {
+    List<SQLExecutor> toClose;
+    synchronized (this) {
+      closed = true;
+      toClose = new ArrayList<>(idle);
+      idle.clear();
+    }
+    for (SQLExecutor executor : toClose) {
+      executor.close();
+    }
+  }
+
+  synchronized int size() {
+    return built.size() + 1;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.aliyun.odps.jdbc.utils.SqlLexer;
+
+/**
+ * The leading SET statements of the recent sqls of a connection, most recently used first. Tools
+ * prepending the same SET statements to every query only have them parsed once.
+ * <p>
+ * A sql is matched against the prefixes in turn, the list is kept short so that a miss stays
+ * cheap.
+ */
+class SettingsPrefixCache implements SqlLexer.SettingsCache {
+
+  private final int capacity;
+  private final CacheStats stats = new CacheStats();
+  private final List<SqlLexer.SettingsPrefix> prefixes = new ArrayList<>();
+
+  SettingsPrefixCache(int capacity) {
+    this.capacity = capacity;
+  }
+
+  @Override
+  public synchronized SqlLexer.SettingsPrefix find(String sql) {
+    for (int i = 0; i < prefixes.size(); i++) {
+      SqlLexer.SettingsPrefix prefix = prefixes.get(i);
+      if (sql.startsWith(prefix.getText())) {
+        if (i > 0) {
+          prefixes.remove(i);
+          prefixes.add(0, prefix);
+        }
+        stats.recordHit();
+        return prefix;
+      }
+    }
+    stats.recordMiss();
+    return null;
+  }
+
+  @Override
+  public synchronized void put(SqlLexer.SettingsPrefix prefix) {
+    prefixes.add(0, prefix);
+    if (prefixes.size() > capacity) {
+      prefixes.remove(prefixes.size() - 1);
+      stats.recordEviction();
+    }
+  }
+
+  CacheStats getStats() {
+    return stats;
+  }
+}
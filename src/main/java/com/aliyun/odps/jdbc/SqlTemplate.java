@@ -0,0 +1,271 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.TimeZone;
+import java.util.function.Predicate;
+
+import com.aliyun.odps.data.Binary;
+import com.aliyun.odps.data.Char;
+import com.aliyun.odps.data.Varchar;
+import com.aliyun.odps.jdbc.utils.JdbcColumn;
+import com.aliyun.odps.jdbc.utils.SqlLexer;
+
+/**
+ * A prepared SQL compiled into the literal segments around its placeholders, so that executing it
+ * again only appends the segments and the parameters into one buffer. Templates are immutable and
+ * cached by the connection, see {@link OdpsConnection#getSqlTemplate(String)}.
+ * <p>
+ * Parameters are rendered as ODPS literals, see https://help.aliyun.com/document_detail/159541.html
+ * <ul>
+ * <li>java.sql.Date -> odps Date</li>
+ * <li>java.sql.Time -> odps DateTime</li>
+ * <li>java.sql.Timestamp -> odps Timestamp</li>
+ * <li>java.util.Date -> odps Date</li>
+ * <li>java.time.LocalDate -> odps Date</li>
+ * <li>java.time.ZonedDateTime -> odps DateTime</li>
+ * <li>java.time.Instant -> odps Timestamp</li>
+ * </ul>
+ */
+class SqlTemplate {
+
+  // immutable, so shared by all the threads instead of thread-local copies
+  private static final DateTimeFormatter DATE_FORMAT =
+      DateTimeFormatter.ofPattern(JdbcColumn.ODPS_DATE_FORMAT);
+  private static final DateTimeFormatter DATETIME_FORMAT =
+      DateTimeFormatter.ofPattern(JdbcColumn.ODPS_DATETIME_FORMAT);
+  private static final DateTimeFormatter LOCAL_DATE_FORMAT =
+      DATE_FORMAT.withZone(ZoneId.systemDefault());
+  private static final DateTimeFormatter ZONED_DATETIME_FORMAT =
+      DATETIME_FORMAT.withZone(ZoneId.systemDefault());
+  private static final DateTimeFormatter ZONED_TIMESTAMP_FORMAT =
+      DateTimeFormatter.ofPattern(JdbcColumn.ODPS_TIMESTAMP_FORMAT)
+          .withZone(ZoneId.systemDefault());
+
+  private enum Kind {
+    BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, DECIMAL, STRING, BYTES, TIMESTAMP, SQL_DATE, SQL_TIME,
+    UTIL_DATE, LOCAL_DATE, ZONED_DATETIME, INSTANT, BOOLEAN, BINARY, CHAR, UNKNOWN
+  }
+
+  // the kind of literal of each class of parameter, resolved once per class
+  private static final ClassValue<Kind> KINDS = new ClassValue<Kind>() {
+    @Override
+    protected Kind computeValue(Class<?> type) {
+      return kindOf(type);
+    }
+  };
+
+  private final String[] segments;
+  private final int length;
+
+  private SqlTemplate(String[] segments) {
+    this.segments = segments;
+    int length = 0;
+    for (String segment : segments) {
+      length += segment.length();
+    }
+    this.length = length;
+  }
+
+  static SqlTemplate compile(String sql) {
+    int[] offsets = SqlLexer.lex(sql, false).getPlaceholderOffsets();
+    String[] segments = new String[offsets.length + 1];
+    int start = 0;
+    for (int i = 0; i < offsets.length; i++) {
+      segments[i] = sql.substring(start, offsets[i]);
+      start = offsets[i] + 1;
+    }
+    segments[offsets.length] = sql.substring(start);
+    return new SqlTemplate(segments);
+  }
+
+  int getParameterCount() {
+    return segments.length - 1;
+  }
+
+  /**
+   * @param batch           the parameters of its current row replace the placeholders
+   * @param injectionCheck  tells whether a string parameter is rejected
+   * @throws SQLException when a string parameter is rejected by the injection check
+   */
+  String render(ParameterBatchBuffer batch, String charset, TimeZone timeZone,
+                Predicate<String> injectionCheck) throws SQLException {
+    if (segments.length == 1) {
+      return segments[0];
+    }
+    if (batch.getBoundCount() != getParameterCount()) {
+      throw new SQLException("wrong number of parameters.");
+    }
+
+    StringBuilder sql = new StringBuilder(length + 16 * getParameterCount());
+    sql.append(segments[0]);
+    for (int i = 1; i < segments.length; i++) {
+      appendLiteral(sql, batch.getCurrent(i - 1), charset, timeZone, injectionCheck);
+      sql.append(segments[i]);
+    }
+    return sql.toString();
+  }
+
+  static void appendLiteral(StringBuilder sql, Object x, String charset, TimeZone timeZone,
+                            Predicate<String> injectionCheck) throws SQLException {
+    if (x == null) {
+      sql.append("NULL");
+      return;
+    }
+    switch (KINDS.get(x.getClass())) {
+      case BYTE:
+        sql.append(((Byte) x).byteValue()).append('Y');
+        break;
+      case SHORT:
+        sql.append(((Short) x).shortValue()).append('S');
+        break;
+      case INT:
+        sql.append(((Integer) x).intValue());
+        break;
+      case LONG:
+        sql.append(((Long) x).longValue()).append('L');
+        break;
+      case FLOAT:
+        sql.append(((Float) x).floatValue()).append('f');
+        break;
+      case DOUBLE:
+        sql.append(((Double) x).doubleValue());
+        break;
+      case DECIMAL:
+        sql.append(x).append("BD");
+        break;
+      case STRING:
+      case CHAR:
+        appendString(sql, x.toString(), injectionCheck);
+        break;
+      case BYTES:
+        if (charset == null) {
+          throw new SQLException("charset is null");
+        }
+        try {
+          appendString(sql, new String((byte[]) x, charset), injectionCheck);
+        } catch (UnsupportedEncodingException e) {
+          throw new SQLException(e.getMessage(), e);
+        }
+        break;
+      case TIMESTAMP:
+        sql.append("TIMESTAMP'").append(x).append('\'');
+        break;
+      case SQL_DATE:
+      case UTIL_DATE:
+        // MaxCompute DATE, in the time zone of the connection
+        sql.append("DATE'");
+        DATE_FORMAT.formatTo(
+            Instant.ofEpochMilli(((java.util.Date) x).getTime()).atZone(timeZone.toZoneId()), sql);
+        sql.append('\'');
+        break;
+      case SQL_TIME:
+        sql.append("DATETIME'");
+        DATETIME_FORMAT.formatTo(
+            Instant.ofEpochMilli(((java.util.Date) x).getTime()).atZone(timeZone.toZoneId()), sql);
+        sql.append('\'');
+        break;
+      case LOCAL_DATE:
+        sql.append("DATE'");
+        LOCAL_DATE_FORMAT.formatTo((LocalDate) x, sql);
+        sql.append('\'');
+        break;
+      case ZONED_DATETIME:
+        sql.append("DATETIME'");
+        ZONED_DATETIME_FORMAT.formatTo((ZonedDateTime) x, sql);
+        sql.append('\'');
+        break;
+      case INSTANT:
+        sql.append("TIMESTAMP'");
+        ZONED_TIMESTAMP_FORMAT.formatTo((Instant) x, sql);
+        sql.append('\'');
+        break;
+      case BOOLEAN:
+        sql.append((Boolean) x ? "TRUE" : "FALSE");
+        break;
+      case BINARY:
+        sql.append("unhex('").append(x).append("')");
+        break;
+      default:
+        throw new SQLException("unrecognized Java class: " + x.getClass().getName());
+    }
+  }
+
+  private static void appendString(StringBuilder sql, String value,
+                                   Predicate<String> injectionCheck) throws SQLException {
+    if (injectionCheck.test(value)) {
+      throw new SQLException("string parameter rejected by the SQL injection check, set "
+                             + "skipSqlInjectCheck=true to bind it as is");
+    }
+    sql.append('\'').append(value).append('\'');
+  }
+
+  private static Kind kindOf(Class<?> type) {
+    if (type == Byte.class) {
+      return Kind.BYTE;
+    } else if (type == Short.class) {
+      return Kind.SHORT;
+    } else if (type == Integer.class) {
+      return Kind.INT;
+    } else if (type == Long.class) {
+      return Kind.LONG;
+    } else if (type == Float.class) {
+      return Kind.FLOAT;
+    } else if (type == Double.class) {
+      return Kind.DOUBLE;
+    } else if (BigDecimal.class.isAssignableFrom(type)) {
+      return Kind.DECIMAL;
+    } else if (type == String.class) {
+      return Kind.STRING;
+    } else if (type == byte[].class) {
+      return Kind.BYTES;
+    } else if (java.sql.Timestamp.class.isAssignableFrom(type)) {
+      return Kind.TIMESTAMP;
+    } else if (java.sql.Date.class.isAssignableFrom(type)) {
+      return Kind.SQL_DATE;
+    } else if (java.sql.Time.class.isAssignableFrom(type)) {
+      return Kind.SQL_TIME;
+    } else if (java.util.Date.class.isAssignableFrom(type)) {
+      return Kind.UTIL_DATE;
+    } else if (LocalDate.class.isAssignableFrom(type)) {
+      return Kind.LOCAL_DATE;
+    } else if (ZonedDateTime.class.isAssignableFrom(type)) {
+      return Kind.ZONED_DATETIME;
+    } else if (Instant.class.isAssignableFrom(type)) {
+      return Kind.INSTANT;
+    } else if (type == Boolean.class) {
+      return Kind.BOOLEAN;
+    } else if (Binary.class.isAssignableFrom(type)) {
+      return Kind.BINARY;
+    } else if (Varchar.class.isAssignableFrom(type) || Char.class.isAssignableFrom(type)) {
+      return Kind.CHAR;
+    }
+    return Kind.UNKNOWN;
+  }
+}
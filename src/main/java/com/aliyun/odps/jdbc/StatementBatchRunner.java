@@ -0,0 +1,331 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import com.aliyun.odps.Instance;
+import com.aliyun.odps.OdpsException;
+import com.aliyun.odps.jdbc.utils.SqlLexer;
+import com.aliyun.odps.jdbc.utils.Utils;
+import com.aliyun.odps.sqa.ExecuteMode;
+import com.aliyun.odps.sqa.SQLExecutor;
+
+/**
+ * Runs the statements batched by {@link OdpsStatement#addBatch(String)}, one by one by default.
+ * <p>
+ * In offline mode with {@code batchConcurrentInserts} enabled, consecutive INSERT statements which
+ * do not mention each other's target tables are submitted together as separate instances, up to
+ * {@link #MAX_CONCURRENT_INSTANCES}, and waited for through the {@link InstanceStatusPoller}. Any
+ * other statement waits for the ones submitted before it, and is waited for before the next one is
+ * submitted. The check only reads the text of the statements, it does not see the tables read
+ * through views or functions, hence the option. SET and USE statements apply to the statements
+ * after them, as they would when executed one by one.
+ * <p>
+ * Each statement keeps an instance of its own, so that its update count can be read from its task
+ * summary. The statements are submitted on the executor of the statement, like the ones executed
+ * one by one, and in interactive mode they are run one by one on it.
+ * <p>
+ * {@link #cancel()} stops the instances running and fails the statements not submitted yet, it is
+ * called when the statement is cancelled or times out.
+ * <p>
+ * When a statement fails, the update counts of all the statements are reported, with
+ * {@link Statement#EXECUTE_FAILED} for the ones which failed or did not run.
+ */
+class StatementBatchRunner {
+
+  static final int MAX_CONCURRENT_INSTANCES = 16;
+
+  // the table a single INSERT statement writes, after the leading comments
+  private static final Pattern INSERT_TARGET = Pattern.compile(
+      "(?:\\s|--[^\\n]*(?:\\n|$)|/\\*.*?\\*/)*insert\\s+(?:into|overwrite)\\s+(?:table\\s+)?"
+      + "([\\w.`$]+)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+  private final OdpsStatement statement;
+  private final OdpsConnection conn;
+
+  // the statements submitted and not waited for yet
+  private final List<Submitted> submitted = new ArrayList<>();
+  private boolean concurrent;
+  private int[] counts;
+  // the first statement which failed
+  private int failedIndex = -1;
+  private String failedSql;
+  private Exception failure;
+  // the instances submitted and not waited for yet, stopped by cancel
+  private final Set<Instance> running = ConcurrentHashMap.newKeySet();
+  private volatile boolean cancelled;
+
+  StatementBatchRunner(OdpsStatement statement) {
+    this.statement = statement;
+    this.conn = statement.connHandle;
+  }
+
+  int[] run(List<String> sqls) throws SQLException {
+    counts = new int[sqls.size()];
+    // set as the statements complete
+    Arrays.fill(counts, Statement.EXECUTE_FAILED);
+    boolean offline = statement.getExecuteMode() == ExecuteMode.OFFLINE;
+    concurrent = offline && conn.isBatchConcurrentInserts();
+    for (int i = 0; i < sqls.size(); i++) {
+      Properties properties = new Properties();
+      SqlLexer.Result lexed = statement.lex(sqls.get(i), properties);
+      try {
+        if (lexed.getKind() == SqlLexer.StatementKind.EMPTY) {
+          // only settings, set for the statements after it
+          statement.processSetClause(properties);
+          counts[i] = 0;
+          continue;
+        }
+        statement.processSetClauseExtra(properties);
+        if (statement.processUseClause(lexed)) {
+          counts[i] = 0;
+          continue;
+        }
+        checkCancelled();
+        if (offline) {
+          submit(i, lexed, properties);
+        } else {
+          counts[i] = statement.executeBatchedUpdate(lexed.getRemainingQuery(), properties);
+        }
+      } catch (OdpsException | SQLException e) {
+        fail(i, sqls.get(i), e);
+      }
+      if (failure != null) {
+        // stop submitting, but wait for the statements already running
+        awaitSubmitted();
+        throw batchUpdateException();
+      }
+    }
+    awaitSubmitted();
+    if (failure != null) {
+      throw batchUpdateException();
+    }
+    return counts;
+  }
+
+  private void submit(int index, SqlLexer.Result lexed, Properties properties)
+      throws OdpsException, SQLException {
+    String sql = lexed.getRemainingQuery();
+    String target = !concurrent || lexed.hasMoreStatements() ? null : insertTarget(sql);
+    if (target == null || submitted.size() >= MAX_CONCURRENT_INSTANCES
+        || conflicts(sql, target)) {
+      awaitSubmitted();
+      if (failure != null) {
+        return;
+      }
+      // the batch may have been cancelled while waiting
+      checkCancelled();
+    }
+
+    if (!sql.trim().endsWith(";")) {
+      sql += ";";
+    }
+    Map<String, String> settings = statement.buildSettings(properties);
+    // the executor keeps the project, hints and quota of the connection, or of the settings of
+    // the statement, only its last instance is read here, before the next statement runs on it
+    SQLExecutor executor = statement.sqlExecutor;
+    executor.run(sql, settings);
+    Instance instance = executor.getInstance();
+    conn.log.info("Run batched SQL: " + sql + ", InstanceId: " + instance.getId());
+    running.add(instance);
+    if (cancelled) {
+      // cancelled while it was submitted
+      stop(instance);
+    }
+    submitted.add(new Submitted(index, sql, target, instance,
+                                InstanceStatusPoller.whenTerminated(instance,
+                                                                    conn.getPollingMetrics())));
+    if (target == null) {
+      // only inserts run along other statements
+      awaitSubmitted();
+    }
+  }
+
+  /**
+   * Stop the instances running and the statements after them, the batch fails with the first
+   * statement which did not complete.
+   */
+  void cancel() {
+    cancelled = true;
+    for (Instance instance : running) {
+      stop(instance);
+    }
+  }
+
+  private void checkCancelled() throws SQLException {
+    if (cancelled) {
+      if (statement.isTimedOut()) {
+        throw new SQLTimeoutException(statement.timeoutMessage());
+      }
+      throw new SQLException("The batch has been cancelled");
+    }
+  }
+
+  private void stop(Instance instance) {
+    try {
+      // stopping an instance which terminated fails, see OdpsStatement#cancel
+      if (!instance.isTerminated()) {
+        instance.stop();
+        conn.log.info("submit cancel to batched instance id=" + instance.getId());
+      }
+    } catch (OdpsException e) {
+      conn.log.warn("Failed to cancel batched instance id=" + instance.getId() + ": "
+                    + e.getMessage());
+    }
+  }
+
+  /**
+   * @return whether the statement reads or writes a table written by a statement submitted, or
+   * writes a table they mention
+   */
+  private boolean conflicts(String sql, String target) {
+    String lowerSql = sql.toLowerCase(Locale.ROOT);
+    for (Submitted other : submitted) {
+      if (mentions(lowerSql, other.target) || mentions(other.lowerSql, target)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void awaitSubmitted() {
+    for (Submitted s : submitted) {
+      try {
+        InstanceStatusPoller.await(s.terminated, s.instance);
+        s.instance.waitForSuccess();
+        counts[s.index] = updateCount(s.instance);
+      } catch (OdpsException e) {
+        fail(s.index, s.sql, e);
+      } finally {
+        running.remove(s.instance);
+      }
+    }
+    submitted.clear();
+  }
+
+  private int updateCount(Instance instance) {
+    Instance.TaskSummary taskSummary = null;
+    try {
+      taskSummary = instance.getTaskSummary(OdpsStatement.JDBC_SQL_OFFLINE_TASK_NAME);
+    } catch (OdpsException e) {
+      // update count become uncertain here
+      conn.log.warn("Failed to get TaskSummary: instance_id=" + instance.getId() + ", taskname="
+                    + OdpsStatement.JDBC_SQL_OFFLINE_TASK_NAME);
+    }
+    if (taskSummary == null) {
+      return 0;
+    }
+    int count = Utils.getSinkCountFromTaskSummary(
+        StringEscapeUtils.unescapeJava(taskSummary.getJsonSummary()));
+    return count >= 0 ? count : 0;
+  }
+
+  private void fail(int index, String sql, Exception e) {
+    conn.log.error("Run batched SQL failed: " + sql, e);
+    counts[index] = Statement.EXECUTE_FAILED;
+    if (failure == null || index < failedIndex) {
+      failedIndex = index;
+      failedSql = sql;
+      failure = e;
+    }
+  }
+
+  /**
+   * @return the failure of the first statement which failed, with the update counts of all the
+   * statements, since the ones submitted along with it may have succeeded
+   */
+  private BatchUpdateException batchUpdateException() {
+    return new BatchUpdateException(
+        "execute sql [ " + failedSql + " ] failed. " + failure.getMessage(), null, 0,
+        counts.clone(), failure);
+  }
+
+  /**
+   * @return the table written by a single INSERT statement in lower case, without its project or
+   * schema, or null for other statements
+   */
+  static String insertTarget(String sql) {
+    Matcher matcher = INSERT_TARGET.matcher(sql);
+    if (!matcher.lookingAt()) {
+      return null;
+    }
+    String name = matcher.group(1).replace("`", "");
+    return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * @return whether the lower case sql contains the table name as a word
+   */
+  static boolean mentions(String lowerSql, String table) {
+    int from = 0;
+    int i;
+    while ((i = lowerSql.indexOf(table, from)) >= 0) {
+      int end = i + table.length();
+      if ((i == 0 || !isNamePart(lowerSql.charAt(i - 1)))
+          && (end == lowerSql.length() || !isNamePart(lowerSql.charAt(end)))) {
+        return true;
+      }
+      from = i + 1;
+    }
+    return false;
+  }
+
+  private static boolean isNamePart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+  }
+
+  private static class Submitted {
+
+    final int index;
+    final String sql;
+    final String lowerSql;
+    final String target;
+    final Instance instance;
+    final CompletableFuture<Void> terminated;
+
+    Submitted(int index, String sql, String target, Instance instance,
+              CompletableFuture<Void> terminated) {
+      this.index = index;
+      this.sql = sql;
+      this.lowerSql = sql.toLowerCase(Locale.ROOT);
+      this.target = target;
+      this.instance = instance;
+      this.terminated = terminated;
+    }
+  }
+}
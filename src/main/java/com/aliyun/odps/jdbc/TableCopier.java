@@ -0,0 +1,335 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.aliyun.odps.OdpsException;
+import com.aliyun.odps.OdpsType;
+import com.aliyun.odps.PartitionSpec;
+import com.aliyun.odps.TableSchema;
+import com.aliyun.odps.data.Record;
+import com.aliyun.odps.jdbc.utils.transformer.to.jdbc.AbstractToJdbcDateTypeTransformer;
+import com.aliyun.odps.jdbc.utils.transformer.to.jdbc.AbstractToJdbcTransformer;
+import com.aliyun.odps.jdbc.utils.transformer.to.jdbc.ToJdbcTransformerFactory;
+import com.aliyun.odps.tunnel.TableTunnel;
+import com.aliyun.odps.tunnel.io.CompressOption;
+import com.aliyun.odps.tunnel.io.TunnelRecordReader;
+import com.aliyun.odps.type.TypeInfo;
+import com.aliyun.odps.utils.StringUtils;
+
+/**
+ * Copies a table for {@link OdpsConnection#copyTable}.
+ * <p>
+ * The source is downloaded by a tunnel session of the source connection, cut into one split per
+ * reader thread. Readers convert the records into {@link ParameterBatchBuffer}s of
+ * {@code batchRows} rows and put them in a bounded queue, writers take them from the queue and
+ * upload each one as a block through their own {@link DataUploader} on the target connection. The
+ * uploaders are committed once every split has been written, except for the sessions they rotate,
+ * and closed without a commit when the copy fails.
+ */
+class TableCopier {
+
+  // tells a writer that all the readers are done
+  private static final ParameterBatchBuffer END = new ParameterBatchBuffer(0);
+
+  private final OdpsConnection source;
+  private final OdpsConnection target;
+  private final TableCopyOptions options;
+
+  private int[] sourceIndexes;
+  private TypeInfo[] sourceTypes;
+  // null when the value is copied as is
+  private AbstractToJdbcTransformer[] converters;
+
+  TableCopier(OdpsConnection source, OdpsConnection target, TableCopyOptions options) {
+    this.source = source;
+    this.target = target;
+    this.options = options;
+  }
+
+  TableCopyProgress copy(String sourceTable, String targetTable) throws SQLException {
+    String[] sourceName = source.splitTableName(sourceTable);
+    String[] targetName = target.splitTableName(targetTable);
+    Map<String, String> mapping = options.getColumnMapping();
+    List<String> targetColumns = mapping == null ? null : new ArrayList<>(mapping.keySet());
+    int readers = Math.max(options.getReaderThreads(), 1);
+    int writers = Math.max(options.getWriterThreads(), 1);
+    int batchRows = Math.max(options.getBatchRows(), 1);
+
+    TableTunnel.DownloadSession session;
+    List<DataUploader> uploaders = new ArrayList<>(writers);
+    try {
+      try {
+        TableTunnel.DownloadSessionBuilder builder =
+            new TableTunnel(source.getOdps()).buildDownloadSession(sourceName[0], sourceName[2]);
+        if (sourceName[1] != null) {
+          builder.setSchemaName(sourceName[1]);
+        }
+        if (!StringUtils.isNullOrEmpty(options.getSourcePartition())) {
+          builder.setPartitionSpec(new PartitionSpec(options.getSourcePartition()));
+        }
+        session = builder.build();
+        source.log.info("create download session id=" + session.getId() + ", "
+                        + session.getRecordCount() + " records");
+        for (int i = 0; i < writers; i++) {
+          uploaders.add(DataUploader.build(targetName[0], targetName[1], targetName[2],
+                                           options.getTargetPartition(), targetColumns, target));
+        }
+      } catch (OdpsException | IOException e) {
+        throw new SQLException(e.getMessage(), e);
+      }
+      resolveColumns(session.getSchema(), uploaders.get(0), mapping);
+
+      long total = session.getRecordCount();
+      readers = (int) Math.max(1, Math.min(readers, (total + batchRows - 1) / batchRows));
+      long splitSize = (total + readers - 1) / readers;
+
+      TableCopyProgress progress = new TableCopyProgress(total);
+      BlockingQueue<ParameterBatchBuffer> queue =
+          new ArrayBlockingQueue<>(Math.max(options.getQueueCapacity(), 1));
+      AtomicInteger runningReaders = new AtomicInteger(readers);
+      ExecutorService executor = Executors.newFixedThreadPool(readers + writers, r -> {
+        Thread t = new Thread(r, "odps-jdbc-table-copy");
+        t.setDaemon(true);
+        return t;
+      });
+      CompletionService<Void> tasks = new ExecutorCompletionService<>(executor);
+      try {
+        for (int i = 0; i < readers; i++) {
+          long start = i * splitSize;
+          long count = Math.max(0, Math.min(splitSize, total - start));
+          tasks.submit(() -> {
+            read(session, start, count, batchRows, queue, progress);
+            // the last reader lets every writer know that nothing more is coming
+            if (runningReaders.decrementAndGet() == 0) {
+              for (int j = 0; j < writers; j++) {
+                queue.put(END);
+              }
+            }
+            return null;
+          });
+        }
+        for (DataUploader uploader : uploaders) {
+          tasks.submit(() -> {
+            write(uploader, queue, progress);
+            return null;
+          });
+        }
+        for (int i = 0; i < readers + writers; i++) {
+          await(tasks);
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+
+      try {
+        for (DataUploader uploader : uploaders) {
+          uploader.commit();
+        }
+      } catch (OdpsException | IOException e) {
+        throw new SQLException(e.getMessage(), e);
+      }
+      progress.finish();
+      target.log.info("copied table " + sourceTable + " to " + targetTable + ": " + progress);
+      return progress;
+    } finally {
+      // releases what is left after a failure, commit() already released the rest
+      for (DataUploader uploader : uploaders) {
+        uploader.close();
+      }
+    }
+  }
+
+  private void resolveColumns(TableSchema sourceSchema, DataUploader uploader,
+                              Map<String, String> mapping) throws SQLException {
+    List<String> targetColumns = uploader.specificColumns;
+    int size = targetColumns.size();
+    sourceIndexes = new int[size];
+    sourceTypes = new TypeInfo[size];
+    converters = new AbstractToJdbcTransformer[size];
+    for (int i = 0; i < size; i++) {
+      String targetColumn = targetColumns.get(i);
+      String sourceColumn = mapping == null ? targetColumn : mapping.get(targetColumn);
+      if (sourceColumn == null || !sourceSchema.containsColumn(sourceColumn)) {
+        throw new SQLException("no source column for column " + targetColumn + " of table "
+                               + uploader.tableName);
+      }
+      sourceIndexes[i] = sourceSchema.getColumnIndex(sourceColumn);
+      sourceTypes[i] = sourceSchema.getColumn(sourceColumn).getTypeInfo();
+      converters[i] = converterFor(sourceTypes[i].getOdpsType(),
+                                   uploader.tableSchema.getColumn(targetColumn).getTypeInfo()
+                                       .getOdpsType());
+    }
+  }
+
+  private void read(TableTunnel.DownloadSession session, long start, long count, int batchRows,
+                    BlockingQueue<ParameterBatchBuffer> queue, TableCopyProgress progress)
+      throws Exception {
+    if (count == 0) {
+      return;
+    }
+    String charset = source.getCharset();
+    TimeZone timeZone = source.getTimezone();
+    CompressOption compressOption = source.getTunnelDownloadCompressOption();
+    TunnelRecordReader reader = compressOption == null
+        ? session.openRecordReader(start, count, true)
+        : session.openRecordReader(start, count, compressOption);
+    try {
+      ParameterBatchBuffer batch = new ParameterBatchBuffer(sourceIndexes.length);
+      Record record;
+      while ((record = reader.read()) != null) {
+        for (int i = 0; i < sourceIndexes.length; i++) {
+          batch.setObject(i, convert(record.get(sourceIndexes[i]), sourceTypes[i], converters[i],
+                                     charset, timeZone));
+        }
+        batch.addRow();
+        progress.rowsRead.incrementAndGet();
+        if (batch.getRowCount() >= batchRows) {
+          queue.put(batch);
+          batch = new ParameterBatchBuffer(sourceIndexes.length);
+        }
+      }
+      if (!batch.isEmpty()) {
+        queue.put(batch);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  private void write(DataUploader uploader, BlockingQueue<ParameterBatchBuffer> queue,
+                     TableCopyProgress progress) throws Exception {
+    Consumer<TableCopyProgress> listener = options.getProgressListener();
+    ParameterBatchBuffer batch;
+    while ((batch = queue.take()) != END) {
+      uploader.upload(batch);
+      progress.rowsWritten.addAndGet(batch.getRowCount());
+      progress.blocksWritten.incrementAndGet();
+      if (listener != null) {
+        listener.accept(progress);
+      }
+    }
+  }
+
+  /**
+   * @return the transformer converting values of the source type to the java type accepted by the
+   * target type, or null when the values can be copied as they are read
+   * @throws SQLException when the target type cannot be converted to
+   */
+  static AbstractToJdbcTransformer converterFor(OdpsType sourceType, OdpsType targetType)
+      throws SQLException {
+    // varchar and json values are only written from strings
+    if (sourceType == targetType && sourceType != OdpsType.VARCHAR
+        && sourceType != OdpsType.JSON) {
+      return null;
+    }
+    Class<?> jdbcClass;
+    switch (targetType) {
+      case TINYINT:
+        jdbcClass = byte.class;
+        break;
+      case SMALLINT:
+        jdbcClass = short.class;
+        break;
+      case INT:
+        jdbcClass = int.class;
+        break;
+      case BIGINT:
+        jdbcClass = long.class;
+        break;
+      case FLOAT:
+        jdbcClass = float.class;
+        break;
+      case DOUBLE:
+        jdbcClass = double.class;
+        break;
+      case DECIMAL:
+        jdbcClass = BigDecimal.class;
+        break;
+      case BOOLEAN:
+        jdbcClass = boolean.class;
+        break;
+      case STRING:
+      case VARCHAR:
+      case CHAR:
+      case JSON:
+        jdbcClass = String.class;
+        break;
+      case BINARY:
+        jdbcClass = byte[].class;
+        break;
+      case DATE:
+        jdbcClass = java.sql.Date.class;
+        break;
+      case DATETIME:
+      case TIMESTAMP:
+        jdbcClass = Timestamp.class;
+        break;
+      default:
+        throw new SQLException("cannot copy a column of type " + sourceType + " to " + targetType);
+    }
+    return ToJdbcTransformerFactory.getTransformer(jdbcClass);
+  }
+
+  static Object convert(Object value, TypeInfo sourceType, AbstractToJdbcTransformer converter,
+                        String charset, TimeZone timeZone) throws SQLException {
+    if (value == null || converter == null) {
+      return value;
+    }
+    if (converter instanceof AbstractToJdbcDateTypeTransformer) {
+      return ((AbstractToJdbcDateTypeTransformer) converter)
+          .transform(value, charset, null, timeZone, sourceType);
+    }
+    return converter.transform(value, charset, sourceType);
+  }
+
+  private static void await(CompletionService<Void> tasks) throws SQLException {
+    try {
+      tasks.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("interrupted while copying", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      }
+      throw new SQLException(cause.getMessage(), cause);
+    }
+  }
+}
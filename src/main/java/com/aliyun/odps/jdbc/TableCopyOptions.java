@@ -0,0 +1,138 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Options of {@link OdpsConnection#copyTable}.
+ * <p>
+ * By default all the columns of the target table are copied from the source columns of the same
+ * name, with {@code readerThreads} splits downloaded in parallel and {@code writerThreads} upload
+ * sessions written in parallel.
+ */
+public class TableCopyOptions {
+
+  private String sourcePartition;
+  private String targetPartition;
+  private Map<String, String> columnMapping;
+  private int readerThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+  private int writerThreads = 2;
+  private int batchRows = 10000;
+  private int queueCapacity = 8;
+  private Consumer<TableCopyProgress> progressListener;
+
+  public String getSourcePartition() {
+    return sourcePartition;
+  }
+
+  /**
+   * Partition spec of the source, like {@code p1='a',p2='b'}, the whole table when not set
+   */
+  public TableCopyOptions setSourcePartition(String sourcePartition) {
+    this.sourcePartition = sourcePartition;
+    return this;
+  }
+
+  public String getTargetPartition() {
+    return targetPartition;
+  }
+
+  /**
+   * Partition spec of the target, created if it does not exist
+   */
+  public TableCopyOptions setTargetPartition(String targetPartition) {
+    this.targetPartition = targetPartition;
+    return this;
+  }
+
+  public Map<String, String> getColumnMapping() {
+    return columnMapping;
+  }
+
+  /**
+   * Target column to source column, in the order of the map. Only the mapped target columns are
+   * written. Values are converted when the types of the two columns differ.
+   */
+  public TableCopyOptions setColumnMapping(Map<String, String> columnMapping) {
+    this.columnMapping = columnMapping;
+    return this;
+  }
+
+  public int getReaderThreads() {
+    return readerThreads;
+  }
+
+  public TableCopyOptions setReaderThreads(int readerThreads) {
+    this.readerThreads = readerThreads;
+    return this;
+  }
+
+  public int getWriterThreads() {
+    return writerThreads;
+  }
+
+  /**
+   * Number of upload sessions written in parallel, each one is committed at the end of the copy
+   */
+  public TableCopyOptions setWriterThreads(int writerThreads) {
+    this.writerThreads = writerThreads;
+    return this;
+  }
+
+  public int getBatchRows() {
+    return batchRows;
+  }
+
+  /**
+   * Number of rows uploaded as one block
+   */
+  public TableCopyOptions setBatchRows(int batchRows) {
+    this.batchRows = batchRows;
+    return this;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * Number of batches read but not yet written, readers wait when the queue is full
+   */
+  public TableCopyOptions setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+    return this;
+  }
+
+  public Consumer<TableCopyProgress> getProgressListener() {
+    return progressListener;
+  }
+
+  /**
+   * Called by the writer threads after each block, must be thread safe
+   */
+  public TableCopyOptions setProgressListener(Consumer<TableCopyProgress> progressListener) {
+    this.progressListener = progressListener;
+    return this;
+  }
+}
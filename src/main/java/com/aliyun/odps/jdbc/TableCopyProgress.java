@@ -0,0 +1,82 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a running {@link OdpsConnection#copyTable}, updated concurrently by the reader and
+ * writer threads. Once the copy has returned, it holds the final counts.
+ */
+public class TableCopyProgress {
+
+  private final long totalRows;
+  private final long startTime = System.currentTimeMillis();
+  private volatile long endTime = -1;
+
+  final AtomicLong rowsRead = new AtomicLong();
+  final AtomicLong rowsWritten = new AtomicLong();
+  final AtomicLong blocksWritten = new AtomicLong();
+
+  TableCopyProgress(long totalRows) {
+    this.totalRows = totalRows;
+  }
+
+  void finish() {
+    endTime = System.currentTimeMillis();
+  }
+
+  /**
+   * @return number of rows of the source
+   */
+  public long getTotalRows() {
+    return totalRows;
+  }
+
+  public long getRowsRead() {
+    return rowsRead.get();
+  }
+
+  public long getRowsWritten() {
+    return rowsWritten.get();
+  }
+
+  public long getBlocksWritten() {
+    return blocksWritten.get();
+  }
+
+  public long getElapsedMillis() {
+    return (endTime < 0 ? System.currentTimeMillis() : endTime) - startTime;
+  }
+
+  public double getRowsPerSecond() {
+    long elapsed = getElapsedMillis();
+    return elapsed == 0 ? 0 : getRowsWritten() * 1000.0 / elapsed;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d/%d rows read, %d rows written in %d blocks, %d ms, %.0f rows/s",
+                         getRowsRead(), totalRows, getRowsWritten(), getBlocksWritten(),
+                         getElapsedMillis(), getRowsPerSecond());
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the tunnel uploads of batch inserts, {@code copyIn} and
+ * {@code copyTable}.
+ * <p>
+ * Each uploader has its own metrics, which also add up into the metrics of its connection, see
+ * {@link OdpsPreparedStatement#getUploadMetrics()} and {@link OdpsConnection#getUploadMetrics()}.
+ * The values are updated concurrently and can be read at any time, {@link #toMap()} gives a flat
+ * snapshot for monitoring systems.
+ */
+public class UploadMetrics {
+
+  private final UploadMetrics parent;
+
+  private final LongAdder rows = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder blocks = new LongAdder();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder failedBlocks = new LongAdder();
+  private final LongAdder sessions = new LongAdder();
+  private final LongAdder commits = new LongAdder();
+
+  private final Histogram blockLatency = new Histogram();
+  private final Histogram commitLatency = new Histogram();
+  private final Histogram sessionCreateLatency = new Histogram();
+
+  /**
+   * @param parent metrics the values are also added to, or null
+   */
+  UploadMetrics(UploadMetrics parent) {
+    this.parent = parent;
+  }
+
+  void recordSessionCreated(long millis) {
+    for (UploadMetrics m = this; m != null; m = m.parent) {
+      m.sessions.increment();
+      m.sessionCreateLatency.record(millis);
+    }
+  }
+
+  void recordBlock(long rowCount, long byteCount, long millis) {
+    for (UploadMetrics m = this; m != null; m = m.parent) {
+      m.rows.add(rowCount);
+      m.bytes.add(byteCount);
+      m.blocks.increment();
+      m.blockLatency.record(millis);
+    }
+  }
+
+  void recordRetry() {
+    for (UploadMetrics m = this; m != null; m = m.parent) {
+      m.retries.increment();
+    }
+  }
+
+  void recordFailedBlock() {
+    for (UploadMetrics m = this; m != null; m = m.parent) {
+      m.failedBlocks.increment();
+    }
+  }
+
+  void recordCommit(long millis) {
+    for (UploadMetrics m = this; m != null; m = m.parent) {
+      m.commits.increment();
+      m.commitLatency.record(millis);
+    }
+  }
+
+  /**
+   * @return number of rows written
+   */
+  public long getRows() {
+    return rows.sum();
+  }
+
+  /**
+   * @return number of bytes written by the tunnel writers, estimated from the bound values for
+   * the upsert streams of transactional tables
+   */
+  public long getBytes() {
+    return bytes.sum();
+  }
+
+  /**
+   * @return number of blocks written, a block of an upsert session is one batch
+   */
+  public long getBlocks() {
+    return blocks.sum();
+  }
+
+  /**
+   * @return number of block writes retried after a failure
+   */
+  public long getRetries() {
+    return retries.sum();
+  }
+
+  /**
+   * @return number of blocks which failed after all the retries
+   */
+  public long getFailedBlocks() {
+    return failedBlocks.sum();
+  }
+
+  /**
+   * @return number of upload and upsert sessions created
+   */
+  public long getSessions() {
+    return sessions.sum();
+  }
+
+  /**
+   * @return number of sessions committed
+   */
+  public long getCommits() {
+    return commits.sum();
+  }
+
+  /**
+   * @return latency of the successful block writes, in milliseconds
+   */
+  public Histogram getBlockLatency() {
+    return blockLatency;
+  }
+
+  /**
+   * @return latency of the session commits, in milliseconds
+   */
+  public Histogram getCommitLatency() {
+    return commitLatency;
+  }
+
+  /**
+   * @return latency of the session creations, in milliseconds
+   */
+  public Histogram getSessionCreateLatency() {
+    return sessionCreateLatency;
+  }
+
+  /**
+   * @return the current values by name, e.g. {@code rows} or {@code block_latency_p99}
+   */
+  public Map<String, Number> toMap() {
+    Map<String, Number> map = new LinkedHashMap<>();
+    map.put("rows", getRows());
+    map.put("bytes", getBytes());
+    map.put("blocks", getBlocks());
+    map.put("retries", getRetries());
+    map.put("failed_blocks", getFailedBlocks());
+    map.put("sessions", getSessions());
+    map.put("commits", getCommits());
+    blockLatency.putAll(map, "block_latency");
+    commitLatency.putAll(map, "commit_latency");
+    sessionCreateLatency.putAll(map, "session_create_latency");
+    return map;
+  }
+
+  @Override
+  public String toString() {
+    return toMap().toString();
+  }
+
+  /**
+   * Latency histogram with fixed buckets from 1 ms to 1 min. Percentiles are the upper bound of
+   * the bucket they fall in.
+   */
+  public static class Histogram {
+
+    private static final long[] BOUNDS =
+        {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+    // the last bucket holds the values over the last bound
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long millis) {
+      int i = 0;
+      while (i < BOUNDS.length && millis > BOUNDS[i]) {
+        i++;
+      }
+      buckets.incrementAndGet(i);
+      count.increment();
+      sum.add(millis);
+      max.accumulate(millis);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public long getSum() {
+      return sum.sum();
+    }
+
+    public long getMax() {
+      return max.get();
+    }
+
+    public double getMean() {
+      long n = getCount();
+      return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return upper bound of the bucket of the quantile, the max for the last bucket, 0 when empty
+     */
+    public long getPercentile(double quantile) {
+      long n = 0;
+      long[] counts = new long[buckets.length()];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = buckets.get(i);
+        n += counts[i];
+      }
+      if (n == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(quantile * n);
+      long seen = 0;
+      for (int i = 0; i < BOUNDS.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(BOUNDS[i], getMax());
+        }
+      }
+      return getMax();
+    }
+
+    /**
+     * @return upper bounds of the buckets in milliseconds, the last bucket has no bound
+     */
+    public static long[] getBucketBounds() {
+      return BOUNDS.clone();
+    }
+
+    /**
+     * @return number of values in each bucket, one more than the bounds
+     */
+    public long[] getBucketCounts() {
+      long[] counts = new long[buckets.length()];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = buckets.get(i);
+      }
+      return counts;
+    }
+
+    void putAll(Map<String, Number> map, String prefix) {
+      map.put(prefix + "_count", getCount());
+      map.put(prefix + "_sum", getSum());
+      map.put(prefix + "_max", getMax());
+      map.put(prefix + "_p50", getPercentile(0.5));
+      map.put(prefix + "_p99", getPercentile(0.99));
+    }
+  }
+}
@@ -0,0 +1,341 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.aliyun.odps.OdpsException;
+import com.aliyun.odps.Table;
+import com.aliyun.odps.tunnel.TunnelException;
+
+/**
+ * Per-connection cache for batched inserts.
+ * <p>
+ * Parsed {@link InsertTemplate}s are always cached, keyed by the SQL and the default project.
+ * When {@code uploadSessionCache} is enabled, table metadata and uploaders are cached as well, so
+ * the statements preparing the same INSERT share one upload session per table and partition. The
+ * shared sessions are committed on {@link OdpsConnection#commitUploadSessions()}, when the
+ * connection is closed, or once they have been idle for {@code uploadSessionIdleTimeout} seconds.
+ */
+class UploaderCache {
+
+  private static final int MAX_TEMPLATES = 256;
+
+  /**
+   * Driver-wide timer committing idle sessions, its thread is a daemon.
+   */
+  private static volatile ScheduledExecutorService idleReaper;
+
+  private final OdpsConnection conn;
+  private final boolean sessionCacheEnabled;
+  private final long idleTimeoutMillis;
+
+  private final Map<String, InsertTemplate> templates =
+      new LinkedHashMap<String, InsertTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, InsertTemplate> eldest) {
+          return size() > MAX_TEMPLATES;
+        }
+      };
+  private final Map<String, Boolean> acidTables = new ConcurrentHashMap<>();
+
+  // guarded by this
+  private final Map<String, CachedUploader> uploaders = new HashMap<>();
+  private ScheduledFuture<?> idleCheck;
+
+  UploaderCache(OdpsConnection conn, boolean sessionCacheEnabled, long idleTimeoutSeconds) {
+    this.conn = conn;
+    this.sessionCacheEnabled = sessionCacheEnabled;
+    this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+  }
+
+  boolean isSessionCacheEnabled() {
+    return sessionCacheEnabled;
+  }
+
+  InsertTemplate getTemplate(String defaultProject, String sql) {
+    synchronized (templates) {
+      return templates.get(defaultProject + '\u0001' + sql);
+    }
+  }
+
+  void putTemplate(String defaultProject, String sql, InsertTemplate template) {
+    synchronized (templates) {
+      templates.put(defaultProject + '\u0001' + sql, template);
+    }
+  }
+
+  /**
+   * Create an uploader owned by a single statement, which commits it on close.
+   */
+  DataUploader newUploader(InsertTemplate template) throws SQLException {
+    try {
+      if (template.delete) {
+        if (!isAcidTable(template)) {
+          throw new SQLException("batched DELETE is only supported on transactional tables with a "
+                                 + "primary key: " + template.tableName);
+        }
+        return new AcidTableUploader(template.projectName, template.schemaName,
+                                     template.tableName, template.partitionSpec,
+                                     template.specificColumns, conn, true);
+      }
+      if (template.isDynamicPartition()) {
+        return new DynamicPartitionUploader(template.projectName, template.schemaName,
+                                            template.tableName, template.partitionValues,
+                                            template.dataParameterIndexes,
+                                            template.specificColumns, conn);
+      }
+      if (!sessionCacheEnabled) {
+        return DataUploader.build(template.projectName, template.schemaName, template.tableName,
+                                  template.partitionSpec, template.specificColumns, conn);
+      }
+      return DataUploader.build(template.projectName, template.schemaName, template.tableName,
+                                template.partitionSpec, template.specificColumns, conn,
+                                isAcidTable(template));
+    } catch (OdpsException | IOException e) {
+      throw new SQLException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Get the shared uploader of the template, creating it if there is none. Every acquire must be
+   * followed by a {@link #release(Lease)} of the returned lease, an uploader in use is never
+   * committed before it is released.
+   */
+  Lease acquire(InsertTemplate template) throws SQLException {
+    String key = template.getUploaderKey();
+    synchronized (this) {
+      CachedUploader cached = uploaders.get(key);
+      if (cached != null) {
+        cached.users++;
+        return cached;
+      }
+    }
+
+    // create the session outside the lock, it takes a few round trips
+    DataUploader uploader = newUploader(template);
+    DataUploader redundant = null;
+    CachedUploader acquired;
+    synchronized (this) {
+      CachedUploader cached = uploaders.get(key);
+      if (cached == null) {
+        cached = new CachedUploader(uploader);
+        uploaders.put(key, cached);
+        conn.log.info("cache upload session for " + key);
+        scheduleIdleCheck();
+      } else {
+        redundant = uploader;
+      }
+      cached.users++;
+      acquired = cached;
+    }
+    if (redundant != null) {
+      // another statement won the race, the new session has no data
+      commitQuietly(redundant);
+    }
+    return acquired;
+  }
+
+  /**
+   * Give back the uploader of a lease, committing it if {@link #commitAll()} was called while it
+   * was in use.
+   */
+  void release(Lease lease) {
+    CachedUploader cached = (CachedUploader) lease;
+    synchronized (this) {
+      if (cached.users <= 0) {
+        throw new IllegalStateException("upload session released more times than acquired");
+      }
+      cached.users--;
+      cached.lastUsed = System.currentTimeMillis();
+      if (!cached.closing || cached.users > 0) {
+        return;
+      }
+    }
+    commitQuietly(cached.uploader);
+  }
+
+  /**
+   * Commit and forget all the shared sessions. Sessions still in use by other threads are
+   * forgotten too, and committed once they are released.
+   */
+  void commitAll() throws SQLException {
+    List<DataUploader> toCommit;
+    synchronized (this) {
+      toCommit = new ArrayList<>(uploaders.size());
+      for (CachedUploader cached : uploaders.values()) {
+        if (cached.users == 0) {
+          toCommit.add(cached.uploader);
+        } else {
+          cached.closing = true;
+        }
+      }
+      uploaders.clear();
+      cancelIdleCheck();
+    }
+    SQLException failure = null;
+    for (DataUploader uploader : toCommit) {
+      try {
+        commit(uploader);
+      } catch (TunnelException | IOException e) {
+        if (failure == null) {
+          failure = new SQLException(e.getMessage(), e);
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  synchronized int getSessionCount() {
+    return uploaders.size();
+  }
+
+  /**
+   * @return the shared uploader of the template, or null if there is none
+   */
+  synchronized DataUploader peek(InsertTemplate template) {
+    CachedUploader cached = uploaders.get(template.getUploaderKey());
+    return cached == null ? null : cached.uploader;
+  }
+
+  private boolean isAcidTable(InsertTemplate template) throws OdpsException {
+    String key = template.projectName + "." + template.schemaName + "." + template.tableName;
+    Boolean acid = acidTables.get(key);
+    if (acid == null) {
+      Table table = conn.getOdps().tables()
+          .get(template.projectName, template.schemaName, template.tableName);
+      acid = DataUploader.isAcidTable(table);
+      acidTables.put(key, acid);
+    }
+    return acid;
+  }
+
+  private void commitIdle() {
+    long now = System.currentTimeMillis();
+    List<DataUploader> idle = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Map.Entry<String, CachedUploader>> it = uploaders.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<String, CachedUploader> entry = it.next();
+        CachedUploader cached = entry.getValue();
+        if (cached.users == 0 && now - cached.lastUsed >= idleTimeoutMillis) {
+          conn.log.info("commit idle upload session for " + entry.getKey());
+          idle.add(cached.uploader);
+          it.remove();
+        }
+      }
+      if (uploaders.isEmpty()) {
+        cancelIdleCheck();
+      }
+    }
+    for (DataUploader uploader : idle) {
+      commitQuietly(uploader);
+    }
+  }
+
+  private void scheduleIdleCheck() {
+    if (idleCheck != null || idleTimeoutMillis <= 0) {
+      return;
+    }
+    long period = Math.max(idleTimeoutMillis / 2, 1000L);
+    idleCheck = getIdleReaper().scheduleWithFixedDelay(this::commitIdle, period, period,
+                                                       TimeUnit.MILLISECONDS);
+  }
+
+  private void cancelIdleCheck() {
+    if (idleCheck != null) {
+      idleCheck.cancel(false);
+      idleCheck = null;
+    }
+  }
+
+  private void commitQuietly(DataUploader uploader) {
+    try {
+      commit(uploader);
+    } catch (TunnelException | IOException e) {
+      conn.log.error("failed to commit upload session: " + e.getMessage());
+    }
+  }
+
+  private static void commit(DataUploader uploader) throws TunnelException, IOException {
+    synchronized (uploader) {
+      uploader.commit();
+    }
+  }
+
+  private static ScheduledExecutorService getIdleReaper() {
+    if (idleReaper == null) {
+      synchronized (UploaderCache.class) {
+        if (idleReaper == null) {
+          idleReaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "odps-jdbc-upload-session-reaper");
+            t.setDaemon(true);
+            return t;
+          });
+        }
+      }
+    }
+    return idleReaper;
+  }
+
+  /**
+   * A shared uploader acquired by a statement.
+   */
+  interface Lease {
+
+    DataUploader getUploader();
+  }
+
+  private static class CachedUploader implements Lease {
+
+    final DataUploader uploader;
+    // guarded by the cache
+    int users = 0;
+    long lastUsed = System.currentTimeMillis();
+    // forgotten by commitAll while in use, committed by the last release
+    boolean closing = false;
+
+    CachedUploader(DataUploader uploader) {
+      this.uploader = uploader;
+    }
+
+    @Override
+    public DataUploader getUploader() {
+      return uploader;
+    }
+  }
+}
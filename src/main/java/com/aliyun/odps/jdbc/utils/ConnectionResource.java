@@ -104,9 +104,35 @@ public class ConnectionResource {
   private static final String FETCH_RESULT_SPLIT_SIZE = "fetchResultSplitSize";
   private static final String FETCH_RESULT_PRELOAD_SPLIT_NUM = "fetchResultPreloadSplitNum";
   private static final String FETCH_RESULT_THREAD_NUM = "fetchResultThreadNum";
+  private static final String EXECUTOR_POOL_SIZE_URL_KEY = "executorPoolSize";
+  private static final String EXECUTOR_POOL_SIZE_PROP_KEY = "executor_pool_size";
+  private static final String EXECUTOR_CACHE_URL_KEY = "executorCache";
+  private static final String EXECUTOR_CACHE_PROP_KEY = "executor_cache";
+  private static final String EXECUTOR_CACHE_IDLE_TIMEOUT_URL_KEY = "executorCacheIdleTimeout";
+  private static final String EXECUTOR_CACHE_IDLE_TIMEOUT_PROP_KEY =
+      "executor_cache_idle_timeout";
+  private static final String PROJECT_META_CACHE_TTL_URL_KEY = "projectMetaCacheTtl";
+  private static final String PROJECT_META_CACHE_TTL_PROP_KEY = "project_meta_cache_ttl";
+  private static final String LAZY_INIT_URL_KEY = "lazyInit";
+  private static final String LAZY_INIT_PROP_KEY = "lazy_init";
   private static final String SKIP_CHECK_IF_SELECT = "skipCheckIfSelect";
   private static final String LONG_JOB_WARNING_THRESHOLD = "longJobWarningThreshold";
   private static final String SKIP_CHECK_IF_EPV2_URL_KEY = "skipCheckIfEpv2";
+  private static final String BATCH_SPILL_THRESHOLD_URL_KEY = "batchSpillThreshold";
+  private static final String BATCH_SPILL_DIR_URL_KEY = "batchSpillDir";
+  private static final String DYNAMIC_PARTITION_MAX_WRITERS_URL_KEY = "dynamicPartitionMaxWriters";
+  private static final String UPLOAD_SESSION_CACHE_URL_KEY = "uploadSessionCache";
+  private static final String UPLOAD_SESSION_IDLE_TIMEOUT_URL_KEY = "uploadSessionIdleTimeout";
+  private static final String UPLOAD_SESSION_MAX_BLOCKS_URL_KEY = "uploadSessionMaxBlocks";
+  private static final String UPLOAD_SESSION_MAX_AGE_URL_KEY = "uploadSessionMaxAge";
+  private static final String UPLOAD_BLOCK_RETRY_TIME_URL_KEY = "uploadBlockRetryTime";
+  private static final String UPLOAD_BLOCK_RETRY_INTERVAL_URL_KEY = "uploadBlockRetryInterval";
+  private static final String UPSERT_STREAM_COUNT_URL_KEY = "upsertStreamCount";
+  private static final String UPSERT_STREAM_BUFFER_SIZE_URL_KEY = "upsertStreamBufferSize";
+  private static final String TUNNEL_UPLOAD_COMPRESSION_URL_KEY = "tunnelUploadCompression";
+  private static final String TUNNEL_DOWNLOAD_COMPRESSION_URL_KEY = "tunnelDownloadCompression";
+  private static final String UPLOAD_ARROW_URL_KEY = "uploadArrow";
+  private static final String BATCH_CONCURRENT_INSERTS_URL_KEY = "batchConcurrentInserts";
 
 
   /**
@@ -175,6 +201,27 @@ public class ConnectionResource {
   private static final String ASYNC_PROP_KEY = "async";
   private static final String READ_ONLY_PROP_KEY = "readOnly";
   private static final String SKIP_CHECK_IF_EPV2_PROP_KEY = "skip_check_if_epv2";
+  //Unit: Bytes, -1 keeps all the batched rows in memory
+  private static final String BATCH_SPILL_THRESHOLD_PROP_KEY = "batch_spill_threshold";
+  private static final String BATCH_SPILL_DIR_PROP_KEY = "batch_spill_dir";
+  private static final String DYNAMIC_PARTITION_MAX_WRITERS_PROP_KEY = "dynamic_partition_max_writers";
+  private static final String UPLOAD_SESSION_CACHE_PROP_KEY = "upload_session_cache";
+  //Unit: seconds, only applied when upload session cache is enabled
+  private static final String UPLOAD_SESSION_IDLE_TIMEOUT_PROP_KEY = "upload_session_idle_timeout";
+  private static final String UPLOAD_SESSION_MAX_BLOCKS_PROP_KEY = "upload_session_max_blocks";
+  //Unit: seconds
+  private static final String UPLOAD_SESSION_MAX_AGE_PROP_KEY = "upload_session_max_age";
+  private static final String UPLOAD_BLOCK_RETRY_TIME_PROP_KEY = "upload_block_retry_time";
+  //Unit: milliseconds, doubled after each retry
+  private static final String UPLOAD_BLOCK_RETRY_INTERVAL_PROP_KEY = "upload_block_retry_interval";
+  private static final String UPSERT_STREAM_COUNT_PROP_KEY = "upsert_stream_count";
+  //Unit: Bytes
+  private static final String UPSERT_STREAM_BUFFER_SIZE_PROP_KEY = "upsert_stream_buffer_size";
+  //Format: codec[:level], see TunnelCompression
+  private static final String TUNNEL_UPLOAD_COMPRESSION_PROP_KEY = "tunnel_upload_compression";
+  private static final String TUNNEL_DOWNLOAD_COMPRESSION_PROP_KEY = "tunnel_download_compression";
+  private static final String UPLOAD_ARROW_PROP_KEY = "upload_arrow";
+  private static final String BATCH_CONCURRENT_INSERTS_PROP_KEY = "batch_concurrent_inserts";
 
   private String endpoint;
   private String accessId;
@@ -192,6 +239,8 @@ public class ConnectionResource {
   private boolean enableOdpsLogger = false;
   private Map<String, Map<String, List<String>>> tables = new HashMap<>();
   private FallbackPolicy fallbackPolicy = FallbackPolicy.alwaysFallbackPolicy();
+  // the fallback policy as a string, telling connections with the same policy apart
+  private String fallbackSettings;
   private Long autoSelectLimit;
   private Long countLimit;
   private Long sizeLimit;
@@ -243,6 +292,27 @@ public class ConnectionResource {
   private long fetchResultSplitSize;
   private int fetchResultPreloadSplitNum;
   private int fetchResultThreadNum;
+  private int executorPoolSize;
+  private boolean executorCache = false;
+  private long executorCacheIdleTimeout;
+  private long projectMetaCacheTtl;
+  private boolean lazyInit = false;
+
+  private long batchSpillThreshold;
+  private String batchSpillDir;
+  private int dynamicPartitionMaxWriters;
+  private boolean uploadSessionCache = false;
+  private long uploadSessionIdleTimeout;
+  private int uploadSessionMaxBlocks;
+  private long uploadSessionMaxAge;
+  private int uploadBlockRetryTime;
+  private long uploadBlockRetryInterval;
+  private int upsertStreamCount;
+  private long upsertStreamBufferSize;
+  private String tunnelUploadCompression;
+  private String tunnelDownloadCompression;
+  private boolean uploadArrow = false;
+  private boolean batchConcurrentInserts = false;
 
   public static boolean acceptURL(String url) {
     return (url != null) && url.startsWith(JDBC_ODPS_URL_PREFIX);
@@ -342,26 +412,26 @@ public class ConnectionResource {
                                                  ENABLE_ODPS_LOGGER_URL_KEY)
     );
 
-    fallbackPolicy.fallback4ResourceNotEnough(Boolean.valueOf(
+    boolean fallback4ResourceNotEnough = Boolean.valueOf(
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, "true", FALLBACK_FOR_RESOURCE_PROP_KEY,
-                                                 FALLBACK_FOR_RESOURCE_URL_KEY)
-    ));
-    fallbackPolicy.fallback4RunningTimeout(Boolean.valueOf(
+                                                 FALLBACK_FOR_RESOURCE_URL_KEY));
+    fallbackPolicy.fallback4ResourceNotEnough(fallback4ResourceNotEnough);
+    boolean fallback4RunningTimeout = Boolean.valueOf(
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, "true", FALLBACK_FOR_TIMEOUT_PROP_KEY,
-                                                 FALLBACK_FOR_TIMEOUT_URL_KEY)
-    ));
-    fallbackPolicy.fallback4Upgrading(Boolean.valueOf(
+                                                 FALLBACK_FOR_TIMEOUT_URL_KEY));
+    fallbackPolicy.fallback4RunningTimeout(fallback4RunningTimeout);
+    boolean fallback4Upgrading = Boolean.valueOf(
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, "true", FALLBACK_FOR_UPGRADING_PROP_KEY,
-                                                 FALLBACK_FOR_UPGRADING_URL_KEY)
-    ));
-    fallbackPolicy.fallback4UnsupportedFeature(Boolean.valueOf(
+                                                 FALLBACK_FOR_UPGRADING_URL_KEY));
+    fallbackPolicy.fallback4Upgrading(fallback4Upgrading);
+    boolean fallback4UnsupportedFeature = Boolean.valueOf(
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, "true", FALLBACK_FOR_UNSUPPORTED_PROP_KEY,
-                                                 FALLBACK_FOR_UNSUPPORTED_URL_KEY)
-    ));
-    fallbackPolicy.fallback4UnknownError(Boolean.valueOf(
+                                                 FALLBACK_FOR_UNSUPPORTED_URL_KEY));
+    fallbackPolicy.fallback4UnsupportedFeature(fallback4UnsupportedFeature);
+    boolean fallback4UnknownError = Boolean.valueOf(
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, "true", FALLBACK_FOR_UNKNOWN_PROP_KEY,
-                                                 FALLBACK_FOR_UNKNOWN_URL_KEY)
-    ));
+                                                 FALLBACK_FOR_UNKNOWN_URL_KEY));
+    fallbackPolicy.fallback4UnknownError(fallback4UnknownError);
 
     boolean alwaysFallback = Boolean.valueOf(
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, "false", ALWAYS_FALLBACK_PROP_KEY,
@@ -378,6 +448,15 @@ public class ConnectionResource {
     if (disableFallback) {
       fallbackPolicy = FallbackPolicy.nonFallbackPolicy();
     }
+    if (disableFallback) {
+      fallbackSettings = "none";
+    } else if (alwaysFallback) {
+      fallbackSettings = "always";
+    } else {
+      fallbackSettings = fallback4ResourceNotEnough + "," + fallback4RunningTimeout + ","
+                         + fallback4Upgrading + "," + fallback4UnsupportedFeature + ","
+                         + fallback4UnknownError;
+    }
 
     fallbackQuota =
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, null, FALLBACK_QUOTA_PROP_KEY, FALLBACK_QUOTA_URL_KEY);
@@ -505,6 +584,22 @@ public class ConnectionResource {
 
     fetchResultThreadNum = Integer.parseInt(tryGetFirstNonNullValueByAltMapAndAltKey(maps, "5", FETCH_RESULT_THREAD_NUM, FETCH_RESULT_THREAD_NUM));
 
+    executorPoolSize = Integer.parseInt(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "1", EXECUTOR_POOL_SIZE_PROP_KEY,
+                                                 EXECUTOR_POOL_SIZE_URL_KEY));
+    executorCache = Boolean.parseBoolean(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "false", EXECUTOR_CACHE_PROP_KEY,
+                                                 EXECUTOR_CACHE_URL_KEY));
+    executorCacheIdleTimeout = Long.parseLong(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "600", EXECUTOR_CACHE_IDLE_TIMEOUT_PROP_KEY,
+                                                 EXECUTOR_CACHE_IDLE_TIMEOUT_URL_KEY));
+    projectMetaCacheTtl = Long.parseLong(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "0", PROJECT_META_CACHE_TTL_PROP_KEY,
+                                                 PROJECT_META_CACHE_TTL_URL_KEY));
+    lazyInit = Boolean.parseBoolean(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "false", LAZY_INIT_PROP_KEY,
+                                                 LAZY_INIT_URL_KEY));
+
 
     logviewVersion = Integer.parseInt(
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, "1", LOGVIEW_VERSION_PROP_KEY, LOGVIEW_VERSION_URL_KEY)
@@ -519,6 +614,63 @@ public class ConnectionResource {
         tryGetFirstNonNullValueByAltMapAndAltKey(maps, "-1", LONG_JOB_WARNING_THRESHOLD, LONG_JOB_WARNING_THRESHOLD)
     );
 
+    batchSpillThreshold = Long.parseLong(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "-1", BATCH_SPILL_THRESHOLD_PROP_KEY,
+                                                 BATCH_SPILL_THRESHOLD_URL_KEY)
+    );
+    batchSpillDir =
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, null, BATCH_SPILL_DIR_PROP_KEY,
+                                                 BATCH_SPILL_DIR_URL_KEY);
+    dynamicPartitionMaxWriters = Integer.parseInt(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "16", DYNAMIC_PARTITION_MAX_WRITERS_PROP_KEY,
+                                                 DYNAMIC_PARTITION_MAX_WRITERS_URL_KEY)
+    );
+    uploadSessionCache = Boolean.parseBoolean(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "false", UPLOAD_SESSION_CACHE_PROP_KEY,
+                                                 UPLOAD_SESSION_CACHE_URL_KEY));
+    uploadSessionIdleTimeout = Long.parseLong(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "60", UPLOAD_SESSION_IDLE_TIMEOUT_PROP_KEY,
+                                                 UPLOAD_SESSION_IDLE_TIMEOUT_URL_KEY)
+    );
+    uploadSessionMaxBlocks = Integer.parseInt(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "20000", UPLOAD_SESSION_MAX_BLOCKS_PROP_KEY,
+                                                 UPLOAD_SESSION_MAX_BLOCKS_URL_KEY)
+    );
+    uploadSessionMaxAge = Long.parseLong(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "72000", UPLOAD_SESSION_MAX_AGE_PROP_KEY,
+                                                 UPLOAD_SESSION_MAX_AGE_URL_KEY)
+    );
+    uploadBlockRetryTime = Integer.parseInt(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "3", UPLOAD_BLOCK_RETRY_TIME_PROP_KEY,
+                                                 UPLOAD_BLOCK_RETRY_TIME_URL_KEY)
+    );
+    uploadBlockRetryInterval = Long.parseLong(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "1000", UPLOAD_BLOCK_RETRY_INTERVAL_PROP_KEY,
+                                                 UPLOAD_BLOCK_RETRY_INTERVAL_URL_KEY)
+    );
+    checkValueIsNotNegative(UPLOAD_BLOCK_RETRY_TIME_URL_KEY, uploadBlockRetryTime);
+    checkValueIsNotNegative(UPLOAD_BLOCK_RETRY_INTERVAL_URL_KEY, uploadBlockRetryInterval);
+    upsertStreamCount = Integer.parseInt(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "4", UPSERT_STREAM_COUNT_PROP_KEY,
+                                                 UPSERT_STREAM_COUNT_URL_KEY)
+    );
+    upsertStreamBufferSize = Long.parseLong(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "-1", UPSERT_STREAM_BUFFER_SIZE_PROP_KEY,
+                                                 UPSERT_STREAM_BUFFER_SIZE_URL_KEY)
+    );
+    tunnelUploadCompression =
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, null, TUNNEL_UPLOAD_COMPRESSION_PROP_KEY,
+                                                 TUNNEL_UPLOAD_COMPRESSION_URL_KEY);
+    tunnelDownloadCompression =
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, null, TUNNEL_DOWNLOAD_COMPRESSION_PROP_KEY,
+                                                 TUNNEL_DOWNLOAD_COMPRESSION_URL_KEY);
+    uploadArrow = Boolean.parseBoolean(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "false", UPLOAD_ARROW_PROP_KEY,
+                                                 UPLOAD_ARROW_URL_KEY));
+    batchConcurrentInserts = Boolean.parseBoolean(
+        tryGetFirstNonNullValueByAltMapAndAltKey(maps, "false", BATCH_CONCURRENT_INSERTS_PROP_KEY,
+                                                 BATCH_CONCURRENT_INSERTS_URL_KEY));
+
     // odpsNamespaceSchema in url or prop |  odps.namespace.schema in settings | odpsNamespaceSchema field
     // key not exists                     |      not set                       | null
     // true/false                         |      true/false                    | true/false
@@ -742,6 +894,12 @@ public class ConnectionResource {
     throw new IllegalArgumentException("key " + key + " value should be true/false. current value " + value + " is not valid");
   }
 
+  private void checkValueIsNotNegative(String key, long value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("key " + key + " value should not be negative. current value " + value + " is not valid");
+    }
+  }
+
   public ExecuteMode isInteractiveMode() {
     return interactiveMode;
   }
@@ -754,6 +912,10 @@ public class ConnectionResource {
     return fallbackPolicy;
   }
 
+  public String getFallbackSettings() {
+    return fallbackSettings;
+  }
+
   public String getStsToken() {
     return stsToken;
   }
@@ -849,4 +1011,84 @@ public class ConnectionResource {
   public int getFetchResultPreloadSplitNum() {
     return fetchResultPreloadSplitNum;
   }
-}
\ No newline at end of file
+
+  public int getExecutorPoolSize() {
+    return executorPoolSize;
+  }
+
+  public boolean isExecutorCache() {
+    return executorCache;
+  }
+
+  public long getExecutorCacheIdleTimeout() {
+    return executorCacheIdleTimeout;
+  }
+
+  public long getProjectMetaCacheTtl() {
+    return projectMetaCacheTtl;
+  }
+
+  public boolean isLazyInit() {
+    return lazyInit;
+  }
+
+  public long getBatchSpillThreshold() {
+    return batchSpillThreshold;
+  }
+
+  public String getBatchSpillDir() {
+    return batchSpillDir;
+  }
+
+  public int getDynamicPartitionMaxWriters() {
+    return dynamicPartitionMaxWriters;
+  }
+
+  public boolean isUploadSessionCache() {
+    return uploadSessionCache;
+  }
+
+  public long getUploadSessionIdleTimeout() {
+    return uploadSessionIdleTimeout;
+  }
+
+  public int getUploadSessionMaxBlocks() {
+    return uploadSessionMaxBlocks;
+  }
+
+  public long getUploadSessionMaxAge() {
+    return uploadSessionMaxAge;
+  }
+
+  public int getUploadBlockRetryTime() {
+    return uploadBlockRetryTime;
+  }
+
+  public long getUploadBlockRetryInterval() {
+    return uploadBlockRetryInterval;
+  }
+
+  public int getUpsertStreamCount() {
+    return upsertStreamCount;
+  }
+
+  public long getUpsertStreamBufferSize() {
+    return upsertStreamBufferSize;
+  }
+
+  public String getTunnelUploadCompression() {
+    return tunnelUploadCompression;
+  }
+
+  public String getTunnelDownloadCompression() {
+    return tunnelDownloadCompression;
+  }
+
+  public boolean isUploadArrow() {
+    return uploadArrow;
+  }
+
+  public boolean isBatchConcurrentInserts() {
+    return batchConcurrentInserts;
+  }
+}
@@ -24,6 +24,7 @@ import com.aliyun.odps.jdbc.utils.OdpsLogger;
 import com.aliyun.odps.sqa.SQLExecutorConstants;
 import com.aliyun.odps.tunnel.InstanceTunnel;
 import com.aliyun.odps.tunnel.TunnelException;
+import com.aliyun.odps.tunnel.io.CompressOption;
 import com.aliyun.odps.tunnel.io.TunnelRecordReader;
 import com.aliyun.odps.type.TypeInfoFactory;
 import com.aliyun.odps.utils.StringUtils;
@@ -51,6 +52,8 @@ public class InstanceDataIterator implements Iterator<Record>, AutoCloseable {
   private long splitSize;
   private InstanceTunnel.DownloadSession downloadSession;
   private int threadNum;
+  // null keeps the default of the tunnel
+  private CompressOption compressOption;
 
   private int currentSplit = 0;
 
@@ -64,6 +67,14 @@ public class InstanceDataIterator implements Iterator<Record>, AutoCloseable {
   public InstanceDataIterator(Odps odps, Instance instance, long offset, Long readCount,
       long splitSize, int preloadSplitNum, int threadNum, String tunnelQuotaName)
       throws OdpsException {
+    this(odps, instance, offset, readCount, splitSize, preloadSplitNum, threadNum,
+         tunnelQuotaName, null);
+  }
+
+  public InstanceDataIterator(Odps odps, Instance instance, long offset, Long readCount,
+      long splitSize, int preloadSplitNum, int threadNum, String tunnelQuotaName,
+      CompressOption compressOption) throws OdpsException {
+    this.compressOption = compressOption;
     try {
       this.downloadSession = createInstanceTunnel(odps, tunnelQuotaName)
           .createDownloadSession(instance.getProject(), instance.getId(), false);
@@ -106,8 +117,9 @@ public class InstanceDataIterator implements Iterator<Record>, AutoCloseable {
     return (int) ((recordCount + splitSize - 1) / splitSize);
   }
 
-  private void submitNextSplit(int splitIndex) {
-    if (splitIndex >= splitNum || closed.get()) return;
+  // synchronized with abort, which must see every queue the consumer may wait on
+  private synchronized void submitNextSplit(int splitIndex) {
+    if (splitIndex >= splitNum || closed.get() || error.get() != null) return;
 
     long start = offset + splitIndex * splitSize;
     long count = Math.min(splitSize, recordCount - (splitIndex * splitSize));
@@ -116,10 +128,14 @@ public class InstanceDataIterator implements Iterator<Record>, AutoCloseable {
     executor.submit(() -> {
       TunnelRecordReader reader = null;
       try {
-        reader = downloadSession.openRecordReader(start, count);
+        if (compressOption == null) {
+          reader = downloadSession.openRecordReader(start, count);
+        } else {
+          reader = downloadSession.openRecordReader(start, count, compressOption);
+        }
         Record record;
         while ((record = reader.read()) != null) {
-          if (closed.get()) {
+          if (closed.get() || error.get() != null) {
             break;
           }
           queues[splitIndex].put(record);
@@ -160,6 +176,7 @@ public class InstanceDataIterator implements Iterator<Record>, AutoCloseable {
     }
     try {
       Record record = currentQueue.take();
+      checkError();
       if (record == EOF_RECORD) {
         queues[currentSplit] = null; // Help GC collect the queue
         submitNextSplit(currentSplit + preloadSplitNum); // Submit next split after current is done
@@ -209,6 +226,24 @@ public class InstanceDataIterator implements Iterator<Record>, AutoCloseable {
     }
   }
 
+  /**
+   * Fail the download from another thread, for instance when the query times out. The reads
+   * waiting for records and the next ones throw with the given cause, the splits not read yet are
+   * dropped. The iterator still has to be closed.
+   */
+  public synchronized void abort(Throwable cause) {
+    if (!isSelect || closed.get() || !error.compareAndSet(null, cause)) {
+      return;
+    }
+    executor.shutdownNow();
+    // wake up the consumer waiting for a record
+    for (BlockingQueue<Record> queue : queues) {
+      if (queue != null) {
+        queue.offer(EOF_RECORD);
+      }
+    }
+  }
+
   @Override
   public void close() {
     if (closed.compareAndSet(false, true)) {
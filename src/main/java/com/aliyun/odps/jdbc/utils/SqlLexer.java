@@ -0,0 +1,472 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-processes a sql before it is executed, in a single pass over its text.
+ * <p>
+ * The leading {@code SET key=value;} statements are moved out of the sql into the settings, with
+ * the same rules as {@link SettingParser}. The rest of the text is scanned for its first keyword,
+ * the project of a {@code USE} statement and the offsets of the {@code ?} placeholders. Quoted
+ * strings, backquoted names, comments and hints are skipped, so a {@code ?} or {@code ;} inside
+ * them does not count.
+ */
+public class SqlLexer {
+
+  public enum StatementKind {
+    /**
+     * Only settings, whitespaces and comments
+     */
+    EMPTY,
+    /**
+     * Starts with SELECT
+     */
+    QUERY,
+    /**
+     * A single USE statement
+     */
+    USE,
+    OTHER
+  }
+
+  public static class Result extends SettingParser.ParseResult {
+
+    private final StatementKind kind;
+    private final String useTarget;
+    private final int[] placeholderOffsets;
+    private final boolean moreStatements;
+
+    Result(Map<String, String> settings, String remainingQuery, List<String> errors,
+           StatementKind kind, String useTarget, int[] placeholderOffsets,
+           boolean moreStatements) {
+      super(settings, remainingQuery, errors);
+      this.kind = kind;
+      this.useTarget = useTarget;
+      this.placeholderOffsets = placeholderOffsets;
+      this.moreStatements = moreStatements;
+    }
+
+    public StatementKind getKind() {
+      return kind;
+    }
+
+    /**
+     * @return the project of a USE statement, which may be empty, or null for other statements
+     */
+    public String getUseTarget() {
+      return useTarget;
+    }
+
+    /**
+     * @return offsets of the {@code ?} placeholders in the lexed sql, in ascending order
+     */
+    public int[] getPlaceholderOffsets() {
+      return placeholderOffsets;
+    }
+
+    /**
+     * @return whether other statements follow the first statement after the settings
+     */
+    public boolean hasMoreStatements() {
+      return moreStatements;
+    }
+  }
+
+  /**
+   * Leading SET statements of a sql, all valid, with the settings they set.
+   */
+  public static final class SettingsPrefix {
+
+    private final String text;
+    private final Map<String, String> settings;
+    private final int[] excludeRanges;
+
+    private SettingsPrefix(String text, Map<String, String> settings, int[] excludeRanges) {
+      this.text = text;
+      this.settings = settings;
+      this.excludeRanges = excludeRanges;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    public Map<String, String> getSettings() {
+      return settings;
+    }
+  }
+
+  /**
+   * Remembers the leading SET statements of the sqls lexed, so that a sql starting with the same
+   * statements is lexed from where they end.
+   */
+  public interface SettingsCache {
+
+    /**
+     * @return a prefix put before which the sql starts with, or null
+     */
+    SettingsPrefix find(String sql);
+
+    void put(SettingsPrefix prefix);
+  }
+
+  private static final int[] NO_PLACEHOLDERS = new int[0];
+
+  /**
+   * Lex a sql to be executed, its leading SET statements are extracted. A semicolon is appended to
+   * the sql if it does not end with one.
+   */
+  public static Result lex(String sql) {
+    return lex(sql, true);
+  }
+
+  /**
+   * @param extractSettings whether to extract the leading SET statements, in which case a
+   *                        semicolon is appended to the sql if it does not end with one
+   */
+  public static Result lex(String sql, boolean extractSettings) {
+    return lex(sql, extractSettings, null);
+  }
+
+  /**
+   * @param cache leading SET statements already parsed, or null
+   */
+  public static Result lex(String sql, boolean extractSettings, SettingsCache cache) {
+    if (!extractSettings) {
+      return new SqlLexer(sql).run(false);
+    }
+    if (!sql.trim().endsWith(";")) {
+      sql += ";";
+    }
+    SqlLexer lexer = new SqlLexer(sql);
+    if (cache == null || !lexer.isSetAt(lexer.skipBlank(0))) {
+      return lexer.run(true);
+    }
+    SettingsPrefix prefix = cache.find(sql);
+    if (prefix != null) {
+      lexer.resume(prefix);
+    }
+    Result result = lexer.run(true);
+    if (lexer.settingsEnd > (prefix == null ? 0 : prefix.text.length())) {
+      cache.put(lexer.settingsPrefix());
+    }
+    return result;
+  }
+
+  /**
+   * Extract the leading SET statements of a sql as it is, see
+   * {@link SettingParser#extractSetStatements(String)}.
+   */
+  static Result lexSettings(String sql) {
+    return new SqlLexer(sql).run(true);
+  }
+
+  private final String s;
+  private final int n;
+
+  private final Map<String, String> settings = new LinkedHashMap<>();
+  private final List<String> errors = new ArrayList<>();
+  private int[] excludeRanges;
+  private int excludeCount;
+  // an invalid SET statement is kept in the query, and sent to the server as is
+  private int firstInvalid = -1;
+  // end of the SET statements before the first error, where the lexing can be resumed
+  private int settingsEnd;
+  private Map<String, String> settingsBeforeInvalid;
+
+  private int[] placeholders = NO_PLACEHOLDERS;
+  private int placeholderCount;
+  // end of the first statement, and whether other statements follow it
+  private int firstEnd = -1;
+  private boolean moreStatements;
+
+  private SqlLexer(String s) {
+    this.s = s;
+    this.n = s.length();
+  }
+
+  private void resume(SettingsPrefix prefix) {
+    settings.putAll(prefix.settings);
+    excludeRanges = Arrays.copyOf(prefix.excludeRanges, Math.max(8, prefix.excludeRanges.length));
+    excludeCount = prefix.excludeRanges.length;
+    settingsEnd = prefix.text.length();
+  }
+
+  private SettingsPrefix settingsPrefix() {
+    int count = 0;
+    while (count < excludeCount && excludeRanges[count + 1] <= settingsEnd) {
+      count += 2;
+    }
+    return new SettingsPrefix(s.substring(0, settingsEnd),
+                              Collections.unmodifiableMap(new LinkedHashMap<>(
+                                  firstInvalid < 0 ? settings : settingsBeforeInvalid)),
+                              Arrays.copyOf(excludeRanges, count));
+  }
+
+  private Result run(boolean extractSettings) {
+    int i = extractSettings ? skipSettings(settingsEnd) : 0;
+
+    // the first keyword
+    int keywordStart = -1;
+    boolean hashComments = false;
+    while (i < n && keywordStart < 0) {
+      char c = s.charAt(i);
+      if (c == '-' && i + 1 < n && s.charAt(i + 1) == '-') {
+        i = skipLine(i + 2);
+      } else if (c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
+        i = skipBlockComment(i + 2);
+      } else if (c == '#') {
+        // lines starting with '#' before the statement are comments too
+        hashComments = true;
+        i = skipLine(i + 1);
+      } else if (Character.isWhitespace(c) || c == ';') {
+        // empty statements are skipped too
+        i++;
+      } else {
+        keywordStart = i;
+      }
+    }
+    int keywordEnd = keywordStart;
+    if (keywordStart >= 0) {
+      while (keywordEnd < n && Character.isLetter(s.charAt(keywordEnd))) {
+        keywordEnd++;
+      }
+      scanStatements(keywordEnd);
+    }
+
+    StatementKind kind;
+    String useTarget = null;
+    if (keywordStart < 0) {
+      kind = hashComments ? StatementKind.OTHER : StatementKind.EMPTY;
+    } else if (isKeyword(keywordStart, keywordEnd, "select")) {
+      kind = StatementKind.QUERY;
+    } else if (isKeyword(keywordStart, keywordEnd, "use") && keywordEnd < n
+               && Character.isWhitespace(s.charAt(keywordEnd)) && !moreStatements) {
+      kind = StatementKind.USE;
+      useTarget = s.substring(keywordEnd, firstEnd >= 0 ? firstEnd : n).trim();
+    } else {
+      kind = StatementKind.OTHER;
+    }
+    return new Result(settings, remainingQuery(), errors, kind, useTarget,
+                      placeholderCount == placeholders.length
+                      ? placeholders : Arrays.copyOf(placeholders, placeholderCount),
+                      moreStatements);
+  }
+
+  /**
+   * Extract the leading SET statements, comments between them are kept in the remaining query.
+   *
+   * @return where the first statement kept in the remaining query starts
+   */
+  private int skipSettings(int i) {
+    while ((i = skipBlank(i)) < n && isSetAt(i)) {
+      i = skipSetting(i);
+    }
+    return firstInvalid < 0 ? i : firstInvalid;
+  }
+
+  /**
+   * @return the position of the first character from i which is not a whitespace or a comment
+   */
+  private int skipBlank(int i) {
+    while (i < n) {
+      char c = s.charAt(i);
+      if (c == '-' && i + 1 < n && s.charAt(i + 1) == '-') {
+        i = skipLine(i + 2);
+      } else if (c == '/' && i + 1 < n && s.charAt(i + 1) == '*') {
+        i = skipBlockComment(i + 2);
+      } else if (Character.isWhitespace(c)) {
+        i++;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  private boolean isSetAt(int i) {
+    return i + 3 < n && s.regionMatches(true, i, "set", 0, 3)
+           && Character.isWhitespace(s.charAt(i + 3));
+  }
+
+  /**
+   * @return the end of the SET statement starting at start
+   */
+  private int skipSetting(int start) {
+    int i = start + 4;
+    while (i < n && Character.isWhitespace(s.charAt(i))) {
+      i++;
+    }
+    if (i == n) {
+      errors.add("Invalid SET statement: missing key-value after 'set'");
+      return invalid(start, i);
+    }
+    int keyValueStart = i;
+    // allows escape of semicolons to place semicolons in settings
+    while (i < n && (s.charAt(i) != ';' || s.charAt(i - 1) == '\\')) {
+      i++;
+    }
+    if (i == n) {
+      errors.add("Invalid SET statement: missing semicolon");
+      return invalid(start, i);
+    }
+    if (!parseKeyValue(s.substring(keyValueStart, i).trim())) {
+      return invalid(start, i + 1);
+    }
+    exclude(start, i + 1);
+    if (firstInvalid < 0) {
+      settingsEnd = i + 1;
+    }
+    return i + 1;
+  }
+
+  private int invalid(int start, int end) {
+    if (firstInvalid < 0) {
+      firstInvalid = start;
+      settingsBeforeInvalid = new LinkedHashMap<>(settings);
+    }
+    return end;
+  }
+
+  private boolean parseKeyValue(String kv) {
+    int eqIdx = kv.indexOf('=');
+    if (eqIdx == -1) {
+      errors.add("Invalid key-value pair '" + kv + "': missing '='");
+      return false;
+    }
+    String key = kv.substring(0, eqIdx).trim();
+    if (key.isEmpty()) {
+      errors.add("Invalid key-value pair '" + kv + "': empty key");
+      return false;
+    }
+    String value = eqIdx < kv.length() - 1 ? kv.substring(eqIdx + 1).trim() : "";
+    settings.put(key, value.replace("\\;", ";"));
+    return true;
+  }
+
+  /**
+   * Scan the statements from i, for the placeholders and the end of the first statement.
+   */
+  private void scanStatements(int i) {
+    while (i < n) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '-':
+          i = i + 1 < n && s.charAt(i + 1) == '-' ? skipLine(i + 2) : afterToken(i);
+          break;
+        case '/':
+          i = i + 1 < n && s.charAt(i + 1) == '*' ? skipBlockComment(i + 2) : afterToken(i);
+          break;
+        case '\'':
+        case '"':
+          i = skipQuoted(afterToken(i), c, true);
+          break;
+        case '`':
+          i = skipQuoted(afterToken(i), c, false);
+          break;
+        case '?':
+          if (placeholderCount == placeholders.length) {
+            placeholders = Arrays.copyOf(placeholders, Math.max(8, placeholderCount * 2));
+          }
+          placeholders[placeholderCount++] = i;
+          i = afterToken(i);
+          break;
+        case ';':
+          if (firstEnd < 0) {
+            firstEnd = i;
+          }
+          i++;
+          break;
+        default:
+          i = firstEnd < 0 || Character.isWhitespace(c) ? i + 1 : afterToken(i);
+      }
+    }
+  }
+
+  /**
+   * @return the position after the token at i, which is not a whitespace or a comment
+   */
+  private int afterToken(int i) {
+    if (firstEnd >= 0) {
+      moreStatements = true;
+    }
+    return i + 1;
+  }
+
+  private int skipQuoted(int i, char quote, boolean escapes) {
+    while (i < n) {
+      char c = s.charAt(i);
+      if (escapes && c == '\\') {
+        i += 2;
+      } else if (c == quote) {
+        return i + 1;
+      } else {
+        i++;
+      }
+    }
+    return n;
+  }
+
+  private int skipLine(int i) {
+    int end = s.indexOf('\n', i);
+    return end < 0 ? n : end + 1;
+  }
+
+  private int skipBlockComment(int i) {
+    int end = s.indexOf("*/", i);
+    return end < 0 ? n : end + 2;
+  }
+
+  private boolean isKeyword(int start, int end, String keyword) {
+    return end - start == keyword.length() && s.regionMatches(true, start, keyword, 0, end - start);
+  }
+
+  private void exclude(int start, int end) {
+    if (excludeRanges == null) {
+      excludeRanges = new int[8];
+    } else if (excludeCount == excludeRanges.length) {
+      excludeRanges = Arrays.copyOf(excludeRanges, excludeCount * 2);
+    }
+    excludeRanges[excludeCount++] = start;
+    excludeRanges[excludeCount++] = end;
+  }
+
+  private String remainingQuery() {
+    if (excludeCount == 0) {
+      return s;
+    }
+    StringBuilder remaining = new StringBuilder(n);
+    int pos = 0;
+    for (int r = 0; r < excludeCount; r += 2) {
+      remaining.append(s, pos, excludeRanges[r]);
+      pos = excludeRanges[r + 1];
+    }
+    return remaining.append(s, pos, n).toString();
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc.utils;
+
+import java.util.Locale;
+
+import com.aliyun.odps.tunnel.io.CompressOption;
+import com.aliyun.odps.tunnel.io.CompressOption.CompressAlgorithm;
+import com.aliyun.odps.utils.StringUtils;
+
+/**
+ * Parses the tunnel compression settings of a connection, written as {@code codec[:level]}, e.g.
+ * {@code zlib:6}, {@code snappy}, {@code lz4} or {@code none}. The level only applies to zlib.
+ */
+public class TunnelCompression {
+
+  private static final int DEFAULT_LEVEL = 1;
+
+  private TunnelCompression() {
+  }
+
+  /**
+   * @return the compress option, or null when the value is empty and the default of the tunnel
+   * should be kept
+   * @throws IllegalArgumentException for an unknown codec or an invalid level
+   */
+  public static CompressOption parse(String value) {
+    if (StringUtils.isNullOrEmpty(value) || value.trim().isEmpty()) {
+      return null;
+    }
+    String[] parts = value.trim().split(":", 2);
+    CompressAlgorithm algorithm = toAlgorithm(parts[0].trim().toLowerCase(Locale.ROOT));
+
+    int level = DEFAULT_LEVEL;
+    if (parts.length == 2) {
+      try {
+        level = Integer.parseInt(parts[1].trim());
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("invalid compression level: " + value);
+      }
+      if (algorithm == CompressAlgorithm.ODPS_ZLIB && (level < 1 || level > 9)) {
+        throw new IllegalArgumentException("zlib compression level must be in [1, 9]: " + value);
+      }
+    }
+    return new CompressOption(algorithm, level, 0);
+  }
+
+  /**
+   * @return a short description of the option for logs, e.g. {@code zlib:1}
+   */
+  public static String toString(CompressOption option) {
+    if (option == null) {
+      return "default";
+    }
+    switch (option.algorithm) {
+      case ODPS_RAW:
+        return "none";
+      case ODPS_ZLIB:
+        return "zlib:" + option.level;
+      case ODPS_LZ4_FRAME:
+        return "lz4";
+      default:
+        String name = option.algorithm.name().toLowerCase(Locale.ROOT);
+        return name.startsWith("odps_") ? name.substring("odps_".length()) : name;
+    }
+  }
+
+  private static CompressAlgorithm toAlgorithm(String codec) {
+    switch (codec) {
+      case "none":
+      case "raw":
+        return CompressAlgorithm.ODPS_RAW;
+      case "zlib":
+      case "deflate":
+        return CompressAlgorithm.ODPS_ZLIB;
+      case "snappy":
+        return CompressAlgorithm.ODPS_SNAPPY;
+      case "lz4":
+        return CompressAlgorithm.ODPS_LZ4_FRAME;
+      default:
+        // codecs added by newer versions of the sdk
+        try {
+          return CompressAlgorithm.valueOf("ODPS_" + codec.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+          throw new IllegalArgumentException("unknown tunnel compression codec: " + codec);
+        }
+    }
+  }
+}
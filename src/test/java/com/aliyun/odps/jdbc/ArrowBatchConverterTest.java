@@ -0,0 +1,135 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.aliyun.odps.Column;
+import com.aliyun.odps.OdpsType;
+import com.aliyun.odps.TableSchema;
+import com.aliyun.odps.jdbc.utils.transformer.to.odps.AbstractToOdpsTransformer;
+import com.aliyun.odps.jdbc.utils.transformer.to.odps.ToOdpsTransformerFactory;
+import com.aliyun.odps.type.TypeInfoFactory;
+
+public class ArrowBatchConverterTest {
+
+  private static TableSchema schema() {
+    TableSchema schema = new TableSchema();
+    schema.addColumn(new Column("id", TypeInfoFactory.BIGINT));
+    schema.addColumn(new Column("name", TypeInfoFactory.STRING));
+    schema.addColumn(new Column("day", TypeInfoFactory.DATE));
+    return schema;
+  }
+
+  @Test
+  public void testConvert() throws Exception {
+    // only id and day are bound, in the reverse order of the table
+    AbstractToOdpsTransformer[] transformers = {
+        ToOdpsTransformerFactory.getTransformer(OdpsType.DATE),
+        ToOdpsTransformerFactory.getTransformer(OdpsType.BIGINT)};
+    ArrowBatchConverter converter =
+        ArrowBatchConverter.create(schema(), new int[]{2, 0}, transformers);
+    Assertions.assertNotNull(converter);
+
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(2);
+    batch.setObject(0, Date.valueOf("1970-01-11"));
+    batch.setObject(1, 7L);
+    batch.addRow();
+    batch.setObject(0, null);
+    batch.setObject(1, 8L);
+    batch.addRow();
+
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+         VectorSchemaRoot root = converter.convert(batch, 2, "UTF-8", allocator)) {
+      Assertions.assertEquals(2, root.getRowCount());
+      BigIntVector ids = (BigIntVector) root.getVector("id");
+      Assertions.assertEquals(7L, ids.get(0));
+      Assertions.assertEquals(8L, ids.get(1));
+      Assertions.assertTrue(root.getVector("name").isNull(0));
+      DateDayVector days = (DateDayVector) root.getVector("day");
+      Assertions.assertEquals(10, days.get(0));
+      Assertions.assertTrue(days.isNull(1));
+    }
+  }
+
+  @Test
+  public void testUnsupportedType() {
+    TableSchema schema = schema();
+    schema.addColumn(new Column("price", TypeInfoFactory.getDecimalTypeInfo(10, 2)));
+    Assertions.assertNull(ArrowBatchConverter.toArrowSchema(schema));
+    Assertions.assertNull(ArrowBatchConverter.create(schema, new int[0],
+                                                     new AbstractToOdpsTransformer[0]));
+  }
+
+  @Test
+  public void testAlign() throws Exception {
+    ArrowBatchConverter converter =
+        ArrowBatchConverter.create(schema(), new int[0], new AbstractToOdpsTransformer[0]);
+    try (BufferAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+         VarCharVector names = new VarCharVector("NAME", allocator);
+         BigIntVector ids = new BigIntVector("id", allocator)) {
+      names.allocateNew();
+      names.setSafe(0, "a".getBytes(StandardCharsets.UTF_8));
+      ids.allocateNew();
+      ids.setSafe(0, 1L);
+      List<FieldVector> vectors = new ArrayList<>();
+      vectors.add(names);
+      vectors.add(ids);
+      VectorSchemaRoot root = new VectorSchemaRoot(vectors);
+      root.setRowCount(1);
+
+      List<FieldVector> created = new ArrayList<>();
+      VectorSchemaRoot aligned = converter.align(root, allocator, created);
+      Assertions.assertSame(ids, aligned.getFieldVectors().get(0));
+      Assertions.assertSame(names, aligned.getFieldVectors().get(1));
+      Assertions.assertEquals(1, created.size());
+      Assertions.assertTrue(aligned.getFieldVectors().get(2).isNull(0));
+      created.forEach(FieldVector::close);
+
+      // a vector of the wrong type is rejected
+      try (IntVector wrong = new IntVector("id", allocator)) {
+        wrong.allocateNew();
+        wrong.setSafe(0, 1);
+        VectorSchemaRoot wrongRoot = new VectorSchemaRoot(Collections.singletonList(wrong));
+        wrongRoot.setRowCount(1);
+        Assertions.assertThrows(SQLException.class,
+                                () -> converter.align(wrongRoot, allocator, new ArrayList<>()));
+      }
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.aliyun.odps.Instance;
+import com.aliyun.odps.Odps;
+import com.aliyun.odps.jdbc.utils.OdpsLogger;
+import com.aliyun.odps.sqa.SQLExecutor;
+import com.aliyun.odps.sqa.SQLExecutorBuilder;
+
+public class AttachedExecutorCacheTest {
+
+  private static final long IDLE_TIMEOUT = 60000;
+
+  private final OdpsLogger log = Mockito.mock(OdpsLogger.class);
+  private final Odps odps = Mockito.mock(Odps.class);
+
+  private static SQLExecutor attached(boolean terminated) throws Exception {
+    Instance session = Mockito.mock(Instance.class);
+    Mockito.when(session.getId()).thenReturn("session");
+    Mockito.when(session.isTerminated()).thenReturn(terminated);
+    SQLExecutor executor = Mockito.mock(SQLExecutor.class);
+    Mockito.when(executor.getInstance()).thenReturn(session);
+    return executor;
+  }
+
+  private AttachedExecutorCache.Attached withOdps(SQLExecutor executor) {
+    return new AttachedExecutorCache.Attached(executor, odps);
+  }
+
+  private SQLExecutor borrow(String key, SQLExecutorBuilder builder) throws Exception {
+    return AttachedExecutorCache.borrow(key, builder, odps, log).executor;
+  }
+
+  private static SQLExecutorBuilder builder(SQLExecutor built) throws Exception {
+    SQLExecutorBuilder builder = Mockito.mock(SQLExecutorBuilder.class);
+    Mockito.when(builder.build()).thenReturn(built);
+    return builder;
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    String key = AttachedExecutorCache.key("testReuse");
+    SQLExecutor first = attached(false);
+    Assertions.assertSame(first, borrow(key, builder(first)));
+    AttachedExecutorCache.giveBack(key, withOdps(first), IDLE_TIMEOUT, log);
+
+    SQLExecutorBuilder builder = builder(attached(false));
+    Assertions.assertSame(first, borrow(key, builder));
+    Mockito.verify(builder, Mockito.never()).build();
+    Mockito.verify(first, Mockito.never()).close();
+  }
+
+  @Test
+  public void testReuseKeepsOdps() throws Exception {
+    String key = AttachedExecutorCache.key("testReuseKeepsOdps");
+    SQLExecutor first = attached(false);
+    AttachedExecutorCache.giveBack(key, withOdps(first), IDLE_TIMEOUT, log);
+
+    // the borrowing connection rebinds the odps the executor was built with
+    Odps other = Mockito.mock(Odps.class);
+    AttachedExecutorCache.Attached reused =
+        AttachedExecutorCache.borrow(key, builder(attached(false)), other, log);
+    Assertions.assertSame(first, reused.executor);
+    Assertions.assertSame(odps, reused.odps);
+
+    SQLExecutor fresh = attached(false);
+    AttachedExecutorCache.Attached built =
+        AttachedExecutorCache.borrow(key, builder(fresh), other, log);
+    Assertions.assertSame(fresh, built.executor);
+    Assertions.assertSame(other, built.odps);
+  }
+
+  @Test
+  public void testOtherKey() throws Exception {
+    String key = AttachedExecutorCache.key("testOtherKey", "a");
+    SQLExecutor first = attached(false);
+    AttachedExecutorCache.giveBack(key, withOdps(first), IDLE_TIMEOUT, log);
+
+    SQLExecutor second = attached(false);
+    String otherKey = AttachedExecutorCache.key("testOtherKey", "b");
+    Assertions.assertSame(second, borrow(otherKey, builder(second)));
+    Assertions.assertSame(first, borrow(key, builder(second)));
+  }
+
+  @Test
+  public void testTerminatedSession() throws Exception {
+    String key = AttachedExecutorCache.key("testTerminatedSession");
+    SQLExecutor dead = attached(true);
+    AttachedExecutorCache.giveBack(key, withOdps(dead), IDLE_TIMEOUT, log);
+
+    SQLExecutor fresh = attached(false);
+    Assertions.assertSame(fresh, borrow(key, builder(fresh)));
+    Mockito.verify(dead).close();
+  }
+
+  @Test
+  public void testIdleEviction() throws Exception {
+    String key = AttachedExecutorCache.key("testIdleEviction");
+    SQLExecutor idle = attached(false);
+    AttachedExecutorCache.giveBack(key, withOdps(idle), 0, log);
+    AttachedExecutorCache.evictIdle();
+    Mockito.verify(idle).close();
+
+    SQLExecutor fresh = attached(false);
+    Assertions.assertSame(fresh, borrow(key, builder(fresh)));
+  }
+
+  @Test
+  public void testMaxIdlePerKey() throws Exception {
+    String key = AttachedExecutorCache.key("testMaxIdlePerKey");
+    SQLExecutor oldest = attached(false);
+    AttachedExecutorCache.giveBack(key, withOdps(oldest), IDLE_TIMEOUT, log);
+    for (int i = 0; i < AttachedExecutorCache.MAX_IDLE_PER_KEY; i++) {
+      AttachedExecutorCache.giveBack(key, withOdps(attached(false)), IDLE_TIMEOUT, log);
+    }
+    Mockito.verify(oldest).close();
+  }
+
+  @Test
+  public void testKey() {
+    Assertions.assertEquals(AttachedExecutorCache.key("ak", "project", null),
+                            AttachedExecutorCache.key("ak", "project", null));
+    Assertions.assertNotEquals(AttachedExecutorCache.key("ak", "project"),
+                               AttachedExecutorCache.key("ak", "project2"));
+    Assertions.assertFalse(AttachedExecutorCache.key("secret-key").contains("secret"));
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+
+package com.aliyun.odps.jdbc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BasicTableUploaderTest {
+
+  @Test
+  public void testRetryBackoffDoublesUpToMax() {
+    Assertions.assertEquals(1000, BasicTableUploader.retryBackoff(1000, 0));
+    Assertions.assertEquals(4000, BasicTableUploader.retryBackoff(1000, 2));
+    Assertions.assertEquals(BasicTableUploader.MAX_RETRY_BACKOFF,
+                            BasicTableUploader.retryBackoff(1000, 10));
+    // large attempts or intervals neither overflow nor go negative
+    Assertions.assertEquals(BasicTableUploader.MAX_RETRY_BACKOFF,
+                            BasicTableUploader.retryBackoff(1000, 64));
+    Assertions.assertEquals(BasicTableUploader.MAX_RETRY_BACKOFF,
+                            BasicTableUploader.retryBackoff(Long.MAX_VALUE / 2, 70));
+    Assertions.assertEquals(0, BasicTableUploader.retryBackoff(0, Integer.MAX_VALUE - 1));
+  }
+}
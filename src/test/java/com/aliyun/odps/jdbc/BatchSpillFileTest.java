@@ -0,0 +1,235 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.aliyun.odps.Odps;
+import com.aliyun.odps.data.Binary;
+import com.aliyun.odps.jdbc.utils.OdpsLogger;
+
+public class BatchSpillFileTest {
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    Timestamp ts = new Timestamp(1700000000123L);
+    ts.setNanos(123456789);
+    ZonedDateTime zdt = ZonedDateTime.of(2024, 1, 2, 3, 4, 5, 6, ZoneId.of("Asia/Shanghai"));
+    Object[] row = new Object[]{
+        (byte) 1, (short) 2, 3, 4L, 5.5f, 6.5d, true, null, "s".getBytes(),
+        new BigDecimal("-12345678901234567890.0123"), ts, new java.sql.Date(86400000L),
+        LocalDate.of(2024, 2, 29), Instant.ofEpochSecond(1, 2), zdt,
+        new Binary(new byte[]{1, 2}), Arrays.asList(1L, 2L)
+    };
+
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(row.length);
+    for (int i = 0; i < row.length; i++) {
+      batch.setObject(i, row[i]);
+    }
+    batch.addRow();
+
+    try (BatchSpillFile spillFile = new BatchSpillFile(row.length, null)) {
+      spillFile.spill(batch);
+      spillFile.spill(batch);
+      Assertions.assertEquals(2, spillFile.getRowCount());
+      Assertions.assertEquals(2, spillFile.getSegmentCount());
+
+      try (BatchSpillFile.Reader reader = spillFile.openReader(0)) {
+        for (int segment = 0; segment < 2; segment++) {
+          ParameterBatchBuffer read = reader.next();
+          Assertions.assertEquals(1, read.getRowCount());
+          for (int i = 0; i < row.length; i++) {
+            if (row[i] instanceof byte[]) {
+              Assertions.assertArrayEquals((byte[]) row[i], (byte[]) read.get(i, 0));
+            } else {
+              Assertions.assertEquals(row[i], read.get(i, 0));
+            }
+          }
+        }
+        Assertions.assertNull(reader.next());
+      }
+    }
+  }
+
+  @Test
+  public void testUnspillableValueLeavesFileUnchanged() throws IOException {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(1);
+    batch.setLong(0, 1L);
+    batch.addRow();
+
+    try (BatchSpillFile spillFile = new BatchSpillFile(1, null)) {
+      spillFile.spill(batch);
+      long bytes = spillFile.getFileBytes();
+
+      batch.setObject(0, new Object());
+      batch.addRow();
+      Assertions.assertThrows(IOException.class, () -> spillFile.spill(batch));
+      Assertions.assertEquals(bytes, spillFile.getFileBytes());
+      Assertions.assertEquals(1, spillFile.getSegmentCount());
+    }
+  }
+
+  @Test
+  public void testSerializationFailureTruncatesSegment() throws IOException {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(2);
+    batch.setLong(0, 1L);
+    batch.setObject(1, "a");
+    batch.addRow();
+
+    try (BatchSpillFile spillFile = new BatchSpillFile(2, null)) {
+      spillFile.spill(batch);
+      long bytes = spillFile.getFileBytes();
+
+      // passes the check, but fails halfway through serialization
+      List<Object> list = new ArrayList<>();
+      list.add(new Object());
+      batch.clear();
+      batch.setLong(0, 2L);
+      batch.setObject(1, list);
+      batch.addRow();
+      Assertions.assertThrows(IOException.class, () -> spillFile.spill(batch));
+      Assertions.assertEquals(bytes, new File(spillFile.getPath()).length());
+
+      batch.clear();
+      batch.setLong(0, 3L);
+      batch.setObject(1, "c");
+      batch.addRow();
+      spillFile.spill(batch);
+      Assertions.assertEquals(2, spillFile.getSegmentCount());
+
+      try (BatchSpillFile.Reader reader = spillFile.openReader(0)) {
+        Assertions.assertEquals(1L, reader.next().get(0, 0));
+        ParameterBatchBuffer read = reader.next();
+        Assertions.assertEquals(3L, read.get(0, 0));
+        Assertions.assertEquals("c", read.get(1, 0));
+        Assertions.assertNull(reader.next());
+      }
+    }
+  }
+
+  @Test
+  public void testReadFromSegmentAndAppend() throws IOException {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(1);
+    try (BatchSpillFile spillFile = new BatchSpillFile(1, null)) {
+      for (long i = 0; i < 2; i++) {
+        batch.setLong(0, i);
+        batch.addRow();
+        spillFile.spill(batch);
+        batch.clear();
+      }
+      try (BatchSpillFile.Reader reader = spillFile.openReader(1)) {
+        Assertions.assertEquals(1L, reader.next().get(0, 0));
+        Assertions.assertNull(reader.next());
+      }
+
+      // the file is still open for appending after it was read
+      batch.setLong(0, 2L);
+      batch.addRow();
+      spillFile.spill(batch);
+      try (BatchSpillFile.Reader reader = spillFile.openReader(1)) {
+        Assertions.assertEquals(1L, reader.next().get(0, 0));
+        Assertions.assertEquals(2L, reader.next().get(0, 0));
+        Assertions.assertNull(reader.next());
+      }
+      try (BatchSpillFile.Reader reader = spillFile.openReader(3)) {
+        Assertions.assertNull(reader.next());
+      }
+    }
+  }
+
+  @Test
+  public void testRetriedBatchSkipsUploadedSegments() throws Exception {
+    String sql = "insert into t values (?);";
+    OdpsConnection conn = Mockito.mock(OdpsConnection.class);
+    conn.log = Mockito.mock(OdpsLogger.class);
+    Mockito.when(conn.getSqlTaskProperties()).thenReturn(new Properties());
+    Mockito.when(conn.getSqlTemplate(sql)).thenReturn(SqlTemplate.compile(sql));
+    Mockito.when(conn.getOdps()).thenReturn(Mockito.mock(Odps.class));
+    // every row is spilled as a segment of its own
+    Mockito.when(conn.getBatchSpillThreshold()).thenReturn(1L);
+    UploaderCache cache = Mockito.mock(UploaderCache.class);
+    DataUploader uploader = Mockito.mock(DataUploader.class);
+    Mockito.when(conn.getUploaderCache()).thenReturn(cache);
+    Mockito.when(cache.getTemplate(Mockito.any(), Mockito.eq(sql))).thenReturn(
+        new InsertTemplate("p", null, "t", null, null, null, null, false));
+    Mockito.when(cache.newUploader(Mockito.any())).thenReturn(uploader);
+
+    // the upload of the second row fails once
+    List<Object> uploaded = new ArrayList<>();
+    AtomicBoolean failed = new AtomicBoolean();
+    Mockito.when(uploader.upload(Mockito.any())).thenAnswer(invocation -> {
+      ParameterBatchBuffer segment = invocation.getArgument(0);
+      int rows = segment.getRowCount();
+      if (rows > 0 && Long.valueOf(1L).equals(segment.get(0, 0))
+          && failed.compareAndSet(false, true)) {
+        throw new BatchUpdateException("failed", null, 0, new int[]{Statement.EXECUTE_FAILED});
+      }
+      for (int r = 0; r < rows; r++) {
+        uploaded.add(segment.get(0, r));
+      }
+      int[] counts = new int[rows];
+      Arrays.fill(counts, 1);
+      return counts;
+    });
+
+    OdpsPreparedStatement ps = new OdpsPreparedStatement(conn, sql);
+    for (long i = 0; i < 3; i++) {
+      ps.setLong(1, i);
+      ps.addBatch();
+    }
+    BatchUpdateException e = Assertions.assertThrows(BatchUpdateException.class, ps::executeBatch);
+    Assertions.assertArrayEquals(new int[]{1, Statement.EXECUTE_FAILED}, e.getUpdateCounts());
+
+    // a row added after the failure is spilled too, and the retry resumes at the failed row
+    ps.setLong(1, 3L);
+    ps.addBatch();
+    Assertions.assertArrayEquals(new int[]{1, 1, 1, 1}, ps.executeBatch());
+    Assertions.assertEquals(Arrays.asList(0L, 1L, 2L, 3L), uploaded);
+    ps.close();
+  }
+
+  @Test
+  public void testCloseDeletesFile() throws IOException {
+    BatchSpillFile spillFile = new BatchSpillFile(1, null);
+    File file = new File(spillFile.getPath());
+    Assertions.assertTrue(file.exists());
+    spillFile.close();
+    Assertions.assertFalse(file.exists());
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.aliyun.odps.jdbc.utils.TestUtils;
+
+/**
+ * Integration tests of {@link OdpsConnection#isValid(int)} and of the {@code lazyInit} option.
+ */
+public class ConnectionLifecycleTest {
+
+  @Test
+  public void testIsValid() throws Exception {
+    Connection conn = TestUtils.getConnection();
+    try {
+      Assertions.assertTrue(conn.isValid(10));
+      // trusted for a few seconds, no request
+      Assertions.assertTrue(conn.isValid(0));
+      Assertions.assertThrows(SQLException.class, () -> conn.isValid(-1));
+    } finally {
+      conn.close();
+    }
+    Assertions.assertFalse(conn.isValid(10));
+  }
+
+  @Test
+  public void testLazyInit() throws Exception {
+    Connection conn = TestUtils.getConnection(Collections.singletonMap("lazyInit", "true"));
+    try {
+      OdpsConnection odpsConn = (OdpsConnection) conn;
+      Assertions.assertFalse(odpsConn.isInitialized());
+      Assertions.assertTrue(conn.isValid(10));
+      Assertions.assertFalse(odpsConn.isInitialized());
+
+      try (Statement stmt = conn.createStatement();
+           ResultSet rs = stmt.executeQuery("select 1;")) {
+        Assertions.assertTrue(odpsConn.isInitialized());
+        Assertions.assertTrue(rs.next());
+        Assertions.assertEquals(1, rs.getInt(1));
+      }
+    } finally {
+      conn.close();
+    }
+  }
+
+  @Test
+  public void testLazyInitCopyIn() throws Exception {
+    String tableName = "lazy_init_copy_in_table";
+    Connection setup = TestUtils.getConnection();
+    Statement stmt = setup.createStatement();
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    stmt.executeUpdate("create table " + tableName + " (id BIGINT, name STRING);");
+
+    Connection conn = TestUtils.getConnection(Collections.singletonMap("lazyInit", "true"));
+    try {
+      OdpsConnection odpsConn = conn.unwrap(OdpsConnection.class);
+      Assertions.assertFalse(odpsConn.isInitialized());
+      // the copy runs the deferred initialization before resolving the table
+      Assertions.assertEquals(2, odpsConn.copyIn(tableName, null, new StringReader("1,a\n2,b\n"),
+                                                 new CopyOptions()));
+      Assertions.assertTrue(odpsConn.isInitialized());
+    } finally {
+      conn.close();
+    }
+
+    ResultSet rs = stmt.executeQuery("select count(*) from " + tableName + ";");
+    Assertions.assertTrue(rs.next());
+    Assertions.assertEquals(2, rs.getLong(1));
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    setup.close();
+  }
+
+  @Test
+  public void testLazyInitNeverUsed() throws Exception {
+    Connection conn = TestUtils.getConnection(Collections.singletonMap("lazyInit", "true"));
+    conn.close();
+    Assertions.assertTrue(conn.isClosed());
+    Assertions.assertFalse(((OdpsConnection) conn).isInitialized());
+  }
+}
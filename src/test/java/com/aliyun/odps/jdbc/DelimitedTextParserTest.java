@@ -0,0 +1,81 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DelimitedTextParserTest {
+
+  @Test
+  public void testSplitAndParse() throws Exception {
+    DelimitedTextParser parser = new DelimitedTextParser(new CopyOptions());
+    String text = "1,\"a,b\",x\r\n2,\"line\nbreak\",\"q\"\"q\"\n3,,\"\"\n4,last,z";
+    DelimitedTextParser.Splitter splitter = parser.splitter(new StringReader(text));
+
+    List<List<String>> records = new ArrayList<>();
+    String chunk;
+    while ((chunk = splitter.nextChunk(2)) != null) {
+      int pos = 0;
+      while (pos < chunk.length()) {
+        List<String> fields = new ArrayList<>();
+        pos = parser.parseRecord(chunk, pos, fields);
+        records.add(fields);
+      }
+    }
+
+    Assertions.assertEquals(4, splitter.getRecords());
+    Assertions.assertEquals(Arrays.asList("1", "a,b", "x"), records.get(0));
+    Assertions.assertEquals(Arrays.asList("2", "line\nbreak", "q\"q"), records.get(1));
+    // unquoted empty field is null, quoted one is an empty string
+    Assertions.assertEquals(Arrays.asList("3", null, ""), records.get(2));
+    Assertions.assertEquals(Arrays.asList("4", "last", "z"), records.get(3));
+  }
+
+  @Test
+  public void testCustomFormat() throws Exception {
+    CopyOptions options = new CopyOptions().setDelimiter('|').setQuote('\'').setNullString("\\N");
+    DelimitedTextParser parser = new DelimitedTextParser(options);
+    List<String> fields = new ArrayList<>();
+
+    String record = "a|\\N|'\\N'||'x|y'\n";
+    int pos = parser.parseRecord(record, 0, fields);
+    Assertions.assertEquals(Arrays.asList("a", null, "\\N", "", "x|y"), fields);
+    Assertions.assertEquals(record.length(), pos);
+  }
+
+  @Test
+  public void testBlankAndUnclosedQuote() throws Exception {
+    DelimitedTextParser parser = new DelimitedTextParser(new CopyOptions());
+    List<String> fields = new ArrayList<>();
+
+    parser.parseRecord("\n", 0, fields);
+    Assertions.assertTrue(DelimitedTextParser.isBlank(fields));
+
+    Assertions.assertThrows(SQLException.class, () -> parser.parseRecord("1,\"open", 0, fields));
+  }
+}
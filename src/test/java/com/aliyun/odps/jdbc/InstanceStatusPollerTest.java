@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.aliyun.odps.Instance;
+import com.aliyun.odps.OdpsException;
+
+public class InstanceStatusPollerTest {
+
+  @Test
+  public void testCompletedOnceTerminated() throws Exception {
+    Instance instance = Mockito.mock(Instance.class);
+    Mockito.when(instance.isTerminated()).thenReturn(false, false, false, true);
+    PollingMetrics metrics = new PollingMetrics();
+
+    CompletableFuture<Void> terminated = InstanceStatusPoller.whenTerminated(instance, metrics);
+
+    terminated.get(5, TimeUnit.SECONDS);
+    Mockito.verify(instance, Mockito.times(4)).isTerminated();
+    Assertions.assertEquals(4, metrics.getChecks());
+    Assertions.assertEquals(1, metrics.getInstances());
+    // checked again after about 100, 200 and 400 ms, within a tick
+    Assertions.assertTrue(metrics.getWaitTime().getMax() >= 550);
+    Assertions.assertTrue(metrics.getAddedLatency().getMax() >= 350);
+  }
+
+  @Test
+  public void testTerminatedAtFirstCheck() throws Exception {
+    Instance instance = Mockito.mock(Instance.class);
+    Mockito.when(instance.isTerminated()).thenReturn(true);
+    PollingMetrics metrics = new PollingMetrics();
+
+    InstanceStatusPoller.waitForTermination(instance, metrics);
+
+    Assertions.assertEquals(1, metrics.getChecks());
+    Assertions.assertEquals(0, metrics.getAddedLatency().getMax());
+  }
+
+  @Test
+  public void testCompletedExceptionallyWhenStatusFails() throws Exception {
+    Instance instance = Mockito.mock(Instance.class);
+    Mockito.when(instance.isTerminated()).thenThrow(new OdpsException("no status"));
+    PollingMetrics metrics = new PollingMetrics();
+
+    OdpsException e = Assertions.assertThrows(
+        OdpsException.class, () -> InstanceStatusPoller.waitForTermination(instance, metrics));
+    Assertions.assertEquals("no status", e.getMessage());
+    Assertions.assertEquals(1, metrics.getFailedChecks());
+  }
+
+  @Test
+  public void testManyInstances() throws Exception {
+    List<CompletableFuture<Void>> waits = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      Instance instance = Mockito.mock(Instance.class);
+      Mockito.when(instance.isTerminated()).thenReturn(false, i % 2 == 0);
+      waits.add(InstanceStatusPoller.whenTerminated(instance, null));
+    }
+    for (int i = 0; i < waits.size(); i += 2) {
+      waits.get(i).get(5, TimeUnit.SECONDS);
+      waits.get(i + 1).cancel(false);
+    }
+  }
+
+  @Test
+  public void testCancelStopsChecks() throws Exception {
+    Instance instance = Mockito.mock(Instance.class);
+    Mockito.when(instance.isTerminated()).thenReturn(false);
+
+    CompletableFuture<Void> terminated = InstanceStatusPoller.whenTerminated(instance, null);
+    Mockito.verify(instance, Mockito.timeout(5000).times(2)).isTerminated();
+    terminated.cancel(false);
+    Thread.sleep(500);
+
+    Mockito.verify(instance, Mockito.atMost(3)).isTerminated();
+  }
+}
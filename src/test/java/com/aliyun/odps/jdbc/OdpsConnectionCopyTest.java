@@ -0,0 +1,143 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.aliyun.odps.jdbc.utils.TestUtils;
+
+public class OdpsConnectionCopyTest {
+
+  @Test
+  public void testCopyIn() throws Exception {
+    Connection conn = TestUtils.getConnection();
+    String tableName = "copy_in_table";
+
+    Statement stmt = conn.createStatement();
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    stmt.executeUpdate("create table if not exists " + tableName
+                       + " (id BIGINT, name STRING, price DECIMAL(10,2), created DATETIME)"
+                       + " partitioned by (ds STRING);");
+
+    StringBuilder csv = new StringBuilder("id,name,price,created\n");
+    for (int i = 0; i < 25000; i++) {
+      csv.append(i).append(",\"name, ").append(i).append("\",").append(i % 100).append(".25,")
+          .append("2024-01-01 00:00:00\n");
+    }
+    csv.append("25000,,,\n");
+    CopyOptions options = new CopyOptions().setHeader(true).setBatchRows(4000);
+    long rows = conn.unwrap(OdpsConnection.class).copyIn(
+        tableName, "ds='20240101'",
+        new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), options);
+    Assertions.assertEquals(25001, rows);
+
+    ResultSet rs = stmt.executeQuery(
+        "select count(*), count(name), max(name) from " + tableName + " where ds='20240101';");
+    Assertions.assertTrue(rs.next());
+    Assertions.assertEquals(25001, rs.getLong(1));
+    Assertions.assertEquals(25000, rs.getLong(2));
+    Assertions.assertEquals("name, 9999", rs.getString(3));
+
+    // a malformed record fails the whole load
+    Assertions.assertThrows(SQLException.class, () -> conn.unwrap(OdpsConnection.class).copyIn(
+        tableName, "ds='20240102'", new StringReader("1,a,1.5,2024-01-01 00:00:00\nx,b,1,\n"),
+        new CopyOptions()));
+    rs = stmt.executeQuery("select count(*) from " + tableName + " where ds='20240102';");
+    Assertions.assertTrue(rs.next());
+    Assertions.assertEquals(0, rs.getLong(1));
+
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    conn.close();
+  }
+
+  @Test
+  public void testCopyTable() throws Exception {
+    Connection conn = TestUtils.getConnection();
+    String sourceTable = "copy_table_source";
+    String targetTable = "copy_table_target";
+
+    Statement stmt = conn.createStatement();
+    stmt.executeUpdate("drop table if exists " + sourceTable + ";");
+    stmt.executeUpdate("drop table if exists " + targetTable + ";");
+    stmt.executeUpdate("create table " + sourceTable
+                       + " (id BIGINT, name STRING, price DECIMAL(10,2)) partitioned by (ds STRING);");
+    stmt.executeUpdate("create table " + targetTable + " (code STRING, id INT, label STRING);");
+
+    PreparedStatement ps = conn.prepareStatement(
+        "insert into " + sourceTable + " partition (ds='20240101') values (?, ?, ?);");
+    for (int i = 0; i < 25000; i++) {
+      ps.setLong(1, i);
+      ps.setString(2, i % 10 == 0 ? null : "name" + i);
+      ps.setBigDecimal(3, new BigDecimal(i % 100 + ".25"));
+      ps.addBatch();
+    }
+    ps.executeBatch();
+    ps.close();
+
+    Map<String, String> mapping = new LinkedHashMap<>();
+    mapping.put("code", "id");
+    mapping.put("id", "id");
+    mapping.put("label", "name");
+    AtomicLong notified = new AtomicLong();
+    TableCopyProgress progress = conn.unwrap(OdpsConnection.class).copyTable(
+        sourceTable, conn.unwrap(OdpsConnection.class), targetTable,
+        new TableCopyOptions().setSourcePartition("ds='20240101'").setColumnMapping(mapping)
+            .setReaderThreads(3).setWriterThreads(2).setBatchRows(4000).setQueueCapacity(2)
+            .setProgressListener(p -> notified.incrementAndGet()));
+    Assertions.assertEquals(25000, progress.getTotalRows());
+    Assertions.assertEquals(25000, progress.getRowsRead());
+    Assertions.assertEquals(25000, progress.getRowsWritten());
+    Assertions.assertEquals(progress.getBlocksWritten(), notified.get());
+
+    ResultSet rs = stmt.executeQuery(
+        "select count(*), count(label), max(id), max(code) from " + targetTable + ";");
+    Assertions.assertTrue(rs.next());
+    Assertions.assertEquals(25000, rs.getLong(1));
+    Assertions.assertEquals(22500, rs.getLong(2));
+    Assertions.assertEquals(24999, rs.getInt(3));
+    Assertions.assertEquals("9999", rs.getString(4));
+
+    // an unmapped target column fails before anything is written
+    mapping.put("missing", "no_such_column");
+    Assertions.assertThrows(SQLException.class, () -> conn.unwrap(OdpsConnection.class).copyTable(
+        sourceTable, conn.unwrap(OdpsConnection.class), targetTable,
+        new TableCopyOptions().setColumnMapping(mapping)));
+
+    stmt.executeUpdate("drop table if exists " + sourceTable + ";");
+    stmt.executeUpdate("drop table if exists " + targetTable + ";");
+    conn.close();
+  }
+}
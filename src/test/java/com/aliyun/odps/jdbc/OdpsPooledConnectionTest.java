@@ -0,0 +1,132 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+public class OdpsPooledConnectionTest {
+
+  private final OdpsConnection physical = Mockito.mock(OdpsConnection.class);
+  private final ConnectionEventListener listener = Mockito.mock(ConnectionEventListener.class);
+
+  private OdpsPooledConnection newPooledConnection() {
+    OdpsPooledConnection pooled = new OdpsPooledConnection(physical);
+    pooled.addConnectionEventListener(listener);
+    return pooled;
+  }
+
+  @Test
+  public void testForward() throws Exception {
+    Mockito.when(physical.getSchema()).thenReturn("default");
+    Connection conn = newPooledConnection().getConnection();
+    Assertions.assertEquals("default", conn.getSchema());
+    Assertions.assertFalse(conn.isClosed());
+  }
+
+  @Test
+  public void testCloseHandle() throws Exception {
+    OdpsPooledConnection pooled = newPooledConnection();
+    Connection conn = pooled.getConnection();
+    conn.close();
+    conn.close();
+
+    Mockito.verify(physical, Mockito.times(1)).resetState();
+    Mockito.verify(physical, Mockito.never()).close();
+    Mockito.verify(listener, Mockito.times(1))
+        .connectionClosed(ArgumentMatchers.any(ConnectionEvent.class));
+    Assertions.assertTrue(conn.isClosed());
+    Assertions.assertThrows(SQLException.class, conn::createStatement);
+
+    // lent out again
+    Assertions.assertFalse(pooled.getConnection().isClosed());
+  }
+
+  @Test
+  public void testResetFailure() throws Exception {
+    Mockito.doThrow(new SQLException("commit failed")).when(physical).resetState();
+    newPooledConnection().getConnection().close();
+    Mockito.verify(listener).connectionErrorOccurred(ArgumentMatchers.any(ConnectionEvent.class));
+    Mockito.verify(listener, Mockito.never())
+        .connectionClosed(ArgumentMatchers.any(ConnectionEvent.class));
+  }
+
+  @Test
+  public void testNewHandleClosesPrevious() throws Exception {
+    OdpsPooledConnection pooled = newPooledConnection();
+    Connection first = pooled.getConnection();
+    Connection second = pooled.getConnection();
+    Assertions.assertTrue(first.isClosed());
+    Assertions.assertFalse(second.isClosed());
+    Mockito.verify(listener, Mockito.never())
+        .connectionClosed(ArgumentMatchers.any(ConnectionEvent.class));
+  }
+
+  @Test
+  public void testClosePhysical() throws Exception {
+    OdpsPooledConnection pooled = newPooledConnection();
+    Connection conn = pooled.getConnection();
+    pooled.close();
+    Mockito.verify(physical).close();
+    Assertions.assertTrue(conn.isClosed());
+  }
+
+  @Test
+  public void testChildrenReturnHandle() throws Exception {
+    OdpsStatement physicalStmt = Mockito.mock(OdpsStatement.class);
+    Mockito.when(physicalStmt.getConnection()).thenReturn(physical);
+    ResultSet physicalRs = Mockito.mock(ResultSet.class);
+    Mockito.when(physicalRs.getStatement()).thenReturn(physicalStmt);
+    Mockito.when(physicalRs.next()).thenReturn(true);
+    Mockito.when(physicalStmt.executeQuery("select 1")).thenReturn(physicalRs);
+    Mockito.when(physical.createStatement()).thenReturn(physicalStmt);
+    OdpsPreparedStatement physicalPs = Mockito.mock(OdpsPreparedStatement.class);
+    Mockito.when(physicalPs.getConnection()).thenReturn(physical);
+    Mockito.when(physical.prepareStatement("select ?")).thenReturn(physicalPs);
+    OdpsDatabaseMetaData physicalMeta = Mockito.mock(OdpsDatabaseMetaData.class);
+    Mockito.when(physicalMeta.getConnection()).thenReturn(physical);
+    Mockito.when(physical.getMetaData()).thenReturn(physicalMeta);
+
+    Connection conn = newPooledConnection().getConnection();
+    Statement stmt = conn.createStatement();
+    Assertions.assertSame(conn, stmt.getConnection());
+    ResultSet rs = stmt.executeQuery("select 1");
+    Assertions.assertTrue(rs.next());
+    Assertions.assertSame(stmt, rs.getStatement());
+    PreparedStatement ps = conn.prepareStatement("select ?");
+    Assertions.assertSame(conn, ps.getConnection());
+    DatabaseMetaData meta = conn.getMetaData();
+    Assertions.assertSame(conn, meta.getConnection());
+  }
+}
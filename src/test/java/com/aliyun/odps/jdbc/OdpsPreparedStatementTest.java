@@ -35,10 +35,18 @@ import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.TimeZone;
 
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VectorSchemaRoot;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -556,6 +564,137 @@ public class OdpsPreparedStatementTest {
 
   }
 
+  @Test
+  public void testBatchUploadTableWithDynamicPartition() throws Exception {
+    Connection conn = TestUtils.getConnection();
+    String tableName = "prepared_batch_upload_dynamic_partition_table";
+
+    Statement stmt = conn.createStatement();
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    stmt.executeUpdate(
+        "create table if not exists " + tableName + " (key1 STRING, key2 BIGINT)"
+        + "partitioned by (p1 STRING, p2 STRING);");
+
+    PreparedStatement
+        ps =
+        conn.prepareStatement(
+            "insert into " + tableName + " partition(p1=?, p2)" + " values (?, ?, ?);");
+
+    for (int i = 0; i < 30; i++) {
+      ps.setString(1, "day" + (i % 2));
+      ps.setString(2, "value" + i);
+      ps.setLong(3, i);
+      ps.setString(4, "hour" + (i % 3));
+      ps.addBatch();
+    }
+
+    int[] updateCounts = ps.executeBatch();
+    Assertions.assertEquals(30, updateCounts.length);
+    ps.close();
+
+    Statement query = conn.createStatement();
+    ResultSet rs = query.executeQuery(
+        "select p1, p2, count(*) from " + tableName + " group by p1, p2;");
+    int partitions = 0;
+    while (rs.next()) {
+      Assertions.assertEquals(5, rs.getLong(3));
+      partitions++;
+    }
+    Assertions.assertEquals(6, partitions);
+
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+  }
+
+  @Test
+  public void testBatchUploadWithSharedSession() throws Exception {
+    Connection conn =
+        TestUtils.getConnection(Collections.singletonMap("uploadSessionCache", "true"));
+    String tableName = "prepared_batch_upload_shared_session_table";
+
+    Statement stmt = conn.createStatement();
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    stmt.executeUpdate("create table if not exists " + tableName + " (key1 BIGINT);");
+
+    UploaderCache cache = conn.unwrap(OdpsConnection.class).getUploaderCache();
+    for (int i = 0; i < 3; i++) {
+      PreparedStatement ps = conn.prepareStatement("insert into " + tableName + " values (?);");
+      ps.setLong(1, i);
+      ps.addBatch();
+      ps.executeBatch();
+      ps.close();
+      Assertions.assertEquals(1, cache.getSessionCount());
+    }
+    conn.unwrap(OdpsConnection.class).commitUploadSessions();
+    Assertions.assertEquals(0, cache.getSessionCount());
+
+    ResultSet rs = stmt.executeQuery("select count(*) from " + tableName + ";");
+    Assertions.assertTrue(rs.next());
+    Assertions.assertEquals(3, rs.getLong(1));
+
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    conn.close();
+  }
+
+  @Test
+  public void testBatchInsertArrow() throws Exception {
+    Connection conn = TestUtils.getConnection(Collections.singletonMap("uploadArrow", "true"));
+    String tableName = "prepared_batch_arrow_table";
+
+    Statement stmt = conn.createStatement();
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    stmt.executeUpdate("create table " + tableName
+                       + " (id BIGINT, score DOUBLE, name STRING, day DATE);");
+
+    PreparedStatement ps = conn.prepareStatement(
+        "insert into " + tableName + " values (?, ?, ?, ?);");
+    for (int i = 0; i < 1000; i++) {
+      ps.setLong(1, i);
+      ps.setDouble(2, i * 0.5);
+      ps.setString(3, i % 2 == 0 ? null : "name" + i);
+      ps.setDate(4, Date.valueOf("2024-01-01"));
+      ps.addBatch();
+    }
+    Assertions.assertEquals(1000, ps.executeBatch().length);
+
+    // vectors built by the caller, the missing columns are null
+    OdpsPreparedStatement odpsPs = ps.unwrap(OdpsPreparedStatement.class);
+    Assertions.assertEquals(4, odpsPs.getArrowSchema().getFields().size());
+    try (RootAllocator allocator = new RootAllocator(Long.MAX_VALUE);
+         BigIntVector ids = new BigIntVector("id", allocator);
+         Float8Vector scores = new Float8Vector("score", allocator)) {
+      ids.allocateNew(500);
+      scores.allocateNew(500);
+      for (int i = 0; i < 500; i++) {
+        ids.set(i, 1000 + i);
+        scores.set(i, 1.0);
+      }
+      List<FieldVector> vectors = Arrays.asList(ids, scores);
+      VectorSchemaRoot root = new VectorSchemaRoot(vectors);
+      root.setRowCount(500);
+      Assertions.assertEquals(500, odpsPs.executeArrowBatch(root).length);
+    }
+    UploadMetrics metrics = odpsPs.getUploadMetrics();
+    Assertions.assertEquals(1500, metrics.getRows());
+    Assertions.assertEquals(2, metrics.getBlocks());
+    Assertions.assertEquals(1, metrics.getSessions());
+    Assertions.assertEquals(2, metrics.getBlockLatency().getCount());
+    ps.close();
+    Assertions.assertEquals(1, metrics.getCommits());
+    Assertions.assertTrue(conn.unwrap(OdpsConnection.class).getUploadMetrics().getRows() >= 1500);
+
+    ResultSet rs = stmt.executeQuery(
+        "select count(*), count(name), count(day), max(id), sum(score) from " + tableName + ";");
+    Assertions.assertTrue(rs.next());
+    Assertions.assertEquals(1500, rs.getLong(1));
+    Assertions.assertEquals(500, rs.getLong(2));
+    Assertions.assertEquals(1000, rs.getLong(3));
+    Assertions.assertEquals(1499, rs.getLong(4));
+    Assertions.assertEquals(250250.0, rs.getDouble(5), 0.001);
+
+    stmt.executeUpdate("drop table if exists " + tableName + ";");
+    conn.close();
+  }
+
   @Test
   public void testSqlInjection() throws Exception {
     Connection connection = TestUtils.getConnection();
@@ -638,6 +777,50 @@ public class OdpsPreparedStatementTest {
 
   }
 
+  @Test
+  public void testBatchUpsertAndDeleteOnAcid2Table() throws Exception {
+    Connection connection = TestUtils.getConnection();
+    Statement ddl = connection.createStatement();
+    ddl.executeUpdate("drop table if exists acid_upsert_table;");
+    ddl.executeUpdate(
+        "create table acid_upsert_table(id bigint not null primary key, c1 string) "
+        + "tblproperties (\"transactional\"=\"true\");");
+    ddl.close();
+
+    PreparedStatement upsert = connection.prepareStatement(
+        "insert into acid_upsert_table values (?, ?);");
+    for (int i = 0; i < 100; i++) {
+      upsert.setLong(1, i);
+      upsert.setString(2, "v" + i);
+      upsert.addBatch();
+    }
+    int[] counts = upsert.executeBatch();
+    Assertions.assertEquals(100, counts.length);
+    // the second batch goes through the same streams and overwrites the first one
+    for (int i = 0; i < 100; i++) {
+      upsert.setLong(1, i);
+      upsert.setString(2, "w" + i);
+      upsert.addBatch();
+    }
+    upsert.executeBatch();
+    upsert.close();
+
+    PreparedStatement delete = connection.prepareStatement(
+        "delete from acid_upsert_table where id = ?;");
+    for (int i = 0; i < 100; i += 2) {
+      delete.setLong(1, i);
+      delete.addBatch();
+    }
+    Assertions.assertEquals(50, delete.executeBatch().length);
+    delete.close();
+
+    ResultSet resultSet =
+        runQuery("select count(*), min(c1) from acid_upsert_table;", connection);
+    resultSet.next();
+    Assertions.assertEquals(50, resultSet.getInt(1));
+    Assertions.assertEquals("w1", resultSet.getString(2));
+  }
+
   @Test
   public void testAcidTable() throws Exception {
     Connection connection = TestUtils.getConnection();
@@ -24,6 +24,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.Calendar;
@@ -266,6 +267,36 @@ public class OdpsStatementTest {
     stmt.close();
   }
 
+  @Test
+  public void testQueryTimeout() throws Exception {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.setQueryTimeout(1);
+      Assertions.assertEquals(1, stmt.getQueryTimeout());
+      // an offline instance takes longer than a second to be scheduled
+      Assertions.assertThrows(SQLTimeoutException.class, () -> stmt.executeUpdate(
+          "insert into table " + OUTPUT_TABLE_NAME + " select * from " + INPUT_TABLE_NAME + ";"));
+
+      stmt.setQueryTimeout(0);
+      Assertions.assertEquals(0, stmt.getQueryTimeout());
+      stmt.executeUpdate("insert into table " + OUTPUT_TABLE_NAME + " select 1;");
+    }
+  }
+
+  @Test
+  public void testQueryTimeoutStopsOnceRead() throws Exception {
+    try (OdpsStatement stmt = (OdpsStatement) conn.createStatement()) {
+      stmt.setQueryTimeout(20);
+      long start = System.currentTimeMillis();
+      ResultSet rs = stmt.executeQuery("select 1;");
+      Assertions.assertTrue(rs.next());
+      Assertions.assertFalse(rs.next());
+      // the timer of a result set read to the end does not fire, though it is not closed
+      Thread.sleep(Math.max(0, start + 21000 - System.currentTimeMillis()));
+      Assertions.assertFalse(stmt.isTimedOut());
+      rs.close();
+    }
+  }
+
   @Test
   public void testExecuteQueryEmpty() throws Exception {
     Statement stmt = conn.createStatement();
@@ -0,0 +1,198 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ParameterBatchBufferTest {
+
+  @Test
+  public void testTypedRoundTrip() {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(8);
+    batch.setByte(0, (byte) 1);
+    batch.setShort(1, (short) 2);
+    batch.setInt(2, 3);
+    batch.setLong(3, 4L);
+    batch.setFloat(4, 5.5f);
+    batch.setDouble(5, 6.5d);
+    batch.setBoolean(6, true);
+    batch.setObject(7, new BigDecimal("7.7"));
+    Assertions.assertEquals(8, batch.getBoundCount());
+    Assertions.assertEquals(3, batch.getCurrent(2));
+    batch.addRow();
+
+    Assertions.assertEquals(1, batch.getRowCount());
+    Assertions.assertEquals(0, batch.getBoundCount());
+    Assertions.assertEquals((byte) 1, batch.get(0, 0));
+    Assertions.assertEquals((short) 2, batch.get(1, 0));
+    Assertions.assertEquals(3, batch.get(2, 0));
+    Assertions.assertEquals(4L, batch.get(3, 0));
+    Assertions.assertEquals(5.5f, batch.get(4, 0));
+    Assertions.assertEquals(6.5d, batch.get(5, 0));
+    Assertions.assertEquals(true, batch.get(6, 0));
+    Assertions.assertEquals(new BigDecimal("7.7"), batch.get(7, 0));
+  }
+
+  @Test
+  public void testUnboundAndNull() {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(2);
+    batch.setLong(0, 1L);
+    batch.addRow();
+    batch.setNull(0);
+    batch.setLong(1, 2L);
+    batch.addRow();
+
+    Assertions.assertEquals(1L, batch.get(0, 0));
+    Assertions.assertNull(batch.get(1, 0));
+    Assertions.assertNull(batch.get(0, 1));
+    Assertions.assertEquals(2L, batch.get(1, 1));
+  }
+
+  @Test
+  public void testMixedTypesFallBackToObjects() {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(1);
+    batch.setInt(0, 1);
+    batch.addRow();
+    batch.addRow();
+    batch.setLong(0, 2L);
+    batch.addRow();
+    batch.setObject(0, "s".getBytes());
+    batch.addRow();
+
+    Assertions.assertEquals(1, batch.get(0, 0));
+    Assertions.assertNull(batch.get(0, 1));
+    Assertions.assertEquals(2L, batch.get(0, 2));
+    Assertions.assertArrayEquals("s".getBytes(), (byte[]) batch.get(0, 3));
+  }
+
+  @Test
+  public void testGrowAcrossChunks() {
+    int rows = ParameterBatchBuffer.CHUNK_SIZE * 3 + 7;
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(2);
+    for (int i = 0; i < rows; i++) {
+      batch.setLong(0, i);
+      batch.setDouble(1, i / 2.0);
+      batch.addRow();
+    }
+    Assertions.assertEquals(rows, batch.getRowCount());
+    for (int i = 0; i < rows; i++) {
+      Assertions.assertEquals((long) i, batch.get(0, i));
+      Assertions.assertEquals(i / 2.0, batch.get(1, i));
+    }
+  }
+
+  @Test
+  public void testClearKeepsCurrentRow() {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(2);
+    batch.setInt(0, 1);
+    batch.addRow();
+    batch.setInt(0, 2);
+    batch.clear();
+
+    Assertions.assertTrue(batch.isEmpty());
+    Assertions.assertEquals(1, batch.getBoundCount());
+    Assertions.assertEquals(2, batch.getCurrent(0));
+    batch.addRow();
+    Assertions.assertEquals(2, batch.get(0, 0));
+  }
+
+  @Test
+  public void testPrimitiveColumnsStayPrimitive() {
+    int rows = ParameterBatchBuffer.CHUNK_SIZE * 2 + 1;
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(4);
+    for (int i = 0; i < rows; i++) {
+      batch.setInt(0, i);
+      batch.setLong(1, i);
+      batch.setDouble(2, i);
+      if (i % 3 == 0) {
+        batch.setNull(3);
+      } else {
+        batch.setBoolean(3, i % 2 == 0);
+      }
+      batch.addRow();
+    }
+
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.INT, batch.getStorageKind(0));
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.LONG, batch.getStorageKind(1));
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.DOUBLE, batch.getStorageKind(2));
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.BOOLEAN, batch.getStorageKind(3));
+    for (int i = 0; i < rows; i++) {
+      Assertions.assertEquals(i, batch.get(0, i));
+      Assertions.assertEquals((long) i, batch.get(1, i));
+      Assertions.assertEquals((double) i, batch.get(2, i));
+      Assertions.assertEquals(i % 3 == 0 ? null : i % 2 == 0, batch.get(3, i));
+    }
+  }
+
+  @Test
+  public void testMixedTypesSwitchToObjectStorage() {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(2);
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.NONE, batch.getStorageKind(0));
+    batch.setInt(0, 1);
+    batch.setDouble(1, 1.5);
+    batch.addRow();
+    batch.setLong(0, 2L);
+    batch.setObject(1, "x");
+    batch.addRow();
+
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.OBJECT, batch.getStorageKind(0));
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.OBJECT, batch.getStorageKind(1));
+    Assertions.assertEquals(1, batch.get(0, 0));
+    Assertions.assertEquals(2L, batch.get(0, 1));
+    Assertions.assertEquals(1.5, batch.get(1, 0));
+    Assertions.assertEquals("x", batch.get(1, 1));
+  }
+
+  @Test
+  public void testCopyKeepsStorage() {
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(3);
+    for (int i = 0; i < 3; i++) {
+      batch.setLong(0, i);
+      if (i != 1) {
+        batch.setDouble(1, i * 0.5);
+      }
+      batch.setObject(2, "v" + i);
+      batch.addRow();
+    }
+
+    ParameterBatchBuffer rows = new ParameterBatchBuffer(2);
+    for (int i = 2; i >= 0; i -= 2) {
+      rows.copy(0, batch, 1, i);
+      rows.copy(1, batch, 0, i);
+      rows.addRow();
+    }
+    rows.copy(0, batch, 1, 1);
+    rows.copy(1, batch, 2, 1);
+    rows.addRow();
+
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.DOUBLE, rows.getStorageKind(0));
+    Assertions.assertEquals(ParameterBatchBuffer.Kind.OBJECT, rows.getStorageKind(1));
+    Assertions.assertEquals(1.0, rows.get(0, 0));
+    Assertions.assertEquals(0.0, rows.get(0, 1));
+    Assertions.assertNull(rows.get(0, 2));
+    Assertions.assertEquals(2L, rows.get(1, 0));
+    Assertions.assertEquals(0L, rows.get(1, 1));
+    Assertions.assertEquals("v1", rows.get(1, 2));
+  }
+}
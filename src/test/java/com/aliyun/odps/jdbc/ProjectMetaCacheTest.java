@@ -0,0 +1,57 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ProjectMetaCacheTest {
+
+  @Test
+  public void testGetAndExpire() throws Exception {
+    String key = AttachedExecutorCache.key("project", "testGetAndExpire");
+    Assertions.assertNull(ProjectMetaCache.getProject(key));
+
+    ProjectMetaCache.ProjectMeta meta = new ProjectMetaCache.ProjectMeta("true", "Asia/Shanghai");
+    ProjectMetaCache.putProject(key, meta, 60000);
+    Assertions.assertSame(meta, ProjectMetaCache.getProject(key));
+
+    ProjectMetaCache.putProject(key, meta, 1);
+    Thread.sleep(5);
+    Assertions.assertNull(ProjectMetaCache.getProject(key));
+  }
+
+  @Test
+  public void testDisabled() {
+    String key = AttachedExecutorCache.key("project", "testDisabled");
+    ProjectMetaCache.putProject(key, new ProjectMetaCache.ProjectMeta(null, null), 0);
+    Assertions.assertNull(ProjectMetaCache.getProject(key));
+  }
+
+  @Test
+  public void testInvalidate() {
+    String key = AttachedExecutorCache.key("project", "testInvalidate");
+    ProjectMetaCache.putProject(key, new ProjectMetaCache.ProjectMeta("false", null), 60000);
+    ProjectMetaCache.invalidate(key);
+    Assertions.assertNull(ProjectMetaCache.getProject(key));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.aliyun.odps.jdbc.utils.OdpsLogger;
+import com.aliyun.odps.sqa.SQLExecutor;
+import com.aliyun.odps.sqa.SQLExecutorBuilder;
+
+public class SQLExecutorPoolTest {
+
+  private final SQLExecutor shared = Mockito.mock(SQLExecutor.class);
+  private final SQLExecutorBuilder builder = Mockito.mock(SQLExecutorBuilder.class);
+
+  private SQLExecutorPool newPool(int maxSize) throws Exception {
+    Mockito.when(builder.clone()).thenReturn(builder);
+    Mockito.when(builder.build()).thenAnswer(invocation -> Mockito.mock(SQLExecutor.class));
+    return new SQLExecutorPool(builder, shared, maxSize, Mockito.mock(OdpsLogger.class));
+  }
+
+  @Test
+  public void testSharedByDefault() throws Exception {
+    SQLExecutorPool pool = newPool(1);
+    Assertions.assertSame(shared, pool.borrow());
+    Assertions.assertSame(shared, pool.borrow());
+    Mockito.verify(builder, Mockito.never()).build();
+  }
+
+  @Test
+  public void testConcurrentStatements() throws Exception {
+    SQLExecutorPool pool = newPool(3);
+    SQLExecutor first = pool.borrow();
+    SQLExecutor second = pool.borrow();
+    SQLExecutor third = pool.borrow();
+    Assertions.assertSame(shared, first);
+    Assertions.assertNotSame(shared, second);
+    Assertions.assertNotSame(shared, third);
+    Assertions.assertNotSame(second, third);
+    // all in use, the executor of the connection is shared
+    Assertions.assertSame(shared, pool.borrow());
+    Assertions.assertEquals(3, pool.size());
+
+    pool.release(third);
+    Assertions.assertSame(third, pool.borrow());
+    Mockito.verify(builder, Mockito.times(2)).build();
+  }
+
+  @Test
+  public void testSharedReleased() throws Exception {
+    SQLExecutorPool pool = newPool(2);
+    SQLExecutor first = pool.borrow();
+    pool.release(first);
+    Assertions.assertSame(shared, pool.borrow());
+    Mockito.verify(builder, Mockito.never()).build();
+  }
+
+  @Test
+  public void testBuildFailure() throws Exception {
+    SQLExecutorPool pool = newPool(2);
+    Mockito.when(builder.build()).thenThrow(new RuntimeException("attach failed"));
+    pool.borrow();
+    Assertions.assertSame(shared, pool.borrow());
+    Assertions.assertEquals(1, pool.size());
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    SQLExecutorPool pool = newPool(3);
+    pool.borrow();
+    SQLExecutor idle = pool.borrow();
+    SQLExecutor inUse = pool.borrow();
+    pool.release(idle);
+    pool.close();
+    Mockito.verify(idle).close();
+    Mockito.verify(inUse, Mockito.never()).close();
+    pool.release(inUse);
+    Mockito.verify(inUse).close();
+    Mockito.verify(shared, Mockito.never()).close();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.aliyun.odps.jdbc.utils.SqlLexer;
+
+public class SettingsPrefixCacheTest {
+
+  private static final String SETTINGS = "-- bi tool\nSET odps.sql.type.system.odps2=true;\n"
+                                         + "set odps.sql.decimal.odps2=true; ";
+
+  @Test
+  public void testSameSettingsParsedOnce() {
+    SettingsPrefixCache cache = new SettingsPrefixCache(4);
+    String[] queries = {
+        "select 1;", "select * from t where id = ?;", "set extra=1; select 2", "/* c */ use p;"
+    };
+    for (int round = 0; round < 2; round++) {
+      for (String query : queries) {
+        String sql = SETTINGS + query;
+        assertSameResult(SqlLexer.lex(sql), SqlLexer.lex(sql, true, cache));
+      }
+    }
+    // every sql but the first starts with settings already parsed
+    Assertions.assertEquals(7, cache.getStats().getHits());
+    Assertions.assertEquals(1, cache.getStats().getMisses());
+    Assertions.assertEquals(0, cache.getStats().getEvictions());
+
+    // no settings, no lookup
+    SqlLexer.lex("select 1", true, cache);
+    Assertions.assertEquals(8, cache.getStats().getHits() + cache.getStats().getMisses());
+  }
+
+  @Test
+  public void testInvalidSettingsNotCached() {
+    SettingsPrefixCache cache = new SettingsPrefixCache(4);
+    String sql = "set a=1; set label 1 to table t; set b=2; select 1;";
+    for (int round = 0; round < 2; round++) {
+      SqlLexer.Result result = SqlLexer.lex(sql, true, cache);
+      assertSameResult(SqlLexer.lex(sql), result);
+    }
+    // only the settings before the invalid one are cached
+    Assertions.assertEquals(1, cache.getStats().getHits());
+  }
+
+  @Test
+  public void testEviction() {
+    SettingsPrefixCache cache = new SettingsPrefixCache(2);
+    for (int i = 0; i < 4; i++) {
+      SqlLexer.lex("set k=" + i + "; select 1", true, cache);
+    }
+    Assertions.assertEquals(2, cache.getStats().getEvictions());
+    Assertions.assertEquals(0, cache.getStats().getHits());
+    SqlLexer.lex("set k=3; select 2", true, cache);
+    Assertions.assertEquals(1, cache.getStats().getHits());
+    Assertions.assertEquals(0.2, cache.getStats().getHitRate(), 1e-9);
+  }
+
+  private static void assertSameResult(SqlLexer.Result expected, SqlLexer.Result actual) {
+    Assertions.assertEquals(expected.getSettings(), actual.getSettings());
+    Assertions.assertEquals(expected.getRemainingQuery(), actual.getRemainingQuery());
+    Assertions.assertEquals(expected.getErrors(), actual.getErrors());
+    Assertions.assertEquals(expected.getKind(), actual.getKind());
+    Assertions.assertEquals(expected.getUseTarget(), actual.getUseTarget());
+    Assertions.assertArrayEquals(expected.getPlaceholderOffsets(), actual.getPlaceholderOffsets());
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.TimeZone;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.aliyun.odps.data.Binary;
+import com.aliyun.odps.data.Varchar;
+
+public class SqlTemplateTest {
+
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+  private static final Predicate<String> NO_CHECK = str -> false;
+
+  @Test
+  public void testRenderLiterals() throws SQLException {
+    SqlTemplate template =
+        SqlTemplate.compile("select * from t where a = ? and b = ? and c in (?, ?, ?) and d = ?");
+    Assertions.assertEquals(6, template.getParameterCount());
+
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(6);
+    batch.setObject(0, 0);
+    batch.setObject(1, 12L);
+    batch.setObject(2, "x");
+    batch.setObject(3, new BigDecimal("1.50"));
+    batch.setObject(4, null);
+    batch.setObject(5, true);
+    Assertions.assertEquals(
+        "select * from t where a = 0 and b = 12L and c in ('x', 1.50BD, NULL) and d = TRUE",
+        template.render(batch, "UTF-8", UTC, NO_CHECK));
+
+    // the same template renders the next row
+    Binary binary = new Binary(new byte[]{1, 2});
+    batch.setObject(0, -1);
+    batch.setObject(2, new Varchar("y"));
+    batch.setObject(3, binary);
+    batch.setObject(4, "z".getBytes());
+    batch.setObject(5, false);
+    Assertions.assertEquals(
+        "select * from t where a = -1 and b = 12L and c in ('y', unhex('" + binary
+        + "'), 'z') and d = FALSE",
+        template.render(batch, "UTF-8", UTC, NO_CHECK));
+  }
+
+  @Test
+  public void testRenderDates() throws SQLException {
+    SqlTemplate template = SqlTemplate.compile("select ?, ?, ?");
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(3);
+    batch.setObject(0, new java.sql.Date(0));
+    batch.setObject(1, new java.sql.Time(3600_000L));
+    batch.setObject(2, LocalDate.of(2024, 2, 29));
+    Assertions.assertEquals("select DATE'1970-01-01', DATETIME'1970-01-01 01:00:00', "
+                            + "DATE'2024-02-29'",
+                            template.render(batch, "UTF-8", UTC, NO_CHECK));
+    Assertions.assertEquals("select DATE'1970-01-01', DATETIME'1970-01-01 09:00:00', "
+                            + "DATE'2024-02-29'",
+                            template.render(batch, "UTF-8",
+                                            TimeZone.getTimeZone("Asia/Shanghai"), NO_CHECK));
+  }
+
+  @Test
+  public void testNoPlaceholder() throws SQLException {
+    String sql = "select 1";
+    SqlTemplate template = SqlTemplate.compile(sql);
+    Assertions.assertEquals(0, template.getParameterCount());
+    Assertions.assertSame(sql, template.render(new ParameterBatchBuffer(0), "UTF-8", UTC,
+                                               NO_CHECK));
+  }
+
+  @Test
+  public void testQuotedPlaceholder() throws SQLException {
+    SqlTemplate template = SqlTemplate.compile("select '?', ? -- ?\n from t");
+    Assertions.assertEquals(1, template.getParameterCount());
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(1);
+    batch.setObject(0, 7);
+    Assertions.assertEquals("select '?', 7 -- ?\n from t",
+                            template.render(batch, "UTF-8", UTC, NO_CHECK));
+  }
+
+  @Test
+  public void testWrongNumberOfParameters() {
+    SqlTemplate template = SqlTemplate.compile("select ?, ?");
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(2);
+    batch.setObject(0, 1);
+    Assertions.assertThrows(SQLException.class,
+                            () -> template.render(batch, "UTF-8", UTC, NO_CHECK));
+  }
+
+  @Test
+  public void testInjectionCheck() {
+    SqlTemplate template = SqlTemplate.compile("select * from t where a = ?");
+    ParameterBatchBuffer batch = new ParameterBatchBuffer(1);
+    batch.setObject(0, "1' or '1'='1");
+    SQLException e = Assertions.assertThrows(SQLException.class,
+                                             () -> template.render(batch, "UTF-8", UTC,
+                                                                   str -> str.contains("'")));
+    Assertions.assertTrue(e.getMessage().contains("injection"), e.getMessage());
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.aliyun.odps.Instance;
+import com.aliyun.odps.OdpsException;
+import com.aliyun.odps.jdbc.utils.OdpsLogger;
+import com.aliyun.odps.sqa.ExecuteMode;
+import com.aliyun.odps.sqa.SQLExecutor;
+
+public class StatementBatchRunnerTest {
+
+  private final SQLExecutor executor = Mockito.mock(SQLExecutor.class);
+
+  private OdpsStatement newStatement() {
+    return newStatement(false);
+  }
+
+  private OdpsStatement newStatement(boolean concurrentInserts) {
+    SQLExecutor shared = Mockito.mock(SQLExecutor.class);
+    Mockito.when(shared.getExecuteMode()).thenReturn(ExecuteMode.OFFLINE);
+    Mockito.when(executor.getExecuteMode()).thenReturn(ExecuteMode.OFFLINE);
+    OdpsConnection conn = Mockito.mock(OdpsConnection.class);
+    conn.log = Mockito.mock(OdpsLogger.class);
+    Mockito.when(conn.getExecutor()).thenReturn(shared);
+    Mockito.when(conn.borrowExecutor()).thenReturn(executor);
+    Mockito.when(conn.getSqlTaskProperties()).thenReturn(new Properties());
+    Mockito.when(conn.getSettingsCache()).thenReturn(new SettingsPrefixCache(16));
+    Mockito.when(conn.getInteractiveMode()).thenReturn(ExecuteMode.OFFLINE);
+    Mockito.when(conn.isBatchConcurrentInserts()).thenReturn(concurrentInserts);
+    return new OdpsStatement(conn);
+  }
+
+  /**
+   * @return an instance running until it is stopped
+   */
+  private static Instance runningInstance() throws Exception {
+    AtomicBoolean stopped = new AtomicBoolean();
+    Instance instance = Mockito.mock(Instance.class);
+    Mockito.when(instance.isTerminated()).thenAnswer(invocation -> stopped.get());
+    Mockito.doAnswer(invocation -> {
+      stopped.set(true);
+      return null;
+    }).when(instance).stop();
+    return instance;
+  }
+
+  @Test
+  public void testSubmitsOnStatementExecutor() throws Exception {
+    OdpsStatement stmt = newStatement();
+    Instance first = Mockito.mock(Instance.class);
+    Instance second = Mockito.mock(Instance.class);
+    Mockito.when(first.isTerminated()).thenReturn(true);
+    Mockito.when(second.isTerminated()).thenReturn(true);
+    Mockito.when(executor.getInstance()).thenReturn(first, second);
+
+    stmt.addBatch("set odps.sql.x=1;");
+    stmt.addBatch("insert into a select 1;");
+    stmt.addBatch("insert into b select 2;");
+    Assertions.assertArrayEquals(new int[]{0, 0, 0}, stmt.executeBatch());
+
+    Mockito.verify(executor).run(Mockito.startsWith("insert into a"),
+                                 Mockito.argThat(s -> "1".equals(s.get("odps.sql.x"))));
+    Mockito.verify(executor).run(Mockito.startsWith("insert into b"),
+                                 Mockito.argThat(s -> "1".equals(s.get("odps.sql.x"))));
+    Mockito.verify(first).waitForSuccess();
+    Mockito.verify(second).waitForSuccess();
+  }
+
+  private static CompletableFuture<int[]> executeBatchAsync(OdpsStatement stmt) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return stmt.executeBatch();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  @Test
+  public void testInsertsRunOneByOneByDefault() throws Exception {
+    OdpsStatement stmt = newStatement();
+    Instance first = runningInstance();
+    Instance second = runningInstance();
+    Mockito.when(executor.getInstance()).thenReturn(first, second);
+
+    stmt.addBatch("insert into a select 1;");
+    stmt.addBatch("insert into b select 2;");
+    CompletableFuture<int[]> batch = executeBatchAsync(stmt);
+    Mockito.verify(executor, Mockito.timeout(5000)).run(Mockito.anyString(), Mockito.anyMap());
+    Thread.sleep(500);
+    // the second insert waits for the first one
+    Mockito.verify(executor, Mockito.times(1)).run(Mockito.anyString(), Mockito.anyMap());
+
+    first.stop();
+    Mockito.verify(executor, Mockito.timeout(5000).times(2))
+        .run(Mockito.anyString(), Mockito.anyMap());
+    second.stop();
+    Assertions.assertArrayEquals(new int[]{0, 0}, batch.get(30, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testConcurrentInserts() throws Exception {
+    OdpsStatement stmt = newStatement(true);
+    Instance first = runningInstance();
+    Instance second = runningInstance();
+    Mockito.when(executor.getInstance()).thenReturn(first, second);
+
+    stmt.addBatch("insert into a select 1;");
+    stmt.addBatch("insert into b select 2;");
+    CompletableFuture<int[]> batch = executeBatchAsync(stmt);
+    // both are submitted while the first one runs
+    Mockito.verify(executor, Mockito.timeout(5000).times(2))
+        .run(Mockito.anyString(), Mockito.anyMap());
+
+    first.stop();
+    second.stop();
+    Assertions.assertArrayEquals(new int[]{0, 0}, batch.get(30, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testFailureReportsAllCounts() throws Exception {
+    OdpsStatement stmt = newStatement(true);
+    Instance failed = Mockito.mock(Instance.class);
+    Instance succeeded = Mockito.mock(Instance.class);
+    Mockito.when(failed.isTerminated()).thenReturn(true);
+    Mockito.when(succeeded.isTerminated()).thenReturn(true);
+    Mockito.doThrow(new OdpsException("failed")).when(failed).waitForSuccess();
+    Mockito.when(executor.getInstance()).thenReturn(failed, succeeded);
+
+    stmt.addBatch("insert into a select 1;");
+    stmt.addBatch("insert into b select 2;");
+    stmt.addBatch("create table c (x int);");
+    BatchUpdateException e = Assertions.assertThrows(BatchUpdateException.class,
+                                                     stmt::executeBatch);
+    // the insert submitted along with the failed one ran, the last statement did not
+    Assertions.assertArrayEquals(
+        new int[]{Statement.EXECUTE_FAILED, 0, Statement.EXECUTE_FAILED}, e.getUpdateCounts());
+    Mockito.verify(executor, Mockito.times(2)).run(Mockito.anyString(), Mockito.anyMap());
+  }
+
+  @Test
+  public void testCancelStopsSubmittedInstances() throws Exception {
+    OdpsStatement stmt = newStatement();
+    Instance running = runningInstance();
+    Mockito.when(executor.getInstance()).thenReturn(running);
+
+    stmt.addBatch("insert into a select 1;");
+    stmt.addBatch("create table c (x int);");
+    CompletableFuture<int[]> batch = executeBatchAsync(stmt);
+    Mockito.verify(executor, Mockito.timeout(5000)).run(Mockito.anyString(), Mockito.anyMap());
+    stmt.cancel();
+
+    Throwable cause = Assertions.assertThrows(Exception.class,
+                                              () -> batch.get(30, TimeUnit.SECONDS))
+        .getCause().getCause();
+    Assertions.assertTrue(cause instanceof BatchUpdateException);
+    Assertions.assertArrayEquals(new int[]{0, Statement.EXECUTE_FAILED},
+                                 ((BatchUpdateException) cause).getUpdateCounts());
+    Mockito.verify(running).stop();
+    // the statement after the cancelled one is not submitted
+    Mockito.verify(executor, Mockito.times(1)).run(Mockito.anyString(), Mockito.anyMap());
+  }
+
+  @Test
+  public void testTimeoutStopsSubmittedInstances() throws Exception {
+    OdpsStatement stmt = newStatement();
+    Instance running = runningInstance();
+    Mockito.when(executor.getInstance()).thenReturn(running);
+    stmt.setQueryTimeout(1);
+
+    stmt.addBatch("insert into a select 1;");
+    stmt.addBatch("create table c (x int);");
+    BatchUpdateException e = Assertions.assertThrows(BatchUpdateException.class,
+                                                     stmt::executeBatch);
+    Assertions.assertTrue(e.getCause() instanceof SQLTimeoutException);
+    Mockito.verify(running).stop();
+    Mockito.verify(executor, Mockito.times(1)).run(Mockito.anyString(), Mockito.anyMap());
+  }
+
+  @Test
+  public void testInsertTarget() {
+    Assertions.assertEquals("t", StatementBatchRunner.insertTarget("insert into t values (1);"));
+    Assertions.assertEquals("t2", StatementBatchRunner.insertTarget(
+        "-- load\n/* daily */ INSERT OVERWRITE TABLE p.`T2` PARTITION (ds='1') SELECT * FROM s;"));
+    Assertions.assertEquals("t3", StatementBatchRunner.insertTarget("insert into p.s.t3(a) select 1"));
+    Assertions.assertNull(StatementBatchRunner.insertTarget("create table t (a int);"));
+    Assertions.assertNull(StatementBatchRunner.insertTarget("select * from t; insert into t"));
+  }
+
+  @Test
+  public void testMentions() {
+    Assertions.assertTrue(StatementBatchRunner.mentions("insert into a select * from t;", "t"));
+    Assertions.assertTrue(StatementBatchRunner.mentions("select * from p.t", "t"));
+    Assertions.assertFalse(StatementBatchRunner.mentions("select * from t_1, t2, $t", "t"));
+    Assertions.assertFalse(StatementBatchRunner.mentions("select 1", "t"));
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class UploadMetricsTest {
+
+  @Test
+  public void testParentAddsUp() {
+    UploadMetrics connection = new UploadMetrics(null);
+    UploadMetrics first = new UploadMetrics(connection);
+    UploadMetrics second = new UploadMetrics(connection);
+
+    first.recordSessionCreated(30);
+    first.recordBlock(100, 4096, 12);
+    first.recordRetry();
+    second.recordBlock(50, 1024, 3);
+    second.recordFailedBlock();
+    second.recordCommit(200);
+
+    Assertions.assertEquals(100, first.getRows());
+    Assertions.assertEquals(1, first.getRetries());
+    Assertions.assertEquals(0, first.getCommits());
+    Assertions.assertEquals(150, connection.getRows());
+    Assertions.assertEquals(5120, connection.getBytes());
+    Assertions.assertEquals(2, connection.getBlocks());
+    Assertions.assertEquals(1, connection.getRetries());
+    Assertions.assertEquals(1, connection.getFailedBlocks());
+    Assertions.assertEquals(1, connection.getSessions());
+    Assertions.assertEquals(1, connection.getCommits());
+    Assertions.assertEquals(30, connection.getSessionCreateLatency().getMax());
+  }
+
+  @Test
+  public void testHistogram() {
+    UploadMetrics metrics = new UploadMetrics(null);
+    UploadMetrics.Histogram histogram = metrics.getBlockLatency();
+    Assertions.assertEquals(0, histogram.getPercentile(0.5));
+
+    for (int i = 0; i < 98; i++) {
+      metrics.recordBlock(1, 1, 4);
+    }
+    metrics.recordBlock(1, 1, 150);
+    metrics.recordBlock(1, 1, 90000);
+
+    Assertions.assertEquals(100, histogram.getCount());
+    Assertions.assertEquals(90000, histogram.getMax());
+    Assertions.assertEquals(98 * 4 + 150 + 90000, histogram.getSum());
+    // percentiles are the upper bound of their bucket
+    Assertions.assertEquals(5, histogram.getPercentile(0.5));
+    Assertions.assertEquals(200, histogram.getPercentile(0.99));
+    Assertions.assertEquals(90000, histogram.getPercentile(1));
+
+    long[] counts = histogram.getBucketCounts();
+    Assertions.assertEquals(UploadMetrics.Histogram.getBucketBounds().length + 1, counts.length);
+    Assertions.assertEquals(98, counts[2]);
+    Assertions.assertEquals(1, counts[counts.length - 1]);
+
+    Map<String, Number> map = metrics.toMap();
+    Assertions.assertEquals(100L, map.get("rows"));
+    Assertions.assertEquals(200L, map.get("block_latency_p99"));
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+
+package com.aliyun.odps.jdbc;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.aliyun.odps.jdbc.utils.OdpsLogger;
+
+public class UploaderCacheTest {
+
+  private final InsertTemplate template =
+      new InsertTemplate("p", "s", "t", "pt='1'", null, null, null, false);
+
+  private UploaderCache newCache(DataUploader... uploaders) throws Exception {
+    OdpsConnection conn = Mockito.mock(OdpsConnection.class);
+    conn.log = Mockito.mock(OdpsLogger.class);
+    UploaderCache cache = Mockito.spy(new UploaderCache(conn, true, 0));
+    if (uploaders.length > 0) {
+      DataUploader[] rest = new DataUploader[uploaders.length - 1];
+      System.arraycopy(uploaders, 1, rest, 0, rest.length);
+      Mockito.doReturn(uploaders[0], (Object[]) rest).when(cache).newUploader(template);
+    }
+    return cache;
+  }
+
+  @Test
+  public void testCommitAllWaitsForRelease() throws Exception {
+    DataUploader uploader = Mockito.mock(DataUploader.class);
+    UploaderCache cache = newCache(uploader);
+
+    UploaderCache.Lease lease = cache.acquire(template);
+    cache.commitAll();
+    Assertions.assertEquals(0, cache.getSessionCount());
+    Mockito.verify(uploader, Mockito.never()).commit();
+
+    cache.release(lease);
+    Mockito.verify(uploader).commit();
+  }
+
+  @Test
+  public void testCommitAllCommitsIdle() throws Exception {
+    DataUploader uploader = Mockito.mock(DataUploader.class);
+    UploaderCache cache = newCache(uploader);
+
+    cache.release(cache.acquire(template));
+    Mockito.verify(uploader, Mockito.never()).commit();
+    cache.commitAll();
+    Mockito.verify(uploader).commit();
+  }
+
+  @Test
+  public void testReleaseAfterReplacementKeepsNewEntry() throws Exception {
+    DataUploader first = Mockito.mock(DataUploader.class);
+    DataUploader second = Mockito.mock(DataUploader.class);
+    UploaderCache cache = newCache(first, second);
+
+    UploaderCache.Lease old = cache.acquire(template);
+    cache.commitAll();
+    UploaderCache.Lease current = cache.acquire(template);
+    Assertions.assertSame(second, current.getUploader());
+
+    // releasing the old lease neither touches nor commits the new session
+    cache.release(old);
+    Mockito.verify(first).commit();
+    cache.commitAll();
+    Mockito.verify(second, Mockito.never()).commit();
+    cache.release(current);
+    Mockito.verify(second).commit();
+
+    Assertions.assertThrows(IllegalStateException.class, () -> cache.release(current));
+  }
+}
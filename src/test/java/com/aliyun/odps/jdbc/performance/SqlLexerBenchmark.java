@@ -0,0 +1,147 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc.performance;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import com.aliyun.odps.jdbc.utils.SqlLexer;
+import com.aliyun.odps.sqa.commandapi.utils.SqlParserUtil;
+
+/**
+ * Local benchmark of the sql pre-processing done before each execution, no ODPS service is needed.
+ * <p>
+ * A sql of the given size is generated with leading settings, comments, hints, quoted strings and
+ * placeholders. It is lexed by {@link SqlLexer}, and by the regular expressions the statements
+ * used to run one after the other (first keyword per line, USE clause, placeholder indexes). Run
+ * with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.aliyun.odps.jdbc.performance.SqlLexerBenchmark \
+ *   -Dexec.args="[kilobytes] [iterations] [rounds]"
+ * </pre>
+ */
+public class SqlLexerBenchmark {
+
+  private static final String[] COLUMNS = {
+      "id", "category", "price", "quantity", "comment", "created", "region", "status"
+  };
+
+  public static void main(String[] args) throws IOException {
+    int kilobytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    String sql = generate(kilobytes * 1024);
+    SqlLexer.Result result = SqlLexer.lex(sql);
+    System.out.printf("%d chars, %d settings, %d placeholders, %s, best of %d rounds%n",
+                      sql.length(), result.getSettings().size(),
+                      result.getPlaceholderOffsets().length, result.getKind(), rounds);
+    System.out.printf("%-8s %14s %10s%n", "method", "us per sql", "MiB/s");
+
+    long lexerNanos = Long.MAX_VALUE;
+    long regexNanos = Long.MAX_VALUE;
+    long sink = 0;
+    // the first round warms up
+    for (int round = 0; round <= rounds; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        sink += SqlLexer.lex(sql).getPlaceholderOffsets().length;
+      }
+      long lexed = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        sink += regexes(sql);
+      }
+      long end = System.nanoTime();
+      if (round > 0) {
+        lexerNanos = Math.min(lexerNanos, lexed - start);
+        regexNanos = Math.min(regexNanos, end - lexed);
+      }
+    }
+    print("lexer", lexerNanos, iterations, sql.length());
+    print("regex", regexNanos, iterations, sql.length());
+    if (sink == 0) {
+      throw new IllegalStateException("no placeholder found");
+    }
+  }
+
+  private static void print(String method, long nanos, int iterations, int chars) {
+    double seconds = nanos / 1e9;
+    System.out.printf("%-8s %14.1f %10.1f%n", method, nanos / 1e3 / iterations,
+                      (double) chars * 2 * iterations / 1024 / 1024 / seconds);
+  }
+
+  /**
+   * The scans done before the lexer, except the extraction of the settings.
+   */
+  private static int regexes(String sql) throws IOException {
+    BufferedReader reader = new BufferedReader(new StringReader(sql));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.matches("^\\s*(--|#).*") || line.matches("^\\s*$")) {
+        continue;
+      }
+      if (line.matches("(?i)^(\\s*)(SELECT).*$")) {
+        break;
+      }
+    }
+    if (sql.matches("(?i)^(\\s*)(USE)(\\s+)(.*);?(\\s*)$")) {
+      return 0;
+    }
+    return SqlParserUtil.getPlaceholderIndexList(sql).size();
+  }
+
+  private static String generate(int chars) {
+    Random random = new Random(42);
+    StringBuilder sql = new StringBuilder(chars + 256);
+    sql.append("-- generated by ").append(SqlLexerBenchmark.class.getSimpleName()).append('\n');
+    for (int i = 0; i < 16; i++) {
+      sql.append("SET odps.sql.setting").append(i).append('=').append(random.nextInt(1000))
+          .append(";\n");
+    }
+    sql.append("/*+ mapjoin(d) */\nSELECT\n");
+    int expression = 0;
+    while (sql.length() < chars) {
+      String column = COLUMNS[random.nextInt(COLUMNS.length)];
+      switch (random.nextInt(4)) {
+        case 0:
+          sql.append("  CASE WHEN t.").append(column).append(" = ? THEN 'matched; -- ?' ")
+              .append("ELSE 'it\\'s /* not */ a comment' END");
+          break;
+        case 1:
+          sql.append("  t.").append(column).append(" /* was ").append(column).append("? */");
+          break;
+        case 2:
+          sql.append("  concat(`").append(column).append("`, \"?\", ?)  -- ")
+              .append(Long.toHexString(random.nextLong())).append('\n');
+          break;
+        default:
+          sql.append("  coalesce(t.").append(column).append(", d.").append(column).append(')');
+      }
+      sql.append(" AS c").append(expression++).append(",\n");
+    }
+    sql.append("  1 AS one\nFROM t JOIN d ON t.id = d.id\nWHERE t.ds = ? AND t.region IN (?, ?);");
+    return sql.toString();
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import com.aliyun.odps.Column;
+import com.aliyun.odps.OdpsType;
+import com.aliyun.odps.TableSchema;
+import com.aliyun.odps.commons.proto.ProtobufRecordStreamReader;
+import com.aliyun.odps.commons.proto.ProtobufRecordStreamWriter;
+import com.aliyun.odps.data.ArrayRecord;
+import com.aliyun.odps.data.Record;
+import com.aliyun.odps.jdbc.utils.TunnelCompression;
+import com.aliyun.odps.tunnel.io.CompressOption;
+
+/**
+ * Local benchmark of the tunnel compression options, no ODPS service is needed.
+ * <p>
+ * Synthetic rows are encoded and decoded in memory with the record format of the tunnel, once per
+ * option, and the wire bytes and the CPU time per MB of raw data are printed. Run with
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.aliyun.odps.jdbc.performance.TunnelCompressionBenchmark \
+ *   -Dexec.args="[rows] [rounds] [options]"
+ * </pre>
+ * where options is a comma separated list of {@code tunnelUploadCompression} values.
+ */
+public class TunnelCompressionBenchmark {
+
+  private static final String DEFAULT_OPTIONS = "none,zlib:1,zlib:6,zlib:9,snappy,lz4";
+
+  private static final String[] CATEGORIES = {
+      "books", "music", "garden", "toys", "tools", "sports", "games", "kitchen",
+      "office", "beauty", "health", "grocery", "shoes", "baby", "pets", "auto"
+  };
+  private static final String[] WORDS = {
+      "order", "shipped", "customer", "returned", "payment", "pending", "warehouse", "delivery",
+      "express", "standard", "refund", "invoice", "coupon", "discount", "member", "gift",
+      "review", "cancelled", "address", "updated", "priority", "international", "local", "store"
+  };
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    String options = args.length > 2 ? args[2] : DEFAULT_OPTIONS;
+
+    TableSchema schema = schema();
+    List<Record> records = generate(schema, rows);
+    double rawMegaBytes = encode(schema, records, new CompressOption(
+        CompressOption.CompressAlgorithm.ODPS_RAW, 0, 0)).length / 1024.0 / 1024.0;
+
+    System.out.printf("%d rows, %.2f MiB uncompressed, best of %d rounds%n", rows, rawMegaBytes,
+                      rounds);
+    System.out.printf("%-10s %12s %8s %18s %18s%n", "option", "wire MiB", "ratio",
+                      "encode cpu ms/MiB", "decode cpu ms/MiB");
+    for (String value : options.split(",")) {
+      CompressOption option = TunnelCompression.parse(value);
+      long encodeNanos = Long.MAX_VALUE;
+      long decodeNanos = Long.MAX_VALUE;
+      byte[] encoded = null;
+      // the first round also warms up the codec
+      for (int round = 0; round <= rounds; round++) {
+        long start = cpuTime();
+        encoded = encode(schema, records, option);
+        long encodedAt = cpuTime();
+        int decoded = decode(schema, encoded, option);
+        long end = cpuTime();
+        if (decoded != rows) {
+          throw new IllegalStateException(value + " decoded " + decoded + " of " + rows + " rows");
+        }
+        if (round > 0) {
+          encodeNanos = Math.min(encodeNanos, encodedAt - start);
+          decodeNanos = Math.min(decodeNanos, end - encodedAt);
+        }
+      }
+      double wireMegaBytes = encoded.length / 1024.0 / 1024.0;
+      System.out.printf("%-10s %12.2f %8.2f %18.2f %18.2f%n", TunnelCompression.toString(option),
+                        wireMegaBytes, rawMegaBytes / wireMegaBytes,
+                        encodeNanos / 1e6 / rawMegaBytes, decodeNanos / 1e6 / rawMegaBytes);
+    }
+  }
+
+  private static TableSchema schema() {
+    TableSchema schema = new TableSchema();
+    schema.addColumn(new Column("id", OdpsType.BIGINT));
+    schema.addColumn(new Column("category", OdpsType.STRING));
+    schema.addColumn(new Column("price", OdpsType.DOUBLE));
+    schema.addColumn(new Column("quantity", OdpsType.BIGINT));
+    schema.addColumn(new Column("comment", OdpsType.STRING));
+    schema.addColumn(new Column("created", OdpsType.DATETIME));
+    return schema;
+  }
+
+  private static List<Record> generate(TableSchema schema, int rows) {
+    Random random = new Random(42);
+    long base = 1700000000000L;
+    List<Record> records = new ArrayList<>(rows);
+    StringBuilder comment = new StringBuilder();
+    for (int i = 0; i < rows; i++) {
+      Record record = new ArrayRecord(schema);
+      record.setBigint(0, (long) i);
+      record.setString(1, CATEGORIES[random.nextInt(CATEGORIES.length)]);
+      record.setDouble(2, Math.round(random.nextDouble() * 100000) / 100.0);
+      record.setBigint(3, (long) random.nextInt(20));
+      comment.setLength(0);
+      int words = 4 + random.nextInt(12);
+      for (int w = 0; w < words; w++) {
+        comment.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      comment.append(Long.toHexString(random.nextLong()));
+      record.setString(4, comment.toString());
+      record.setDatetime(5, new Date(base + i * 1000L + random.nextInt(1000)));
+      records.add(record);
+    }
+    return records;
+  }
+
+  private static byte[] encode(TableSchema schema, List<Record> records, CompressOption option)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ProtobufRecordStreamWriter writer = new ProtobufRecordStreamWriter(schema, out, option);
+    for (Record record : records) {
+      writer.write(record);
+    }
+    writer.close();
+    return out.toByteArray();
+  }
+
+  private static int decode(TableSchema schema, byte[] data, CompressOption option)
+      throws IOException {
+    ProtobufRecordStreamReader reader = new ProtobufRecordStreamReader(
+        schema, schema.getColumns(), new ByteArrayInputStream(data), option);
+    int count = 0;
+    while (reader.read() != null) {
+      count++;
+    }
+    reader.close();
+    return count;
+  }
+
+  private static long cpuTime() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    return bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime()
+                                                  : System.nanoTime();
+  }
+}
@@ -258,6 +258,14 @@ public class ConnectionResourceTest {
     Assertions.assertEquals(2, resource.getLogviewVersion());
   }
 
+  @Test
+  public void testNegativeUploadBlockRetry() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ConnectionResource(
+        "jdbc:odps:http://example.com?project=test&uploadBlockRetryTime=-1", null));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new ConnectionResource(
+        "jdbc:odps:http://example.com?project=test&uploadBlockRetryInterval=-5", null));
+  }
+
   @Test
   public void testInvalidTableFormat() {
     String url = "jdbc:odps:http://example.com?project=test&tableList=invalidformat";
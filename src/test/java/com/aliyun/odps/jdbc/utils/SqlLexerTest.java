@@ -0,0 +1,111 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+
+package com.aliyun.odps.jdbc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.aliyun.odps.jdbc.utils.SqlLexer.StatementKind;
+
+public class SqlLexerTest {
+
+  @Test
+  public void testSettingsAndQuery() {
+    String sql = "-- header\nSET a=1;\nset b = x\\;y; /*+ mapjoin(t) */ SELECT * FROM t;";
+    SqlLexer.Result result = SqlLexer.lex(sql);
+
+    assertEquals(2, result.getSettings().size());
+    assertEquals("1", result.getSettings().get("a"));
+    assertEquals("x;y", result.getSettings().get("b"));
+    assertEquals("-- header\n\n /*+ mapjoin(t) */ SELECT * FROM t;", result.getRemainingQuery());
+    assertEquals(StatementKind.QUERY, result.getKind());
+    assertTrue(result.getErrors().isEmpty());
+  }
+
+  @Test
+  public void testStatementKind() {
+    assertEquals(StatementKind.QUERY, SqlLexer.lex("--c\n/* c */ select 1").getKind());
+    assertEquals(StatementKind.QUERY, SqlLexer.lex("# c\n\tSELECT 1;").getKind());
+    assertEquals(StatementKind.OTHER, SqlLexer.lex("insert into t select 1;").getKind());
+    assertEquals(StatementKind.OTHER, SqlLexer.lex("selector;").getKind());
+    assertEquals(StatementKind.EMPTY, SqlLexer.lex("set a=1; -- only settings").getKind());
+    assertEquals(StatementKind.EMPTY, SqlLexer.lex("  ").getKind());
+    // an invalid SET is kept in the query and sent as is
+    SqlLexer.Result label = SqlLexer.lex("SET a=1; SET LABEL 1 TO TABLE t;");
+    assertEquals(StatementKind.OTHER, label.getKind());
+    assertEquals(1, label.getErrors().size());
+    assertEquals(" SET LABEL 1 TO TABLE t;", label.getRemainingQuery());
+  }
+
+  @Test
+  public void testUse() {
+    SqlLexer.Result result = SqlLexer.lex("set a=1;\n  USE my_project ; -- switch");
+    assertEquals(StatementKind.USE, result.getKind());
+    assertEquals("my_project", result.getUseTarget());
+
+    assertEquals("", SqlLexer.lex("use ;").getUseTarget());
+    // a script is sent as is
+    result = SqlLexer.lex("use my_project; select 1;");
+    assertEquals(StatementKind.OTHER, result.getKind());
+    assertNull(result.getUseTarget());
+    assertEquals(StatementKind.OTHER, SqlLexer.lex("user_defined();").getKind());
+  }
+
+  @Test
+  public void testMoreStatements() {
+    assertFalse(SqlLexer.lex("set a=1; insert into t select 1; -- done").hasMoreStatements());
+    assertFalse(SqlLexer.lex("select ';'").hasMoreStatements());
+    assertTrue(SqlLexer.lex("create table t (a int); insert into t select 1;").hasMoreStatements());
+  }
+
+  @Test
+  public void testPlaceholders() {
+    String sql = "select '?', \"a\\\"?\", `?`, ? -- ?\n, /* ? */ ?, /*+ hint(?) */ x=?;";
+    SqlLexer.Result result = SqlLexer.lex(sql, false);
+    assertArrayEquals(new int[]{sql.indexOf("? --"), sql.indexOf("?, /*+"), sql.indexOf("=?") + 1},
+                      result.getPlaceholderOffsets());
+    assertEquals(0, SqlLexer.lex("select 1", false).getPlaceholderOffsets().length);
+  }
+
+  @Test
+  public void testWithoutSettings() {
+    String sql = "set a=1; select ?";
+    SqlLexer.Result result = SqlLexer.lex(sql, false);
+    assertTrue(result.getSettings().isEmpty());
+    assertEquals(sql, result.getRemainingQuery());
+    assertEquals(StatementKind.OTHER, result.getKind());
+    assertArrayEquals(new int[]{sql.length() - 1}, result.getPlaceholderOffsets());
+  }
+
+  @Test
+  public void testUnterminated() {
+    assertEquals(StatementKind.EMPTY, SqlLexer.lex("/* select ?").getKind());
+    SqlLexer.Result result = SqlLexer.lex("select 'it?s", false);
+    assertEquals(StatementKind.QUERY, result.getKind());
+    assertEquals(0, result.getPlaceholderOffsets().length);
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+
+package com.aliyun.odps.jdbc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.aliyun.odps.tunnel.io.CompressOption;
+import com.aliyun.odps.tunnel.io.CompressOption.CompressAlgorithm;
+
+public class TunnelCompressionTest {
+
+  @Test
+  public void testParse() {
+    assertNull(TunnelCompression.parse(null));
+    assertNull(TunnelCompression.parse(" "));
+
+    CompressOption option = TunnelCompression.parse("none");
+    assertEquals(CompressAlgorithm.ODPS_RAW, option.algorithm);
+
+    option = TunnelCompression.parse("ZLIB");
+    assertEquals(CompressAlgorithm.ODPS_ZLIB, option.algorithm);
+    assertEquals(1, option.level);
+
+    option = TunnelCompression.parse("deflate:6");
+    assertEquals(CompressAlgorithm.ODPS_ZLIB, option.algorithm);
+    assertEquals(6, option.level);
+    assertEquals("zlib:6", TunnelCompression.toString(option));
+
+    assertEquals(CompressAlgorithm.ODPS_SNAPPY, TunnelCompression.parse("snappy").algorithm);
+    assertEquals(CompressAlgorithm.ODPS_LZ4_FRAME, TunnelCompression.parse(" lz4 ").algorithm);
+    assertEquals("lz4", TunnelCompression.toString(TunnelCompression.parse("lz4")));
+    assertEquals("none", TunnelCompression.toString(TunnelCompression.parse("raw")));
+    assertEquals("default", TunnelCompression.toString(null));
+  }
+
+  @Test
+  public void testParseInvalid() {
+    assertThrows(IllegalArgumentException.class, () -> TunnelCompression.parse("gzip2"));
+    assertThrows(IllegalArgumentException.class, () -> TunnelCompression.parse("zlib:x"));
+    assertThrows(IllegalArgumentException.class, () -> TunnelCompression.parse("zlib:10"));
+  }
+}